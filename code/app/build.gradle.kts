@@ -37,6 +37,10 @@ android {
         sourceCompatibility = JavaVersion.VERSION_11
         targetCompatibility = JavaVersion.VERSION_11
     }
+    testOptions {
+        // Controller classes log through android.util.Log, which local unit tests only stub
+        unitTests.isReturnDefaultValues = true
+    }
 }
 
 dependencies {
@@ -44,6 +48,7 @@ dependencies {
     implementation(libs.material)
     implementation(libs.activity)
     implementation(libs.constraintlayout)
+    implementation(libs.recyclerview)
     implementation(platform(libs.firebase.bom))
     implementation(libs.play.services.location)
     implementation(libs.play.services.maps)
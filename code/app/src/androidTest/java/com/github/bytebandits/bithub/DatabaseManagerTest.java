@@ -3,6 +3,11 @@ package com.github.bytebandits.bithub;
 import android.util.Log;
 
 import com.github.bytebandits.bithub.controller.DatabaseManager;
+import com.github.bytebandits.bithub.controller.DensityGrid;
+import com.github.bytebandits.bithub.controller.GeoHash;
+import com.github.bytebandits.bithub.controller.ImageStore;
+import com.github.bytebandits.bithub.controller.ShardedFeedQuery;
+import com.github.bytebandits.bithub.model.Comment;
 import com.github.bytebandits.bithub.model.DocumentReferences;
 import com.github.bytebandits.bithub.model.Emotion;
 import com.github.bytebandits.bithub.model.MoodPost;
@@ -169,6 +174,397 @@ public class DatabaseManagerTest {
         });
     }
 
+    @Test
+    public void testShardedFeedQuery_MoreThanThirtyUsers() {
+        ArrayList<String> userIds = new ArrayList<>();
+        userIds.add("testUser1");
+        userIds.add("testUser2");
+        for (int i = 0; i < 40; i++) {
+            userIds.add("shardUser" + i);
+        }
+
+        ShardedFeedQuery feedQuery = new ShardedFeedQuery(userIds, 1);
+        assertEquals(2, feedQuery.getShardCount());
+        feedQuery.fetchNextPage((posts, hasMore) -> {
+            assertNotNull(posts);
+            assertTrue(posts.size() <= 1);
+        });
+    }
+
+    @Test
+    public void testNotificationInbox_FollowRequest() {
+        dbInstance.sendFollowRequest("testUser2", testProfile.getUserId());
+        dbInstance.getNotificationsPage(testProfile.getUserId(), null, 10, (notifications, last, hasMore) -> {
+            assertNotNull(notifications);
+            assertFalse(notifications.isEmpty());
+            assertTrue(notifications.get(0).getNotificationType());
+            assertEquals("testUser2", notifications.get(0).getProfile().getUserId());
+        });
+    }
+
+    @Test
+    public void testNotificationInbox_LegacyFollowerNotified() {
+        DocumentReference user1DocRef = dbInstance.getUsersCollectionRef().document(testProfile.getUserId());
+        DocumentReference user2DocRef = dbInstance.getUsersCollectionRef().document("testUser2");
+        MoodPost post = new MoodPost(Emotion.HAPPINESS, testProfile, false, null, "For legacy followers", null, false);
+
+        // testUser2 follows testUser1 only through the array of an unmigrated user
+        user1DocRef.update(DocumentReferences.FOLLOWERS.getDocRefString(), FieldValue.arrayUnion(user2DocRef))
+                .addOnCompleteListener(seeded -> dbInstance.addPost(post, testProfile.getUserId(), added -> {
+                    assertTrue(added);
+                    dbInstance.getNotificationsCollectionRef("testUser2").document(post.getPostID()).get()
+                            .addOnCompleteListener(task -> assertTrue(task.getResult().exists()));
+                }));
+    }
+
+    @Test
+    public void testImage_StoredByHashAndVariant() {
+        byte[] thumbnail = { 1, 2, 3 };
+        byte[] full = { 4, 5, 6, 7 };
+        HashMap<String, byte[]> variants = new HashMap<>();
+        variants.put(ImageStore.VARIANT_THUMBNAIL, thumbnail);
+        variants.put(ImageStore.VARIANT_FULL, full);
+        String hash = "0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef";
+        assertTrue(ImageStore.isImageRef(hash));
+
+        dbInstance.addImage(hash, variants, success -> {
+            assertTrue(success);
+            dbInstance.getImage(hash, ImageStore.VARIANT_THUMBNAIL, data -> assertArrayEquals(thumbnail, data));
+            dbInstance.getImage(hash, ImageStore.VARIANT_FULL, data -> assertArrayEquals(full, data));
+        });
+    }
+
+    @Test
+    public void testUpdatePost_LocationWritesGeohash() {
+        MoodPost post = new MoodPost(Emotion.HAPPINESS, testProfile, true, null, "Located", null, false);
+        dbInstance.addPost(post, testProfile.getUserId(), null);
+
+        HashMap<String, Object> updateFields = new HashMap<>();
+        updateFields.put("latitude", 53.5232);
+        updateFields.put("longitude", -113.5263);
+        String cell = GeoHash.encode(53.5232, -113.5263, 6);
+
+        dbInstance.updatePost(post.getPostID(), updateFields, success -> {
+            assertTrue(success);
+            dbInstance.getPostsInGeohashCellQuery(cell, Collections.singletonList(testProfile.getUserId())).get().addOnCompleteListener(task -> {
+                assertTrue(task.isSuccessful());
+                boolean found = false;
+                for (DocumentSnapshot doc : task.getResult()) {
+                    found |= post.getPostID().equals(doc.getId());
+                }
+                assertTrue(found);
+            });
+        });
+    }
+
+    @Test
+    public void testUpdatePost_LocationCountsInHeatmap() {
+        MoodPost post = new MoodPost(Emotion.SADNESS, testProfile, true, null, "Heatmap", null, false);
+        dbInstance.addPost(post, testProfile.getUserId(), null);
+
+        HashMap<String, Object> updateFields = new HashMap<>();
+        updateFields.put("latitude", 53.5232);
+        updateFields.put("longitude", -113.5263);
+        int[] tile = DensityGrid.tileAt(14, 53.5232, -113.5263);
+        String bucket = String.valueOf(DensityGrid.bucketAt(14, 53.5232, -113.5263));
+
+        dbInstance.updatePost(post.getPostID(), updateFields, success -> {
+            assertTrue(success);
+            dbInstance.getHeatmapTile(14, tile[0], tile[1]).addOnCompleteListener(task -> {
+                assertTrue(task.isSuccessful());
+                Map<?, ?> buckets = (Map<?, ?>) task.getResult().get(DatabaseManager.HEATMAP_COUNTS_FIELD);
+                assertNotNull(buckets);
+                Map<?, ?> counts = (Map<?, ?>) buckets.get(bucket);
+                assertNotNull(counts);
+                assertTrue(((Number) counts.get(Emotion.SADNESS.name())).longValue() >= 1);
+            });
+        });
+    }
+
+    @Test
+    public void testAddPost_MissingUserWritesNothing() {
+        // The update of a user that does not exist fails the whole batch
+        MoodPost post = new MoodPost(Emotion.FEAR, new Profile("missingUser"), false, null, "Orphan", null, false);
+
+        dbInstance.addPost(post, "missingUser", success -> {
+            assertFalse(success);
+            dbInstance.getPostsCollectionRef().document(post.getPostID()).get()
+                    .addOnCompleteListener(task -> assertFalse(task.getResult().exists()));
+        });
+    }
+
+    @Test
+    public void testDeletePost_MissingUserKeepsPost() {
+        MoodPost post = new MoodPost(Emotion.ANGER, testProfile, false, null, "Kept", null, true);
+        dbInstance.addPost(post, testProfile.getUserId(), added -> {
+            assertTrue(added);
+            dbInstance.deletePost(post.getPostID(), "missingUser", deleted -> {
+                assertFalse(deleted);
+                dbInstance.getPostsCollectionRef().document(post.getPostID()).get()
+                        .addOnCompleteListener(task -> assertTrue(task.getResult().exists()));
+            });
+        });
+    }
+
+    @Test
+    public void testAcceptUserFollow_MissingRequesterChangesNothing() {
+        dbInstance.acceptUserFollow(testProfile.getUserId(), "missingUser", success -> {
+            assertFalse(success);
+            dbInstance.getFollowersCollectionRef(testProfile.getUserId()).document("missingUser").get()
+                    .addOnCompleteListener(task -> assertFalse(task.getResult().exists()));
+        });
+    }
+
+    @Test
+    public void testAcceptUserFollow_UpdatesBothUsers() {
+        dbInstance.acceptUserFollow(testProfile.getUserId(), "testUser2", success -> {
+            assertTrue(success);
+            dbInstance.checkFollowing("testUser2", testProfile.getUserId(), Assert::assertTrue);
+            dbInstance.getUsersCollectionRef().document("testUser2").get().addOnCompleteListener(task ->
+                    assertEquals(1, DatabaseManager.followingCountOf(task.getResult().getData())));
+            dbInstance.getFollowersPage(testProfile.getUserId(), null, 20, (profiles, last, hasMore) -> {
+                assertNotNull(profiles);
+                assertEquals("testUser2", profiles.get(0).getUserId());
+            });
+        });
+    }
+
+    @Test
+    public void testAcceptUserFollow_TwiceCountsOnce() {
+        dbInstance.acceptUserFollow(testProfile.getUserId(), "testUser2", first -> {
+            assertTrue(first);
+            dbInstance.acceptUserFollow(testProfile.getUserId(), "testUser2", second -> {
+                assertTrue(second);
+                dbInstance.getUsersCollectionRef().document(testProfile.getUserId()).get().addOnCompleteListener(task ->
+                        assertEquals(1, DatabaseManager.followerCountOf(task.getResult().getData())));
+                dbInstance.getUsersCollectionRef().document("testUser2").get().addOnCompleteListener(task ->
+                        assertEquals(1, DatabaseManager.followingCountOf(task.getResult().getData())));
+            });
+        });
+    }
+
+    @Test
+    public void testUnfollowUser_NotFollowingKeepsCounts() {
+        dbInstance.unfollowUser(testProfile.getUserId(), "testUser2", unfollowed -> {
+            assertTrue(unfollowed);
+            // The raw count, followingCountOf would hide a negative one
+            dbInstance.getUsersCollectionRef().document(testProfile.getUserId()).get().addOnCompleteListener(task -> {
+                Long count = task.getResult().getLong(DatabaseManager.FOLLOWING_COUNT_FIELD);
+                assertTrue(count == null || count == 0);
+            });
+        });
+    }
+
+    @Test
+    public void testUnfollowUser_RemovesEntriesAndCounts() {
+        dbInstance.acceptUserFollow("testUser2", testProfile.getUserId(), accepted -> {
+            assertTrue(accepted);
+            dbInstance.unfollowUser(testProfile.getUserId(), "testUser2", unfollowed -> {
+                assertTrue(unfollowed);
+                dbInstance.checkFollowing(testProfile.getUserId(), "testUser2", Assert::assertFalse);
+                dbInstance.getUsersCollectionRef().document("testUser2").get().addOnCompleteListener(task ->
+                        assertEquals(0, DatabaseManager.followerCountOf(task.getResult().getData())));
+            });
+        });
+    }
+
+    @Test
+    public void testMigrateLegacyFollows_MovesArraysToSubcollections() {
+        DocumentReference user1DocRef = dbInstance.getUsersCollectionRef().document(testProfile.getUserId());
+        DocumentReference user2DocRef = dbInstance.getUsersCollectionRef().document("testUser2");
+
+        user1DocRef.update(DocumentReferences.FOLLOWINGS.getDocRefString(), FieldValue.arrayUnion(user2DocRef))
+                .addOnCompleteListener(seeded -> {
+                    assertTrue(seeded.isSuccessful());
+                    dbInstance.migrateLegacyFollows(testProfile.getUserId(), migrated -> {
+                        assertTrue(migrated >= 0);
+                        dbInstance.checkFollowing(testProfile.getUserId(), "testUser2", Assert::assertTrue);
+                        dbInstance.getFollowersCollectionRef("testUser2").document(testProfile.getUserId()).get()
+                                .addOnCompleteListener(task -> assertTrue(task.getResult().exists()));
+                        user1DocRef.get().addOnCompleteListener(task -> {
+                            assertNull(task.getResult().get(DocumentReferences.FOLLOWINGS.getDocRefString()));
+                            assertEquals(1, DatabaseManager.followingCountOf(task.getResult().getData()));
+                        });
+                    });
+                });
+    }
+
+    @Test
+    public void testAddComment_CountsAndPages() {
+        MoodPost post = new MoodPost(Emotion.SURPRISE, testProfile, false, null, "Commented", null, true);
+        Comment first = new Comment(testProfile, "first");
+        Comment second = new Comment(new Profile("testUser2"), "second");
+        second.setPostedDateTime(new Date(first.getPostedDateTime().getTime() + 1000));
+
+        dbInstance.addPost(post, testProfile.getUserId(), added -> {
+            assertTrue(added);
+            dbInstance.addComment(post.getPostID(), first, firstAdded -> {
+                assertTrue(firstAdded);
+                dbInstance.addComment(post.getPostID(), second, secondAdded -> {
+                    assertTrue(secondAdded);
+                    dbInstance.getCommentsPage(post.getPostID(), null, 1, (page, last, hasMore) -> {
+                        assertNotNull(page);
+                        assertEquals(1, page.size());
+                        assertEquals(second.getCommentID(), page.get(0).getCommentID());
+                        assertTrue(hasMore);
+                    });
+                    dbInstance.deleteComment(post.getPostID(), first.getCommentID(), deleted -> {
+                        assertTrue(deleted);
+                        // Deleting it again does not decrement the count again
+                        dbInstance.deleteComment(post.getPostID(), first.getCommentID(), deletedAgain -> {
+                            assertTrue(deletedAgain);
+                            dbInstance.getPostsCollectionRef().document(post.getPostID()).get().addOnCompleteListener(task ->
+                                    assertEquals(1L, task.getResult().getLong(DatabaseManager.COMMENT_COUNT_FIELD).longValue()));
+                        });
+                    });
+                });
+            });
+        });
+    }
+
+    @Test
+    public void testDeletePost_DeletesComments() {
+        MoodPost post = new MoodPost(Emotion.FEAR, testProfile, false, null, "Deleted with comments", null, true);
+
+        dbInstance.addPost(post, testProfile.getUserId(), added -> {
+            assertTrue(added);
+            dbInstance.addComment(post.getPostID(), new Comment(testProfile, "left behind?"), commented -> {
+                assertTrue(commented);
+                dbInstance.deletePost(post.getPostID(), testProfile.getUserId(), deleted -> {
+                    assertTrue(deleted);
+                    dbInstance.getCommentsCollectionRef(post.getPostID()).get().addOnCompleteListener(task ->
+                            assertTrue(task.getResult().isEmpty()));
+                });
+            });
+        });
+    }
+
+    @Test
+    public void testMigrateLegacyComments_KeepsNewComments() {
+        MoodPost post = new MoodPost(Emotion.DISGUST, testProfile, false, null, "Mixed", null, true);
+        List<Map<String, Object>> legacy = new ArrayList<>();
+        legacy.add(DatabaseManager.newCommentEntry(new Comment(testProfile, "old one")));
+        legacy.add(DatabaseManager.newCommentEntry(new Comment(testProfile, "old two")));
+
+        DocumentReference postDocRef = dbInstance.getPostsCollectionRef().document(post.getPostID());
+        dbInstance.addPost(post, testProfile.getUserId(), added -> {
+            assertTrue(added);
+            dbInstance.addComment(post.getPostID(), new Comment(testProfile, "new one"), commented -> {
+                assertTrue(commented);
+                postDocRef.update(DatabaseManager.LEGACY_COMMENTS_FIELD, legacy).addOnCompleteListener(seeded -> {
+                    assertTrue(seeded.isSuccessful());
+                    dbInstance.migrateLegacyComments(post.getPostID(), migrated -> {
+                        assertEquals(2, migrated);
+                        postDocRef.get().addOnCompleteListener(task ->
+                                assertEquals(3L, task.getResult().getLong(DatabaseManager.COMMENT_COUNT_FIELD).longValue()));
+                    });
+                });
+            });
+        });
+    }
+
+    @Test
+    public void testMigrateLegacyComments_MovesArrayToSubcollection() {
+        MoodPost post = new MoodPost(Emotion.DISGUST, testProfile, false, null, "Legacy", null, true);
+        List<Map<String, Object>> legacy = new ArrayList<>();
+        legacy.add(DatabaseManager.newCommentEntry(new Comment(testProfile, "old one")));
+        legacy.add(DatabaseManager.newCommentEntry(new Comment(testProfile, "old two")));
+
+        DocumentReference postDocRef = dbInstance.getPostsCollectionRef().document(post.getPostID());
+        postDocRef.set(post).continueWithTask(task -> postDocRef.update(DatabaseManager.LEGACY_COMMENTS_FIELD, legacy))
+                .addOnCompleteListener(seeded -> {
+                    assertTrue(seeded.isSuccessful());
+                    dbInstance.migrateLegacyComments(post.getPostID(), migrated -> {
+                        assertEquals(2, migrated);
+                        dbInstance.getCommentsPage(post.getPostID(), null, 20, (page, last, hasMore) -> {
+                            assertNotNull(page);
+                            assertEquals(2, page.size());
+                        });
+                        postDocRef.get().addOnCompleteListener(task -> {
+                            assertNull(task.getResult().get(DatabaseManager.LEGACY_COMMENTS_FIELD));
+                            assertEquals(2L, task.getResult().getLong(DatabaseManager.COMMENT_COUNT_FIELD).longValue());
+                        });
+                    });
+                });
+    }
+
+    @Test
+    public void testUpdatePost_LegacyPostIsNotTakenOutOfHeatmap() {
+        double lat = -45.0;
+        double lng = 170.0;
+        HashMap<String, Object> profile = new HashMap<>();
+        profile.put("userId", "testUser1");
+        HashMap<String, Object> legacy = new HashMap<>();
+        legacy.put("postID", "legacyLocatedPost");
+        legacy.put("profile", profile);
+        legacy.put(DatabaseManager.EMOTION_FIELD, Emotion.ANGER.name());
+        legacy.put(DatabaseManager.LOCATION_FIELD, true);
+        legacy.put(DatabaseManager.LATITUDE_FIELD, lat);
+        legacy.put(DatabaseManager.LONGITUDE_FIELD, lng);
+        legacy.put(DatabaseManager.PRIVATE_FIELD, false);
+
+        // Written before geohashes were stored, so it was never counted in the heatmap
+        DocumentReference postDocRef = dbInstance.getPostsCollectionRef().document("legacyLocatedPost");
+        postDocRef.set(legacy).addOnCompleteListener(seeded -> {
+            HashMap<String, Object> updateFields = new HashMap<>();
+            updateFields.put(DatabaseManager.EMOTION_FIELD, Emotion.SADNESS);
+            dbInstance.updatePost("legacyLocatedPost", updateFields, updated -> {
+                assertTrue(updated);
+                postDocRef.get().addOnCompleteListener(task -> assertNotNull(task.getResult().getString(DatabaseManager.GEOHASH_FIELD)));
+                int level = DensityGrid.LEVELS[0];
+                int[] tile = DensityGrid.tileAt(level, lat, lng);
+                String bucket = DatabaseManager.HEATMAP_COUNTS_FIELD + "." + DensityGrid.bucketAt(level, lat, lng) + ".";
+                dbInstance.getHeatmapTile(level, tile[0], tile[1]).addOnCompleteListener(task -> {
+                    assertNull(task.getResult().getLong(bucket + Emotion.ANGER.name()));
+                    assertEquals(1L, task.getResult().getLong(bucket + Emotion.SADNESS.name()).longValue());
+                });
+            });
+        });
+    }
+
+    @Test
+    public void testMoodStats_FollowPostWrites() {
+        Profile moodProfile = new Profile("moodStatsUser");
+        HashMap<String, Object> user = new HashMap<>();
+        user.put("userId", moodProfile.getUserId());
+        MoodPost post = new MoodPost(Emotion.FEAR, moodProfile, false, SocialSituation.GROUP, "Counted", null, true);
+
+        dbInstance.getUsersCollectionRef().document(moodProfile.getUserId()).set(user).addOnCompleteListener(seeded ->
+                dbInstance.addPost(post, moodProfile.getUserId(), added -> {
+                    assertTrue(added);
+                    HashMap<String, Object> updateFields = new HashMap<>();
+                    updateFields.put(DatabaseManager.EMOTION_FIELD, Emotion.HAPPINESS);
+                    dbInstance.updatePost(post.getPostID(), updateFields, updated -> {
+                        assertTrue(updated);
+                        dbInstance.getMoodStats(moodProfile.getUserId(), stats -> {
+                            assertNotNull(stats);
+                            assertEquals(1, stats.getTotal());
+                            assertEquals(Emotion.HAPPINESS, stats.getTopEmotion());
+                            assertFalse(stats.getEmotionCounts().containsKey(Emotion.FEAR));
+                            assertEquals(1, stats.getLongestStreak());
+                            dbInstance.deletePost(post.getPostID(), moodProfile.getUserId(), deleted -> {
+                                assertTrue(deleted);
+                                dbInstance.getMoodStats(moodProfile.getUserId(), after -> assertEquals(0, after.getTotal()));
+                            });
+                        });
+                    });
+                }));
+    }
+
+    @Test
+    public void testBackfillMoodStats_CountsExistingPosts() {
+        // The seeded post of testUser2 was written without going through addPost
+        dbInstance.backfillMoodStats("testUser2", counted -> {
+            assertTrue(counted >= 1);
+            dbInstance.getMoodStats("testUser2", stats -> {
+                assertNotNull(stats);
+                assertEquals(counted, stats.getTotal());
+                // The marker on the statistics document stops a second backfill, even after logging out
+                dbInstance.backfillMoodStats("testUser2", again -> assertEquals(0, again));
+            });
+        });
+    }
+
     @AfterClass
     public static void tearDown() {
         String projectId = "byte-bandits-project";
@@ -1,8 +1,10 @@
 package com.github.bytebandits.bithub;
 
+import android.content.pm.ApplicationInfo;
 import android.os.Bundle;
 
 import androidx.activity.EdgeToEdge;
+import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.graphics.Insets;
 import androidx.core.view.ViewCompat;
@@ -10,7 +12,11 @@ import androidx.core.view.WindowInsetsCompat;
 import androidx.fragment.app.Fragment;
 import androidx.fragment.app.FragmentManager;
 import androidx.fragment.app.FragmentTransaction;
+import androidx.recyclerview.widget.RecyclerView;
 
+import com.github.bytebandits.bithub.controller.DatabaseManager;
+import com.github.bytebandits.bithub.controller.DatabaseTracer;
+import com.github.bytebandits.bithub.controller.MutationQueue;
 import com.github.bytebandits.bithub.controller.SessionManager;
 import com.github.bytebandits.bithub.databinding.ActivityMainBinding;
 import com.github.bytebandits.bithub.model.MoodPost;
@@ -36,6 +42,8 @@ import com.github.bytebandits.bithub.view.ProfileFragment;
 
 public class MainActivity extends AppCompatActivity {
     private ActivityMainBinding binding;
+    // Rows of the post, notification and comment lists, shared between the tabs
+    private final RecyclerView.RecycledViewPool listViewPool = new RecyclerView.RecycledViewPool();
 
     /**
      * Called when the activity is first created.
@@ -53,6 +61,56 @@ public class MainActivity extends AppCompatActivity {
         binding = ActivityMainBinding.inflate(getLayoutInflater());
         setContentView(binding.getRoot());
 
+        // A screen of feed rows survives switching between the feed and the profile
+        listViewPool.setMaxRecycledViews(R.layout.mood_post_content, 20);
+        listViewPool.setMaxRecycledViews(R.layout.notification_content, 15);
+
+        // Posts from before posts stored a geohash only show on the map once given one
+        SessionManager sessionManager = SessionManager.getInstance(this);
+        if (sessionManager.getUserId() != null && !sessionManager.isGeohashBackfilled()) {
+            DatabaseManager.getInstance().backfillGeohashes(sessionManager.getUserId(), updated -> {
+                if (updated >= 0) {
+                    sessionManager.setGeohashBackfilled();
+                }
+            });
+        }
+
+        // Follows made before follows had their own documents are moved once per user
+        if (sessionManager.getUserId() != null && !sessionManager.isFollowsMigrated()) {
+            DatabaseManager.getInstance().migrateLegacyFollows(sessionManager.getUserId(), moved -> {
+                if (moved >= 0) {
+                    sessionManager.setFollowsMigrated();
+                }
+            });
+        }
+
+        // Mood statistics of posts made before they were kept are counted once per user. After logging in
+        // again this only reads the statistics document, which remembers it was backfilled
+        if (sessionManager.getUserId() != null && !sessionManager.isMoodStatsBackfilled()) {
+            DatabaseManager.getInstance().backfillMoodStats(sessionManager.getUserId(), counted -> {
+                if (counted >= 0) {
+                    sessionManager.setMoodStatsBackfilled();
+                }
+            });
+        }
+
+        // Send the writes left queued when the app was last closed
+        MutationQueue.getInstance(this);
+
+        // Attribute database requests to the screen that made them, see DatabaseStatsDialog. Only the
+        // destinations of the bottom navigation are screens, not their child fragments or dialogs,
+        // so the screen is still right once a dialog is dismissed
+        getSupportFragmentManager().registerFragmentLifecycleCallbacks(new FragmentManager.FragmentLifecycleCallbacks() {
+            @Override
+            public void onFragmentResumed(@NonNull FragmentManager fm, @NonNull Fragment f) {
+                if (f.getId() == R.id.frameLayout) {
+                    DatabaseTracer.getInstance().setScreen(f.getClass().getSimpleName());
+                }
+            }
+        }, false);
+        // Estimating the bytes read walks every document, only worth it while debugging
+        DatabaseTracer.getInstance().setEstimatingBytes((getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0);
+
         // Display the home fragment first when the user is logged in
         replaceFragment(new HomepageFragment());
 
@@ -94,6 +152,15 @@ public class MainActivity extends AppCompatActivity {
         fragmentTransaction.commit();
     }
 
+    /**
+     * Returns the pool of list rows shared by the fragments of this activity.
+     *
+     * @return The shared RecycledViewPool.
+     */
+    public RecyclerView.RecycledViewPool getListViewPool() {
+        return listViewPool;
+    }
+
     /**
      * Launches the editMoodPost fragment
      */
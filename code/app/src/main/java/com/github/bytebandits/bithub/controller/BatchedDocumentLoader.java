@@ -0,0 +1,253 @@
+package com.github.bytebandits.bithub.controller;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.QuerySnapshot;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * BatchedDocumentLoader class that fetches many documents by reference with as few round trips
+ * as possible. References are grouped by collection and fetched with
+ * whereIn(FieldPath.documentId(), ...) queries of at most 30 IDs each, which all run in parallel,
+ * instead of one get() per reference.
+ */
+public final class BatchedDocumentLoader {
+    public static final int MAX_BATCH_SIZE = ShardedFeedQuery.MAX_IN_CLAUSE_SIZE;
+
+    private BatchedDocumentLoader() {}
+
+    /**
+     * Loads the given documents. The listener receives the documents that exist in the
+     * same order as the references were given, along with the IDs that could not be found
+     * (deleted documents, or documents whose batch failed to load).
+     *
+     * @param refs     The references of the documents to load.
+     * @param listener The listener that will receive the documents.
+     */
+    public static void load(@NotNull List<DocumentReference> refs, OnDocumentsLoadedListener listener) {
+        load(refs, null, listener);
+    }
+
+    /**
+     * Loads the given documents, reporting each batch as soon as it arrives so callers can
+     * render progressively. The final listener is called once every batch has completed.
+     *
+     * @param refs          The references of the documents to load.
+     * @param batchListener The listener that will receive the documents of each batch as it arrives.
+     * @param listener      The listener that will receive all the documents.
+     */
+    public static void load(@NotNull List<DocumentReference> refs, @Nullable OnBatchLoadedListener batchListener,
+                            OnDocumentsLoadedListener listener) {
+        load(refs, batchListener, listener, false);
+    }
+
+    /**
+     * Loads the given documents, for callers that must not show some of them as if they were
+     * all. The listener receives the documents that exist in the same order as the references
+     * were given along with the IDs of deleted documents, or null documents if a batch failed
+     * to load.
+     *
+     * @param refs     The references of the documents to load.
+     * @param listener The listener that will receive the documents, or null on failure.
+     */
+    public static void loadAll(@NotNull List<DocumentReference> refs, OnDocumentsLoadedListener listener) {
+        load(refs, null, listener, true);
+    }
+
+    private static void load(List<DocumentReference> refs, @Nullable OnBatchLoadedListener batchListener,
+                             OnDocumentsLoadedListener listener, boolean failOnError) {
+        if (refs.isEmpty()) {
+            listener.onDocumentsLoaded(new ArrayList<>(), new ArrayList<>());
+            return;
+        }
+
+        // Group the unique IDs by collection, since a query can only target one collection
+        Map<String, CollectionReference> collections = new LinkedHashMap<>();
+        Map<String, LinkedHashSet<String>> idsByCollection = new LinkedHashMap<>();
+        for (DocumentReference ref : refs) {
+            CollectionReference collection = ref.getParent();
+            collections.put(collection.getPath(), collection);
+            idsByCollection.computeIfAbsent(collection.getPath(), path -> new LinkedHashSet<>()).add(ref.getId());
+        }
+
+        List<Task<QuerySnapshot>> tasks = new ArrayList<>();
+        for (Map.Entry<String, LinkedHashSet<String>> entry : idsByCollection.entrySet()) {
+            CollectionReference collection = collections.get(entry.getKey());
+            for (List<String> batch : ShardedFeedQuery.partition(new ArrayList<>(entry.getValue()), MAX_BATCH_SIZE)) {
+                Task<QuerySnapshot> task = collection.whereIn(FieldPath.documentId(), batch).get();
+                if (batchListener != null) {
+                    // Registered before whenAllComplete so every batch is reported before the final result
+                    task.addOnSuccessListener(result -> batchListener.onBatchLoaded(result.getDocuments()));
+                }
+                tasks.add(task);
+            }
+        }
+
+        Tasks.whenAllComplete(tasks).addOnCompleteListener(all -> {
+            HashMap<String, DocumentSnapshot> fetched = new HashMap<>();
+            boolean failed = false;
+            for (Task<QuerySnapshot> task : tasks) {
+                if (!task.isSuccessful() || task.getResult() == null) {
+                    Log.e("BatchedDocumentLoader", "Batch failed to load", task.getException());
+                    failed = true;
+                    continue;
+                }
+                for (DocumentSnapshot doc : task.getResult().getDocuments()) {
+                    fetched.put(doc.getReference().getPath(), doc);
+                }
+            }
+            if (failed && failOnError) {
+                listener.onDocumentsLoaded(null, new ArrayList<>());
+                return;
+            }
+
+            // Preserve the requested order and collect what did not come back
+            List<DocumentSnapshot> documents = new ArrayList<>();
+            List<String> missingIds = new ArrayList<>();
+            for (DocumentReference ref : refs) {
+                DocumentSnapshot doc = fetched.get(ref.getPath());
+                if (doc != null) {
+                    documents.add(doc);
+                } else {
+                    missingIds.add(ref.getId());
+                }
+            }
+
+            if (!missingIds.isEmpty()) {
+                Log.d("BatchedDocumentLoader", "Missing documents: " + missingIds);
+            }
+            Log.d("BatchedDocumentLoader", "Loaded " + documents.size() + " documents in " + tasks.size() + " batches");
+            listener.onDocumentsLoaded(documents, missingIds);
+        });
+    }
+
+    /**
+     * Loads the given documents through a DocumentStore, with one getDocuments round trip per
+     * batch of at most 30 IDs of a collection. The listener receives the documents that exist in
+     * the same order as the paths were given, along with the IDs that could not be found.
+     *
+     * @param store    The store to read from.
+     * @param paths    The paths of the documents to load.
+     * @param listener The listener that will receive the documents.
+     */
+    public static void load(@NotNull DocumentStore store, @NotNull List<String> paths,
+                            OnStoredDocumentsLoadedListener listener) {
+        load(store, paths, listener, false);
+    }
+
+    /**
+     * Loads the given documents through a DocumentStore, for callers that must not show some of
+     * them as if they were all. The listener receives the documents that exist in the same order
+     * as the paths were given along with the IDs of deleted documents, or null documents if a
+     * batch failed to load.
+     *
+     * @param store    The store to read from.
+     * @param paths    The paths of the documents to load.
+     * @param listener The listener that will receive the documents, or null on failure.
+     */
+    public static void loadAll(@NotNull DocumentStore store, @NotNull List<String> paths,
+                               OnStoredDocumentsLoadedListener listener) {
+        load(store, paths, listener, true);
+    }
+
+    private static void load(DocumentStore store, List<String> paths, OnStoredDocumentsLoadedListener listener,
+                             boolean failOnError) {
+        if (paths.isEmpty()) {
+            listener.onDocumentsLoaded(new ArrayList<>(), new ArrayList<>());
+            return;
+        }
+
+        Map<String, LinkedHashSet<String>> idsByCollection = new LinkedHashMap<>();
+        for (String path : paths) {
+            idsByCollection.computeIfAbsent(DocumentStore.collectionOf(path), collection -> new LinkedHashSet<>())
+                    .add(DocumentStore.idOf(path));
+        }
+        List<String> batchCollections = new ArrayList<>();
+        List<List<String>> batches = new ArrayList<>();
+        for (Map.Entry<String, LinkedHashSet<String>> entry : idsByCollection.entrySet()) {
+            for (List<String> batch : ShardedFeedQuery.partition(new ArrayList<>(entry.getValue()), MAX_BATCH_SIZE)) {
+                batchCollections.add(entry.getKey());
+                batches.add(batch);
+            }
+        }
+
+        HashMap<String, DocumentStore.StoredDocument> fetched = new HashMap<>();
+        int[] remaining = { batches.size() };
+        boolean[] failed = { false };
+        for (int i = 0; i < batches.size(); i++) {
+            store.getDocuments(batchCollections.get(i), batches.get(i), documents -> {
+                if (documents == null) {
+                    Log.e("BatchedDocumentLoader", "Batch failed to load");
+                    failed[0] = true;
+                } else {
+                    for (DocumentStore.StoredDocument doc : documents) {
+                        fetched.put(doc.getPath(), doc);
+                    }
+                }
+                if (--remaining[0] > 0) {
+                    return;
+                }
+                if (failed[0] && failOnError) {
+                    listener.onDocumentsLoaded(null, new ArrayList<>());
+                    return;
+                }
+
+                // Preserve the requested order and collect what did not come back
+                List<DocumentStore.StoredDocument> ordered = new ArrayList<>();
+                List<String> missingIds = new ArrayList<>();
+                for (String path : paths) {
+                    DocumentStore.StoredDocument doc = fetched.get(path);
+                    if (doc != null) {
+                        ordered.add(doc);
+                    } else {
+                        missingIds.add(DocumentStore.idOf(path));
+                    }
+                }
+                if (!missingIds.isEmpty()) {
+                    Log.d("BatchedDocumentLoader", "Missing documents: " + missingIds);
+                }
+                listener.onDocumentsLoaded(ordered, missingIds);
+            });
+        }
+    }
+
+    /**
+     * Callback interface for loading documents in batches.
+     * Implement this interface to handle the loaded documents and the IDs that were not found.
+     */
+    public interface OnDocumentsLoadedListener {
+        void onDocumentsLoaded(List<DocumentSnapshot> documents, List<String> missingIds);
+    }
+
+    /**
+     * Callback interface for loading documents in batches through a DocumentStore.
+     * Implement this interface to handle the loaded documents and the IDs that were not found.
+     */
+    public interface OnStoredDocumentsLoadedListener {
+        void onDocumentsLoaded(List<DocumentStore.StoredDocument> documents, List<String> missingIds);
+    }
+
+    /**
+     * Callback interface for receiving the documents of a single batch.
+     * Implement this interface to handle documents as soon as their batch arrives.
+     */
+    public interface OnBatchLoadedListener {
+        void onBatchLoaded(List<DocumentSnapshot> documents);
+    }
+}
@@ -4,16 +4,20 @@ import android.util.Log;
 
 import androidx.annotation.Nullable;
 
+import com.github.bytebandits.bithub.model.Comment;
 import com.github.bytebandits.bithub.model.DocumentReferences;
+import com.github.bytebandits.bithub.model.Emotion;
 import com.github.bytebandits.bithub.model.MoodPost;
+import com.github.bytebandits.bithub.model.Notification;
 import com.github.bytebandits.bithub.model.Profile;
 import com.google.android.gms.tasks.Task;
 import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.Timestamp;
 import com.google.firebase.firestore.*;
+import com.google.firebase.firestore.EventListener;
 
 import org.jetbrains.annotations.NotNull;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.inject.Singleton;
 
@@ -26,6 +30,74 @@ public final class DatabaseManager {
     private final FirebaseFirestore firestoreDb;
     private final CollectionReference usersCollectionRef;
     private final CollectionReference postsCollectionRef;
+    private final CollectionReference imagesCollectionRef;
+    private final CollectionReference heatmapCollectionRef;
+    // The feed, profile, notification and search reads go through this, see forStore
+    private final DocumentStore documentStore;
+    // Every request is traced, see tracedRead, tracedWrite and store
+    private final DatabaseTracer tracer = DatabaseTracer.getInstance();
+
+    // Firestore field names of serialized MoodPost properties used in queries
+    public static final String PROFILE_USER_ID_FIELD = "profile.userId";
+    public static final String PRIVATE_FIELD = "private";
+    public static final String POSTED_DATE_TIME_FIELD = "postedDateTime";
+    public static final String LOCATION_FIELD = "location";
+    public static final String LATITUDE_FIELD = "latitude";
+    public static final String LONGITUDE_FIELD = "longitude";
+    public static final String GEOHASH_FIELD = "geohash";
+    public static final String EMOTION_FIELD = "emotion";
+    public static final String SOCIAL_SITUATION_FIELD = "socialSituation";
+    public static final String COMMENT_COUNT_FIELD = "commentCount";
+    // Field of older posts holding every comment in an array, see migrateLegacyComments
+    public static final String LEGACY_COMMENTS_FIELD = "comments";
+
+    // Field names of comments (posts/{postId}/comments/{commentId})
+    public static final String COMMENT_ID_FIELD = "commentID";
+    public static final String COMMENT_PROFILE_FIELD = "profile";
+    public static final String COMMENT_DATE_TIME_FIELD = "postedDateTime";
+    public static final String COMMENT_TEXT_FIELD = "text";
+
+    // Field name of the counts of heatmap tiles (heatmap/{level}_{x}_{y}), see DensityGrid.
+    // It maps each bucket to the number of posts of each emotion in it.
+    public static final String HEATMAP_COUNTS_FIELD = "c";
+
+    // ID of the mood statistics document of users (users/{userId}/aggregates/moods), see MoodStats
+    public static final String MOOD_STATS_DOCUMENT = "moods";
+    // Field name set on the mood statistics document once the posts made before it were counted
+    public static final String MOOD_STATS_BACKFILLED_FIELD = "backfilled";
+    // Times the mood statistics backfill starts over when posts are written while it runs
+    private static final int MAX_BACKFILL_ATTEMPTS = 3;
+
+    // Field names of the follow counts of users, kept with atomic increments
+    public static final String FOLLOWER_COUNT_FIELD = "followerCount";
+    public static final String FOLLOWING_COUNT_FIELD = "followingCount";
+
+    // Field names of follow entries (users/{userId}/followers/{followerId} and users/{userId}/following/{followedId})
+    public static final String FOLLOW_USER_ID_FIELD = "userId";
+    public static final String FOLLOW_DATE_TIME_FIELD = "since";
+
+    // Field names of notification inbox entries (users/{userId}/notifications/{notificationId})
+    public static final String NOTIFICATION_TYPE_FIELD = "type";
+    public static final String NOTIFICATION_USER_ID_FIELD = "userId";
+    public static final String NOTIFICATION_POST_ID_FIELD = "postId";
+    public static final String NOTIFICATION_EMOTION_FIELD = "emotion";
+    public static final String NOTIFICATION_DATE_TIME_FIELD = "dateTime";
+    public static final String REQUEST_NOTIFICATION_PREFIX = "request_";
+
+    // Field names of image blobs (images/{hash}_{variant})
+    public static final String IMAGE_HASH_FIELD = "hash";
+    public static final String IMAGE_VARIANT_FIELD = "variant";
+    public static final String IMAGE_DATA_FIELD = "data";
+
+    // Firestore documents are limited to 1 MiB, image blobs are kept below that with room for their fields
+    public static final int MAX_IMAGE_BYTES = 1000 * 1000;
+
+    // Firestore rejects write batches with more than 500 operations
+    public static final int MAX_BATCH_WRITES = 500;
+    // Writes added to a batch to move one post in the heatmap, one per level before and after
+    private static final int MAX_HEATMAP_WRITES = 2 * DensityGrid.LEVELS.length;
+    // Legacy follows moved per transaction, each writes up to two entries and a count
+    private static final int LEGACY_FOLLOWS_PER_TRANSACTION = (MAX_BATCH_WRITES - 1) / 3;
 
     private static DatabaseManager instance;
 
@@ -38,6 +110,31 @@ public final class DatabaseManager {
 
         this.usersCollectionRef = firestoreDb.collection("users");
         this.postsCollectionRef = firestoreDb.collection("posts");
+        this.imagesCollectionRef = firestoreDb.collection("images");
+        this.heatmapCollectionRef = firestoreDb.collection("heatmap");
+        this.documentStore = new FirestoreDocumentStore(firestoreDb);
+    }
+
+    private DatabaseManager(DocumentStore documentStore) {
+        this.firestoreDb = null;
+        this.usersCollectionRef = null;
+        this.postsCollectionRef = null;
+        this.imagesCollectionRef = null;
+        this.heatmapCollectionRef = null;
+        this.documentStore = documentStore;
+    }
+
+    /**
+     * Creates a DatabaseManager that reads from the given store instead of Firestore, for tests
+     * and benchmarks on the JVM. It is not the shared instance, and only the methods that read
+     * through the store may be used on it: searchUsers, getNotifications, checkFollowing,
+     * getFollowingUserIds, getAllFollowerPosts and getUserPosts.
+     *
+     * @param documentStore The store to read from.
+     * @return The new DatabaseManager.
+     */
+    public static DatabaseManager forStore(@NotNull DocumentStore documentStore) {
+        return new DatabaseManager(documentStore);
     }
 
     @Singleton
@@ -62,6 +159,31 @@ public final class DatabaseManager {
 
     public CollectionReference getUsersCollectionRef() { return usersCollectionRef; }
     public CollectionReference getPostsCollectionRef() { return postsCollectionRef; }
+    public CollectionReference getImagesCollectionRef() { return imagesCollectionRef; }
+    public CollectionReference getNotificationsCollectionRef(@NotNull String userId) {
+        return usersCollectionRef.document(userId).collection(DocumentReferences.NOTIFICATIONS.getDocRefString());
+    }
+    public CollectionReference getCommentsCollectionRef(@NotNull String postId) {
+        return postsCollectionRef.document(postId).collection(DocumentReferences.COMMENTS.getDocRefString());
+    }
+    public CollectionReference getFollowersCollectionRef(@NotNull String userId) {
+        return usersCollectionRef.document(userId).collection(DocumentReferences.FOLLOWERS_COLLECTION.getDocRefString());
+    }
+    public CollectionReference getFollowingCollectionRef(@NotNull String userId) {
+        return usersCollectionRef.document(userId).collection(DocumentReferences.FOLLOWING_COLLECTION.getDocRefString());
+    }
+    public DocumentReference getMoodStatsDocRef(@NotNull String userId) {
+        return usersCollectionRef.document(userId).collection(DocumentReferences.AGGREGATES_COLLECTION.getDocRefString())
+                .document(MOOD_STATS_DOCUMENT);
+    }
+
+    // The store paths of the follow subcollections of a user
+    private static String followersPath(String userId) {
+        return "users/" + userId + "/" + DocumentReferences.FOLLOWERS_COLLECTION.getDocRefString();
+    }
+    private static String followingPath(String userId) {
+        return "users/" + userId + "/" + DocumentReferences.FOLLOWING_COLLECTION.getDocRefString();
+    }
 
     /**
      * Default success handler for Firebase operations, logs the result.
@@ -81,6 +203,147 @@ public final class DatabaseManager {
         Log.e("Database", "Operation failed", e);
     }
 
+    // Request Tracing
+
+    /**
+     * Traces a read made by an operation once it completes: its latency, the number of documents
+     * it returned, their estimated size and whether they came from the offline cache.
+     *
+     * @param operation The name of the operation, the public method making the read.
+     * @param task      The task of the read.
+     * @return The same task, to add the listeners of the operation to.
+     */
+    <T> Task<T> tracedRead(String operation, Task<T> task) {
+        DatabaseTracer.Span span = tracer.start(operation);
+        return task.addOnCompleteListener(done -> {
+            if (!done.isSuccessful()) {
+                span.fail(done.getException());
+                return;
+            }
+            Object result = done.getResult();
+            if (result instanceof QuerySnapshot) {
+                QuerySnapshot snapshot = (QuerySnapshot) result;
+                span.finish(snapshot.size(), 0, estimateBytes(snapshot.getDocuments()), snapshot.getMetadata().isFromCache());
+            } else if (result instanceof DocumentSnapshot) {
+                DocumentSnapshot snapshot = (DocumentSnapshot) result;
+                span.finish(1, 0, estimateBytes(Collections.singletonList(snapshot)), snapshot.getMetadata().isFromCache());
+            } else {
+                span.finish(0, 0, 0, false);
+            }
+        });
+    }
+
+    // The estimated bytes of documents, 0 unless the tracer estimates them
+    private long estimateBytes(List<? extends DocumentSnapshot> docs) {
+        if (!tracer.isEstimatingBytes()) {
+            return 0;
+        }
+        long bytes = 0;
+        for (DocumentSnapshot doc : docs) {
+            bytes += DatabaseTracer.estimateBytes(doc.getData());
+        }
+        return bytes;
+    }
+
+    /**
+     * Listens to a query and traces every snapshot it receives as a request of an operation.
+     * The first snapshot is timed from when the listener was added, later ones are pushed by
+     * the server and are counted by the documents that changed, as Firestore bills them.
+     * Snapshots in which no document changed are not traced.
+     *
+     * @param operation The name of the operation, what the listener is for.
+     * @param query     The query to listen to.
+     * @param listener  The listener that will receive every snapshot.
+     * @return The registration of the listener.
+     */
+    public ListenerRegistration addTracedSnapshotListener(@NotNull String operation, @NotNull Query query,
+            @NotNull EventListener<QuerySnapshot> listener) {
+        DatabaseTracer.Span[] first = { tracer.start(operation) };
+        return query.addSnapshotListener((snapshot, error) -> {
+            DatabaseTracer.Span span = first[0];
+            first[0] = null;
+            if (error != null || snapshot == null) {
+                (span != null ? span : tracer.start(operation)).fail(error);
+            } else if (span != null || !snapshot.getDocumentChanges().isEmpty()) {
+                List<DocumentSnapshot> changed = new ArrayList<>();
+                for (DocumentChange change : snapshot.getDocumentChanges()) {
+                    changed.add(change.getDocument());
+                }
+                (span != null ? span : tracer.start(operation)).finish(changed.size(), 0, estimateBytes(changed),
+                        snapshot.getMetadata().isFromCache());
+            }
+            listener.onEvent(snapshot, error);
+        });
+    }
+
+    /**
+     * Listens to a document and traces every snapshot it receives as a request of an operation,
+     * the first one timed from when the listener was added.
+     *
+     * @param operation The name of the operation, what the listener is for.
+     * @param document  The document to listen to.
+     * @param listener  The listener that will receive every snapshot.
+     * @return The registration of the listener.
+     */
+    public ListenerRegistration addTracedSnapshotListener(@NotNull String operation, @NotNull DocumentReference document,
+            @NotNull EventListener<DocumentSnapshot> listener) {
+        DatabaseTracer.Span[] first = { tracer.start(operation) };
+        return document.addSnapshotListener((snapshot, error) -> {
+            DatabaseTracer.Span span = first[0] != null ? first[0] : tracer.start(operation);
+            first[0] = null;
+            if (error != null || snapshot == null) {
+                span.fail(error);
+            } else {
+                span.finish(1, 0, estimateBytes(Collections.singletonList(snapshot)), snapshot.getMetadata().isFromCache());
+            }
+            listener.onEvent(snapshot, error);
+        });
+    }
+
+    /**
+     * Traces a write, write batch or transaction made by an operation once it completes.
+     *
+     * @param operation The name of the operation, the public method making the write.
+     * @param task      The task of the write.
+     * @param writes    The number of documents written.
+     * @return The same task, to add the listeners of the operation to.
+     */
+    private <T> Task<T> tracedWrite(String operation, Task<T> task, int writes) {
+        DatabaseTracer.Span span = tracer.start(operation);
+        return task.addOnCompleteListener(done -> {
+            if (done.isSuccessful()) {
+                span.finish(0, writes, 0, false);
+            } else {
+                span.fail(done.getException());
+            }
+        });
+    }
+
+    /**
+     * Traces a transaction made by an operation once it completes, the transaction returning the
+     * number of documents it wrote.
+     *
+     * @param operation The name of the operation, the public method making the transaction.
+     * @param task      The task of the transaction.
+     * @param reads     The number of documents the transaction reads.
+     * @return The same task, to add the listeners of the operation to.
+     */
+    private Task<Integer> tracedTransaction(String operation, Task<Integer> task, int reads) {
+        DatabaseTracer.Span span = tracer.start(operation);
+        return task.addOnCompleteListener(done -> {
+            if (done.isSuccessful()) {
+                span.finish(reads, done.getResult() != null ? done.getResult() : 0, 0, false);
+            } else {
+                span.fail(done.getException());
+            }
+        });
+    }
+
+    // Returns the document store that traces its round trips as requests of the given operation
+    private DocumentStore store(String operation) {
+        return new TracingDocumentStore(documentStore, tracer, operation);
+    }
+
     // User Management
 
     /**
@@ -100,7 +363,7 @@ public final class DatabaseManager {
      *                 });
      */
     public void getUser(@NotNull String userId, OnUserFetchListener listener) {
-        usersCollectionRef.document(userId).get().addOnCompleteListener(task -> {
+        tracedRead("getUser", usersCollectionRef.document(userId).get()).addOnCompleteListener(task -> {
             if (task.isSuccessful() && task.getResult() != null) {
                 HashMap<String, Object> user = (HashMap<String, Object>) task.getResult().getData();
                 listener.onUserFetched(user);
@@ -119,7 +382,7 @@ public final class DatabaseManager {
      *                    callbacks.
      */
     public void addUser(@NotNull String userId, HashMap<String, Object> userDetails, @Nullable OnUserAddListener listener) {
-        usersCollectionRef.document(userId).set(userDetails)
+        tracedWrite("addUser", usersCollectionRef.document(userId).set(userDetails), 1)
                 .addOnSuccessListener(unused -> {
                     defaultSuccessHandler("User added successfully");
                     if (listener != null) {
@@ -143,21 +406,22 @@ public final class DatabaseManager {
     public void searchUsers(String query, OnUserSearchFetchListener listener) {
         Log.d("DatabaseManager", "Starting searchUsers for query: " + query);
 
-        Query users = this.usersCollectionRef
-                .orderBy("userId")
+        DocumentStore.StoreQuery users = new DocumentStore.StoreQuery("users")
+                .orderBy("userId", false)
                 .startAt(query)
                 .endAt(query + "~");
 
-        users.get().addOnCompleteListener(task -> {
-            if (task.isSuccessful()) {
-                QuerySnapshot querySnapshot = task.getResult();
+        store("searchUsers").query(users, documents -> {
+            if (documents != null) {
                 List<HashMap<String, Object>> userList = new ArrayList<>();
 
-                Log.d("DatabaseManager", "Query successful. Found " + querySnapshot.size() + " users.");
+                Log.d("DatabaseManager", "Query successful. Found " + documents.size() + " users.");
 
-                for (DocumentSnapshot doc : querySnapshot.getDocuments()) {
+                for (DocumentStore.StoredDocument doc : documents) {
                     Map<String, Object> userData = doc.getData();
-                    userList.add((HashMap<String, Object>) userData);
+                    if (userData != null) {
+                        userList.add(new HashMap<>(userData));
+                    }
 
                     // Log each user entry
                     Log.d("DatabaseManager", "Fetched user: " + userData);
@@ -167,7 +431,7 @@ public final class DatabaseManager {
                     listener.onUsersFetched(userList);
                 }
             } else {
-                Log.e("DatabaseManager", "Error fetching users", task.getException());
+                Log.e("DatabaseManager", "Error fetching users");
                 if (listener != null) {
                     listener.onUsersFetched(null);
                 }
@@ -178,127 +442,232 @@ public final class DatabaseManager {
     // Get Followers, Edit Post,
 
     /**
-     * Sends a notification to a specific user.
+     * Sends a notification to a specific user by writing an entry into their notification inbox.
+     * Writing an entry with the same ID again overwrites it, so repeated sends do not duplicate.
      *
      * @param recipientUserId The ID of the user who will receive the notification.
-     * @param docRef          A reference to the document associated with the
-     *                        notification.
-     * @param type            Determine whether it is a post notification or follow notification.
+     * @param notificationId  The ID of the inbox entry.
+     * @param entry           The denormalized notification entry.
      */
-    public void sendNotification(@NotNull String recipientUserId, DocumentReference docRef, DocumentReferences type) {
-        DocumentReference recipientDocRef = this.usersCollectionRef.document(recipientUserId);
-        recipientDocRef.update(type.getDocRefString(), FieldValue.arrayUnion(docRef));
+    public void sendNotification(@NotNull String recipientUserId, @NotNull String notificationId, Map<String, Object> entry) {
+        tracedWrite("sendNotification", getNotificationsCollectionRef(recipientUserId).document(notificationId).set(entry), 1)
+                .addOnSuccessListener(unused -> defaultSuccessHandler("Notification sent"))
+                .addOnFailureListener(this::defaultFailureHandler);
     }
 
     /**
-     * Fetches notifications for a given user from Firestore.
+     * Builds the inbox entry for a new post. The entry carries everything needed to display
+     * the notification, so the inbox can be rendered without fetching the post.
      *
-     * @param userId The unique ID of the user whose notifications are to be retrieved.
+     * @param post The post the notification is about.
+     * @return The notification entry.
+     */
+    public static HashMap<String, Object> newPostNotificationEntry(@NotNull MoodPost post) {
+        HashMap<String, Object> entry = new HashMap<>();
+        entry.put(NOTIFICATION_TYPE_FIELD, Notification.TYPE_POST);
+        entry.put(NOTIFICATION_USER_ID_FIELD, post.getProfile().getUserId());
+        entry.put(NOTIFICATION_POST_ID_FIELD, post.getPostID());
+        entry.put(NOTIFICATION_EMOTION_FIELD, post.getEmotion().name());
+        entry.put(NOTIFICATION_DATE_TIME_FIELD, post.getPostedDateTime());
+        return entry;
+    }
+
+    /**
+     * Builds the inbox entry for a follow request.
      *
+     * @param requesterUserId The ID of the user requesting to follow.
+     * @return The notification entry.
+     */
+    public static HashMap<String, Object> newRequestNotificationEntry(@NotNull String requesterUserId) {
+        HashMap<String, Object> entry = new HashMap<>();
+        entry.put(NOTIFICATION_TYPE_FIELD, Notification.TYPE_REQUEST);
+        entry.put(NOTIFICATION_USER_ID_FIELD, requesterUserId);
+        entry.put(NOTIFICATION_DATE_TIME_FIELD, new Date());
+        return entry;
+    }
+
+    /**
+     * Converts a notification inbox entry into a notification.
      *
+     * @param doc The inbox entry.
+     * @return The notification, or null if the entry is malformed.
      */
-    @SuppressWarnings("unchecked")
-    public void getNotifications(@NotNull String userId, OnNotificationsFetchListener listener) {
-        DocumentReference userDocRef = this.usersCollectionRef.document(userId);
-        userDocRef.get().addOnSuccessListener(userDocSnapshot -> {
-            ArrayList<MoodPost> postNotifications = new ArrayList<>();
-            ArrayList<HashMap<String, Object>> requestNotifications = new ArrayList<>();
-            if (!userDocSnapshot.exists()) {
-                listener.onNotificationsFetchListener(postNotifications, new ArrayList<>());
-                return;
+    @Nullable
+    public static Notification toNotification(@NotNull DocumentSnapshot doc) {
+        String userId = doc.getString(NOTIFICATION_USER_ID_FIELD);
+        if (userId == null) {
+            Log.e("DatabaseManager", "Notification entry without a user: " + doc.getId());
+            return null;
+        }
+
+        boolean followRequest = Notification.TYPE_REQUEST.equals(doc.getString(NOTIFICATION_TYPE_FIELD));
+        Emotion emotion = null;
+        String emotionName = doc.getString(NOTIFICATION_EMOTION_FIELD);
+        if (emotionName != null) {
+            try {
+                emotion = Emotion.valueOf(emotionName);
+            } catch (IllegalArgumentException e) {
+                Log.e("DatabaseManager", "Unknown emotion in notification entry: " + emotionName, e);
             }
+        }
+        if (!followRequest && emotion == null) {
+            return null;
+        }
 
-            // Prepare lists of tasks
-            List<Task<DocumentSnapshot>> postTasks = new ArrayList<>();
-            List<Task<DocumentSnapshot>> requestTasks = new ArrayList<>();
+        Date dateTime = doc.getDate(NOTIFICATION_DATE_TIME_FIELD);
+        return new Notification(doc.getId(), followRequest, userId, doc.getString(NOTIFICATION_POST_ID_FIELD),
+                emotion, dateTime != null ? dateTime : new Date(0));
+    }
 
-            // Fetch post notifications
-            Object postRefsObj = userDocSnapshot.get(DocumentReferences.NOTIFICATION_POSTS.getDocRefString());
-            if (postRefsObj instanceof List) {
-                List<DocumentReference> postRefs = (List<DocumentReference>) postRefsObj;
-                for (DocumentReference postRef : postRefs) {
-                    postTasks.add(postRef.get());
-                }
+    /**
+     * Builds the query over a user's notification inbox, most recent first.
+     *
+     * @param userId The unique ID of the user whose notifications are to be retrieved.
+     * @return The query ordered by notification date in descending order.
+     */
+    public Query getNotificationsQuery(@NotNull String userId) {
+        return getNotificationsCollectionRef(userId).orderBy(NOTIFICATION_DATE_TIME_FIELD, Query.Direction.DESCENDING);
+    }
+
+    /**
+     * Fetches one page of a user's notification inbox, most recent first.
+     * Each entry is self-contained, so a page is a single query with no follow-up reads.
+     *
+     * @param userId   The unique ID of the user whose notifications are to be retrieved.
+     * @param after    The last entry of the previous page, or null for the first page.
+     * @param pageSize The maximum number of notifications to fetch.
+     * @param listener The listener that will receive the page (null notifications on failure).
+     */
+    public void getNotificationsPage(@NotNull String userId, @Nullable DocumentSnapshot after, int pageSize,
+                                     OnNotificationsPageFetchListener listener) {
+        Query page = getNotificationsQuery(userId).limit(pageSize);
+        if (after != null) {
+            page = page.startAfter(after);
+        }
+
+        tracedRead("getNotificationsPage", page.get()).addOnCompleteListener(task -> {
+            if (!task.isSuccessful() || task.getResult() == null) {
+                Log.e("DatabaseManager", "Error fetching notifications", task.getException());
+                listener.onNotificationsPageFetched(null, null, false);
+                return;
             }
 
-            // Fetch request notifications
-            Object requestRefsObj = userDocSnapshot.get(DocumentReferences.NOTIFICATION_REQS.getDocRefString());
-            if (requestRefsObj instanceof List) {
-                List<DocumentReference> requestRefs = (List<DocumentReference>) requestRefsObj;
-                for (DocumentReference requestRef : requestRefs) {
-                    requestTasks.add(requestRef.get());
+            List<DocumentSnapshot> docs = task.getResult().getDocuments();
+            ArrayList<Notification> notifications = new ArrayList<>();
+            for (DocumentSnapshot doc : docs) {
+                Notification notification = toNotification(doc);
+                if (notification != null) {
+                    notifications.add(notification);
                 }
             }
+            DocumentSnapshot last = docs.isEmpty() ? after : docs.get(docs.size() - 1);
+            listener.onNotificationsPageFetched(notifications, last, docs.size() == pageSize);
+        });
+    }
 
-            // If no tasks, immediately return
-            if (postTasks.isEmpty() && requestTasks.isEmpty()) {
-                listener.onNotificationsFetchListener(postNotifications, requestNotifications);
+    /**
+     * Removes a single entry from a user's notification inbox.
+     *
+     * @param userId         The ID of the user who owns the inbox.
+     * @param notificationId The ID of the inbox entry.
+     */
+    public void deleteNotification(@NotNull String userId, @NotNull String notificationId) {
+        tracedWrite("deleteNotification", getNotificationsCollectionRef(userId).document(notificationId).delete(), 1)
+                .addOnFailureListener(this::defaultFailureHandler);
+    }
+
+    /**
+     * Fetches the notifications stored as reference arrays on the user document, which is how
+     * notifications were kept before the notification inbox. Only entries written by older
+     * versions of the app are found here.
+     *
+     * @param userId   The unique ID of the user whose notifications are to be retrieved.
+     * @param listener The listener that will receive the notifications, or null lists if they
+     *                 could not all be read.
+     */
+    public void getNotifications(@NotNull String userId, OnNotificationsFetchListener listener) {
+        DocumentStore store = store("getNotifications");
+        store.getDocument("users", userId, userDoc -> {
+            if (userDoc == null) {
+                Log.e("DatabaseManager", "Error fetching user document");
+                listener.onNotificationsFetchListener(null, null);
+                return;
+            }
+            if (!userDoc.exists()) {
+                listener.onNotificationsFetchListener(new ArrayList<>(), new ArrayList<>());
                 return;
             }
 
-            // Create a list to track all tasks
-            List<Task<DocumentSnapshot>> allTasks = new ArrayList<>();
-            allTasks.addAll(postTasks);
-            allTasks.addAll(requestTasks);
-
-            // Wait for all tasks to complete
-            Tasks.whenAll(allTasks).addOnCompleteListener(task -> {
-                // Process post notifications
-                for (Task<DocumentSnapshot> postTask : postTasks) {
-                    if (postTask.isSuccessful()) {
-                        DocumentSnapshot postDoc = postTask.getResult();
-                        if (postDoc.exists()) {
-                            try {
-                                MoodPost post = postDoc.toObject(MoodPost.class);
-
-                                // Handle profile conversion if needed
-                                if (post != null) {
-                                    postNotifications.add(post);
-                                }
-                            } catch (Exception e) {
-                                Log.e("DatabaseManager", "Error processing post", e);
-                            }
-                        }
-                    } else {
-                        Log.e("DatabaseManager", "Post task failed: " + postTask.getException());
-                    }
+            // Post and request references are loaded together in batched reads
+            List<String> postPaths = userDoc.getReferencePaths(DocumentReferences.NOTIFICATION_POSTS.getDocRefString());
+            List<String> requestPaths = userDoc.getReferencePaths(DocumentReferences.NOTIFICATION_REQS.getDocRefString());
+            List<String> paths = new ArrayList<>(postPaths);
+            paths.addAll(requestPaths);
+
+            BatchedDocumentLoader.loadAll(store, paths, (documents, missingIds) -> {
+                if (documents == null) {
+                    Log.e("DatabaseManager", "Error fetching notifications");
+                    listener.onNotificationsFetchListener(null, null);
+                    return;
+                }
+                HashMap<String, DocumentStore.StoredDocument> byPath = new HashMap<>();
+                for (DocumentStore.StoredDocument doc : documents) {
+                    byPath.put(doc.getPath(), doc);
                 }
 
-                // Process request notifications
-                for (Task<DocumentSnapshot> requestTask : requestTasks) {
-                    if (requestTask.isSuccessful()) {
-                        DocumentSnapshot userDoc = requestTask.getResult();
-                        if (userDoc.exists()) {
-                            try {
-                                HashMap<String, Object> user = new HashMap<>(Objects.requireNonNull(userDoc.getData()));
-                                requestNotifications.add(user);
-                            } catch (Exception e) {
-                                Log.e("DatabaseManager", "Error processing request", e);
-                            }
+                ArrayList<MoodPost> posts = new ArrayList<>();
+                for (String path : postPaths) {
+                    DocumentStore.StoredDocument doc = byPath.get(path);
+                    if (doc == null) {
+                        continue;
+                    }
+                    try {
+                        MoodPost post = doc.toObject(MoodPost.class);
+                        if (post != null) {
+                            posts.add(post);
                         }
-                    } else {
-                        Log.e("DatabaseManager", "Request task failed: " + requestTask.getException());
+                    } catch (Exception e) {
+                        Log.e("DatabaseManager", "Error processing notification", e);
                     }
                 }
-
-                // Call listener with all fetched notifications
-                listener.onNotificationsFetchListener(postNotifications, requestNotifications);
+                ArrayList<HashMap<String, Object>> requests = new ArrayList<>();
+                for (String path : requestPaths) {
+                    DocumentStore.StoredDocument doc = byPath.get(path);
+                    if (doc != null && doc.getData() != null) {
+                        requests.add(new HashMap<>(doc.getData()));
+                    }
+                }
+                listener.onNotificationsFetchListener(posts, requests);
             });
-        }).addOnFailureListener(e -> {
-            Log.e("DatabaseManager", "Error fetching user document: " + e.getMessage(), e);
-            listener.onNotificationsFetchListener(new ArrayList<>(), new ArrayList<>());
         });
     }
 
+    /**
+     * Clears every notification of a user, both the inbox entries and the legacy reference arrays.
+     *
+     * @param userId The unique ID of the user whose notifications are to be cleared.
+     */
     public void clearAllNotifications(@NotNull String userId) {
         DocumentReference userDocRef = this.usersCollectionRef.document(userId);
 
-        // Clear both post and request notifications
+        // Delete the inbox entries in batches of at most 500
+        tracedRead("clearAllNotifications", getNotificationsCollectionRef(userId).get()).addOnSuccessListener(inbox -> {
+            for (List<DocumentSnapshot> chunk : ShardedFeedQuery.partition(inbox.getDocuments(), MAX_BATCH_WRITES)) {
+                WriteBatch batch = firestoreDb.batch();
+                for (DocumentSnapshot doc : chunk) {
+                    batch.delete(doc.getReference());
+                }
+                tracedWrite("clearAllNotifications", batch.commit(), chunk.size())
+                        .addOnFailureListener(e -> Log.e("DatabaseManager", "Error clearing notifications", e));
+            }
+        }).addOnFailureListener(e -> Log.e("DatabaseManager", "Error fetching notifications to clear", e));
+
+        // Clear both legacy post and request notifications
         Map<String, Object> updates = new HashMap<>();
         updates.put(DocumentReferences.NOTIFICATION_POSTS.getDocRefString(), new ArrayList<>());
         updates.put(DocumentReferences.NOTIFICATION_REQS.getDocRefString(), new ArrayList<>());
 
-        userDocRef.update(updates)
+        tracedWrite("clearAllNotifications", userDocRef.update(updates), 1)
                 .addOnSuccessListener(aVoid ->
                     Log.d("DatabaseManager", "All notifications cleared successfully")
                 )
@@ -316,29 +685,82 @@ public final class DatabaseManager {
      *
      */
     public void sendFollowRequest(@NotNull String currentUserId, @NotNull String requestedUserId) {
-        DocumentReference currentDocRef = this.usersCollectionRef.document(currentUserId);
-        this.sendNotification(requestedUserId, currentDocRef, DocumentReferences.NOTIFICATION_REQS);
+        sendFollowRequest(currentUserId, requestedUserId, null);
     }
 
     /**
-     * Accepts a follow request from another user.
+     * Sends a follow request to a specific user.
      *
      * @param currentUserId   The ID of the current user.
-     * @param requestedUserId The ID of the user requesting to follow.
+     * @param requestedUserId The ID of the user that the request is for.
+     * @param listener        The listener that will receive the success result.
      */
+    public void sendFollowRequest(@NotNull String currentUserId, @NotNull String requestedUserId,
+            @Nullable OnFollowUpdatedListener listener) {
+        DocumentReference requestDocRef = getNotificationsCollectionRef(requestedUserId)
+                .document(REQUEST_NOTIFICATION_PREFIX + currentUserId);
+        tracedWrite("sendFollowRequest", requestDocRef.set(newRequestNotificationEntry(currentUserId)), 1)
+                .addOnSuccessListener(unused -> {
+                    defaultSuccessHandler("Follow request sent");
+                    if (listener != null) {
+                        listener.onFollowUpdated(true);
+                    }
+                })
+                .addOnFailureListener(e -> {
+                    defaultFailureHandler(e);
+                    if (listener != null) {
+                        listener.onFollowUpdated(false);
+                    }
+                });
+    }
+
     public void acceptUserFollow(@NotNull String currentUserId, @NotNull String requestedUserId) {
+        acceptUserFollow(currentUserId, requestedUserId, null);
+    }
+
+    /**
+     * Accepts a follow request from another user. The follow entries of both users, their follow
+     * counts and the request are written in a single transaction, so either the follow is
+     * complete or nothing changed. The entries are read first and a count is only incremented
+     * with the entry it counts, so accepting a request twice does not count the follow twice.
+     *
+     * @param currentUserId   The ID of the current user.
+     * @param requestedUserId The ID of the user requesting to follow.
+     * @param listener        The listener that will receive the success result.
+     */
+    public void acceptUserFollow(@NotNull String currentUserId, @NotNull String requestedUserId,
+            @Nullable OnFollowUpdatedListener listener) {
         DocumentReference requestedUserDocRef = this.usersCollectionRef.document(requestedUserId);
         DocumentReference currentUserDocRef = this.usersCollectionRef.document(currentUserId);
+        DocumentReference followerEntryRef = getFollowersCollectionRef(currentUserId).document(requestedUserId);
+        DocumentReference followingEntryRef = getFollowingCollectionRef(requestedUserId).document(currentUserId);
+        Date since = new Date();
 
-        // Add the requesting user document reference to your followers
-        currentUserDocRef.update(DocumentReferences.FOLLOWERS.getDocRefString(),
-                FieldValue.arrayUnion(requestedUserDocRef));
-        currentUserDocRef.update(DocumentReferences.NOTIFICATION_REQS.getDocRefString(),
-                FieldValue.arrayRemove(requestedUserDocRef));
+        Task<Void> commit = firestoreDb.runTransaction(transaction -> {
+            boolean followed = transaction.get(followerEntryRef).exists();
+            boolean following = transaction.get(followingEntryRef).exists();
 
-        // Add current user document reference to requester's followings
-        requestedUserDocRef.update(DocumentReferences.FOLLOWINGS.getDocRefString(),
-                FieldValue.arrayUnion(currentUserDocRef));
+            // Add the requesting user to your followers
+            if (!followed) {
+                transaction.set(followerEntryRef, newFollowEntry(requestedUserId, since));
+            }
+            transaction.update(currentUserDocRef,
+                    FOLLOWER_COUNT_FIELD, FieldValue.increment(followed ? 0 : 1),
+                    DocumentReferences.NOTIFICATION_REQS.getDocRefString(), FieldValue.arrayRemove(requestedUserDocRef));
+            transaction.delete(getNotificationsCollectionRef(currentUserId).document(REQUEST_NOTIFICATION_PREFIX + requestedUserId));
+
+            // Add the current user to the requester's followings, the update fails the transaction if the requester does not exist
+            if (!following) {
+                transaction.set(followingEntryRef, newFollowEntry(currentUserId, since));
+            }
+            transaction.update(requestedUserDocRef, FOLLOWING_COUNT_FIELD, FieldValue.increment(following ? 0 : 1));
+            return null;
+        });
+        commitFollowUpdate(commit, "acceptUserFollow", 5, "Follow request accepted", listener);
+    }
+
+    public void rejectUserFollow(@NotNull String currentUserId, @NotNull String requestedUserId) {
+        rejectUserFollow(currentUserId, requestedUserId, null);
     }
 
     /**
@@ -346,103 +768,365 @@ public final class DatabaseManager {
      *
      * @param currentUserId   The ID of the current user.
      * @param requestedUserId The ID of the user whose request is being rejected.
+     * @param listener        The listener that will receive the success result.
      */
-    public void rejectUserFollow(@NotNull String currentUserId, @NotNull String requestedUserId) {
+    public void rejectUserFollow(@NotNull String currentUserId, @NotNull String requestedUserId,
+            @Nullable OnFollowUpdatedListener listener) {
         DocumentReference requestedUserDocRef = this.usersCollectionRef.document(requestedUserId);
         DocumentReference currentUserDocRef = this.usersCollectionRef.document(currentUserId);
+        WriteBatch batch = firestoreDb.batch();
 
-        currentUserDocRef.update(DocumentReferences.NOTIFICATION_REQS.getDocRefString(),
+        batch.update(currentUserDocRef, DocumentReferences.NOTIFICATION_REQS.getDocRefString(),
                 FieldValue.arrayRemove(requestedUserDocRef));
+        batch.delete(getNotificationsCollectionRef(currentUserId).document(REQUEST_NOTIFICATION_PREFIX + requestedUserId));
+
+        commitFollowUpdate(batch.commit(), "rejectUserFollow", 2, "Follow request rejected", listener);
+    }
+
+    public void unfollowUser(@NotNull String currentUserId, @NotNull String targetUserId) {
+        unfollowUser(currentUserId, targetUserId, null);
     }
 
     /**
-     * Unfollow a user.
+     * Unfollow a user. The follow entries and follow counts of both users are updated in a single
+     * transaction, and a count is only decremented if the entry it counts existed, so it never
+     * drops below the number of follows. The user is also removed from the legacy arrays of users
+     * that were not migrated yet, so their migration does not bring the follow back.
      *
      * @param currentUserId The ID of the current user.
      * @param targetUserId  The ID of the user that will be unfollowed.
+     * @param listener      The listener that will receive the success result.
      */
-    public void unfollowUser(@NotNull String currentUserId, @NotNull String targetUserId) {
+    public void unfollowUser(@NotNull String currentUserId, @NotNull String targetUserId,
+            @Nullable OnFollowUpdatedListener listener) {
         DocumentReference currentUserDocRef = this.usersCollectionRef.document(currentUserId);
         DocumentReference targetUserDocRef = this.usersCollectionRef.document(targetUserId);
+        DocumentReference followingEntryRef = getFollowingCollectionRef(currentUserId).document(targetUserId);
+        DocumentReference followerEntryRef = getFollowersCollectionRef(targetUserId).document(currentUserId);
+
+        Task<Void> commit = firestoreDb.runTransaction(transaction -> {
+            boolean following = transaction.get(followingEntryRef).exists();
+            boolean followed = transaction.get(followerEntryRef).exists();
+
+            // Remove following from current user
+            transaction.delete(followingEntryRef);
+            transaction.update(currentUserDocRef,
+                    FOLLOWING_COUNT_FIELD, FieldValue.increment(following ? -1 : 0),
+                    DocumentReferences.FOLLOWINGS.getDocRefString(), FieldValue.arrayRemove(targetUserDocRef));
+
+            // Remove follower from target user
+            transaction.delete(followerEntryRef);
+            transaction.update(targetUserDocRef,
+                    FOLLOWER_COUNT_FIELD, FieldValue.increment(followed ? -1 : 0),
+                    DocumentReferences.FOLLOWERS.getDocRefString(), FieldValue.arrayRemove(currentUserDocRef));
+            return null;
+        });
+        commitFollowUpdate(commit, "unfollowUser", 4, "User unfollowed", listener);
+    }
 
-        // Remove following from current user
-        currentUserDocRef.update(DocumentReferences.FOLLOWINGS.getDocRefString(), FieldValue.arrayRemove(targetUserDocRef));
-
-        // Remove follower from target user
-        targetUserDocRef.update(DocumentReferences.FOLLOWERS.getDocRefString(), FieldValue.arrayRemove(currentUserDocRef));
+    private void commitFollowUpdate(Task<Void> commit, String operation, int writes, String description,
+            @Nullable OnFollowUpdatedListener listener) {
+        tracedWrite(operation, commit, writes)
+                .addOnSuccessListener(unused -> {
+                    defaultSuccessHandler(description);
+                    if (listener != null) {
+                        listener.onFollowUpdated(true);
+                    }
+                })
+                .addOnFailureListener(e -> {
+                    defaultFailureHandler(e);
+                    if (listener != null) {
+                        listener.onFollowUpdated(false);
+                    }
+                });
     }
 
     /**
-     * Check if a user is being followed by the current user signed in
+     * Check if a user is being followed by the current user signed in. Only the follow entry is
+     * read, however many users they follow, and the legacy array of the current user if there is
+     * no entry, in case they were not migrated yet.
      *
      * @param currentUserId The ID of the user whose followings list is being checked.
      * @param checkUserId   The ID of the user to check if they are being followed.
      * @param listener      A callback to return whether the target user is being followed.
      */
-    @SuppressWarnings("unchecked")
     public void checkFollowing(@NotNull String currentUserId, @NotNull String checkUserId, OnCheckFollowingListener listener) {
-        DocumentReference currentUserDocRef = this.usersCollectionRef.document(currentUserId);
+        DocumentStore store = store("checkFollowing");
+        store.getDocument(followingPath(currentUserId), checkUserId, entry -> {
+            if (entry == null) {
+                Log.e("DatabaseManager", "Error checking following status");
+                listener.onCheckFollowingListener(false);
+                return;
+            }
+            if (entry.exists()) {
+                Log.d("DatabaseManager", "Is following: true");
+                listener.onCheckFollowingListener(true);
+                return;
+            }
 
-        currentUserDocRef.get()
-                .addOnSuccessListener(userDocSnapshot -> {
-                    if (!userDocSnapshot.exists() || !userDocSnapshot.contains(DocumentReferences.FOLLOWINGS.getDocRefString())) {
-                        Log.d("DatabaseManager", "User document does not exist or has no followings.");
-                        listener.onCheckFollowingListener(false);
-                    } else {
-                        List<DocumentReference> followings = (List<DocumentReference>) userDocSnapshot.get(DocumentReferences.FOLLOWINGS.getDocRefString());
-                        boolean isFollowing = false;
-                        if (followings != null && !followings.isEmpty()) {
-                            isFollowing = followings.stream().anyMatch(ref -> ref.getId().equals(checkUserId));
-                        }
-                        Log.d("DatabaseManager", "Is following: " + isFollowing);
-                        listener.onCheckFollowingListener(isFollowing);
+            store.getDocument("users", currentUserId, userDoc -> {
+                boolean following = false;
+                if (userDoc != null && userDoc.exists()) {
+                    for (String path : userDoc.getReferencePaths(DocumentReferences.FOLLOWINGS.getDocRefString())) {
+                        following |= DocumentStore.idOf(path).equals(checkUserId);
                     }
-                }).addOnFailureListener(e -> {
-                    Log.e("DatabaseManager", "Error checking following status: " + e.getMessage(), e);
-                    listener.onCheckFollowingListener(false);
-                });
+                }
+                Log.d("DatabaseManager", "Is following: " + following);
+                listener.onCheckFollowingListener(following);
+            });
+        });
+    }
+
+    /**
+     * Builds the follow entry of a user in the followers or following subcollection of another.
+     *
+     * @param userId The ID of the user the entry is about.
+     * @param since  When the follow started.
+     * @return The follow entry.
+     */
+    public static HashMap<String, Object> newFollowEntry(@NotNull String userId, @NotNull Date since) {
+        HashMap<String, Object> entry = new HashMap<>();
+        entry.put(FOLLOW_USER_ID_FIELD, userId);
+        entry.put(FOLLOW_DATE_TIME_FIELD, since);
+        return entry;
     }
 
     /**
-     * Retrieves a list of followers for a given user.
+     * Fetches one page of the followers of a user, most recent first.
      *
      * @param userId   The ID of the user whose followers are being fetched.
-     * @param listener A listener to handle the list of fetched followers.
+     * @param after    The last follower of the previous page, or null for the first page.
+     * @param pageSize The maximum number of followers to fetch.
+     * @param listener The listener that will receive the page (null profiles on failure).
      */
-    @SuppressWarnings("unchecked")
-    public void getFollowers(@NotNull String userId, OnFollowersFetchListener listener) {
-        DocumentReference currentUserDocRef = this.usersCollectionRef.document(userId);
-        ArrayList<Profile> followers = new ArrayList<>();
+    public void getFollowersPage(@NotNull String userId, @Nullable DocumentSnapshot after, int pageSize,
+                                 OnFollowPageFetchListener listener) {
+        getFollowPage("getFollowersPage", getFollowersCollectionRef(userId), after, pageSize, listener);
+    }
 
-        currentUserDocRef.get().addOnCompleteListener(task -> {
-            if (task.isSuccessful() && task.getResult() != null) {
-                DocumentSnapshot userSnapshot = task.getResult();
-                ArrayList<DocumentReference> followerRefs = (ArrayList<DocumentReference>) userSnapshot
-                        .get(DocumentReferences.FOLLOWERS.getDocRefString());
+    /**
+     * Fetches one page of the users a user follows, most recently followed first.
+     *
+     * @param userId   The ID of the user whose followings are being fetched.
+     * @param after    The last user of the previous page, or null for the first page.
+     * @param pageSize The maximum number of users to fetch.
+     * @param listener The listener that will receive the page (null profiles on failure).
+     */
+    public void getFollowingPage(@NotNull String userId, @Nullable DocumentSnapshot after, int pageSize,
+                                 OnFollowPageFetchListener listener) {
+        getFollowPage("getFollowingPage", getFollowingCollectionRef(userId), after, pageSize, listener);
+    }
 
-                // User does not have any followers
-                if (followerRefs == null || followerRefs.isEmpty()) {
-                    listener.onFollowersFetched(followers);
-                    return;
+    private void getFollowPage(String operation, CollectionReference follows, @Nullable DocumentSnapshot after,
+                               int pageSize, OnFollowPageFetchListener listener) {
+        Query page = follows.orderBy(FOLLOW_DATE_TIME_FIELD, Query.Direction.DESCENDING).limit(pageSize);
+        if (after != null) {
+            page = page.startAfter(after);
+        }
+
+        tracedRead(operation, page.get()).addOnCompleteListener(task -> {
+            if (!task.isSuccessful() || task.getResult() == null) {
+                Log.e("DatabaseManager", "Error fetching follows", task.getException());
+                listener.onFollowPageFetched(null, null, false);
+                return;
+            }
+
+            // Entries are keyed by user ID, so the profiles need no further reads
+            List<DocumentSnapshot> docs = task.getResult().getDocuments();
+            ArrayList<Profile> profiles = new ArrayList<>();
+            for (DocumentSnapshot doc : docs) {
+                profiles.add(new Profile(doc.getId()));
+            }
+            DocumentSnapshot last = docs.isEmpty() ? after : docs.get(docs.size() - 1);
+            listener.onFollowPageFetched(profiles, last, docs.size() == pageSize);
+        });
+    }
+
+    /**
+     * Returns the number of followers of a user from their document. Users that were not
+     * migrated yet are counted from their legacy array.
+     *
+     * @param user The fields of the user document.
+     * @return The number of followers.
+     */
+    public static long followerCountOf(@Nullable Map<String, Object> user) {
+        return followCountOf(user, DocumentReferences.FOLLOWERS.getDocRefString(), FOLLOWER_COUNT_FIELD);
+    }
+
+    /**
+     * Returns the number of users a user follows from their document. Users that were not
+     * migrated yet are counted from their legacy array.
+     *
+     * @param user The fields of the user document.
+     * @return The number of followed users.
+     */
+    public static long followingCountOf(@Nullable Map<String, Object> user) {
+        return followCountOf(user, DocumentReferences.FOLLOWINGS.getDocRefString(), FOLLOWING_COUNT_FIELD);
+    }
+
+    private static long followCountOf(@Nullable Map<String, Object> user, String legacyField, String countField) {
+        if (user == null) {
+            return 0;
+        }
+        Object legacy = user.get(legacyField);
+        if (legacy instanceof List<?>) {
+            return ((List<?>) legacy).size();
+        }
+        Object count = user.get(countField);
+        return count instanceof Number ? Math.max(0, ((Number) count).longValue()) : 0;
+    }
+
+    /**
+     * Moves the follows of a user written before follows had their own documents out of the
+     * follower and following arrays of the user and into follow entries, on both sides of each
+     * follow. Follows are moved in transactions that read the entries first and only increment
+     * a follow count for the entries they write, so follows accepted or removed meanwhile are
+     * counted once. Running it again after a partial failure neither duplicates entries nor
+     * counts them twice. The arrays are deleted once every follow is moved.
+     *
+     * @param userId   The ID of the user.
+     * @param listener The listener that will receive the number of moved follows, or -1 on failure.
+     */
+    public void migrateLegacyFollows(@NotNull String userId, @Nullable OnLegacyFollowsMigratedListener listener) {
+        DocumentReference userDocRef = usersCollectionRef.document(userId);
+        tracedRead("migrateLegacyFollows", userDocRef.get()).addOnCompleteListener(read -> {
+            if (!read.isSuccessful() || read.getResult() == null) {
+                Log.e("DatabaseManager", "Error fetching legacy follows", read.getException());
+                if (listener != null) {
+                    listener.onLegacyFollowsMigrated(-1);
                 }
+                return;
+            }
+            Set<String> legacyFollowers = legacyFollowIds(read.getResult(), DocumentReferences.FOLLOWERS.getDocRefString());
+            Set<String> legacyFollowing = legacyFollowIds(read.getResult(), DocumentReferences.FOLLOWINGS.getDocRefString());
+            if (legacyFollowers == null && legacyFollowing == null) {
+                if (listener != null) {
+                    listener.onLegacyFollowsMigrated(0);
+                }
+                return;
+            }
 
-                int[] remainingFollowers = { followerRefs.size() }; // Track pending follower retrievals
+            List<Map.Entry<String, Boolean>> follows = new ArrayList<>(); // Other user ID, and whether they are a follower
+            if (legacyFollowers != null) {
+                for (String followerId : legacyFollowers) {
+                    follows.add(new AbstractMap.SimpleEntry<>(followerId, true));
+                }
+            }
+            if (legacyFollowing != null) {
+                for (String followedId : legacyFollowing) {
+                    follows.add(new AbstractMap.SimpleEntry<>(followedId, false));
+                }
+            }
+            migrateLegacyFollowChunks(userId, ShardedFeedQuery.partition(follows, LEGACY_FOLLOWS_PER_TRANSACTION), 0, 0, listener);
+        });
+    }
 
-                for (DocumentReference followerRef : followerRefs) {
-                    followerRef.get().addOnCompleteListener(followerTask -> {
-                        if (followerTask.isSuccessful() && followerTask.getResult().exists()) {
-                            followers.add(followerTask.getResult().toObject(Profile.class));
+    // One transaction at a time, they all update the counts of the user and would contend
+    private void migrateLegacyFollowChunks(String userId, List<List<Map.Entry<String, Boolean>>> chunks, int index,
+            int moved, @Nullable OnLegacyFollowsMigratedListener listener) {
+        DocumentReference userDocRef = usersCollectionRef.document(userId);
+        if (index == chunks.size()) {
+            // Every follow has its entries, nothing adds to the arrays anymore
+            tracedWrite("migrateLegacyFollows", userDocRef.update(
+                    DocumentReferences.FOLLOWERS.getDocRefString(), FieldValue.delete(),
+                    DocumentReferences.FOLLOWINGS.getDocRefString(), FieldValue.delete()), 1)
+                    .addOnCompleteListener(done -> {
+                        if (done.isSuccessful()) {
+                            Log.d("DatabaseManager", "Moved " + moved + " follows of user " + userId);
+                        } else {
+                            Log.e("DatabaseManager", "Error moving legacy follows", done.getException());
                         }
-                        remainingFollowers[0]--;
-
-                        // When all followerRefs are processed, invoke the listener
-                        if (remainingFollowers[0] == 0) {
-                            listener.onFollowersFetched(followers);
+                        if (listener != null) {
+                            listener.onLegacyFollowsMigrated(done.isSuccessful() ? moved : -1);
                         }
                     });
+            return;
+        }
+
+        List<Map.Entry<String, Boolean>> chunk = chunks.get(index);
+        Task<Integer> commit = firestoreDb.runTransaction(transaction -> {
+            // Follows removed since the arrays were read are not brought back
+            DocumentSnapshot user = transaction.get(userDocRef);
+            Set<String> legacyFollowers = legacyFollowIds(user, DocumentReferences.FOLLOWERS.getDocRefString());
+            Set<String> legacyFollowing = legacyFollowIds(user, DocumentReferences.FOLLOWINGS.getDocRefString());
+
+            // Every read of a transaction comes before its writes
+            List<DocumentReference> ownEntryRefs = new ArrayList<>();
+            List<DocumentReference> otherEntryRefs = new ArrayList<>();
+            List<Boolean> ownEntryExists = new ArrayList<>();
+            List<Boolean> otherEntryExists = new ArrayList<>();
+            List<Boolean> otherUserExists = new ArrayList<>();
+            for (Map.Entry<String, Boolean> follow : chunk) {
+                String otherId = follow.getKey();
+                boolean follower = follow.getValue();
+                DocumentReference ownEntryRef = follower ? getFollowersCollectionRef(userId).document(otherId)
+                        : getFollowingCollectionRef(userId).document(otherId);
+                DocumentReference otherEntryRef = follower ? getFollowingCollectionRef(otherId).document(userId)
+                        : getFollowersCollectionRef(otherId).document(userId);
+                ownEntryRefs.add(ownEntryRef);
+                otherEntryRefs.add(otherEntryRef);
+                ownEntryExists.add(transaction.get(ownEntryRef).exists());
+                otherEntryExists.add(transaction.get(otherEntryRef).exists());
+                otherUserExists.add(transaction.get(usersCollectionRef.document(otherId)).exists());
+            }
+
+            Date since = new Date();
+            int followersMoved = 0;
+            int followingMoved = 0;
+            for (int i = 0; i < chunk.size(); i++) {
+                String otherId = chunk.get(i).getKey();
+                boolean follower = chunk.get(i).getValue();
+                Set<String> legacy = follower ? legacyFollowers : legacyFollowing;
+                if (legacy == null || !legacy.contains(otherId)) {
+                    continue;
+                }
+                if (!ownEntryExists.get(i)) {
+                    transaction.set(ownEntryRefs.get(i), newFollowEntry(otherId, since));
+                    if (follower) {
+                        followersMoved++;
+                    } else {
+                        followingMoved++;
+                    }
+                }
+                // Both entries of each follow, the other user may never open the app again
+                if (!otherEntryExists.get(i) && otherUserExists.get(i)) {
+                    transaction.set(otherEntryRefs.get(i), newFollowEntry(userId, since));
+                    transaction.update(usersCollectionRef.document(otherId),
+                            follower ? FOLLOWING_COUNT_FIELD : FOLLOWER_COUNT_FIELD, FieldValue.increment(1));
                 }
             }
+            transaction.update(userDocRef,
+                    FOLLOWER_COUNT_FIELD, FieldValue.increment(followersMoved),
+                    FOLLOWING_COUNT_FIELD, FieldValue.increment(followingMoved));
+            return followersMoved + followingMoved;
         });
+
+        tracedWrite("migrateLegacyFollows", commit, 3 * chunk.size() + 1).addOnCompleteListener(done -> {
+            if (!done.isSuccessful()) {
+                Log.e("DatabaseManager", "Error moving legacy follows", done.getException());
+                if (listener != null) {
+                    listener.onLegacyFollowsMigrated(-1);
+                }
+                return;
+            }
+            migrateLegacyFollowChunks(userId, chunks, index + 1, moved + done.getResult(), listener);
+        });
+    }
+
+    // The IDs of the users in a legacy follow array, or null if the user has no such array
+    @Nullable
+    private static Set<String> legacyFollowIds(DocumentSnapshot user, String field) {
+        Object legacy = user.get(field);
+        if (!(legacy instanceof List<?>)) {
+            return null;
+        }
+        Set<String> ids = new LinkedHashSet<>();
+        for (Object ref : (List<?>) legacy) {
+            if (ref instanceof DocumentReference) {
+                ids.add(((DocumentReference) ref).getId());
+            }
+        }
+        return ids;
     }
 
     // Post Management
@@ -450,6 +1134,8 @@ public final class DatabaseManager {
     /**
      * Adds a new post to the Firestore database.
      * The result is returned via the provided listener.
+     * The post, the reference to it on the user, its heatmap counts and the mood statistics of the
+     * user are written in a single write batch. Followers are notified once it is committed.
      *
      * @param post     The post object to be added.
      * @param listener The listener that will receive the success result.
@@ -463,11 +1149,22 @@ public final class DatabaseManager {
      *                 });
      */
     public void addPost(@NotNull MoodPost post, @NotNull String userId, @Nullable OnPostAddedListener listener) {
-        String postId = post.getPostID();
+        DocumentReference postDocRef = postsCollectionRef.document(post.getPostID());
+        DocumentReference userDocRef = usersCollectionRef.document(userId);
+
+        WriteBatch batch = firestoreDb.batch();
+        batch.set(postDocRef, post);
+        batch.update(userDocRef, DocumentReferences.POSTS.getDocRefString(), FieldValue.arrayUnion(postDocRef));
+        int writes = 2 + addHeatmapWrites(merging(batch), null, heatmapPoint(post.getLocation(), post.getLatitude(),
+                post.getLongitude(), post.getEmotion(), post.isPrivate()));
+        writes += addMoodStatsWrites(merging(batch), userId, null,
+                MoodStats.entry(post.getEmotion(), post.getSocialSituation(), post.getPostedDateTime()));
 
-        postsCollectionRef.document(postId).set(post)
+        tracedWrite("addPost", batch.commit(), writes)
                 .addOnSuccessListener(unused -> {
                     defaultSuccessHandler("Post added successfully");
+                    if (!post.isPrivate())
+                        sendPostNotifications(userId, post);
                     if (listener != null) {
                         listener.onPostAdded(true);
                     }
@@ -478,18 +1175,14 @@ public final class DatabaseManager {
                         listener.onPostAdded(false);
                     }
                 });
-
-        DocumentReference postDocRef = postsCollectionRef.document(postId);
-        DocumentReference userDocRef = usersCollectionRef.document(userId);
-        userDocRef.update(DocumentReferences.POSTS.getDocRefString(), FieldValue.arrayUnion(postDocRef));
-
-        if (!post.isPrivate())
-            sendPostNotifications(userDocRef, postDocRef);
     }
 
     /**
      * Updates a post in the Firestore database.
      * The result is returned via the provided listener.
+     * Updates that may move the post in the heatmap or mood statistics read the post first,
+     * from the offline cache if need be, and fail if it cannot be read. Callers that hold the
+     * post should use {@link #updatePost(MoodPost, HashMap, OnPostUpdatedListener)} instead.
      *
      * @param postId   The ID of the post to update.
      * @param options  A map of fields to update (field names and values).
@@ -506,8 +1199,70 @@ public final class DatabaseManager {
     public void updatePost(@NotNull String postId, HashMap<String, Object> options,
             @Nullable OnPostUpdatedListener listener) {
         DocumentReference postRef = postsCollectionRef.document(postId);
+        if (!affectsHeatmap(options) && !affectsMoodStats(options)) {
+            writePostUpdate(postRef, options, null, listener);
+            return;
+        }
+        tracedRead("updatePost", postRef.get()).addOnCompleteListener(task -> {
+            if (!task.isSuccessful() || task.getResult() == null || !task.getResult().exists()) {
+                Log.e("DatabaseManager", "Error fetching post " + postId + " to update", task.getException());
+                if (listener != null) {
+                    listener.onPostUpdated(false);
+                }
+                return;
+            }
+            writePostUpdate(postRef, options, task.getResult().getData(), listener);
+        });
+    }
+
+    /**
+     * Updates a post whose fields before the update are known, such as the post being edited.
+     * Nothing is read, so the update is applied locally at once and kept while offline like any
+     * other write, and the heatmap and mood statistics are moved from the fields of the post.
+     *
+     * @param previous The post as it was before the update.
+     * @param options  A map of fields to update (field names and values).
+     * @param listener The listener that will receive the success result.
+     */
+    public void updatePost(@NotNull MoodPost previous, HashMap<String, Object> options,
+            @Nullable OnPostUpdatedListener listener) {
+        writePostUpdate(postsCollectionRef.document(previous.getPostID()), options, storedFields(previous), listener);
+    }
+
+    /**
+     * Updates a post and moves it in the heatmap and mood statistics in a single write batch.
+     * A post without a stored geohash was never counted in the heatmap, backfillGeohashes counts
+     * it once it has one, so it is only taken out if it has one. A post counted after the update
+     * always gets its geohash in the same batch, so the backfill does not count it again.
+     *
+     * @param postRef  The post.
+     * @param options  The fields to update.
+     * @param before   The fields of the post before the update, or null if the update does not
+     *                 change how it is counted.
+     * @param listener The listener that will receive the success result.
+     */
+    private void writePostUpdate(DocumentReference postRef, HashMap<String, Object> options,
+            @Nullable Map<String, Object> before, @Nullable OnPostUpdatedListener listener) {
+        HashMap<String, Object> fields = new HashMap<>(withGeohash(options));
+        WriteBatch batch = firestoreDb.batch();
+        int writes = 1;
+        if (before != null) {
+            Map<String, Object> after = new HashMap<>(before);
+            after.putAll(fields);
+            HeatmapPoint counted = before.get(GEOHASH_FIELD) != null ? heatmapPoint(before) : null;
+            HeatmapPoint counting = heatmapPoint(after);
+            if (counting != null) {
+                fields.put(GEOHASH_FIELD, GeoHash.encode(counting.latitude, counting.longitude, GeoHash.STORED_PRECISION));
+            }
+            writes += addHeatmapWrites(merging(batch), counted, counting);
+            String userId = postUserId(before);
+            if (userId != null) {
+                writes += addMoodStatsWrites(merging(batch), userId, moodStatsEntry(before), moodStatsEntry(after));
+            }
+        }
+        batch.update(postRef, fields);
 
-        postRef.update(options)
+        tracedWrite("updatePost", batch.commit(), writes)
                 .addOnSuccessListener(unused -> {
                     defaultSuccessHandler("Post updated successfully");
                     if (listener != null) {
@@ -522,6 +1277,453 @@ public final class DatabaseManager {
                 });
     }
 
+    // The fields of a post as they are stored, for counting it without reading it
+    private static Map<String, Object> storedFields(MoodPost post) {
+        Map<String, Object> fields = new HashMap<>();
+        fields.put(LOCATION_FIELD, post.getLocation());
+        fields.put(LATITUDE_FIELD, post.getLatitude());
+        fields.put(LONGITUDE_FIELD, post.getLongitude());
+        fields.put(GEOHASH_FIELD, post.hasStoredGeohash() ? post.getGeohash() : null);
+        fields.put(EMOTION_FIELD, post.getEmotion());
+        fields.put(SOCIAL_SITUATION_FIELD, post.getSocialSituation());
+        fields.put(PRIVATE_FIELD, post.isPrivate());
+        fields.put(POSTED_DATE_TIME_FIELD, post.getPostedDateTime());
+        if (post.getProfile() != null) {
+            Map<String, Object> profile = new HashMap<>();
+            profile.put("userId", post.getProfile().getUserId());
+            fields.put("profile", profile);
+        }
+        return fields;
+    }
+
+    /**
+     * Returns the fields of a post update with the geohash kept in step with the location:
+     * computed when the update sets the coordinates, removed when it hides the location.
+     *
+     * @param options The fields to update.
+     * @return A copy of the fields including the geohash, or the fields as they were.
+     */
+    static HashMap<String, Object> withGeohash(HashMap<String, Object> options) {
+        Object latitude = options.get(LATITUDE_FIELD);
+        Object longitude = options.get(LONGITUDE_FIELD);
+        HashMap<String, Object> fields = new HashMap<>(options);
+        if (latitude instanceof Double && longitude instanceof Double) {
+            fields.put(GEOHASH_FIELD, GeoHash.encode((Double) latitude, (Double) longitude, GeoHash.STORED_PRECISION));
+        } else if (Boolean.FALSE.equals(options.get(LOCATION_FIELD))) {
+            fields.put(GEOHASH_FIELD, FieldValue.delete());
+        } else {
+            return options;
+        }
+        return fields;
+    }
+
+    /**
+     * Builds the query for the public posts of the given users whose location is in a geohash
+     * cell, see GeoHash. Only posts that store a geohash are returned, older posts get one through
+     * {@link #backfillGeohashes(String, OnGeohashBackfillListener)}. Firestore rejects whereIn
+     * clauses with more than 30 values, so larger sets of users need one query per shard, see
+     * {@link ShardedFeedQuery#partition(List, int)}.
+     *
+     * @param cell    The geohash of the cell, every post whose geohash starts with it is included.
+     * @param userIds The user IDs whose posts should be included (at most 30).
+     * @return The query ordered by geohash.
+     */
+    public Query getPostsInGeohashCellQuery(@NotNull String cell, @NotNull List<String> userIds) {
+        return this.postsCollectionRef
+                .whereIn(PROFILE_USER_ID_FIELD, userIds)
+                .whereEqualTo(PRIVATE_FIELD, false)
+                .orderBy(GEOHASH_FIELD)
+                .startAt(cell)
+                .endAt(cell + GeoHash.PREFIX_RANGE_END);
+    }
+
+    /**
+     * Writes the geohash of the located posts of a user that were posted before posts stored one,
+     * in write batches of at most 500.
+     *
+     * @param userId   The user whose posts are backfilled.
+     * @param listener The listener that will receive the number of updated posts, or -1 on failure.
+     */
+    public void backfillGeohashes(@NotNull String userId, @Nullable OnGeohashBackfillListener listener) {
+        Query located = postsCollectionRef.whereEqualTo(PROFILE_USER_ID_FIELD, userId)
+                .whereEqualTo(LOCATION_FIELD, true);
+        tracedRead("backfillGeohashes", located.get())
+                .addOnCompleteListener(task -> {
+                    if (!task.isSuccessful() || task.getResult() == null) {
+                        Log.e("DatabaseManager", "Error fetching posts to backfill geohashes", task.getException());
+                        if (listener != null) {
+                            listener.onGeohashBackfilled(-1);
+                        }
+                        return;
+                    }
+
+                    List<DocumentSnapshot> missing = new ArrayList<>();
+                    for (DocumentSnapshot doc : task.getResult().getDocuments()) {
+                        if (doc.getString(GEOHASH_FIELD) == null
+                                && doc.getDouble(LATITUDE_FIELD) != null && doc.getDouble(LONGITUDE_FIELD) != null) {
+                            missing.add(doc);
+                        }
+                    }
+
+                    List<Task<Void>> commits = new ArrayList<>();
+                    // Posts from before geohashes were never counted in the heatmap either
+                    int chunkSize = MAX_BATCH_WRITES / (1 + MAX_HEATMAP_WRITES);
+                    for (List<DocumentSnapshot> chunk : ShardedFeedQuery.partition(missing, chunkSize)) {
+                        WriteBatch batch = firestoreDb.batch();
+                        int writes = 0;
+                        for (DocumentSnapshot doc : chunk) {
+                            batch.update(doc.getReference(), GEOHASH_FIELD, GeoHash.encode(doc.getDouble(LATITUDE_FIELD),
+                                    doc.getDouble(LONGITUDE_FIELD), GeoHash.STORED_PRECISION));
+                            writes += 1 + addHeatmapWrites(merging(batch), null, heatmapPoint(doc.getData()));
+                        }
+                        commits.add(tracedWrite("backfillGeohashes", batch.commit(), writes));
+                    }
+
+                    Tasks.whenAll(commits).addOnCompleteListener(done -> {
+                        if (done.isSuccessful()) {
+                            Log.d("DatabaseManager", "Backfilled the geohash of " + missing.size() + " posts");
+                        } else {
+                            Log.e("DatabaseManager", "Error backfilling geohashes", done.getException());
+                        }
+                        if (listener != null) {
+                            listener.onGeohashBackfilled(done.isSuccessful() ? missing.size() : -1);
+                        }
+                    });
+                });
+    }
+
+    /**
+     * Fetches a heatmap tile, see DensityGrid. The tile does not exist if no post was ever
+     * counted in it.
+     *
+     * @param level The aggregation level of the tile.
+     * @param x     The x coordinate of the tile.
+     * @param y     The y coordinate of the tile.
+     * @return The task reading the tile document.
+     */
+    public Task<DocumentSnapshot> getHeatmapTile(int level, int x, int y) {
+        return tracedRead("getHeatmapTile", heatmapCollectionRef.document(DensityGrid.tileId(level, x, y)).get());
+    }
+
+    // Whether an update changes where or how a post is counted in the heatmap
+    private static boolean affectsHeatmap(Map<String, Object> fields) {
+        return fields.containsKey(LOCATION_FIELD) || fields.containsKey(LATITUDE_FIELD)
+                || fields.containsKey(LONGITUDE_FIELD) || fields.containsKey(EMOTION_FIELD)
+                || fields.containsKey(PRIVATE_FIELD);
+    }
+
+    @Nullable
+    private static HeatmapPoint heatmapPoint(@Nullable Map<String, Object> post) {
+        if (post == null) {
+            return null;
+        }
+        return heatmapPoint(post.get(LOCATION_FIELD), post.get(LATITUDE_FIELD), post.get(LONGITUDE_FIELD),
+                post.get(EMOTION_FIELD), post.get(PRIVATE_FIELD));
+    }
+
+    /**
+     * Returns where and how a post is counted in the heatmap: only public posts that show their
+     * location are.
+     *
+     * @return The point, or null if the post is not counted.
+     */
+    @Nullable
+    private static HeatmapPoint heatmapPoint(Object location, Object latitude, Object longitude, Object emotion,
+            Object isPrivate) {
+        if (!Boolean.TRUE.equals(location) || !Boolean.FALSE.equals(isPrivate) || emotion == null
+                || !(latitude instanceof Number) || !(longitude instanceof Number)) {
+            return null;
+        }
+        try {
+            // Emotions are enums in posts and names in documents
+            return new HeatmapPoint(((Number) latitude).doubleValue(), ((Number) longitude).doubleValue(),
+                    Emotion.valueOf(emotion.toString()));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Adds the writes that move a post in the heatmap to a batch, taking one off the tiles it was
+     * counted in and adding one to the tiles it is now counted in, at every level. Counts are
+     * kept with atomic increments, so posts written at the same time by other users are not lost.
+     * At most {@link #MAX_HEATMAP_WRITES} writes are added.
+     *
+     * @param writer The batch or transaction writing the post.
+     * @param before Where the post was counted, or null if it was not.
+     * @param after  Where the post is now counted, or null if it is not anymore.
+     * @return The number of writes added.
+     */
+    private int addHeatmapWrites(MergeWriter writer, @Nullable HeatmapPoint before, @Nullable HeatmapPoint after) {
+        if (Objects.equals(before, after)) {
+            return 0;
+        }
+        int writes = 0;
+        if (before != null) {
+            writes += addToHeatmap(writer, before, -1);
+        }
+        if (after != null) {
+            writes += addToHeatmap(writer, after, 1);
+        }
+        return writes;
+    }
+
+    private int addToHeatmap(MergeWriter writer, HeatmapPoint point, long delta) {
+        for (int level : DensityGrid.LEVELS) {
+            int[] tile = DensityGrid.tileAt(level, point.latitude, point.longitude);
+            HashMap<String, Object> counts = new HashMap<>();
+            counts.put(point.emotion.name(), FieldValue.increment(delta));
+            HashMap<String, Object> buckets = new HashMap<>();
+            buckets.put(String.valueOf(DensityGrid.bucketAt(level, point.latitude, point.longitude)), counts);
+            HashMap<String, Object> data = new HashMap<>();
+            data.put(HEATMAP_COUNTS_FIELD, buckets);
+            // Merging creates the tile on its first post and leaves the other buckets as they are
+            writer.merge(heatmapCollectionRef.document(DensityGrid.tileId(level, tile[0], tile[1])), data);
+        }
+        return DensityGrid.LEVELS.length;
+    }
+
+    /**
+     * A post as counted in the heatmap
+     */
+    private static class HeatmapPoint {
+        final double latitude;
+        final double longitude;
+        final Emotion emotion;
+
+        HeatmapPoint(double latitude, double longitude, Emotion emotion) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.emotion = emotion;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof HeatmapPoint)) {
+                return false;
+            }
+            HeatmapPoint other = (HeatmapPoint) o;
+            return Double.compare(latitude, other.latitude) == 0 && Double.compare(longitude, other.longitude) == 0
+                    && emotion == other.emotion;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(latitude, longitude, emotion);
+        }
+    }
+
+    // Whether an update changes how a post is counted in the mood statistics
+    private static boolean affectsMoodStats(Map<String, Object> fields) {
+        return fields.containsKey(EMOTION_FIELD) || fields.containsKey(SOCIAL_SITUATION_FIELD)
+                || fields.containsKey(POSTED_DATE_TIME_FIELD);
+    }
+
+    // How a post document is counted in the mood statistics, dates are timestamps in documents
+    @Nullable
+    private static MoodStats.Entry moodStatsEntry(@Nullable Map<String, Object> post) {
+        if (post == null) {
+            return null;
+        }
+        Object posted = post.get(POSTED_DATE_TIME_FIELD);
+        return MoodStats.entry(post.get(EMOTION_FIELD), post.get(SOCIAL_SITUATION_FIELD),
+                posted instanceof Timestamp ? ((Timestamp) posted).toDate() : posted instanceof Date ? (Date) posted : null);
+    }
+
+    // The ID of the user who made a post document
+    @Nullable
+    private static String postUserId(Map<String, Object> post) {
+        Object profile = post.get("profile");
+        Object userId = profile instanceof Map<?, ?> ? ((Map<?, ?>) profile).get("userId") : null;
+        return userId != null ? userId.toString() : null;
+    }
+
+    /**
+     * Adds the write that moves a post in the mood statistics of its user to a batch, with atomic
+     * increments so posts written at the same time from other devices are not lost. Merging
+     * creates the document on the first post and leaves the other counts as they are.
+     *
+     * @param writer The batch or transaction writing the post.
+     * @param userId The ID of the user who made the post.
+     * @param before How the post was counted, or null if it was not.
+     * @param after  How the post is now counted, or null if it is not anymore.
+     * @return The number of writes added, 0 or 1.
+     */
+    private int addMoodStatsWrites(MergeWriter writer, String userId, @Nullable MoodStats.Entry before,
+            @Nullable MoodStats.Entry after) {
+        Map<String, Long> deltas = MoodStats.deltas(before, after);
+        if (deltas.isEmpty()) {
+            return 0;
+        }
+        writer.merge(getMoodStatsDocRef(userId), nestFields(deltas, true));
+        return 1;
+    }
+
+    /**
+     * Merges fields into documents as part of a write batch or a transaction, so posts are
+     * counted the same way whichever of the two writes them.
+     */
+    private interface MergeWriter {
+        void merge(DocumentReference document, Map<String, Object> fields);
+    }
+
+    private static MergeWriter merging(WriteBatch batch) {
+        return (document, fields) -> batch.set(document, fields, SetOptions.merge());
+    }
+
+    private static MergeWriter merging(Transaction transaction) {
+        return (document, fields) -> transaction.set(document, fields, SetOptions.merge());
+    }
+
+    /**
+     * Turns counts keyed by dotted field path into the nested maps of a document.
+     *
+     * @param counts    The counts, see MoodStats.deltas.
+     * @param increment Whether to write the counts as increments instead of values.
+     * @return The fields of the document.
+     */
+    @SuppressWarnings("unchecked")
+    private static HashMap<String, Object> nestFields(Map<String, Long> counts, boolean increment) {
+        HashMap<String, Object> data = new HashMap<>();
+        for (Map.Entry<String, Long> count : counts.entrySet()) {
+            String[] path = count.getKey().split("\\.");
+            Map<String, Object> parent = data;
+            for (int i = 0; i < path.length - 1; i++) {
+                parent = (Map<String, Object>) parent.computeIfAbsent(path[i], key -> new HashMap<String, Object>());
+            }
+            parent.put(path[path.length - 1], increment ? FieldValue.increment(count.getValue()) : count.getValue());
+        }
+        return data;
+    }
+
+    /**
+     * Fetches the mood statistics of a user, a single small document however many posts they made.
+     *
+     * @param userId   The ID of the user.
+     * @param listener The listener that will receive the statistics, empty if the user has none
+     *                 yet, or null on failure.
+     */
+    public void getMoodStats(@NotNull String userId, OnMoodStatsFetchListener listener) {
+        tracedRead("getMoodStats", getMoodStatsDocRef(userId).get()).addOnCompleteListener(task -> {
+            if (task.isSuccessful() && task.getResult() != null) {
+                listener.onMoodStatsFetched(MoodStats.fromData(task.getResult().getData()));
+            } else {
+                Log.e("DatabaseManager", "Error fetching mood statistics", task.getException());
+                listener.onMoodStatsFetched(null);
+            }
+        });
+    }
+
+    /**
+     * Rebuilds the mood statistics of a user from all of their posts, for posts made before the
+     * statistics were kept, and marks the statistics document as backfilled so this is done once
+     * per user whatever device they log in on. The counts replace the document in a transaction
+     * that checks it did not change since before the posts were read, as a post written in
+     * between is counted by its own increment. If it did change, the backfill starts over.
+     *
+     * @param userId   The ID of the user.
+     * @param listener The listener that will receive the number of counted posts, 0 if the
+     *                 statistics were already backfilled, or -1 on failure.
+     */
+    public void backfillMoodStats(@NotNull String userId, @Nullable OnMoodStatsBackfillListener listener) {
+        backfillMoodStats(userId, MAX_BACKFILL_ATTEMPTS, listener);
+    }
+
+    private void backfillMoodStats(String userId, int attempts, @Nullable OnMoodStatsBackfillListener listener) {
+        DocumentReference statsRef = getMoodStatsDocRef(userId);
+        // Read from the server, the cache may be missing posts or increments
+        tracedRead("backfillMoodStats", statsRef.get(Source.SERVER)).addOnCompleteListener(statsTask -> {
+            if (!statsTask.isSuccessful() || statsTask.getResult() == null) {
+                Log.e("DatabaseManager", "Error fetching mood statistics to backfill", statsTask.getException());
+                if (listener != null) {
+                    listener.onMoodStatsBackfilled(-1);
+                }
+                return;
+            }
+            if (Boolean.TRUE.equals(statsTask.getResult().getBoolean(MOOD_STATS_BACKFILLED_FIELD))) {
+                if (listener != null) {
+                    listener.onMoodStatsBackfilled(0);
+                }
+                return;
+            }
+            Map<String, Object> seen = statsTask.getResult().getData();
+
+            tracedRead("backfillMoodStats", postsCollectionRef.whereEqualTo(PROFILE_USER_ID_FIELD, userId).get(Source.SERVER))
+                    .addOnCompleteListener(task -> {
+                        if (!task.isSuccessful() || task.getResult() == null) {
+                            Log.e("DatabaseManager", "Error fetching posts to backfill mood statistics", task.getException());
+                            if (listener != null) {
+                                listener.onMoodStatsBackfilled(-1);
+                            }
+                            return;
+                        }
+
+                        Map<String, Long> counts = new HashMap<>();
+                        int counted = 0;
+                        for (DocumentSnapshot doc : task.getResult().getDocuments()) {
+                            MoodStats.Entry entry = moodStatsEntry(doc.getData());
+                            if (entry != null) {
+                                MoodStats.add(counts, entry, 1);
+                                counted++;
+                            }
+                        }
+                        HashMap<String, Object> data = nestFields(counts, false);
+                        data.put(MOOD_STATS_BACKFILLED_FIELD, true);
+
+                        boolean[] changed = { false };
+                        Task<Integer> commit = firestoreDb.runTransaction(transaction -> {
+                            DocumentSnapshot current = transaction.get(statsRef);
+                            changed[0] = false;
+                            if (Boolean.TRUE.equals(current.getBoolean(MOOD_STATS_BACKFILLED_FIELD))) {
+                                return 0;
+                            }
+                            if (!Objects.equals(current.getData(), seen)) {
+                                changed[0] = true;
+                                return 0;
+                            }
+                            transaction.set(statsRef, data);
+                            return 1;
+                        });
+
+                        int countedPosts = counted;
+                        tracedTransaction("backfillMoodStats", commit, 1).addOnCompleteListener(done -> {
+                            if (done.isSuccessful() && changed[0] && attempts > 1) {
+                                backfillMoodStats(userId, attempts - 1, listener);
+                                return;
+                            }
+                            boolean written = done.isSuccessful() && !changed[0];
+                            if (written) {
+                                Log.d("DatabaseManager", "Backfilled the mood statistics of " + countedPosts + " posts");
+                            } else {
+                                Log.e("DatabaseManager", "Error backfilling mood statistics", done.getException());
+                            }
+                            if (listener != null) {
+                                // Nothing is written if another device backfilled them first
+                                listener.onMoodStatsBackfilled(!written ? -1
+                                        : Integer.valueOf(1).equals(done.getResult()) ? countedPosts : 0);
+                            }
+                        });
+                    });
+        });
+    }
+
+    /**
+     * Fetches a single post by its ID.
+     *
+     * @param postId   The ID of the post to fetch.
+     * @param listener The listener that will receive the post (null if it does not exist or on failure).
+     */
+    public void getPost(@NotNull String postId, OnPostFetchListener listener) {
+        tracedRead("getPost", postsCollectionRef.document(postId).get()).addOnCompleteListener(task -> {
+            if (task.isSuccessful() && task.getResult() != null && task.getResult().exists()) {
+                listener.onPostFetched(task.getResult().toObject(MoodPost.class));
+            } else {
+                Log.e("DatabaseManager", "Error fetching post " + postId, task.getException());
+                listener.onPostFetched(null);
+            }
+        });
+    }
+
     /**
      * Fetches all posts from the FireStore database.
      * The result is returned via the provided listener.
@@ -536,7 +1738,7 @@ public final class DatabaseManager {
      *                 )
      */
     public void getAllPosts(OnPostsFetchListener listener) {
-        postsCollectionRef.get().addOnCompleteListener(task -> {
+        tracedRead("getAllPosts", postsCollectionRef.get()).addOnCompleteListener(task -> {
             if (task.isSuccessful()) {
                 ArrayList<MoodPost> posts = new ArrayList<>();
                 for (QueryDocumentSnapshot doc : task.getResult()) {
@@ -568,53 +1770,88 @@ public final class DatabaseManager {
      * @param listener A callback interface to handle the fetched posts.
      *
      */
-    @SuppressWarnings("unchecked")
     public void getAllFollowerPosts(@NotNull String userId, OnPostsFetchListener listener) {
-        DocumentReference userDocRef = this.usersCollectionRef.document(userId);
-        userDocRef.get().addOnSuccessListener(userDocSnapshot -> {
-            if (!userDocSnapshot.exists() || !userDocSnapshot.contains(DocumentReferences.FOLLOWINGS.getDocRefString())) {
+        getFollowingUserIds(userId, followingUserIds -> {
+            if (followingUserIds.isEmpty()) {
                 listener.onPostsFetched(new ArrayList<>());
                 return;
             }
 
-            List<DocumentReference> followingDocRefs = (List<DocumentReference>) userDocSnapshot.get(DocumentReferences.FOLLOWINGS.getDocRefString());
-            List<String> followingUserIds = new ArrayList<>();
+            // Split across shards so users following more than 30 accounts still get a feed
+            new ShardedFeedQuery(followingUserIds, FeedPaginator.DEFAULT_PAGE_SIZE).fetchAll(store("getAllFollowerPosts"), (allPosts, hasMore) -> {
+                if (allPosts == null) {
+                    Log.e("DatabaseManager", "Error fetching posts from followed users");
+                    listener.onPostsFetched(new ArrayList<>()); // Return empty list on failure
+                    return;
+                }
 
-            if (followingDocRefs != null) {
-                for (DocumentReference ref : followingDocRefs) {
-                    followingUserIds.add(ref.getId());
+                if (allPosts.isEmpty()) {
+                    Log.d("DatabaseManager", "No public posts found from followed users.");
                 }
-            }
 
-            if (followingUserIds.isEmpty()) {
-                listener.onPostsFetched(new ArrayList<>());
+                // Already ordered by posted date on the server and merged across shards
+                listener.onPostsFetched(allPosts);
+            });
+        });
+    }
+
+    /**
+     * Fetches the user IDs that the given user follows, from their following entries and, while
+     * the user still has one, their legacy array, so follows not migrated yet are not lost.
+     *
+     * @param userId   The unique ID of the user whose followings are to be retrieved.
+     * @param listener A callback interface to handle the fetched user IDs (empty on failure).
+     */
+    public void getFollowingUserIds(@NotNull String userId, OnFollowingIdsFetchListener listener) {
+        DocumentStore store = store("getFollowingUserIds");
+        store.query(new DocumentStore.StoreQuery(followingPath(userId)), entries -> {
+            if (entries == null) {
+                Log.e("DatabaseManager", "Error fetching followings");
+                listener.onFollowingIdsFetched(new ArrayList<>());
                 return;
             }
+            Set<String> followingUserIds = new LinkedHashSet<>();
+            for (DocumentStore.StoredDocument entry : entries) {
+                followingUserIds.add(entry.getId());
+            }
 
-            this.postsCollectionRef
-                    .whereIn("profile.userId", followingUserIds)
-                    .whereEqualTo("private", false)
-                    .get()
-                    .addOnCompleteListener(task -> {
-                        if (task.isSuccessful()) {
-                            ArrayList<MoodPost> allPosts = new ArrayList<>();
-                            for (QueryDocumentSnapshot doc : task.getResult()) {
-                                MoodPost post = doc.toObject(MoodPost.class);
-                                allPosts.add(post);
-                            }
+            store.getDocument("users", userId, userDoc -> {
+                if (userDoc != null && userDoc.exists()) {
+                    for (String path : userDoc.getReferencePaths(DocumentReferences.FOLLOWINGS.getDocRefString())) {
+                        followingUserIds.add(DocumentStore.idOf(path));
+                    }
+                }
+                listener.onFollowingIdsFetched(new ArrayList<>(followingUserIds));
+            });
+        });
+    }
 
-                            if (allPosts.isEmpty()) {
-                                Log.d("DatabaseManager", "No public posts found from followed users.");
-                            }
+    /**
+     * Builds the server-side ordered query for the public posts of the given users,
+     * most recent first. Firestore rejects whereIn clauses with more than 30 values, so
+     * larger sets of users should go through {@link ShardedFeedQuery}.
+     *
+     * @param followingUserIds The user IDs whose posts should be included (at most 30).
+     * @return The query ordered by posted date in descending order.
+     */
+    public Query getFollowerPostsQuery(@NotNull List<String> followingUserIds) {
+        return this.postsCollectionRef
+                .whereIn(PROFILE_USER_ID_FIELD, followingUserIds)
+                .whereEqualTo(PRIVATE_FIELD, false)
+                .orderBy(POSTED_DATE_TIME_FIELD, Query.Direction.DESCENDING);
+    }
 
-                            allPosts.sort((p1, p2) -> p2.getPostedDateTime().compareTo(p1.getPostedDateTime()));
-                            listener.onPostsFetched(allPosts);
-                        }
-                    }).addOnFailureListener(e -> {
-                        Log.e("DatabaseManager", "Error fetching posts: " + e.getMessage(), e);
-                        listener.onPostsFetched(new ArrayList<>()); // Return empty list on failure
-                    });
-        });
+    /**
+     * Builds the same query as {@link #getFollowerPostsQuery(List)} for a DocumentStore.
+     *
+     * @param followingUserIds The user IDs whose posts should be included (at most 30).
+     * @return The query ordered by posted date in descending order.
+     */
+    public static DocumentStore.StoreQuery getFollowerPostsStoreQuery(@NotNull List<String> followingUserIds) {
+        return new DocumentStore.StoreQuery("posts")
+                .whereIn(PROFILE_USER_ID_FIELD, followingUserIds)
+                .whereEqualTo(PRIVATE_FIELD, false)
+                .orderBy(POSTED_DATE_TIME_FIELD, true);
     }
 
     /**
@@ -626,7 +1863,7 @@ public final class DatabaseManager {
     public void getAllPublicPosts(OnPostsFetchListener listener) {
         Query publicPosts = this.postsCollectionRef.whereEqualTo("private", false);
 
-        publicPosts.get().addOnCompleteListener(task -> {
+        tracedRead("getAllPublicPosts", publicPosts.get()).addOnCompleteListener(task -> {
             if (task.isSuccessful()) {
                 QuerySnapshot querySnapshot = task.getResult();
                 ArrayList<MoodPost> postList = new ArrayList<>();
@@ -658,14 +1895,15 @@ public final class DatabaseManager {
      * The result is returned via the provided listener
      *
      * @param userId The userId (typically the current session user) which to get the private posts of
-     * @param listener The listener that will receive the result (list of posts).
+     * @param listener The listener that will receive the result (list of posts), or null if the
+     *                 user or any batch of their posts could not be fetched.
      *
      */
     @SuppressWarnings("unchecked")
     public void getUserPublicPosts(@NotNull String userId, OnPostsFetchListener listener) {
         Query userQuery = this.usersCollectionRef.whereEqualTo("userId", userId);
 
-        userQuery.get().addOnCompleteListener(task -> {
+        tracedRead("getUserPublicPosts", userQuery.get()).addOnCompleteListener(task -> {
             if (task.isSuccessful()) {
                 QuerySnapshot userSnapshot = task.getResult();
 
@@ -680,24 +1918,24 @@ public final class DatabaseManager {
                 DocumentSnapshot userDoc = userSnapshot.getDocuments().get(0);
                 List<DocumentReference> postRefs = (List<DocumentReference>) userDoc.get(DocumentReferences.POSTS.getDocRefString());
 
-                // Fetch posts from the list of DocumentReferences
-                List<Task<DocumentSnapshot>> postTasks = new ArrayList<>();
-                if (postRefs != null) {
-                    for (DocumentReference postRef : postRefs) {
-                        postTasks.add(postRef.get());
-                    }
+                if (postRefs == null) {
+                    postRefs = new ArrayList<>();
                 }
 
-                // Wait for all post fetch tasks to complete
-                Tasks.whenAllSuccess(postTasks).addOnSuccessListener(posts -> {
+                // Fetch posts from the list of DocumentReferences in batches, a failed batch fails the fetch
+                BatchedDocumentLoader.loadAll(postRefs, (documents, missingIds) -> {
+                    if (documents == null) {
+                        Log.e("DatabaseManager", "Error fetching posts of user " + userId);
+                        if (listener != null) {
+                            listener.onPostsFetched(null);
+                        }
+                        return;
+                    }
                     ArrayList<MoodPost> postList = new ArrayList<>();
-                    for (Object obj : posts) {
-                        DocumentSnapshot postDoc = (DocumentSnapshot) obj;
-                        if (postDoc.exists()) {
-                            MoodPost post = postDoc.toObject(MoodPost.class);
-                            if (post != null && !post.isPrivate()) {
-                                postList.add(post);
-                            }
+                    for (DocumentSnapshot postDoc : documents) {
+                        MoodPost post = postDoc.toObject(MoodPost.class);
+                        if (post != null && !post.isPrivate()) {
+                            postList.add(post);
                         }
                     }
 
@@ -705,11 +1943,6 @@ public final class DatabaseManager {
                     if (listener != null) {
                         listener.onPostsFetched(postList);
                     }
-                }).addOnFailureListener(e -> {
-                    Log.e("DatabaseManager", "Error fetching posts", e);
-                    if (listener != null) {
-                        listener.onPostsFetched(null);
-                    }
                 });
 
             } else {
@@ -727,7 +1960,8 @@ public final class DatabaseManager {
      * The result is returned via the provided listener.
      *
      * @param userId   The user ID whose posts need to be fetched.
-     * @param listener The listener that will receive the result (list of posts).
+     * @param listener The listener that will receive the result (list of posts), or null if
+     *                 they could not all be read.
      *                 Example Usage:
      *                 DatabaseManager.getPosts(userId, postsMap -> {
      *                 if (postsMap != null) {
@@ -735,53 +1969,43 @@ public final class DatabaseManager {
      *                 }
      *                 });
      */
-    @SuppressWarnings("unchecked")
     public void getUserPosts(@NotNull String userId, OnPostsFetchListener listener) {
-        DocumentReference userDocRef = usersCollectionRef.document(userId);
-        userDocRef.get().addOnSuccessListener(userSnapshot  -> {
-            if (!userSnapshot.exists() || !userSnapshot.contains(DocumentReferences.POSTS.getDocRefString())) {
-                Log.d("DatabaseManager", "User document does not exist or has no postRefs");
-                listener.onPostsFetched(new ArrayList<>());
+        DocumentStore store = store("getUserPosts");
+        store.getDocument("users", userId, userDoc -> {
+            if (userDoc == null) {
+                Log.e("DatabaseManager", "Error fetching user document");
+                listener.onPostsFetched(null);
                 return;
             }
-
-            ArrayList<DocumentReference> postRefs = (ArrayList<DocumentReference>) userSnapshot.get(DocumentReferences.POSTS.getDocRefString());
-            if (postRefs == null) {
+            if (!userDoc.exists() || userDoc.get(DocumentReferences.POSTS.getDocRefString()) == null) {
+                Log.d("DatabaseManager", "User document does not exist or has no postRefs");
                 listener.onPostsFetched(new ArrayList<>());
                 return;
             }
 
-            if (postRefs.isEmpty()) {
+            List<String> postPaths = userDoc.getReferencePaths(DocumentReferences.POSTS.getDocRefString());
+            if (postPaths.isEmpty()) {
                 Log.d("DatabaseManager", "User document has no postRefs");
                 listener.onPostsFetched(new ArrayList<>());
                 return;
             }
-            AtomicInteger remainingPosts = new AtomicInteger(postRefs.size());
-            List<MoodPost> posts = Collections.synchronizedList(new ArrayList<>());
-
-            for (DocumentReference postRef : postRefs) {
-                postRef.get().addOnSuccessListener(postSnapshot -> {
-                    if (postSnapshot.exists()) {
-                        MoodPost moodPost = postSnapshot.toObject(MoodPost.class);
-                        if (moodPost != null) {
-                            posts.add(moodPost);
-                            Log.d("DatabaseManager", "Fetched post: " + moodPost);
-                        }
-                    } else {
-                        Log.d("DatabaseManager", "Post not found: " + postRef.getPath());
-                    }
 
-                    if (remainingPosts.decrementAndGet() == 0) {
-                        posts.sort((p1, p2) -> p2.getPostedDateTime().compareTo(p1.getPostedDateTime()));
-                        listener.onPostsFetched(new ArrayList<>(posts));
-                    }
-                }).addOnFailureListener(e -> {
-                    Log.e("DatabaseManager", "Error fetching post: " + postRef.getPath(), e);
-                    if (remainingPosts.decrementAndGet() == 0) {
-                        listener.onPostsFetched(new ArrayList<>(posts));
+            BatchedDocumentLoader.loadAll(store, postPaths, (documents, missingIds) -> {
+                if (documents == null) {
+                    Log.e("DatabaseManager", "Error fetching user posts");
+                    listener.onPostsFetched(null);
+                    return;
+                }
+                ArrayList<MoodPost> posts = new ArrayList<>();
+                for (DocumentStore.StoredDocument postSnapshot : documents) {
+                    MoodPost moodPost = postSnapshot.toObject(MoodPost.class);
+                    if (moodPost != null) {
+                        posts.add(moodPost);
                     }
-                });
-            }
+                }
+                posts.sort((p1, p2) -> p2.getPostedDateTime().compareTo(p1.getPostedDateTime()));
+                listener.onPostsFetched(posts);
+            });
         });
     }
 
@@ -792,7 +2016,7 @@ public final class DatabaseManager {
      *
      * @param userIds  List of user IDs whose posts need to be fetched.
      * @param listener The listener that will receive the result (map of userId to
-     *                 their posts).
+     *                 their posts), or null if they could not all be read.
      *                 Example Usage:
      *                 ArrayList<String> userIds = new ArrayList<>();
      *                 userIds.add("user1");
@@ -810,59 +2034,50 @@ public final class DatabaseManager {
     @SuppressWarnings("unchecked")
     public void getUsersPosts(@NotNull ArrayList<String> userIds, OnMultipleUsersPostsFetchListener listener) {
         HashMap<String, ArrayList<MoodPost>> postsMap = new HashMap<>();
-        int[] remaining = { userIds.size() }; // To track when all user posts are fetched
-
+        List<DocumentReference> userRefs = new ArrayList<>();
         for (String userId : userIds) {
-            usersCollectionRef.document(userId).get().addOnCompleteListener(task -> {
-                if (task.isSuccessful() && task.getResult() != null) {
-                    DocumentSnapshot userSnapshot = task.getResult();
-                    ArrayList<DocumentReference> postRefs = (ArrayList<DocumentReference>) userSnapshot.get("postRefs");
-
-                    // User does not have any posts
-                    if (postRefs == null || postRefs.isEmpty()) {
-                        postsMap.put(userId, new ArrayList<>());
-                        remaining[0]--;
-                        if (remaining[0] == 0) {
-                            listener.onMultipleUsersPostsFetched(postsMap);
-                        }
-                        return;
-                    }
-
-                    ArrayList<MoodPost> posts = new ArrayList<>();
-                    int[] postRemaining = { postRefs.size() }; // Track individual post retrieval
-
-                    for (DocumentReference postRef : postRefs) {
-                        postRef.get().addOnCompleteListener(postTask -> {
-                            if (postTask.isSuccessful() && postTask.getResult().exists()) {
-                                posts.add(postTask.getResult().toObject(MoodPost.class));
-                            }
-                            postRemaining[0]--;
+            userRefs.add(usersCollectionRef.document(userId));
+        }
 
-                            // When all postRefs are processed, update the map
-                            if (postRemaining[0] == 0) {
-                                postsMap.put(userId, posts);
-                                remaining[0]--;
+        // Batch the user documents, then batch every post of every user in one pass
+        BatchedDocumentLoader.loadAll(userRefs, (userDocs, missingUserIds) -> {
+            if (userDocs == null) {
+                Log.e("DatabaseManager", "Error fetching users");
+                listener.onMultipleUsersPostsFetched(null);
+                return;
+            }
+            List<DocumentReference> allPostRefs = new ArrayList<>();
+            for (DocumentSnapshot userSnapshot : userDocs) {
+                postsMap.put(userSnapshot.getId(), new ArrayList<>());
+                List<DocumentReference> postRefs = (List<DocumentReference>) userSnapshot.get(DocumentReferences.POSTS.getDocRefString());
+                if (postRefs != null) {
+                    allPostRefs.addAll(postRefs);
+                }
+            }
 
-                                if (remaining[0] == 0) {
-                                    listener.onMultipleUsersPostsFetched(postsMap);
-                                }
-                            }
-                        });
-                    }
-                } else {
-                    // user was unable to be fetched
-                    remaining[0]--;
-                    if (remaining[0] == 0) {
-                        listener.onMultipleUsersPostsFetched(postsMap);
+            BatchedDocumentLoader.loadAll(allPostRefs, (postDocs, missingPostIds) -> {
+                if (postDocs == null) {
+                    Log.e("DatabaseManager", "Error fetching users posts");
+                    listener.onMultipleUsersPostsFetched(null);
+                    return;
+                }
+                for (DocumentSnapshot postDoc : postDocs) {
+                    MoodPost post = postDoc.toObject(MoodPost.class);
+                    if (post != null && postsMap.containsKey(post.getProfile().getUserId())) {
+                        postsMap.get(post.getProfile().getUserId()).add(post);
                     }
                 }
+                listener.onMultipleUsersPostsFetched(postsMap);
             });
-        }
+        });
     }
 
     /**
      * Deletes a post from the Firestore database.
      * The result is returned via the provided listener.
+     * The post, the reference to it on the user, its heatmap counts and its mood statistics counts
+     * are removed in a single transaction. Its comments are deleted once the post is, in write
+     * batches of at most 500, before the listener is called.
      *
      * @param postID   The ID of the post to delete.
      * @param listener The listener that will receive the success result.
@@ -877,41 +2092,379 @@ public final class DatabaseManager {
         DocumentReference postDocRef = postsCollectionRef.document(postID);
         DocumentReference userDocRef = usersCollectionRef.document(userId);
 
-        postDocRef.delete()
+        // The post is read in the same transaction, so it is taken out of the heatmap and mood
+        // statistics exactly once, and nothing is deleted if the read fails. A post that is
+        // already gone was taken out by whoever deleted it.
+        Task<Integer> commit = firestoreDb.runTransaction(transaction -> {
+            DocumentSnapshot snapshot = transaction.get(postDocRef);
+            Map<String, Object> before = snapshot.exists() ? snapshot.getData() : null;
+            transaction.delete(postDocRef);
+            transaction.update(userDocRef, DocumentReferences.POSTS.getDocRefString(), FieldValue.arrayRemove(postDocRef));
+            // Posts without a geohash were never counted in the heatmap, see writePostUpdate
+            HeatmapPoint counted = before != null && before.get(GEOHASH_FIELD) != null ? heatmapPoint(before) : null;
+            int writes = 2 + addHeatmapWrites(merging(transaction), counted, null);
+            writes += addMoodStatsWrites(merging(transaction), userId, moodStatsEntry(before), null);
+            return writes;
+        });
+
+        tracedTransaction("deletePost", commit, 1)
                 .addOnSuccessListener(unused -> {
                     defaultSuccessHandler("Post deleted successfully");
-                    userDocRef.update(DocumentReferences.POSTS.getDocRefString(), FieldValue.arrayRemove(postDocRef));
+                    deleteComments(postID, () -> {
+                        if (listener != null) {
+                            listener.onPostDeleted(true);
+                        }
+                    });
+                })
+                .addOnFailureListener(e -> {
+                    defaultFailureHandler(e);
+                    if (listener != null) {
+                        listener.onPostDeleted(false);
+                    }
+                });
+    }
+
+    /**
+     * Deletes the comments subcollection of a deleted post, in write batches of at most 500, so
+     * its comments are not left behind. The post is already gone, so a failure is only logged.
+     *
+     * @param postId The ID of the deleted post.
+     * @param done   Called once every batch completed.
+     */
+    private void deleteComments(String postId, Runnable done) {
+        tracedRead("deletePost", getCommentsCollectionRef(postId).get()).addOnCompleteListener(task -> {
+            if (!task.isSuccessful() || task.getResult() == null) {
+                Log.e("DatabaseManager", "Error fetching comments of deleted post", task.getException());
+                done.run();
+                return;
+            }
+
+            List<Task<Void>> commits = new ArrayList<>();
+            for (List<DocumentSnapshot> chunk : ShardedFeedQuery.partition(task.getResult().getDocuments(), MAX_BATCH_WRITES)) {
+                WriteBatch batch = firestoreDb.batch();
+                for (DocumentSnapshot comment : chunk) {
+                    batch.delete(comment.getReference());
+                }
+                commits.add(tracedWrite("deletePost", batch.commit(), chunk.size()));
+            }
+
+            Tasks.whenAll(commits).addOnCompleteListener(deleted -> {
+                if (deleted.isSuccessful()) {
+                    Log.d("DatabaseManager", "Deleted " + task.getResult().size() + " comments of post " + postId);
+                } else {
+                    Log.e("DatabaseManager", "Error deleting comments of deleted post", deleted.getException());
+                }
+                done.run();
+            });
+        });
+    }
+
+    /**
+     * Sends a post notification to all followers of a user by fanning the same inbox entry
+     * out to each follower's notification inbox, in write batches of at most 500. Followers in
+     * the legacy followers array of a user that was not migrated yet are notified too.
+     *
+     * @param userId The ID of the user who created the post.
+     * @param post   The new post.
+     */
+    private void sendPostNotifications(String userId, MoodPost post) {
+        tracedRead("sendPostNotifications", getFollowersCollectionRef(userId).get()).addOnSuccessListener(followers -> {
+            Set<String> followerIds = new LinkedHashSet<>();
+            for (DocumentSnapshot follower : followers.getDocuments()) {
+                followerIds.add(follower.getId());
+            }
+
+            tracedRead("sendPostNotifications", usersCollectionRef.document(userId).get()).addOnCompleteListener(read -> {
+                if (read.isSuccessful() && read.getResult() != null) {
+                    Set<String> legacyFollowers = legacyFollowIds(read.getResult(), DocumentReferences.FOLLOWERS.getDocRefString());
+                    if (legacyFollowers != null) {
+                        followerIds.addAll(legacyFollowers);
+                    }
+                } else {
+                    Log.e("DatabaseManager", "Error fetching legacy followers to notify", read.getException());
+                }
+
+                HashMap<String, Object> entry = newPostNotificationEntry(post);
+                for (List<String> chunk : ShardedFeedQuery.partition(new ArrayList<>(followerIds), MAX_BATCH_WRITES)) {
+                    WriteBatch batch = firestoreDb.batch();
+                    for (String followerId : chunk) {
+                        batch.set(getNotificationsCollectionRef(followerId).document(post.getPostID()), entry);
+                    }
+                    tracedWrite("sendPostNotifications", batch.commit(), chunk.size())
+                            .addOnSuccessListener(unused -> Log.d("DatabaseManager", "Notified " + chunk.size() + " followers"))
+                            .addOnFailureListener(e -> Log.e("DatabaseManager", "Error sending post notifications", e));
+                }
+            });
+        }).addOnFailureListener(e -> Log.e("DatabaseManager", "Error fetching followers to notify", e));
+    }
+
+    // Comment Management
+
+    /**
+     * Builds the document of a comment. Only the stored properties are written, not the
+     * formatted dates.
+     *
+     * @param comment The comment.
+     * @return The comment document.
+     */
+    public static HashMap<String, Object> newCommentEntry(@NotNull Comment comment) {
+        HashMap<String, Object> entry = new HashMap<>();
+        entry.put(COMMENT_ID_FIELD, comment.getCommentID());
+        entry.put(COMMENT_PROFILE_FIELD, comment.getProfile());
+        entry.put(COMMENT_DATE_TIME_FIELD, comment.getPostedDateTime());
+        entry.put(COMMENT_TEXT_FIELD, comment.getText());
+        return entry;
+    }
+
+    /**
+     * Fetches one page of the comments of a post, most recent first.
+     *
+     * @param postId   The ID of the post.
+     * @param after    The last comment of the previous page, or null for the first page.
+     * @param pageSize The maximum number of comments to fetch.
+     * @param listener The listener that will receive the page (null comments on failure).
+     */
+    public void getCommentsPage(@NotNull String postId, @Nullable DocumentSnapshot after, int pageSize,
+                                OnCommentsPageFetchListener listener) {
+        Query page = getCommentsCollectionRef(postId)
+                .orderBy(COMMENT_DATE_TIME_FIELD, Query.Direction.DESCENDING)
+                .limit(pageSize);
+        if (after != null) {
+            page = page.startAfter(after);
+        }
+
+        tracedRead("getCommentsPage", page.get()).addOnCompleteListener(task -> {
+            if (!task.isSuccessful() || task.getResult() == null) {
+                Log.e("DatabaseManager", "Error fetching comments", task.getException());
+                listener.onCommentsPageFetched(null, null, false);
+                return;
+            }
+
+            List<DocumentSnapshot> docs = task.getResult().getDocuments();
+            ArrayList<Comment> comments = new ArrayList<>();
+            for (DocumentSnapshot doc : docs) {
+                Comment comment = doc.toObject(Comment.class);
+                if (comment != null) {
+                    comments.add(comment);
+                }
+            }
+            DocumentSnapshot last = docs.isEmpty() ? after : docs.get(docs.size() - 1);
+            listener.onCommentsPageFetched(comments, last, docs.size() == pageSize);
+        });
+    }
+
+    /**
+     * Adds a comment to a post. The comment is its own document, and the comment count of the
+     * post is incremented in the same write batch, so other comments are neither read nor
+     * rewritten.
+     *
+     * @param postId   The ID of the post.
+     * @param comment  The new comment.
+     * @param listener The listener that will receive the success result.
+     */
+    public void addComment(@NotNull String postId, @NotNull Comment comment, @Nullable OnCommentUpdatedListener listener) {
+        WriteBatch batch = firestoreDb.batch();
+        batch.set(getCommentsCollectionRef(postId).document(comment.getCommentID()), newCommentEntry(comment));
+        batch.update(postsCollectionRef.document(postId), COMMENT_COUNT_FIELD, FieldValue.increment(1));
+        commitCommentUpdate(tracedWrite("addComment", batch.commit(), 2), "Comment added", listener);
+    }
+
+    /**
+     * Deletes a comment from a post and decrements the comment count of the post. The comment is
+     * read in the same transaction, so the count is only decremented if the comment still existed,
+     * and deleting the same comment twice does not decrement it twice.
+     *
+     * @param postId    The ID of the post.
+     * @param commentId The ID of the comment.
+     * @param listener  The listener that will receive the success result.
+     */
+    public void deleteComment(@NotNull String postId, @NotNull String commentId, @Nullable OnCommentUpdatedListener listener) {
+        DocumentReference commentDocRef = getCommentsCollectionRef(postId).document(commentId);
+        Task<Integer> commit = firestoreDb.runTransaction(transaction -> {
+            if (!transaction.get(commentDocRef).exists()) {
+                return 0;
+            }
+            transaction.delete(commentDocRef);
+            transaction.update(postsCollectionRef.document(postId), COMMENT_COUNT_FIELD, FieldValue.increment(-1));
+            return 2;
+        });
+        commitCommentUpdate(tracedTransaction("deleteComment", commit, 1), "Comment deleted", listener);
+    }
+
+    // Reports the write of the comment and the change of the comment count
+    private <T> void commitCommentUpdate(Task<T> commit, String description,
+            @Nullable OnCommentUpdatedListener listener) {
+        commit
+                .addOnSuccessListener(unused -> {
+                    defaultSuccessHandler(description);
                     if (listener != null) {
-                        listener.onPostDeleted(true);
+                        listener.onCommentUpdated(true);
                     }
                 })
                 .addOnFailureListener(e -> {
                     defaultFailureHandler(e);
                     if (listener != null) {
-                        listener.onPostDeleted(false);
+                        listener.onCommentUpdated(false);
                     }
                 });
     }
 
     /**
-     * Sends a post notification to all followers of a user.
+     * Moves the comments of a post written before comments had their own documents out of the
+     * comments array of the post and into its comments subcollection, and adds them to the comment
+     * count. The count is incremented by the batch that deletes the array, so comments added to
+     * the subcollection meanwhile are kept. Comments keep their IDs, so running it again after a
+     * partial failure does not duplicate them.
      *
-     * @param userDocRef A reference to the Firestore document of the user who created the post.
-     * @param postDocRef A reference to the Firestore document of the new post.
+     * @param postId   The ID of the post.
+     * @param listener The listener that will receive the number of moved comments, or -1 on failure.
      */
     @SuppressWarnings("unchecked")
-    private void sendPostNotifications(DocumentReference userDocRef, DocumentReference postDocRef) {
-        userDocRef.get().addOnSuccessListener(documentSnapshot -> {
-            if (documentSnapshot.exists()) {
-                Object followersRefsObject = documentSnapshot.get(DocumentReferences.FOLLOWERS.getDocRefString());
-                if (followersRefsObject instanceof ArrayList<?>) {
-                    ArrayList<DocumentReference> followersRef = (ArrayList<DocumentReference>) followersRefsObject;
+    public void migrateLegacyComments(@NotNull String postId, @Nullable OnLegacyCommentsMigratedListener listener) {
+        DocumentReference postDocRef = postsCollectionRef.document(postId);
+        tracedRead("migrateLegacyComments", postDocRef.get()).addOnCompleteListener(task -> {
+            if (!task.isSuccessful() || task.getResult() == null) {
+                Log.e("DatabaseManager", "Error fetching legacy comments", task.getException());
+                if (listener != null) {
+                    listener.onLegacyCommentsMigrated(-1);
+                }
+                return;
+            }
+            Object legacy = task.getResult().get(LEGACY_COMMENTS_FIELD);
+            if (!(legacy instanceof List<?>) || ((List<?>) legacy).isEmpty()) {
+                if (listener != null) {
+                    listener.onLegacyCommentsMigrated(0);
+                }
+                return;
+            }
+
+            List<Map<String, Object>> entries = new ArrayList<>();
+            for (Object element : (List<?>) legacy) {
+                if (element instanceof Map && ((Map<?, ?>) element).get(COMMENT_ID_FIELD) instanceof String) {
+                    Map<String, Object> stored = (Map<String, Object>) element;
+                    HashMap<String, Object> entry = new HashMap<>();
+                    for (String field : new String[] { COMMENT_ID_FIELD, COMMENT_PROFILE_FIELD, COMMENT_DATE_TIME_FIELD, COMMENT_TEXT_FIELD }) {
+                        entry.put(field, stored.get(field));
+                    }
+                    entries.add(entry);
+                }
+            }
+
+            // The array and count are only changed by the last batch, once every comment is copied
+            List<List<Map<String, Object>>> chunks = ShardedFeedQuery.partition(entries, MAX_BATCH_WRITES - 1);
+            List<Task<Void>> commits = new ArrayList<>();
+            for (int i = 0; i < chunks.size(); i++) {
+                WriteBatch batch = firestoreDb.batch();
+                for (Map<String, Object> entry : chunks.get(i)) {
+                    batch.set(getCommentsCollectionRef(postId).document((String) entry.get(COMMENT_ID_FIELD)), entry);
+                }
+                boolean last = i == chunks.size() - 1;
+                if (last) {
+                    batch.update(postDocRef, COMMENT_COUNT_FIELD, FieldValue.increment(entries.size()),
+                            LEGACY_COMMENTS_FIELD, FieldValue.delete());
+                }
+                commits.add(tracedWrite("migrateLegacyComments", batch.commit(), chunks.get(i).size() + (last ? 1 : 0)));
+            }
+            if (chunks.isEmpty()) {
+                commits.add(tracedWrite("migrateLegacyComments", postDocRef.update(LEGACY_COMMENTS_FIELD, FieldValue.delete()), 1));
+            }
+
+            Tasks.whenAll(commits).addOnCompleteListener(done -> {
+                if (done.isSuccessful()) {
+                    Log.d("DatabaseManager", "Moved " + entries.size() + " comments of post " + postId);
+                } else {
+                    Log.e("DatabaseManager", "Error moving legacy comments", done.getException());
+                }
+                if (listener != null) {
+                    listener.onLegacyCommentsMigrated(done.isSuccessful() ? entries.size() : -1);
+                }
+            });
+        });
+    }
+
+    // Image Management
+
+    /**
+     * Returns the ID of the document holding one variant of an image.
+     *
+     * @param hash    The content hash of the image.
+     * @param variant The variant, see ImageStore.
+     * @return The document ID in the images collection.
+     */
+    public static String imageDocumentId(@NotNull String hash, @NotNull String variant) {
+        return hash + "_" + variant;
+    }
+
+    /**
+     * Stores the variants of an image, each in its own document of the images collection.
+     * Documents are named after the content hash, so storing the same image twice writes the
+     * same documents and posts with the same image share them.
+     *
+     * @param hash     The content hash of the image.
+     * @param variants The encoded bytes of each variant, keyed by variant name.
+     * @param listener An optional listener to handle success or failure.
+     */
+    public void addImage(@NotNull String hash, @NotNull Map<String, byte[]> variants, @Nullable OnImageAddedListener listener) {
+        WriteBatch batch = firestoreDb.batch();
+        for (Map.Entry<String, byte[]> variant : variants.entrySet()) {
+            if (variant.getValue().length > MAX_IMAGE_BYTES) {
+                Log.e("DatabaseManager", "Image variant " + variant.getKey() + " is too large to store");
+                if (listener != null) {
+                    listener.onImageAdded(false);
+                }
+                return;
+            }
+
+            Map<String, Object> data = new HashMap<>();
+            data.put(IMAGE_HASH_FIELD, hash);
+            data.put(IMAGE_VARIANT_FIELD, variant.getKey());
+            data.put(IMAGE_DATA_FIELD, Blob.fromBytes(variant.getValue()));
+            batch.set(imagesCollectionRef.document(imageDocumentId(hash, variant.getKey())), data);
+        }
 
-                    for (DocumentReference followerRef : followersRef) {
-                        followerRef.update(DocumentReferences.NOTIFICATION_POSTS.getDocRefString(),
-                                FieldValue.arrayUnion(postDocRef));
+        tracedWrite("addImage", batch.commit(), variants.size())
+                .addOnSuccessListener(unused -> {
+                    Log.d("DatabaseManager", "Image stored: " + hash);
+                    if (listener != null) {
+                        listener.onImageAdded(true);
+                    }
+                })
+                .addOnFailureListener(e -> {
+                    defaultFailureHandler(e);
+                    if (listener != null) {
+                        listener.onImageAdded(false);
                     }
+                });
+    }
+
+    /**
+     * Fetches one variant of an image.
+     *
+     * @param hash     The content hash of the image.
+     * @param variant  The variant to fetch.
+     * @param listener The listener that will receive the encoded bytes, or null if the variant is missing.
+     */
+    public void getImage(@NotNull String hash, @NotNull String variant, OnImageFetchListener listener) {
+        // Traced here rather than by tracedRead, the bytes are only copied out of the blob once
+        DatabaseTracer.Span span = tracer.start("getImage");
+        imagesCollectionRef.document(imageDocumentId(hash, variant)).get().addOnCompleteListener(task -> {
+            if (!task.isSuccessful() || task.getResult() == null) {
+                span.fail(task.getException());
+            }
+            Blob data = null;
+            if (task.isSuccessful() && task.getResult() != null && task.getResult().exists()) {
+                data = task.getResult().getBlob(IMAGE_DATA_FIELD);
+            }
+            if (data == null) {
+                if (task.isSuccessful() && task.getResult() != null) {
+                    span.finish(1, 0, 0, task.getResult().getMetadata().isFromCache());
                 }
+                Log.e("DatabaseManager", "Error fetching image " + imageDocumentId(hash, variant), task.getException());
+                listener.onImageFetched(null);
+            } else {
+                byte[] bytes = data.toBytes();
+                span.finish(1, 0, bytes.length, task.getResult().getMetadata().isFromCache());
+                listener.onImageFetched(bytes);
             }
         });
     }
@@ -941,11 +2494,27 @@ public final class DatabaseManager {
     }
 
     /**
-     * Callback interface for fetching a user's followers.
-     * Implement this interface to handle the fetched user data.
+     * Callback interface for fetching a page of a user's followers or followings.
+     * Implement this interface to handle the fetched profiles and where the next page starts.
+     */
+    public interface OnFollowPageFetchListener {
+        void onFollowPageFetched(@Nullable ArrayList<Profile> profiles, @Nullable DocumentSnapshot last, boolean hasMore);
+    }
+
+    /**
+     * Callback interface for moving the follows of older users into follow entries.
+     * Implement this interface to handle the number of moved follows.
+     */
+    public interface OnLegacyFollowsMigratedListener {
+        void onLegacyFollowsMigrated(int migrated);
+    }
+
+    /**
+     * Callback interface for fetching a single post.
+     * Implement this interface to handle the fetched post.
      */
-    public interface OnFollowersFetchListener {
-        void onFollowersFetched(ArrayList<Profile> followers);
+    public interface OnPostFetchListener {
+        void onPostFetched(@Nullable MoodPost post);
     }
 
     /**
@@ -956,6 +2525,14 @@ public final class DatabaseManager {
         void onPostsFetched(ArrayList<MoodPost> posts);
     }
 
+    /**
+     * Callback interface for fetching the IDs of the users someone follows.
+     * Implement this interface to handle the fetched user IDs.
+     */
+    public interface OnFollowingIdsFetchListener {
+        void onFollowingIdsFetched(ArrayList<String> followingUserIds);
+    }
+
     /**
      * Callback interface for fetching posts from multiple users.
      * Implement this interface to handle the fetched posts.
@@ -972,6 +2549,39 @@ public final class DatabaseManager {
         void onNotificationsFetchListener(ArrayList<MoodPost> posts, ArrayList<HashMap<String, Object>> requests);
     }
 
+    /**
+     * Callback interface for fetching a page of a user's notification inbox.
+     * Implement this interface to handle the fetched notifications.
+     */
+    public interface OnNotificationsPageFetchListener {
+        void onNotificationsPageFetched(@Nullable ArrayList<Notification> notifications,
+                                        @Nullable DocumentSnapshot last, boolean hasMore);
+    }
+
+    /**
+     * Callback interface for fetching a page of comments.
+     * Implement this interface to handle the fetched comments and where the next page starts.
+     */
+    public interface OnCommentsPageFetchListener {
+        void onCommentsPageFetched(@Nullable ArrayList<Comment> comments, @Nullable DocumentSnapshot last, boolean hasMore);
+    }
+
+    /**
+     * Callback interface for adding or deleting a comment.
+     * Implement this interface to handle the success or failure of the change.
+     */
+    public interface OnCommentUpdatedListener {
+        void onCommentUpdated(boolean success);
+    }
+
+    /**
+     * Callback interface for moving the comments of older posts into their subcollection.
+     * Implement this interface to handle the number of moved comments.
+     */
+    public interface OnLegacyCommentsMigratedListener {
+        void onLegacyCommentsMigrated(int migrated);
+    }
+
     /**
      * Callback interface for checking if a user is following another user.
      * Implement this interface to handle the fetched boolean.
@@ -989,6 +2599,36 @@ public final class DatabaseManager {
         void onPostAdded(boolean success);
     }
 
+    /**
+     * Callback interface for accepting, rejecting or removing a follow.
+     * Implement this interface to handle the success or failure of the whole change.
+     */
+    public interface OnFollowUpdatedListener {
+        void onFollowUpdated(boolean success);
+    }
+
+    /**
+     * Callback interface for backfilling the geohash of posts.
+     * Implement this interface to handle the number of updated posts.
+     */
+    public interface OnGeohashBackfillListener {
+        void onGeohashBackfilled(int updated);
+    }
+
+    /**
+     * Callback interface for fetching the mood statistics of a user.
+     */
+    public interface OnMoodStatsFetchListener {
+        void onMoodStatsFetched(@Nullable MoodStats stats);
+    }
+
+    /**
+     * Callback interface for rebuilding the mood statistics of a user.
+     */
+    public interface OnMoodStatsBackfillListener {
+        void onMoodStatsBackfilled(int counted);
+    }
+
     /**
      * Callback interface for updating a post.
      * Implement this interface to handle the success or failure of updating a post.
@@ -1004,4 +2644,20 @@ public final class DatabaseManager {
     public interface OnPostDeletedListener {
         void onPostDeleted(boolean success);
     }
-}
\ No newline at end of file
+
+    /**
+     * Callback interface for storing an image.
+     * Implement this interface to handle the success or failure of storing an image.
+     */
+    public interface OnImageAddedListener {
+        void onImageAdded(boolean success);
+    }
+
+    /**
+     * Callback interface for fetching an image.
+     * Implement this interface to handle the fetched image bytes.
+     */
+    public interface OnImageFetchListener {
+        void onImageFetched(@Nullable byte[] data);
+    }
+}
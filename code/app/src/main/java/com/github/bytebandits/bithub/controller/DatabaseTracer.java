@@ -0,0 +1,422 @@
+package com.github.bytebandits.bithub.controller;
+
+import android.os.SystemClock;
+
+import androidx.annotation.Nullable;
+
+import com.google.firebase.firestore.DocumentReference;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.LongSupplier;
+
+/**
+ * DatabaseTracer class that records every request DatabaseManager makes to the database: the
+ * operation that made it, the screen that was shown, how long it took, how many documents it
+ * read and wrote, about how many bytes they held, whether it was answered from the offline
+ * cache and whether it failed. The last traces are kept in a ring buffer, and totals with a
+ * latency histogram are kept by operation and by screen for the debug screen. Other sinks can
+ * be plugged in with addListener.
+ */
+public final class DatabaseTracer {
+    public static final int RING_CAPACITY = 500;
+    // Upper bounds of the latency histogram buckets in ms, the last bucket holds everything slower
+    static final long[] LATENCY_BUCKETS_MS = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000 };
+    public static final String NO_SCREEN = "none";
+
+    private static DatabaseTracer instance;
+
+    private final Trace[] ring = new Trace[RING_CAPACITY];
+    private int ringNext = 0;
+    private int ringSize = 0;
+    private final Map<String, Stats> operationStats = new LinkedHashMap<>();
+    private final Map<String, Stats> screenStats = new LinkedHashMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private volatile String screen = NO_SCREEN;
+    private volatile boolean estimatingBytes = false;
+    private final LongSupplier clock;
+
+    /**
+     * Creates a tracer. The app shares the one of getInstance.
+     *
+     * @param clock A monotonic clock in milliseconds that latencies are measured with.
+     */
+    public DatabaseTracer(@NotNull LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    public static synchronized DatabaseTracer getInstance() {
+        if (instance == null) {
+            instance = new DatabaseTracer(SystemClock::elapsedRealtime);
+        }
+        return instance;
+    }
+
+    /**
+     * Sets the screen that requests made from now on are attributed to.
+     */
+    public void setScreen(@NotNull String screen) {
+        this.screen = screen;
+    }
+
+    public String getScreen() {
+        return screen;
+    }
+
+    /**
+     * Sets whether the bytes of the documents read are estimated. Estimating walks every field
+     * of every document on the thread the request completed on, usually the main thread, so
+     * only debug builds turn it on and other builds trace 0 bytes.
+     */
+    public void setEstimatingBytes(boolean estimatingBytes) {
+        this.estimatingBytes = estimatingBytes;
+    }
+
+    public boolean isEstimatingBytes() {
+        return estimatingBytes;
+    }
+
+    /**
+     * Starts timing a request of an operation. The span captures the current screen, so a
+     * request finishing after the user moved on is still attributed to the screen that made it.
+     *
+     * @param operation The name of the DatabaseManager operation making the request.
+     * @return The span to finish once the request completes.
+     */
+    public Span start(@NotNull String operation) {
+        return new Span(operation, screen, clock.getAsLong());
+    }
+
+    /**
+     * Adds a sink that receives every trace, on the thread the request completed on.
+     */
+    public void addListener(@NotNull Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(@NotNull Listener listener) {
+        listeners.remove(listener);
+    }
+
+    void record(@NotNull Trace trace) {
+        synchronized (this) {
+            ring[ringNext] = trace;
+            ringNext = (ringNext + 1) % RING_CAPACITY;
+            ringSize = Math.min(ringSize + 1, RING_CAPACITY);
+            statsOf(operationStats, trace.operation).add(trace);
+            statsOf(screenStats, trace.screen).add(trace);
+        }
+        for (Listener listener : listeners) {
+            listener.onTrace(trace);
+        }
+    }
+
+    private static Stats statsOf(Map<String, Stats> stats, String name) {
+        Stats named = stats.get(name);
+        if (named == null) {
+            named = new Stats(name);
+            stats.put(name, named);
+        }
+        return named;
+    }
+
+    /**
+     * Returns the traces in the ring buffer, newest first.
+     */
+    public synchronized List<Trace> getRecentTraces() {
+        List<Trace> traces = new ArrayList<>(ringSize);
+        for (int i = 1; i <= ringSize; i++) {
+            traces.add(ring[(ringNext - i + RING_CAPACITY) % RING_CAPACITY]);
+        }
+        return traces;
+    }
+
+    /**
+     * Returns copies of the totals of each operation, in the order they were first traced.
+     */
+    public synchronized List<Stats> getOperationStats() {
+        return copyOf(operationStats);
+    }
+
+    /**
+     * Returns copies of the totals of each screen, in the order they were first traced.
+     */
+    public synchronized List<Stats> getScreenStats() {
+        return copyOf(screenStats);
+    }
+
+    private static List<Stats> copyOf(Map<String, Stats> stats) {
+        List<Stats> copies = new ArrayList<>(stats.size());
+        for (Stats named : stats.values()) {
+            copies.add(named.copy());
+        }
+        return copies;
+    }
+
+    public synchronized void reset() {
+        ringNext = 0;
+        ringSize = 0;
+        operationStats.clear();
+        screenStats.clear();
+    }
+
+    /**
+     * Exports the ring buffer as tab separated values with a header line, oldest first.
+     */
+    public String export() {
+        List<Trace> traces = getRecentTraces();
+        StringBuilder tsv = new StringBuilder("time\toperation\tscreen\tlatency ms\treads\twrites\tbytes\tcache\terror\n");
+        for (int i = traces.size() - 1; i >= 0; i--) {
+            Trace trace = traces.get(i);
+            tsv.append(trace.timeMs).append('\t')
+                    .append(trace.operation).append('\t')
+                    .append(trace.screen).append('\t')
+                    .append(trace.latencyMs).append('\t')
+                    .append(trace.reads).append('\t')
+                    .append(trace.writes).append('\t')
+                    .append(trace.bytes).append('\t')
+                    .append(trace.fromCache).append('\t')
+                    .append(trace.error != null ? trace.error : "").append('\n');
+        }
+        return tsv.toString();
+    }
+
+    /**
+     * Estimates the size of a document field as Firestore counts storage: strings by their
+     * UTF-8 bytes plus one, numbers, dates and booleans by their fixed sizes, and maps and
+     * arrays by the sum of their entries. Firestore does not report how many bytes a request
+     * transferred, so this is what traces count. Blobs are not copied out to be measured, so
+     * they count as a fixed size, and the operations reading them report their size themselves.
+     *
+     * @param value The value of a field, or the fields of a document.
+     * @return The estimated size in bytes.
+     */
+    public static long estimateBytes(@Nullable Object value) {
+        if (value == null || value instanceof Boolean) {
+            return 1;
+        }
+        if (value instanceof String) {
+            return ((String) value).getBytes(StandardCharsets.UTF_8).length + 1;
+        }
+        if (value instanceof Map) {
+            long bytes = 0;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                bytes += estimateBytes(String.valueOf(entry.getKey())) + estimateBytes(entry.getValue());
+            }
+            return bytes;
+        }
+        if (value instanceof List) {
+            long bytes = 0;
+            for (Object element : (List<?>) value) {
+                bytes += estimateBytes(element);
+            }
+            return bytes;
+        }
+        if (value instanceof DocumentReference) {
+            return estimateBytes(((DocumentReference) value).getPath());
+        }
+        if (value instanceof byte[]) {
+            return ((byte[]) value).length;
+        }
+        return 8; // Numbers, dates, timestamps and the rest
+    }
+
+    /**
+     * A request being timed. Each span is finished once.
+     */
+    public final class Span {
+        private final String operation;
+        private final String screen;
+        private final long startedAtMs;
+
+        private Span(String operation, String screen, long startedAtMs) {
+            this.operation = operation;
+            this.screen = screen;
+            this.startedAtMs = startedAtMs;
+        }
+
+        /**
+         * Records a request that succeeded.
+         *
+         * @param reads     The number of documents it read.
+         * @param writes    The number of documents it wrote.
+         * @param bytes     The estimated bytes of the documents read or written.
+         * @param fromCache Whether it was answered from the offline cache.
+         */
+        public void finish(int reads, int writes, long bytes, boolean fromCache) {
+            record(new Trace(operation, screen, System.currentTimeMillis(), clock.getAsLong() - startedAtMs,
+                    reads, writes, bytes, fromCache, null));
+        }
+
+        /**
+         * Records a request that failed.
+         *
+         * @param error What went wrong, e.g. the exception.
+         */
+        public void fail(@Nullable Object error) {
+            record(new Trace(operation, screen, System.currentTimeMillis(), clock.getAsLong() - startedAtMs,
+                    0, 0, 0, false, error != null ? error.toString() : "failed"));
+        }
+    }
+
+    /**
+     * One request to the database
+     */
+    public static final class Trace {
+        public final String operation;
+        public final String screen;
+        public final long timeMs; // When it completed
+        public final long latencyMs;
+        public final int reads;
+        public final int writes;
+        public final long bytes;
+        public final boolean fromCache;
+        @Nullable
+        public final String error; // Null if it succeeded
+
+        Trace(String operation, String screen, long timeMs, long latencyMs, int reads, int writes, long bytes,
+              boolean fromCache, @Nullable String error) {
+            this.operation = operation;
+            this.screen = screen;
+            this.timeMs = timeMs;
+            this.latencyMs = latencyMs;
+            this.reads = reads;
+            this.writes = writes;
+            this.bytes = bytes;
+            this.fromCache = fromCache;
+            this.error = error;
+        }
+
+        public boolean isFailed() {
+            return error != null;
+        }
+
+        /**
+         * Returns the reads Firestore bills for the request. Reads answered from the cache are
+         * free, and a query that matches nothing still costs one read. Writes bill no reads.
+         */
+        public int getBilledReads() {
+            if (fromCache || isFailed() || writes > 0) {
+                return 0;
+            }
+            return Math.max(1, reads);
+        }
+    }
+
+    /**
+     * Totals of the requests of an operation or a screen
+     */
+    public static final class Stats {
+        public final String name;
+        private final long[] latencyCounts = new long[LATENCY_BUCKETS_MS.length + 1];
+        private long requests;
+        private long failures;
+        private long reads;
+        private long billedReads;
+        private long cacheHits;
+        private long writes;
+        private long bytes;
+
+        Stats(String name) {
+            this.name = name;
+        }
+
+        void add(Trace trace) {
+            requests++;
+            latencyCounts[bucketOf(trace.latencyMs)]++;
+            if (trace.isFailed()) {
+                failures++;
+                return;
+            }
+            reads += trace.reads;
+            billedReads += trace.getBilledReads();
+            writes += trace.writes;
+            bytes += trace.bytes;
+            if (trace.fromCache) {
+                cacheHits++;
+            }
+        }
+
+        private static int bucketOf(long latencyMs) {
+            for (int i = 0; i < LATENCY_BUCKETS_MS.length; i++) {
+                if (latencyMs <= LATENCY_BUCKETS_MS[i]) {
+                    return i;
+                }
+            }
+            return LATENCY_BUCKETS_MS.length;
+        }
+
+        Stats copy() {
+            Stats copy = new Stats(name);
+            System.arraycopy(latencyCounts, 0, copy.latencyCounts, 0, latencyCounts.length);
+            copy.requests = requests;
+            copy.failures = failures;
+            copy.reads = reads;
+            copy.billedReads = billedReads;
+            copy.cacheHits = cacheHits;
+            copy.writes = writes;
+            copy.bytes = bytes;
+            return copy;
+        }
+
+        /**
+         * Returns the upper bound of the histogram bucket holding the given percentile of the
+         * latencies, or -1 if the requests are slower than the last bound (or there are none).
+         *
+         * @param percentile The percentile, between 0 and 100.
+         * @return The latency in ms.
+         */
+        public long getLatencyPercentileMs(double percentile) {
+            long rank = (long) Math.ceil(percentile / 100 * requests);
+            long seen = 0;
+            for (int i = 0; i < LATENCY_BUCKETS_MS.length; i++) {
+                seen += latencyCounts[i];
+                if (seen >= Math.max(1, rank)) {
+                    return LATENCY_BUCKETS_MS[i];
+                }
+            }
+            return -1;
+        }
+
+        public long getRequests() {
+            return requests;
+        }
+
+        public long getFailures() {
+            return failures;
+        }
+
+        public long getReads() {
+            return reads;
+        }
+
+        public long getBilledReads() {
+            return billedReads;
+        }
+
+        public long getCacheHits() {
+            return cacheHits;
+        }
+
+        public long getWrites() {
+            return writes;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+    }
+
+    /**
+     * Callback interface for receiving traces.
+     */
+    public interface Listener {
+        void onTrace(@NotNull Trace trace);
+    }
+}
@@ -0,0 +1,96 @@
+package com.github.bytebandits.bithub.controller;
+
+import com.github.bytebandits.bithub.model.MoodPost;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DebouncedSearch class that runs the searches of a {@link SearchIndex} on a background thread
+ * once the user stops typing. Each query cancels the one before it, and results are only handed
+ * back if no other query was made since, so a slow search never replaces newer results.
+ */
+public class DebouncedSearch {
+    /** Time to wait after a keystroke before searching. */
+    public static final long DEFAULT_DELAY_MS = 150;
+
+    private final SearchIndex index;
+    private final Executor callbackExecutor;
+    private final long delayMs;
+    private final ScheduledExecutorService searchExecutor = Executors.newSingleThreadScheduledExecutor();
+    private ScheduledFuture<?> pending;
+    private long generation = 0; // Incremented by every query, results of older ones are dropped
+
+    /**
+     * @param index            The index to search.
+     * @param callbackExecutor Where results are handed back, e.g. the main thread's Handler::post.
+     */
+    public DebouncedSearch(@NotNull SearchIndex index, @NotNull Executor callbackExecutor) {
+        this(index, callbackExecutor, DEFAULT_DELAY_MS);
+    }
+
+    public DebouncedSearch(@NotNull SearchIndex index, @NotNull Executor callbackExecutor, long delayMs) {
+        this.index = index;
+        this.callbackExecutor = callbackExecutor;
+        this.delayMs = delayMs;
+    }
+
+    /**
+     * Searches once no other query is made for the delay.
+     *
+     * @param query    The text typed.
+     * @param listener The listener that will receive the matching posts, best first.
+     */
+    public synchronized void search(@NotNull String query, OnSearchResultsListener listener) {
+        cancel();
+        if (searchExecutor.isShutdown()) {
+            return;
+        }
+        long searched = generation;
+        pending = searchExecutor.schedule(() -> {
+            List<MoodPost> results = index.search(query);
+            callbackExecutor.execute(() -> {
+                if (isLatest(searched)) {
+                    listener.onSearchResults(results);
+                }
+            });
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Drops the pending query and the results of any query already running, e.g. when the
+     * search box is cleared.
+     */
+    public synchronized void cancel() {
+        if (pending != null) {
+            pending.cancel(false);
+            pending = null;
+        }
+        generation++;
+    }
+
+    private synchronized boolean isLatest(long searched) {
+        return searched == generation;
+    }
+
+    /**
+     * Drops the pending query and stops the background thread. Later queries are ignored.
+     */
+    public void shutdown() {
+        cancel();
+        searchExecutor.shutdownNow();
+    }
+
+    /**
+     * Callback interface for search results.
+     */
+    public interface OnSearchResultsListener {
+        void onSearchResults(List<MoodPost> posts);
+    }
+}
@@ -0,0 +1,100 @@
+package com.github.bytebandits.bithub.controller;
+
+/**
+ * DensityGrid class that lays out the mood heatmap. The world is cut into the same square tiles
+ * as the map at a few aggregation levels, and each tile into buckets. Every located public post
+ * adds one to the count of its emotion in the bucket it falls in at each level, so a tile holds
+ * the density of a whole region in a single small document.
+ */
+public final class DensityGrid {
+    /** Map zoom levels tiles are aggregated at. A map tile is drawn from the closest level below it. */
+    public static final int[] LEVELS = { 2, 6, 10, 14 };
+    /** Number of buckets along each side of a tile. */
+    public static final int BUCKETS_PER_SIDE = 16;
+
+    // Web Mercator stops at this latitude
+    private static final double MAX_LATITUDE = 85.05112878;
+
+    private DensityGrid() {}
+
+    /**
+     * Returns the aggregation level to draw a map tile from.
+     *
+     * @param zoom The zoom of the map tile.
+     * @return The highest level not above the zoom, or the lowest level when the zoom is below all.
+     */
+    public static int levelFor(int zoom) {
+        int level = LEVELS[0];
+        for (int candidate : LEVELS) {
+            if (candidate <= zoom) {
+                level = candidate;
+            }
+        }
+        return level;
+    }
+
+    /**
+     * Returns the ID of the tile document at a level and tile coordinates.
+     */
+    public static String tileId(int level, int x, int y) {
+        return level + "_" + x + "_" + y;
+    }
+
+    /**
+     * Returns the coordinates of the tile a location is in at a level.
+     *
+     * @return The x and y of the tile.
+     */
+    public static int[] tileAt(int level, double latitude, double longitude) {
+        long scale = 1L << level;
+        return new int[] { (int) cell(worldX(longitude), scale), (int) cell(worldY(latitude), scale) };
+    }
+
+    /**
+     * Returns the bucket a location is in within its tile at a level.
+     *
+     * @return The index of the bucket, row by row from the north west corner.
+     */
+    public static int bucketAt(int level, double latitude, double longitude) {
+        long scale = (1L << level) * BUCKETS_PER_SIDE;
+        int column = (int) (cell(worldX(longitude), scale) % BUCKETS_PER_SIDE);
+        int row = (int) (cell(worldY(latitude), scale) % BUCKETS_PER_SIDE);
+        return row * BUCKETS_PER_SIDE + column;
+    }
+
+    /**
+     * Returns the center of a bucket in world coordinates, where the map spans 0 to 1 both ways.
+     *
+     * @return The x and y of the center.
+     */
+    public static double[] bucketCenter(int level, int tileX, int tileY, int bucket) {
+        double scale = (double) (1L << level) * BUCKETS_PER_SIDE;
+        int column = bucket % BUCKETS_PER_SIDE;
+        int row = bucket / BUCKETS_PER_SIDE;
+        return new double[] {
+                (tileX * BUCKETS_PER_SIDE + column + 0.5) / scale,
+                (tileY * BUCKETS_PER_SIDE + row + 0.5) / scale
+        };
+    }
+
+    /**
+     * Returns the size of a bucket in world coordinates.
+     */
+    public static double bucketSize(int level) {
+        return 1.0 / ((double) (1L << level) * BUCKETS_PER_SIDE);
+    }
+
+    public static double worldX(double longitude) {
+        return (longitude + 180) / 360;
+    }
+
+    public static double worldY(double latitude) {
+        double sin = Math.sin(Math.toRadians(Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, latitude))));
+        return 0.5 - Math.log((1 + sin) / (1 - sin)) / (4 * Math.PI);
+    }
+
+    // The index of the cell a world coordinate is in, when the world is cut into scale cells
+    private static long cell(double world, long scale) {
+        return Math.max(0, Math.min(scale - 1, (long) Math.floor(world * scale)));
+    }
+}
@@ -0,0 +1,163 @@
+package com.github.bytebandits.bithub.controller;
+
+import androidx.annotation.Nullable;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * DocumentStore interface that the read paths of DatabaseManager go through. The app backs it
+ * with {@link FirestoreDocumentStore}. Tests back it with an in-process store, so the feed,
+ * profile, notification and search reads can be measured without the emulator. Every call is
+ * one round trip to the database. References between documents are given as their paths,
+ * e.g. "posts/{postId}".
+ */
+public interface DocumentStore {
+    /**
+     * Fetches one document.
+     *
+     * @param collection The path of its collection.
+     * @param id         The ID of the document.
+     * @param listener   The listener that will receive the document, which may not exist (null on failure).
+     */
+    void getDocument(@NotNull String collection, @NotNull String id, OnDocumentFetchListener listener);
+
+    /**
+     * Fetches the documents of a collection with the given IDs. Documents that do not exist are
+     * left out, and the rest come back in no particular order.
+     *
+     * @param collection The path of their collection.
+     * @param ids        The IDs of the documents, at most {@link ShardedFeedQuery#MAX_IN_CLAUSE_SIZE}.
+     * @param listener   The listener that will receive the documents (null on failure).
+     */
+    void getDocuments(@NotNull String collection, @NotNull List<String> ids, OnDocumentsFetchListener listener);
+
+    /**
+     * Runs a query.
+     *
+     * @param query    The query.
+     * @param listener The listener that will receive the matching documents in query order (null on failure).
+     */
+    void query(@NotNull StoreQuery query, OnDocumentsFetchListener listener);
+
+    /**
+     * Returns the ID at the end of a document path.
+     */
+    static String idOf(@NotNull String path) {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * Returns the collection path of a document path.
+     */
+    static String collectionOf(@NotNull String path) {
+        int slash = path.lastIndexOf('/');
+        return slash < 0 ? "" : path.substring(0, slash);
+    }
+
+    /**
+     * A document read from the store
+     */
+    interface StoredDocument {
+        String getId();
+
+        String getPath();
+
+        boolean exists();
+
+        /**
+         * Returns whether the document was read from the offline cache rather than the server.
+         */
+        boolean isFromCache();
+
+        /**
+         * Returns a field, where nested fields are separated by dots.
+         */
+        @Nullable
+        Object get(@NotNull String field);
+
+        @Nullable
+        Date getDate(@NotNull String field);
+
+        /**
+         * Returns the paths of an array of references, or an empty list if there is none.
+         */
+        List<String> getReferencePaths(@NotNull String field);
+
+        @Nullable
+        Map<String, Object> getData();
+
+        @Nullable
+        <T> T toObject(@NotNull Class<T> type);
+    }
+
+    /**
+     * A query on one collection, limited to what the read paths of DatabaseManager use
+     */
+    final class StoreQuery {
+        public final String collection;
+        public final Map<String, Object> equalTo = new LinkedHashMap<>();
+        public String inField;
+        public List<Object> inValues;
+        public String orderByField;
+        public boolean descending;
+        public Object startAt; // Inclusive bounds on the order by field
+        public Object endAt;
+        public int limit = -1;
+
+        public StoreQuery(@NotNull String collection) {
+            this.collection = collection;
+        }
+
+        public StoreQuery whereEqualTo(@NotNull String field, Object value) {
+            equalTo.put(field, value);
+            return this;
+        }
+
+        public StoreQuery whereIn(@NotNull String field, @NotNull List<?> values) {
+            inField = field;
+            inValues = new ArrayList<>(values);
+            return this;
+        }
+
+        public StoreQuery orderBy(@NotNull String field, boolean descending) {
+            orderByField = field;
+            this.descending = descending;
+            return this;
+        }
+
+        public StoreQuery startAt(Object value) {
+            startAt = value;
+            return this;
+        }
+
+        public StoreQuery endAt(Object value) {
+            endAt = value;
+            return this;
+        }
+
+        public StoreQuery limit(int limit) {
+            this.limit = limit;
+            return this;
+        }
+    }
+
+    /**
+     * Callback interface for fetching one document.
+     */
+    interface OnDocumentFetchListener {
+        void onDocumentFetched(@Nullable StoredDocument document);
+    }
+
+    /**
+     * Callback interface for fetching several documents.
+     */
+    interface OnDocumentsFetchListener {
+        void onDocumentsFetched(@Nullable List<StoredDocument> documents);
+    }
+}
@@ -0,0 +1,158 @@
+package com.github.bytebandits.bithub.controller;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.github.bytebandits.bithub.model.MoodPost;
+import com.google.firebase.firestore.ListenerRegistration;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * FeedPaginator class that loads the home feed one fixed-size page at a time.
+ * Posts are ordered by posted date on the server and each page resumes after the
+ * last snapshot of the previous one, so only the pages that are scrolled to get downloaded.
+ * The followed users are sharded through {@link ShardedFeedQuery}, so any number of
+ * followings is supported.
+ */
+public class FeedPaginator {
+    public static final int DEFAULT_PAGE_SIZE = 20;
+
+    private final String userId;
+    private final int pageSize;
+    private List<String> followingUserIds;
+    private ShardedFeedQuery feedQuery;
+    private boolean loading = false;
+    private boolean exhausted = false;
+    private int generation = 0;
+
+    /**
+     * Constructs a paginator over the public posts of the users that the given user follows.
+     *
+     * @param userId   The ID of the user whose feed is being paginated.
+     * @param pageSize The number of posts per page.
+     */
+    public FeedPaginator(@NotNull String userId, int pageSize) {
+        this.userId = userId;
+        this.pageSize = pageSize;
+    }
+
+    public FeedPaginator(@NotNull String userId) {
+        this(userId, DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * Loads the next page of the feed. Calls made while a page is already loading, or
+     * after the last page has been reached, are ignored.
+     *
+     * @param listener The listener that will receive the page.
+     */
+    public void loadNextPage(OnPageLoadedListener listener) {
+        if (loading || exhausted) {
+            return;
+        }
+        loading = true;
+        int requestGeneration = generation;
+
+        if (followingUserIds == null) {
+            DatabaseManager.getInstance().getFollowingUserIds(userId, ids -> {
+                if (requestGeneration != generation) {
+                    return;
+                }
+                followingUserIds = ids;
+                fetchPage(requestGeneration, listener);
+            });
+        } else {
+            fetchPage(requestGeneration, listener);
+        }
+    }
+
+    /**
+     * Fetches the page after the current cursors of every shard.
+     *
+     * @param requestGeneration The generation the request was made in, used to drop stale pages.
+     * @param listener          The listener that will receive the page.
+     */
+    private void fetchPage(int requestGeneration, OnPageLoadedListener listener) {
+        if (feedQuery == null) {
+            feedQuery = new ShardedFeedQuery(followingUserIds, pageSize);
+        }
+
+        feedQuery.fetchNextPage((posts, hasMore) -> {
+            if (requestGeneration != generation) {
+                return;
+            }
+            loading = false;
+
+            if (posts == null) {
+                Log.e("FeedPaginator", "Failed to load feed page");
+                listener.onPageLoaded(new ArrayList<>(), hasMore());
+                return;
+            }
+
+            exhausted = !hasMore;
+            listener.onPageLoaded(posts, hasMore());
+        });
+    }
+
+    /**
+     * Listens to the newest page of the feed across every shard.
+     * Must only be called once the first page has been loaded.
+     *
+     * @param listener The listener that will receive the document changes of every snapshot.
+     * @return The registration of the listener, or null if there are no followed users.
+     */
+    @Nullable
+    public ListenerRegistration listenToNewestPage(ShardedFeedQuery.OnPostChangesListener listener) {
+        if (followingUserIds == null || followingUserIds.isEmpty()) {
+            return null;
+        }
+        return new ShardedFeedQuery(followingUserIds, pageSize).listen(pageSize, listener);
+    }
+
+    /**
+     * Discards the cursors and cached followings so the next load starts from the first page.
+     * Pages still in flight from before the reset are dropped.
+     */
+    public void reset() {
+        generation++;
+        followingUserIds = null;
+        feedQuery = null;
+        loading = false;
+        exhausted = false;
+    }
+
+    /**
+     * Returns the IDs of the users whose posts are in the feed.
+     *
+     * @return The followed user IDs, or null if they have not been fetched yet.
+     */
+    @Nullable
+    public List<String> getFollowingUserIds() {
+        return followingUserIds;
+    }
+
+    public boolean isLoading() {
+        return loading;
+    }
+
+    public boolean hasMore() {
+        return !exhausted;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * Callback interface for loading a page of the feed.
+     * Implement this interface to handle the loaded posts.
+     */
+    public interface OnPageLoadedListener {
+        void onPageLoaded(ArrayList<MoodPost> posts, boolean hasMore);
+    }
+}
@@ -0,0 +1,161 @@
+package com.github.bytebandits.bithub.controller;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.Query;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * FirestoreDocumentStore class that backs the DocumentStore of DatabaseManager with Firestore.
+ * Listeners are called on the main thread.
+ */
+public class FirestoreDocumentStore implements DocumentStore {
+    private final FirebaseFirestore firestoreDb;
+
+    public FirestoreDocumentStore(@NotNull FirebaseFirestore firestoreDb) {
+        this.firestoreDb = firestoreDb;
+    }
+
+    @Override
+    public void getDocument(@NotNull String collection, @NotNull String id, OnDocumentFetchListener listener) {
+        firestoreDb.collection(collection).document(id).get().addOnCompleteListener(task -> {
+            if (!task.isSuccessful() || task.getResult() == null) {
+                Log.e("FirestoreDocumentStore", "Error fetching " + collection + "/" + id, task.getException());
+                listener.onDocumentFetched(null);
+                return;
+            }
+            listener.onDocumentFetched(new SnapshotDocument(task.getResult()));
+        });
+    }
+
+    @Override
+    public void getDocuments(@NotNull String collection, @NotNull List<String> ids, OnDocumentsFetchListener listener) {
+        if (ids.isEmpty()) {
+            // Firestore rejects an empty whereIn
+            listener.onDocumentsFetched(new ArrayList<>());
+            return;
+        }
+        run(firestoreDb.collection(collection).whereIn(FieldPath.documentId(), ids), listener);
+    }
+
+    @Override
+    public void query(@NotNull StoreQuery query, OnDocumentsFetchListener listener) {
+        Query firestoreQuery = firestoreDb.collection(query.collection);
+        for (Map.Entry<String, Object> filter : query.equalTo.entrySet()) {
+            firestoreQuery = firestoreQuery.whereEqualTo(filter.getKey(), filter.getValue());
+        }
+        if (query.inField != null) {
+            firestoreQuery = firestoreQuery.whereIn(query.inField, query.inValues);
+        }
+        if (query.orderByField != null) {
+            firestoreQuery = firestoreQuery.orderBy(query.orderByField,
+                    query.descending ? Query.Direction.DESCENDING : Query.Direction.ASCENDING);
+        }
+        if (query.startAt != null) {
+            firestoreQuery = firestoreQuery.startAt(query.startAt);
+        }
+        if (query.endAt != null) {
+            firestoreQuery = firestoreQuery.endAt(query.endAt);
+        }
+        if (query.limit >= 0) {
+            firestoreQuery = firestoreQuery.limit(query.limit);
+        }
+        run(firestoreQuery, listener);
+    }
+
+    private static void run(Query query, OnDocumentsFetchListener listener) {
+        query.get().addOnCompleteListener(task -> {
+            if (!task.isSuccessful() || task.getResult() == null) {
+                Log.e("FirestoreDocumentStore", "Error running query", task.getException());
+                listener.onDocumentsFetched(null);
+                return;
+            }
+            List<StoredDocument> documents = new ArrayList<>();
+            for (DocumentSnapshot snapshot : task.getResult().getDocuments()) {
+                documents.add(new SnapshotDocument(snapshot));
+            }
+            listener.onDocumentsFetched(documents);
+        });
+    }
+
+    /**
+     * A Firestore snapshot read through the DocumentStore
+     */
+    private static class SnapshotDocument implements StoredDocument {
+        private final DocumentSnapshot snapshot;
+
+        SnapshotDocument(DocumentSnapshot snapshot) {
+            this.snapshot = snapshot;
+        }
+
+        @Override
+        public String getId() {
+            return snapshot.getId();
+        }
+
+        @Override
+        public String getPath() {
+            return snapshot.getReference().getPath();
+        }
+
+        @Override
+        public boolean exists() {
+            return snapshot.exists();
+        }
+
+        @Override
+        public boolean isFromCache() {
+            return snapshot.getMetadata().isFromCache();
+        }
+
+        @Nullable
+        @Override
+        public Object get(@NotNull String field) {
+            return snapshot.get(field);
+        }
+
+        @Nullable
+        @Override
+        public Date getDate(@NotNull String field) {
+            return snapshot.getDate(field);
+        }
+
+        @Override
+        public List<String> getReferencePaths(@NotNull String field) {
+            List<String> paths = new ArrayList<>();
+            Object refs = snapshot.get(field);
+            if (refs instanceof List) {
+                for (Object ref : (List<?>) refs) {
+                    if (ref instanceof DocumentReference) {
+                        paths.add(((DocumentReference) ref).getPath());
+                    }
+                }
+            }
+            return paths;
+        }
+
+        @Nullable
+        @Override
+        public Map<String, Object> getData() {
+            return snapshot.getData();
+        }
+
+        @Nullable
+        @Override
+        public <T> T toObject(@NotNull Class<T> type) {
+            return snapshot.toObject(type);
+        }
+    }
+}
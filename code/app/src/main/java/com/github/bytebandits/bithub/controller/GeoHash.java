@@ -0,0 +1,202 @@
+package com.github.bytebandits.bithub.controller;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * GeoHash class that encodes locations as geohashes, base 32 strings where each character
+ * narrows the cell the location is in, so every location inside a cell shares its hash as a
+ * prefix. Posts store the geohash of their location, which lets the map query the few cells
+ * that cover what is on screen with prefix range queries instead of downloading every post.
+ */
+public final class GeoHash {
+    /** Precision of the geohash stored in posts, cells of about 5 m. */
+    public static final int STORED_PRECISION = 9;
+    /** Appended to a prefix to get the end of the range of hashes that start with it. */
+    public static final String PREFIX_RANGE_END = "\uf8ff";
+
+    /** Mean radius of the Earth, used for every distance on the map. */
+    public static final double EARTH_RADIUS_KM = 6371.0088;
+
+    private static final String BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+
+    private GeoHash() {}
+
+    /**
+     * Encodes a location as a geohash.
+     *
+     * @param latitude  The latitude, between -90 and 90.
+     * @param longitude The longitude, between -180 and 180.
+     * @param precision The number of characters of the geohash.
+     * @return The geohash of the cell the location is in.
+     */
+    public static String encode(double latitude, double longitude, int precision) {
+        double minLat = -90, maxLat = 90;
+        double minLng = -180, maxLng = 180;
+        StringBuilder hash = new StringBuilder(precision);
+        boolean evenBit = true;
+        int bit = 0;
+        int ch = 0;
+
+        while (hash.length() < precision) {
+            // Bits alternate between longitude and latitude, starting with longitude
+            if (evenBit) {
+                double mid = (minLng + maxLng) / 2;
+                if (longitude >= mid) {
+                    ch = (ch << 1) | 1;
+                    minLng = mid;
+                } else {
+                    ch = ch << 1;
+                    maxLng = mid;
+                }
+            } else {
+                double mid = (minLat + maxLat) / 2;
+                if (latitude >= mid) {
+                    ch = (ch << 1) | 1;
+                    minLat = mid;
+                } else {
+                    ch = ch << 1;
+                    maxLat = mid;
+                }
+            }
+            evenBit = !evenBit;
+
+            if (++bit == 5) {
+                hash.append(BASE32.charAt(ch));
+                bit = 0;
+                ch = 0;
+            }
+        }
+        return hash.toString();
+    }
+
+    /**
+     * Returns the height in degrees of latitude of the cells of a precision.
+     */
+    public static double cellHeight(int precision) {
+        int latBits = (precision * 5) / 2;
+        return 180 / Math.pow(2, latBits);
+    }
+
+    /**
+     * Returns the width in degrees of longitude of the cells of a precision.
+     */
+    public static double cellWidth(int precision) {
+        int lngBits = (precision * 5 + 1) / 2;
+        return 360 / Math.pow(2, lngBits);
+    }
+
+    /**
+     * Returns the finest precision at which a box is covered by at most maxCells cells.
+     *
+     * @param minLat   The south edge of the box.
+     * @param minLng   The west edge of the box.
+     * @param maxLat   The north edge of the box.
+     * @param maxLng   The east edge of the box.
+     * @param maxCells The most cells the box may be split into.
+     * @return The precision, at least 1.
+     */
+    public static int precisionFor(double minLat, double minLng, double maxLat, double maxLng, int maxCells) {
+        double height = maxLat - minLat;
+        double width = maxLng >= minLng ? maxLng - minLng : maxLng + 360 - minLng;
+        for (int precision = STORED_PRECISION; precision > 1; precision--) {
+            // A box spans at most one cell more than its size divided by the cell size
+            double rows = Math.floor(height / cellHeight(precision)) + 2;
+            double columns = Math.floor(width / cellWidth(precision)) + 2;
+            if (rows * columns <= maxCells) {
+                return precision;
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Returns the geohashes of the cells that together cover a box. A box whose west edge is
+     * east of its east edge crosses the antimeridian.
+     *
+     * @param minLat    The south edge of the box.
+     * @param minLng    The west edge of the box.
+     * @param maxLat    The north edge of the box.
+     * @param maxLng    The east edge of the box.
+     * @param precision The precision of the cells.
+     * @return The geohashes, without duplicates.
+     */
+    public static List<String> cellsCovering(double minLat, double minLng, double maxLat, double maxLng, int precision) {
+        LinkedHashSet<String> cells = new LinkedHashSet<>();
+        if (minLng > maxLng) {
+            addCells(cells, minLat, minLng, maxLat, 180, precision);
+            addCells(cells, minLat, -180, maxLat, maxLng, precision);
+        } else {
+            addCells(cells, minLat, minLng, maxLat, maxLng, precision);
+        }
+        return new ArrayList<>(cells);
+    }
+
+    private static void addCells(LinkedHashSet<String> cells, double minLat, double minLng,
+                                 double maxLat, double maxLng, int precision) {
+        double height = cellHeight(precision);
+        double width = cellWidth(precision);
+        minLat = clamp(minLat, -90, 90);
+        maxLat = clamp(maxLat, -90, 90);
+        minLng = clamp(minLng, -180, 180);
+        maxLng = clamp(maxLng, -180, 180);
+
+        // Step by one cell from the south west corner, then make sure the far edges are covered
+        for (double lat = minLat; ; lat += height) {
+            double rowLat = Math.min(lat, maxLat);
+            for (double lng = minLng; ; lng += width) {
+                double columnLng = Math.min(lng, maxLng);
+                cells.add(encode(rowLat, columnLng, precision));
+                if (columnLng >= maxLng) {
+                    break;
+                }
+            }
+            if (rowLat >= maxLat) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Returns the box around a point that contains every location within a distance of it.
+     *
+     * @param latitude  The latitude of the point.
+     * @param longitude The longitude of the point.
+     * @param radiusKm  The distance in kilometers.
+     * @return The south, west, north and east edges of the box. West is east of east when the
+     *         box crosses the antimeridian.
+     */
+    public static double[] boundsAround(double latitude, double longitude, double radiusKm) {
+        double angle = radiusKm / EARTH_RADIUS_KM;
+        double minLat = latitude - Math.toDegrees(angle);
+        double maxLat = latitude + Math.toDegrees(angle);
+        if (minLat <= -90 || maxLat >= 90) {
+            // The circle contains a pole, so every longitude
+            return new double[] { Math.max(-90, minLat), -180, Math.min(90, maxLat), 180 };
+        }
+
+        // Widest longitude extent of the circle on the sphere, slightly more than the radius
+        // measured along the parallel of the center
+        double sin = Math.sin(angle) / Math.cos(Math.toRadians(latitude));
+        if (sin >= 1) {
+            return new double[] { minLat, -180, maxLat, 180 };
+        }
+        double lngDelta = Math.toDegrees(Math.asin(sin));
+        return new double[] { minLat, wrapLongitude(longitude - lngDelta), maxLat, wrapLongitude(longitude + lngDelta) };
+    }
+
+    private static double wrapLongitude(double longitude) {
+        if (longitude > 180) {
+            return longitude - 360;
+        }
+        if (longitude < -180) {
+            return longitude + 360;
+        }
+        return longitude;
+    }
+
+    private static double clamp(double value, double min, double max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
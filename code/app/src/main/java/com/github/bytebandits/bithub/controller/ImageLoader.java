@@ -0,0 +1,305 @@
+package com.github.bytebandits.bithub.controller;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.DisplayMetrics;
+import android.util.Log;
+import android.util.LruCache;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+
+import androidx.annotation.Nullable;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * ImageLoader class that puts post and profile images into ImageViews without decoding on the
+ * main thread. Images are decoded on a small background pool, downsampled to the size of the
+ * ImageView, and kept in an LruCache sized after the app's memory class, keyed by the content
+ * of the image and the variant, so a replaced image is never shown from the cache. Bitmaps that
+ * leave the cache and no longer show in any view are reused for later decodes instead of
+ * allocating new ones.
+ * All public methods must be called on the main thread.
+ */
+public class ImageLoader {
+    private static final int DECODE_THREADS = 2;
+    private static final int MAX_POOLED_BITMAPS = 8;
+
+    private static ImageLoader instance;
+
+    private final LruCache<String, Bitmap> memoryCache;
+    private final ExecutorService decodeExecutor = Executors.newFixedThreadPool(DECODE_THREADS);
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final DisplayMetrics displayMetrics;
+
+    // Which request each view is waiting for, a view only shows the result of its latest request
+    private final WeakHashMap<ImageView, Object> pendingRequests = new WeakHashMap<>();
+    // Which bitmap each view shows, entries go with their views so bitmaps are not held by views
+    // that were never cleared
+    private final WeakHashMap<ImageView, Bitmap> boundBitmaps = new WeakHashMap<>();
+    private final HashSet<Bitmap> cachedBitmaps = new HashSet<>();
+    // Bitmaps nothing refers to anymore, handed to BitmapFactory as inBitmap. Guarded by itself.
+    private final ArrayList<Bitmap> bitmapPool = new ArrayList<>();
+
+    private ImageLoader(Context context) {
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        int cacheBytes = activityManager.getMemoryClass() * 1024 * 1024 / 8;
+        this.displayMetrics = context.getResources().getDisplayMetrics();
+        this.memoryCache = new LruCache<String, Bitmap>(cacheBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getAllocationByteCount();
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String key, Bitmap oldBitmap, Bitmap newBitmap) {
+                cachedBitmaps.remove(oldBitmap);
+                if (!boundBitmaps.containsValue(oldBitmap)) {
+                    recycleIntoPool(oldBitmap);
+                }
+            }
+        };
+    }
+
+    public static synchronized ImageLoader getInstance(Context context) {
+        if (instance == null) {
+            instance = new ImageLoader(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Shows a variant of an image in a view. While a full size image loads, its thumbnail is
+     * shown if it is already in memory.
+     *
+     * @param view    The view to show the image in.
+     * @param id      The ID of what the image belongs to, such as a post ID.
+     * @param image   The image field, an ImageStore reference or a Base64 image.
+     * @param variant The variant to show, see ImageStore.
+     */
+    public void load(@NotNull ImageView view, @NotNull String id, @NotNull String image, @NotNull String variant) {
+        String cacheKey = cacheKey(id, image, variant);
+        Bitmap cached = memoryCache.get(cacheKey);
+        if (cached != null) {
+            pendingRequests.remove(view);
+            bind(view, cached);
+            return;
+        }
+
+        if (ImageStore.VARIANT_FULL.equals(variant)) {
+            Bitmap thumbnail = memoryCache.get(cacheKey(id, image, ImageStore.VARIANT_THUMBNAIL));
+            if (thumbnail != null) {
+                bind(view, thumbnail);
+            }
+        }
+
+        Object request = new Object();
+        pendingRequests.put(view, request);
+        int[] bounds = targetBounds(view);
+
+        // Legacy images are Base64 decoded by fetchImage, so it is called off the main thread too
+        decodeExecutor.execute(() -> ImageStore.getInstance().fetchImage(image, variant, data -> mainHandler.post(() -> {
+            if (data == null || pendingRequests.get(view) != request) {
+                return;
+            }
+            decodeExecutor.execute(() -> {
+                Bitmap bitmap = decode(data, bounds[0], bounds[1]);
+                mainHandler.post(() -> {
+                    if (bitmap == null) {
+                        return;
+                    }
+                    memoryCache.put(cacheKey, bitmap);
+                    cachedBitmaps.add(bitmap);
+                    if (pendingRequests.get(view) == request) {
+                        pendingRequests.remove(view);
+                        bind(view, bitmap);
+                    }
+                });
+            });
+        })));
+    }
+
+    /**
+     * Shows an encoded image that is not stored anywhere yet, such as a picked file, in a view.
+     * The image is downsampled but not cached.
+     *
+     * @param view The view to show the image in.
+     * @param data The encoded image.
+     */
+    public void load(@NotNull ImageView view, @NotNull byte[] data) {
+        Object request = new Object();
+        pendingRequests.put(view, request);
+        int[] bounds = targetBounds(view);
+
+        decodeExecutor.execute(() -> {
+            Bitmap bitmap = decode(data, bounds[0], bounds[1]);
+            mainHandler.post(() -> {
+                if (bitmap != null && pendingRequests.get(view) == request) {
+                    pendingRequests.remove(view);
+                    bind(view, bitmap);
+                }
+            });
+        });
+    }
+
+    /**
+     * Drops the pending request of a view, such as a list row being recycled, so the decode
+     * result is not shown in it. The view keeps what it currently shows.
+     *
+     * @param view The view.
+     */
+    public void cancel(@NotNull ImageView view) {
+        pendingRequests.remove(view);
+    }
+
+    /**
+     * Cancels the pending request of a view and empties it, so the bitmap it showed can be reused.
+     *
+     * @param view The view.
+     */
+    public void clear(@NotNull ImageView view) {
+        cancel(view);
+        view.setImageDrawable(null);
+        release(boundBitmaps.remove(view));
+    }
+
+    /**
+     * Returns the cache key of a variant of an image. Stored images are keyed by their hash, so
+     * posts sharing an image share its bitmap. Base64 images have no hash, so they are keyed by
+     * what they belong to and a hash of the string, which changes when the image is replaced.
+     *
+     * @param id      The ID of what the image belongs to, such as a post ID.
+     * @param image   The image field, an ImageStore reference or a Base64 image.
+     * @param variant The variant, see ImageStore.
+     * @return The key of the bitmap in the cache.
+     */
+    public static String cacheKey(@NotNull String id, @NotNull String image, @NotNull String variant) {
+        if (ImageStore.isImageRef(image)) {
+            return image + "/" + variant;
+        }
+        return id + "/" + image.length() + "-" + Integer.toHexString(image.hashCode()) + "/" + variant;
+    }
+
+    private void bind(ImageView view, Bitmap bitmap) {
+        Bitmap previous = boundBitmaps.put(view, bitmap);
+        if (previous == bitmap) {
+            return;
+        }
+        view.setImageBitmap(bitmap);
+        release(previous);
+    }
+
+    // Pools a bitmap once no view shows it and the cache no longer holds it
+    private void release(@Nullable Bitmap bitmap) {
+        if (bitmap != null && !boundBitmaps.containsValue(bitmap) && !cachedBitmaps.contains(bitmap)) {
+            recycleIntoPool(bitmap);
+        }
+    }
+
+    private void recycleIntoPool(Bitmap bitmap) {
+        if (!bitmap.isMutable()) {
+            return;
+        }
+        synchronized (bitmapPool) {
+            if (bitmapPool.size() >= MAX_POOLED_BITMAPS) {
+                bitmapPool.remove(0);
+            }
+            bitmapPool.add(bitmap);
+        }
+    }
+
+    // Takes a pooled bitmap big enough to decode into, or returns null
+    @Nullable
+    private Bitmap takeFromPool(int byteCount) {
+        synchronized (bitmapPool) {
+            Iterator<Bitmap> iterator = bitmapPool.iterator();
+            while (iterator.hasNext()) {
+                Bitmap candidate = iterator.next();
+                if (candidate.getAllocationByteCount() >= byteCount) {
+                    iterator.remove();
+                    return candidate;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the size to decode an image at for a view: its laid out size, else its layout
+     * size, else the screen.
+     */
+    private int[] targetBounds(ImageView view) {
+        int width = view.getWidth();
+        int height = view.getHeight();
+        ViewGroup.LayoutParams params = view.getLayoutParams();
+        if (width <= 0 && params != null && params.width > 0) {
+            width = params.width;
+        }
+        if (height <= 0 && params != null && params.height > 0) {
+            height = params.height;
+        }
+        return new int[] {
+                width > 0 ? width : displayMetrics.widthPixels,
+                height > 0 ? height : displayMetrics.heightPixels
+        };
+    }
+
+    /**
+     * Decodes an image at the largest power of two reduction that still covers the target size,
+     * reusing a pooled bitmap when one is large enough.
+     */
+    @Nullable
+    private Bitmap decode(byte[] data, int targetWidth, int targetHeight) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            Log.e("ImageLoader", "Image cannot be decoded");
+            return null;
+        }
+
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, targetWidth, targetHeight);
+        options.inJustDecodeBounds = false;
+        options.inMutable = true;
+
+        int sampledWidth = (options.outWidth + options.inSampleSize - 1) / options.inSampleSize;
+        int sampledHeight = (options.outHeight + options.inSampleSize - 1) / options.inSampleSize;
+        options.inBitmap = takeFromPool(sampledWidth * sampledHeight * 4);
+        try {
+            return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        } catch (IllegalArgumentException e) {
+            // The pooled bitmap could not be reused for this image
+            options.inBitmap = null;
+            return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        }
+    }
+
+    /**
+     * Returns the largest power of two by which an image can be reduced while staying at least
+     * as large as the target in both dimensions.
+     *
+     * @param width        The width of the image.
+     * @param height       The height of the image.
+     * @param targetWidth  The width it will be shown at.
+     * @param targetHeight The height it will be shown at.
+     * @return The inSampleSize to decode with.
+     */
+    public static int calculateInSampleSize(int width, int height, int targetWidth, int targetHeight) {
+        int inSampleSize = 1;
+        while (width / (inSampleSize * 2) >= targetWidth && height / (inSampleSize * 2) >= targetHeight) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+}
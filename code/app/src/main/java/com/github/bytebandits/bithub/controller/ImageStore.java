@@ -0,0 +1,182 @@
+package com.github.bytebandits.bithub.controller;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Base64;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+
+/**
+ * ImageStore class that stores the images attached to mood posts outside of the post documents.
+ * An image is encoded into a thumbnail and a full size variant, each kept as a blob in the
+ * images collection under the SHA-256 hash of the picked file, and the post only holds that
+ * hash. Lists of posts therefore no longer download the images, which are fetched on their own
+ * when a screen actually shows one.
+ * Posts written by older versions hold the image itself as a Base64 string, which is still read.
+ */
+public class ImageStore {
+    public static final String VARIANT_THUMBNAIL = "thumb";
+    public static final String VARIANT_FULL = "full";
+
+    private static final int THUMBNAIL_MAX_DIMENSION = 480;
+    private static final int FULL_MAX_DIMENSION = 1600;
+    private static final int[] JPEG_QUALITIES = { 85, 70, 55, 40 };
+    private static final Pattern IMAGE_REF = Pattern.compile("[0-9a-f]{64}");
+
+    private static ImageStore instance;
+
+    private final ExecutorService encodeExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private ImageStore() {}
+
+    public static synchronized ImageStore getInstance() {
+        if (instance == null) {
+            instance = new ImageStore();
+        }
+        return instance;
+    }
+
+    /**
+     * Returns whether the image field of a post is a reference to a stored image, as opposed to
+     * a Base64 image written by an older version.
+     *
+     * @param image The image field of a post.
+     * @return true if the field holds the hash of a stored image.
+     */
+    public static boolean isImageRef(@Nullable String image) {
+        return image != null && IMAGE_REF.matcher(image).matches();
+    }
+
+    /**
+     * Encodes the variants of an image on a background thread and stores them.
+     *
+     * @param original The picked image file.
+     * @param listener The listener that will receive the reference to put in the post, or null
+     *                 if the image could not be decoded. Called on the main thread once the
+     *                 write is queued.
+     */
+    public void storeImage(@NotNull byte[] original, OnImageStoredListener listener) {
+        encodeExecutor.execute(() -> {
+            String hash;
+            Map<String, byte[]> variants = new LinkedHashMap<>();
+            try {
+                hash = sha256(original);
+                variants.put(VARIANT_THUMBNAIL, encode(original, THUMBNAIL_MAX_DIMENSION));
+                variants.put(VARIANT_FULL, encode(original, FULL_MAX_DIMENSION));
+            } catch (IllegalArgumentException e) {
+                Log.e("ImageStore", "Image cannot be encoded", e);
+                mainHandler.post(() -> listener.onImageStored(null));
+                return;
+            }
+
+            // Like posts, the write is queued by Firestore while offline, so the post is not held back
+            mainHandler.post(() -> {
+                DatabaseManager.getInstance().addImage(hash, variants, null);
+                listener.onImageStored(hash);
+            });
+        });
+    }
+
+    /**
+     * Fetches the encoded bytes of the image of a post.
+     *
+     * @param image    The image field of the post, either a reference or a legacy Base64 image.
+     * @param variant  The variant to fetch, legacy images only have one.
+     * @param listener The listener that will receive the encoded image, or null if it is missing.
+     */
+    public void fetchImage(@NotNull String image, @NotNull String variant, DatabaseManager.OnImageFetchListener listener) {
+        if (isImageRef(image)) {
+            DatabaseManager.getInstance().getImage(image, variant, listener);
+            return;
+        }
+
+        try {
+            listener.onImageFetched(Base64.decode(image, Base64.DEFAULT));
+        } catch (IllegalArgumentException e) {
+            Log.e("ImageStore", "Legacy image is not valid Base64", e);
+            listener.onImageFetched(null);
+        }
+    }
+
+    /**
+     * Downscales an image so its longest side is at most maxDimension and encodes it as JPEG,
+     * lowering the quality until it fits in a Firestore document.
+     */
+    private static byte[] encode(byte[] original, int maxDimension) {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(original, 0, original.length, bounds);
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            throw new IllegalArgumentException("Not an image");
+        }
+
+        // Decode at the smallest power of two reduction that is still larger than the target
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = 1;
+        while (Math.max(bounds.outWidth, bounds.outHeight) / (options.inSampleSize * 2) >= maxDimension) {
+            options.inSampleSize *= 2;
+        }
+        Bitmap decoded = BitmapFactory.decodeByteArray(original, 0, original.length, options);
+        if (decoded == null) {
+            throw new IllegalArgumentException("Image cannot be decoded");
+        }
+
+        Bitmap scaled = decoded;
+        int longest = Math.max(decoded.getWidth(), decoded.getHeight());
+        if (longest > maxDimension) {
+            float scale = (float) maxDimension / longest;
+            scaled = Bitmap.createScaledBitmap(decoded, Math.round(decoded.getWidth() * scale),
+                    Math.round(decoded.getHeight() * scale), true);
+            decoded.recycle();
+        }
+
+        try {
+            for (int quality : JPEG_QUALITIES) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                scaled.compress(Bitmap.CompressFormat.JPEG, quality, out);
+                if (out.size() <= DatabaseManager.MAX_IMAGE_BYTES) {
+                    return out.toByteArray();
+                }
+            }
+        } finally {
+            scaled.recycle();
+        }
+        throw new IllegalArgumentException("Image is too large even at the lowest quality");
+    }
+
+    private static String sha256(byte[] data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every Android version ships SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Callback interface for storing an image.
+     */
+    public interface OnImageStoredListener {
+        void onImageStored(@Nullable String imageRef);
+    }
+}
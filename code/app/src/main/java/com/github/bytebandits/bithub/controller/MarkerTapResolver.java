@@ -0,0 +1,132 @@
+package com.github.bytebandits.bithub.controller;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.github.bytebandits.bithub.model.MoodPost;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.HashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * MarkerTapResolver class that decides what to show when a post is tapped on the map. The post
+ * a marker holds is always shown right away, since markers are built from posts already in
+ * memory. A tap only reads from Firestore when the post is not kept up to date by a snapshot
+ * listener anymore and was last synced more than {@link #MAX_STALENESS_MS} ago, and then the
+ * refreshed post is fetched in the background and handed back to update the map.
+ * It counts taps and reads, so it can be checked that taps cost nothing on the network.
+ */
+public class MarkerTapResolver {
+    /** How long a post that is no longer listened to is shown without refreshing it. */
+    public static final long MAX_STALENESS_MS = 60 * 1000;
+
+    private final PostFetcher fetcher;
+    private final LongSupplier clock;
+    // When each post was last seen in a snapshot from the server, or cached
+    private final HashMap<String, Long> syncedAt = new HashMap<>();
+    private int tapCount;
+    private int readCount;
+
+    public MarkerTapResolver(@NotNull PostFetcher fetcher) {
+        this(fetcher, System::currentTimeMillis);
+    }
+
+    /**
+     * @param fetcher The way posts are read from the database.
+     * @param clock   The current time in milliseconds.
+     */
+    public MarkerTapResolver(@NotNull PostFetcher fetcher, @NotNull LongSupplier clock) {
+        this.fetcher = fetcher;
+        this.clock = clock;
+    }
+
+    /**
+     * Records that a post was just received from the server.
+     *
+     * @param postId The ID of the post.
+     */
+    public void markSynced(@NotNull String postId) {
+        markSynced(postId, clock.getAsLong());
+    }
+
+    /**
+     * Records when a post was received from the server, e.g. when the cache holding it was filled.
+     *
+     * @param postId   The ID of the post.
+     * @param syncedAt The time in milliseconds.
+     */
+    public void markSynced(@NotNull String postId, long syncedAt) {
+        Long previous = this.syncedAt.get(postId);
+        if (previous == null || previous < syncedAt) {
+            this.syncedAt.put(postId, syncedAt);
+        }
+    }
+
+    public void forget(@NotNull String postId) {
+        syncedAt.remove(postId);
+    }
+
+    public void clear() {
+        syncedAt.clear();
+    }
+
+    /**
+     * Resolves a tapped post.
+     *
+     * @param post     The post held by the tapped marker.
+     * @param live     Whether a snapshot listener still delivers the changes of the post.
+     * @param listener The listener that will receive the refreshed post if it had to be
+     *                 refreshed, or null if it could not be read.
+     * @return The post to show right away.
+     */
+    public MoodPost onTap(@NotNull MoodPost post, boolean live, @Nullable OnPostRefreshedListener listener) {
+        tapCount++;
+        Long lastSynced = syncedAt.get(post.getPostID());
+        long now = clock.getAsLong();
+        if (live || (lastSynced != null && now - lastSynced <= MAX_STALENESS_MS)) {
+            return post;
+        }
+
+        readCount++;
+        Log.d("MarkerTapResolver", "Refreshing post " + post.getPostID() + ", " + readCount + " reads for "
+                + tapCount + " taps");
+        fetcher.fetchPost(post.getPostID(), refreshed -> {
+            if (refreshed != null) {
+                markSynced(refreshed.getPostID());
+            }
+            if (listener != null) {
+                listener.onPostRefreshed(refreshed);
+            }
+        });
+        return post;
+    }
+
+    public int getTapCount() {
+        return tapCount;
+    }
+
+    /**
+     * Returns how many taps read a post from the database.
+     * @return the number of reads
+     */
+    public int getReadCount() {
+        return readCount;
+    }
+
+    /**
+     * Reads a single post, e.g. DatabaseManager.getPost.
+     */
+    public interface PostFetcher {
+        void fetchPost(@NotNull String postId, OnPostRefreshedListener listener);
+    }
+
+    /**
+     * Callback interface for refreshing a tapped post.
+     */
+    public interface OnPostRefreshedListener {
+        void onPostRefreshed(@Nullable MoodPost post);
+    }
+}
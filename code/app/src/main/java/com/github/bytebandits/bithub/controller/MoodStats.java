@@ -0,0 +1,391 @@
+package com.github.bytebandits.bithub.controller;
+
+import androidx.annotation.Nullable;
+
+import com.github.bytebandits.bithub.model.Emotion;
+import com.github.bytebandits.bithub.model.SocialSituation;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * MoodStats class that lays out the mood statistics of a user, kept in a single small document
+ * (users/{userId}/aggregates/moods) so the profile never has to read every post. Each post adds
+ * one to the total, to its emotion and social situation, to the day it was posted on, and to its
+ * emotion in the week and month it was posted in. DatabaseManager keeps the counts with atomic
+ * increments whenever a post is added, updated or deleted. Days, weeks and months are UTC, so a
+ * post is always taken out of the same counts it was added to.
+ */
+public final class MoodStats {
+    // Field names of the mood statistics document, see deltas for the fields nested under them
+    public static final String TOTAL_FIELD = "total";
+    public static final String EMOTIONS_FIELD = "emotions";
+    public static final String SITUATIONS_FIELD = "situations";
+    public static final String DAYS_FIELD = "days";
+    public static final String WEEKS_FIELD = "weeks";
+    public static final String MONTHS_FIELD = "months";
+
+    private static final long DAY_MS = 24L * 60 * 60 * 1000;
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    private final long total;
+    private final Map<Emotion, Long> emotions;
+    private final Map<SocialSituation, Long> situations;
+    private final List<Long> days; // Days with posts, in days since the epoch, oldest first
+    private final Map<String, Map<Emotion, Long>> weeks;
+    private final Map<String, Map<Emotion, Long>> months;
+
+    private MoodStats(long total, Map<Emotion, Long> emotions, Map<SocialSituation, Long> situations,
+            List<Long> days, Map<String, Map<Emotion, Long>> weeks, Map<String, Map<Emotion, Long>> months) {
+        this.total = total;
+        this.emotions = emotions;
+        this.situations = situations;
+        this.days = days;
+        this.weeks = weeks;
+        this.months = months;
+    }
+
+    /**
+     * A post as counted in the mood statistics
+     */
+    public static final class Entry {
+        final Emotion emotion;
+        @Nullable final SocialSituation situation;
+        final long day;
+
+        Entry(Emotion emotion, @Nullable SocialSituation situation, long day) {
+            this.emotion = emotion;
+            this.situation = situation;
+            this.day = day;
+        }
+    }
+
+    /**
+     * Returns how a post is counted in the mood statistics.
+     *
+     * @param emotion   The emotion of the post, as an Emotion or its name.
+     * @param situation The social situation of the post, as a SocialSituation or its name, or null.
+     * @param posted    When the post was posted.
+     * @return The entry, or null if the post has no valid emotion or date and is not counted.
+     */
+    @Nullable
+    public static Entry entry(@Nullable Object emotion, @Nullable Object situation, @Nullable Date posted) {
+        if (emotion == null || posted == null) {
+            return null;
+        }
+        try {
+            // Emotions and situations are enums in posts and names in documents
+            SocialSituation socialSituation = situation == null ? null : SocialSituation.valueOf(situation.toString());
+            return new Entry(Emotion.valueOf(emotion.toString()), socialSituation,
+                    Math.floorDiv(posted.getTime(), DAY_MS));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the changes to the mood statistics when a post goes from being counted one way to
+     * another, keyed by dotted field path, e.g. "emotions.HAPPINESS" or "weeks.20261012.SADNESS".
+     * Changes that cancel out are left out, so an update that changes nothing counted has none.
+     *
+     * @param before How the post was counted, or null if it was not.
+     * @param after  How the post is now counted, or null if it is not anymore.
+     * @return The change of each count.
+     */
+    public static Map<String, Long> deltas(@Nullable Entry before, @Nullable Entry after) {
+        Map<String, Long> deltas = new HashMap<>();
+        if (before != null) {
+            add(deltas, before, -1);
+        }
+        if (after != null) {
+            add(deltas, after, 1);
+        }
+        deltas.values().removeIf(delta -> delta == 0);
+        return deltas;
+    }
+
+    /**
+     * Adds a post to counts keyed by dotted field path, as returned by deltas.
+     *
+     * @param counts The counts to add to.
+     * @param entry  How the post is counted.
+     * @param delta  1 to add the post, -1 to take it out.
+     */
+    public static void add(Map<String, Long> counts, Entry entry, long delta) {
+        String emotion = entry.emotion.name();
+        counts.merge(TOTAL_FIELD, delta, Long::sum);
+        counts.merge(EMOTIONS_FIELD + "." + emotion, delta, Long::sum);
+        if (entry.situation != null) {
+            counts.merge(SITUATIONS_FIELD + "." + entry.situation.name(), delta, Long::sum);
+        }
+        counts.merge(DAYS_FIELD + "." + dayKey(entry.day), delta, Long::sum);
+        counts.merge(WEEKS_FIELD + "." + weekKey(entry.day) + "." + emotion, delta, Long::sum);
+        counts.merge(MONTHS_FIELD + "." + monthKey(entry.day) + "." + emotion, delta, Long::sum);
+    }
+
+    /**
+     * Returns the key of a day, e.g. "20261017".
+     *
+     * @param day The day, in days since the epoch.
+     */
+    public static String dayKey(long day) {
+        Calendar calendar = utcCalendar(day);
+        return String.format(Locale.US, "%04d%02d%02d", calendar.get(Calendar.YEAR),
+                calendar.get(Calendar.MONTH) + 1, calendar.get(Calendar.DAY_OF_MONTH));
+    }
+
+    /**
+     * Returns the key of the week a day is in, the key of the Monday starting it.
+     *
+     * @param day The day, in days since the epoch.
+     */
+    public static String weekKey(long day) {
+        // The epoch was a Thursday
+        return dayKey(day - Math.floorMod(day + 3, 7));
+    }
+
+    /**
+     * Returns the key of the month a day is in, e.g. "202610".
+     *
+     * @param day The day, in days since the epoch.
+     */
+    public static String monthKey(long day) {
+        Calendar calendar = utcCalendar(day);
+        return String.format(Locale.US, "%04d%02d", calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH) + 1);
+    }
+
+    private static Calendar utcCalendar(long day) {
+        Calendar calendar = Calendar.getInstance(UTC, Locale.US);
+        calendar.setTimeInMillis(day * DAY_MS);
+        return calendar;
+    }
+
+    // The day of a day key, or -1 if it is not one
+    private static long parseDay(String key) {
+        if (key.length() != 8) {
+            return -1;
+        }
+        try {
+            Calendar calendar = Calendar.getInstance(UTC, Locale.US);
+            calendar.clear();
+            calendar.set(Integer.parseInt(key.substring(0, 4)), Integer.parseInt(key.substring(4, 6)) - 1,
+                    Integer.parseInt(key.substring(6, 8)));
+            return Math.floorDiv(calendar.getTimeInMillis(), DAY_MS);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Reads the mood statistics of a user from their document. Counts that went down to zero
+     * are left out.
+     *
+     * @param data The fields of the mood statistics document, or null if the user has none yet.
+     * @return The statistics.
+     */
+    public static MoodStats fromData(@Nullable Map<String, Object> data) {
+        if (data == null) {
+            data = new HashMap<>();
+        }
+        List<Long> days = new ArrayList<>();
+        for (Map.Entry<String, Long> day : counts(data.get(DAYS_FIELD)).entrySet()) {
+            long parsed = parseDay(day.getKey());
+            if (parsed >= 0 && day.getValue() > 0) {
+                days.add(parsed);
+            }
+        }
+        days.sort(null);
+        return new MoodStats(count(data.get(TOTAL_FIELD)), enumCounts(Emotion.class, data.get(EMOTIONS_FIELD)),
+                enumCounts(SocialSituation.class, data.get(SITUATIONS_FIELD)), days,
+                histogram(data.get(WEEKS_FIELD)), histogram(data.get(MONTHS_FIELD)));
+    }
+
+    private static long count(@Nullable Object value) {
+        return value instanceof Number ? Math.max(0, ((Number) value).longValue()) : 0;
+    }
+
+    // The positive counts of a map field
+    private static Map<String, Long> counts(@Nullable Object field) {
+        Map<String, Long> counts = new HashMap<>();
+        if (field instanceof Map<?, ?>) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) field).entrySet()) {
+                long count = count(entry.getValue());
+                if (count > 0) {
+                    counts.put(entry.getKey().toString(), count);
+                }
+            }
+        }
+        return counts;
+    }
+
+    // The positive counts of a map field keyed by enum name, unknown names are skipped
+    private static <E extends Enum<E>> Map<E, Long> enumCounts(Class<E> type, @Nullable Object field) {
+        Map<E, Long> counts = new EnumMap<>(type);
+        for (Map.Entry<String, Long> count : counts(field).entrySet()) {
+            try {
+                counts.put(Enum.valueOf(type, count.getKey()), count.getValue());
+            } catch (IllegalArgumentException e) {
+                // A value from a newer version of the app
+            }
+        }
+        return counts;
+    }
+
+    // The emotion counts of each week or month of a histogram field
+    private static Map<String, Map<Emotion, Long>> histogram(@Nullable Object field) {
+        Map<String, Map<Emotion, Long>> histogram = new HashMap<>();
+        if (field instanceof Map<?, ?>) {
+            for (Map.Entry<?, ?> period : ((Map<?, ?>) field).entrySet()) {
+                histogram.put(period.getKey().toString(), enumCounts(Emotion.class, period.getValue()));
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * Returns the number of posts.
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Returns the number of posts of each emotion, emotions without posts are left out.
+     */
+    public Map<Emotion, Long> getEmotionCounts() {
+        return new EnumMap<>(emotions);
+    }
+
+    /**
+     * Returns the number of posts in each social situation, situations without posts are left out.
+     */
+    public Map<SocialSituation, Long> getSituationCounts() {
+        return new EnumMap<>(situations);
+    }
+
+    /**
+     * Returns the emotion posted the most, or null if there are no posts.
+     */
+    @Nullable
+    public Emotion getTopEmotion() {
+        return top(emotions);
+    }
+
+    /**
+     * Returns the emotion with the most posts in some counts, the first emotion on ties.
+     *
+     * @param counts The number of posts of each emotion.
+     * @return The emotion, or null if there are no posts.
+     */
+    @Nullable
+    public static Emotion top(Map<Emotion, Long> counts) {
+        Emotion top = null;
+        for (Map.Entry<Emotion, Long> count : counts.entrySet()) {
+            if (top == null || count.getValue() > counts.get(top)) {
+                top = count.getKey();
+            }
+        }
+        return top;
+    }
+
+    /**
+     * Returns the number of days in a row with a post up to today. A streak is not broken until
+     * a whole day passes without one, so it still counts when today has no post yet.
+     *
+     * @param nowMs The current time.
+     * @return The number of days, 0 if there was no post today or yesterday.
+     */
+    public int getCurrentStreak(long nowMs) {
+        long today = Math.floorDiv(nowMs, DAY_MS);
+        int i = days.size() - 1;
+        while (i >= 0 && days.get(i) > today) {
+            i--; // Posted from a clock ahead of this one
+        }
+        if (i < 0 || days.get(i) < today - 1) {
+            return 0;
+        }
+        int streak = 1;
+        for (; i > 0 && days.get(i - 1) == days.get(i) - 1; i--) {
+            streak++;
+        }
+        return streak;
+    }
+
+    /**
+     * Returns the most days in a row there ever was a post.
+     */
+    public int getLongestStreak() {
+        int longest = 0;
+        int streak = 0;
+        for (int i = 0; i < days.size(); i++) {
+            streak = i > 0 && days.get(i) == days.get(i - 1) + 1 ? streak + 1 : 1;
+            longest = Math.max(longest, streak);
+        }
+        return longest;
+    }
+
+    /**
+     * Returns the number of posts of each emotion in each of the last weeks, this week included.
+     *
+     * @param count The number of weeks.
+     * @param nowMs The current time.
+     * @return The counts of each week, oldest first, empty for weeks without posts.
+     */
+    public List<Map<Emotion, Long>> getWeeklyHistogram(int count, long nowMs) {
+        long today = Math.floorDiv(nowMs, DAY_MS);
+        List<Map<Emotion, Long>> histogram = new ArrayList<>();
+        for (int i = count - 1; i >= 0; i--) {
+            histogram.add(periodCounts(weeks, weekKey(today - 7L * i)));
+        }
+        return histogram;
+    }
+
+    /**
+     * Returns the number of posts of each emotion in each of the last months, this month included.
+     *
+     * @param count The number of months.
+     * @param nowMs The current time.
+     * @return The counts of each month, oldest first, empty for months without posts.
+     */
+    public List<Map<Emotion, Long>> getMonthlyHistogram(int count, long nowMs) {
+        Calendar calendar = Calendar.getInstance(UTC, Locale.US);
+        calendar.setTimeInMillis(nowMs);
+        calendar.set(Calendar.DAY_OF_MONTH, 1);
+        calendar.add(Calendar.MONTH, -(count - 1));
+        List<Map<Emotion, Long>> histogram = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            histogram.add(periodCounts(months, monthKey(Math.floorDiv(calendar.getTimeInMillis(), DAY_MS))));
+            calendar.add(Calendar.MONTH, 1);
+        }
+        return histogram;
+    }
+
+    /**
+     * Returns the number of posts of each emotion over the last weeks, this week included.
+     *
+     * @param count The number of weeks.
+     * @param nowMs The current time.
+     * @return The number of posts of each emotion, emotions without posts are left out.
+     */
+    public Map<Emotion, Long> getRecentEmotionCounts(int count, long nowMs) {
+        Map<Emotion, Long> recent = new EnumMap<>(Emotion.class);
+        for (Map<Emotion, Long> week : getWeeklyHistogram(count, nowMs)) {
+            for (Map.Entry<Emotion, Long> emotion : week.entrySet()) {
+                recent.merge(emotion.getKey(), emotion.getValue(), Long::sum);
+            }
+        }
+        return recent;
+    }
+
+    private static Map<Emotion, Long> periodCounts(Map<String, Map<Emotion, Long>> periods, String key) {
+        Map<Emotion, Long> counts = periods.get(key);
+        return counts == null ? new EnumMap<>(Emotion.class) : new EnumMap<>(counts);
+    }
+}
@@ -0,0 +1,476 @@
+package com.github.bytebandits.bithub.controller;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * MutationQueue class that sits in front of the DatabaseManager for frequent background writes
+ * that can wait, and keeps them in a durable log until they reach Firestore. Writes the user
+ * makes explicitly, e.g. saving a post, go straight to the DatabaseManager instead, since
+ * Firestore applies them locally at once and keeps them while offline. Successive updates to the same post
+ * are merged into a single write, nothing is sent while the device has no network, and each
+ * document has at most one write in flight, so changes made while the connection is flaky are
+ * sent as one write per document once it returns. Writes that fail are retried with
+ * exponential backoff and jitter.
+ * Must be used on the main thread.
+ */
+public class MutationQueue {
+    public static final String KIND_POST_UPDATE = "post_update";
+    public static final String KIND_FOLLOW_REQUEST = "follow_request";
+
+    // Field names of follow request mutations
+    public static final String FOLLOW_FROM_FIELD = "from";
+    public static final String FOLLOW_TO_FIELD = "to";
+
+    /** How long a new mutation waits for more changes to the same document before it is sent. */
+    public static final long COALESCE_DELAY_MS = 2000;
+    public static final long BASE_BACKOFF_MS = 1000;
+    public static final long MAX_BACKOFF_MS = 5 * 60 * 1000;
+    /** Mutations still failing after this many attempts are dropped. */
+    public static final int MAX_ATTEMPTS = 10;
+
+    private static MutationQueue instance;
+
+    private final MutationSender sender;
+    private final MutationLog log;
+    private final Scheduler scheduler;
+    private final BooleanSupplier online;
+    private final LongSupplier clock;
+    private final Random random;
+
+    // Mutations not yet written, by kind and target, oldest first
+    private final LinkedHashMap<String, Mutation> pending = new LinkedHashMap<>();
+    private final HashSet<String> inFlight = new HashSet<>();
+    private long scheduledFlushAt = Long.MAX_VALUE;
+
+    private int enqueuedCount;
+    private int coalescedCount;
+    private int sentCount;
+    private int failedCount;
+    private int droppedCount;
+
+    /**
+     * @param sender    Writes a mutation to Firestore.
+     * @param log       The durable log mutations are kept in until written.
+     * @param scheduler Runs the queue again after a delay.
+     * @param online    Whether the device can reach Firestore.
+     * @param clock     The current time in milliseconds.
+     * @param random    The source of the backoff jitter.
+     */
+    public MutationQueue(@NotNull MutationSender sender, @NotNull MutationLog log, @NotNull Scheduler scheduler,
+                         @NotNull BooleanSupplier online, @NotNull LongSupplier clock, @NotNull Random random) {
+        this.sender = sender;
+        this.log = log;
+        this.scheduler = scheduler;
+        this.online = online;
+        this.clock = clock;
+        this.random = random;
+    }
+
+    /**
+     * Returns the queue of the app, writing through the DatabaseManager. Mutations left in the
+     * log by an earlier run are loaded and sent again.
+     */
+    public static synchronized MutationQueue getInstance(Context context) {
+        if (instance == null) {
+            Context appContext = context.getApplicationContext();
+            Handler mainHandler = new Handler(Looper.getMainLooper());
+            ConnectivityManager connectivity = (ConnectivityManager) appContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+            MutationQueueStore store = new MutationQueueStore(appContext);
+
+            instance = new MutationQueue(MutationQueue::sendThroughDatabaseManager, new StoreLog(store),
+                    (task, delayMs) -> mainHandler.postDelayed(task, delayMs), () -> isOnline(connectivity),
+                    System::currentTimeMillis, new Random());
+            MutationQueue queue = instance;
+            connectivity.registerDefaultNetworkCallback(new ConnectivityManager.NetworkCallback() {
+                @Override
+                public void onAvailable(@NonNull Network network) {
+                    mainHandler.post(queue::flush);
+                }
+            });
+            StoreLog.diskExecutor.execute(() -> {
+                List<Mutation> saved = store.readAll();
+                mainHandler.post(() -> queue.restore(saved));
+            });
+        }
+        return instance;
+    }
+
+    /**
+     * Queues an update of a post. Fields already queued for the post are overwritten by the
+     * new values and the rest are kept, so the post is written once with the latest values.
+     * Only plain values can be queued, see {@link #isQueueable(Object)}; updates with other
+     * values are written right away.
+     *
+     * @param postId The ID of the post to update.
+     * @param fields The fields to update, as for DatabaseManager.updatePost.
+     */
+    public void updatePost(@NotNull String postId, @NotNull Map<String, Object> fields) {
+        HashMap<String, Object> values = new HashMap<>();
+        for (Map.Entry<String, Object> field : fields.entrySet()) {
+            if (!isQueueable(field.getValue())) {
+                Log.d("MutationQueue", "Writing update of post " + postId + " directly, " + field.getKey()
+                        + " cannot be queued");
+                // The queued fields go along, so the direct write does not get overwritten by them later
+                Mutation queued = pending.get(key(KIND_POST_UPDATE, postId));
+                HashMap<String, Object> merged = new HashMap<>(queued != null && !inFlight.contains(queued.key())
+                        ? queued.fields : new HashMap<>());
+                merged.putAll(fields);
+                if (queued != null && !inFlight.contains(queued.key())) {
+                    pending.remove(queued.key());
+                    log.delete(queued);
+                }
+                sender.send(new Mutation(KIND_POST_UPDATE, postId, merged, clock.getAsLong()), success -> {});
+                return;
+            }
+            Object value = field.getValue();
+            // Firestore stores enums by name
+            values.put(field.getKey(), value instanceof Enum ? ((Enum<?>) value).name() : value);
+        }
+        enqueue(new Mutation(KIND_POST_UPDATE, postId, values, clock.getAsLong()));
+    }
+
+    /**
+     * Queues a follow request. Sending the same request again before it is written does nothing.
+     *
+     * @param currentUserId   The ID of the user sending the request.
+     * @param requestedUserId The ID of the user the request is for.
+     */
+    public void sendFollowRequest(@NotNull String currentUserId, @NotNull String requestedUserId) {
+        HashMap<String, Object> fields = new HashMap<>();
+        fields.put(FOLLOW_FROM_FIELD, currentUserId);
+        fields.put(FOLLOW_TO_FIELD, requestedUserId);
+        enqueue(new Mutation(KIND_FOLLOW_REQUEST, currentUserId + "_" + requestedUserId, fields, clock.getAsLong()));
+    }
+
+    /**
+     * Returns whether a value can be kept in the log: null, strings, booleans, numbers, enums
+     * and dates.
+     */
+    public static boolean isQueueable(@Nullable Object value) {
+        return value == null || value instanceof String || value instanceof Boolean || value instanceof Long
+                || value instanceof Integer || value instanceof Double || value instanceof Float
+                || value instanceof Enum || value instanceof Date;
+    }
+
+    private void enqueue(Mutation mutation) {
+        enqueuedCount++;
+        Mutation existing = pending.get(mutation.key());
+        if (existing != null) {
+            coalescedCount++;
+            existing.merge(mutation.fields);
+            log.save(existing);
+        } else {
+            mutation.nextAttemptAt = mutation.enqueuedAt + COALESCE_DELAY_MS;
+            pending.put(mutation.key(), mutation);
+            log.save(mutation);
+        }
+        scheduleFlush(COALESCE_DELAY_MS);
+    }
+
+    /**
+     * Adds the mutations read back from the log. Changes queued since the app started are
+     * newer, so they are kept over the restored values.
+     */
+    void restore(List<Mutation> saved) {
+        for (Mutation mutation : saved) {
+            Mutation existing = pending.get(mutation.key());
+            if (existing != null) {
+                HashMap<String, Object> newer = new HashMap<>(existing.fields);
+                existing.fields.clear();
+                existing.fields.putAll(mutation.fields);
+                existing.merge(newer);
+                existing.enqueuedAt = Math.min(existing.enqueuedAt, mutation.enqueuedAt);
+                log.save(existing);
+            } else {
+                pending.put(mutation.key(), mutation);
+            }
+        }
+        Log.d("MutationQueue", "Restored " + saved.size() + " queued writes");
+        flush();
+    }
+
+    /**
+     * Sends the mutations that are due, unless the device is offline. Called again whenever the
+     * network comes back, a write completes or the next mutation is due.
+     */
+    public void flush() {
+        scheduledFlushAt = Long.MAX_VALUE;
+        if (pending.isEmpty()) {
+            return;
+        }
+        if (!online.getAsBoolean()) {
+            Log.d("MutationQueue", "Offline, holding " + getDepth() + " writes, oldest " + getOldestAgeMs() + " ms");
+            return;
+        }
+
+        long now = clock.getAsLong();
+        long nextDue = Long.MAX_VALUE;
+        for (Mutation mutation : new ArrayList<>(pending.values())) {
+            if (inFlight.contains(mutation.key())) {
+                continue;
+            }
+            if (mutation.nextAttemptAt > now) {
+                nextDue = Math.min(nextDue, mutation.nextAttemptAt);
+                continue;
+            }
+            send(mutation);
+        }
+        if (nextDue != Long.MAX_VALUE) {
+            scheduleFlush(nextDue - now);
+        }
+        Log.d("MutationQueue", "Queue depth " + getDepth() + ", oldest " + getOldestAgeMs() + " ms, "
+                + inFlight.size() + " in flight");
+    }
+
+    private void send(Mutation mutation) {
+        String key = mutation.key();
+        int version = mutation.version;
+        inFlight.add(key);
+        sender.send(mutation.copy(), success -> {
+            inFlight.remove(key);
+            Mutation current = pending.get(key);
+            if (success) {
+                sentCount++;
+                // Changes merged in while the write was in flight are sent next
+                if (current != null && current.version == version) {
+                    pending.remove(key);
+                    log.delete(current);
+                }
+            } else if (current != null) {
+                failedCount++;
+                current.attempts++;
+                if (current.attempts >= MAX_ATTEMPTS) {
+                    droppedCount++;
+                    Log.e("MutationQueue", "Dropping " + key + " after " + current.attempts + " failed attempts");
+                    pending.remove(key);
+                    log.delete(current);
+                } else {
+                    long delay = backoffMs(current.attempts);
+                    current.nextAttemptAt = clock.getAsLong() + delay;
+                    log.save(current);
+                    Log.d("MutationQueue", "Retrying " + key + " in " + delay + " ms");
+                }
+            }
+            flush();
+        });
+    }
+
+    /**
+     * Returns how long to wait before trying a mutation again: the base delay doubled for each
+     * failed attempt, capped, then randomized between half and all of it so clients that failed
+     * together do not retry together.
+     *
+     * @param attempts The number of failed attempts.
+     * @return The delay in milliseconds.
+     */
+    long backoffMs(int attempts) {
+        long delay = Math.min(MAX_BACKOFF_MS, BASE_BACKOFF_MS << Math.min(attempts - 1, 20));
+        return delay / 2 + (long) (random.nextDouble() * (delay / 2));
+    }
+
+    private void scheduleFlush(long delayMs) {
+        long at = clock.getAsLong() + delayMs;
+        if (at >= scheduledFlushAt) {
+            return;
+        }
+        scheduledFlushAt = at;
+        scheduler.schedule(this::flush, delayMs);
+    }
+
+    /**
+     * Returns the number of documents with writes waiting, including the ones in flight.
+     * @return the queue depth
+     */
+    public int getDepth() {
+        return pending.size();
+    }
+
+    /**
+     * Returns how long the oldest waiting write has been queued.
+     * @return the age in milliseconds, 0 if the queue is empty
+     */
+    public long getOldestAgeMs() {
+        long oldest = Long.MAX_VALUE;
+        for (Mutation mutation : pending.values()) {
+            oldest = Math.min(oldest, mutation.enqueuedAt);
+        }
+        return oldest == Long.MAX_VALUE ? 0 : clock.getAsLong() - oldest;
+    }
+
+    public int getEnqueuedCount() {
+        return enqueuedCount;
+    }
+
+    /**
+     * Returns how many mutations were merged into one already queued.
+     * @return the number of coalesced mutations
+     */
+    public int getCoalescedCount() {
+        return coalescedCount;
+    }
+
+    public int getSentCount() {
+        return sentCount;
+    }
+
+    public int getFailedCount() {
+        return failedCount;
+    }
+
+    public int getDroppedCount() {
+        return droppedCount;
+    }
+
+    private static String key(String kind, String target) {
+        return kind + "/" + target;
+    }
+
+    private static boolean isOnline(ConnectivityManager connectivity) {
+        Network network = connectivity.getActiveNetwork();
+        NetworkCapabilities capabilities = network == null ? null : connectivity.getNetworkCapabilities(network);
+        return capabilities != null && capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET);
+    }
+
+    private static void sendThroughDatabaseManager(Mutation mutation, OnMutationSentListener listener) {
+        DatabaseManager databaseManager = DatabaseManager.getInstance();
+        switch (mutation.kind) {
+            case KIND_POST_UPDATE:
+                databaseManager.updatePost(mutation.target, new HashMap<>(mutation.fields), listener::onMutationSent);
+                break;
+            case KIND_FOLLOW_REQUEST:
+                databaseManager.sendFollowRequest((String) mutation.fields.get(FOLLOW_FROM_FIELD),
+                        (String) mutation.fields.get(FOLLOW_TO_FIELD), listener::onMutationSent);
+                break;
+            default:
+                Log.e("MutationQueue", "Unknown mutation " + mutation.kind);
+                listener.onMutationSent(true);
+        }
+    }
+
+    /**
+     * A write waiting in the queue: the kind of write, the document it targets and its fields.
+     */
+    public static class Mutation {
+        public final String kind;
+        public final String target;
+        public final HashMap<String, Object> fields;
+        public long enqueuedAt;
+        public int attempts;
+        public long nextAttemptAt;
+        // Bumped whenever changes are merged in
+        int version;
+
+        public Mutation(@NotNull String kind, @NotNull String target, @NotNull Map<String, Object> fields, long enqueuedAt) {
+            this.kind = kind;
+            this.target = target;
+            this.fields = new HashMap<>(fields);
+            this.enqueuedAt = enqueuedAt;
+        }
+
+        public String key() {
+            return MutationQueue.key(kind, target);
+        }
+
+        void merge(Map<String, Object> newer) {
+            fields.putAll(newer);
+            version++;
+        }
+
+        Mutation copy() {
+            Mutation copy = new Mutation(kind, target, fields, enqueuedAt);
+            copy.attempts = attempts;
+            copy.nextAttemptAt = nextAttemptAt;
+            copy.version = version;
+            return copy;
+        }
+    }
+
+    /**
+     * Writes a mutation to Firestore, e.g. through the DatabaseManager.
+     */
+    public interface MutationSender {
+        void send(Mutation mutation, OnMutationSentListener listener);
+    }
+
+    /**
+     * Callback interface for writing a mutation.
+     */
+    public interface OnMutationSentListener {
+        void onMutationSent(boolean success);
+    }
+
+    /**
+     * Keeps mutations across app restarts, e.g. MutationQueueStore.
+     */
+    public interface MutationLog {
+        void save(Mutation mutation);
+
+        void delete(Mutation mutation);
+    }
+
+    /**
+     * Runs a task after a delay, e.g. Handler.postDelayed.
+     */
+    public interface Scheduler {
+        void schedule(Runnable task, long delayMs);
+    }
+
+    /**
+     * Writes the log to a MutationQueueStore off the main thread, in order.
+     */
+    private static class StoreLog implements MutationLog {
+        static final ExecutorService diskExecutor = Executors.newSingleThreadExecutor();
+        private final MutationQueueStore store;
+
+        StoreLog(MutationQueueStore store) {
+            this.store = store;
+        }
+
+        @Override
+        public void save(Mutation mutation) {
+            Mutation copy = mutation.copy();
+            diskExecutor.execute(() -> {
+                try {
+                    store.write(copy);
+                } catch (RuntimeException e) {
+                    Log.e("MutationQueue", "Failed to save queued write", e);
+                }
+            });
+        }
+
+        @Override
+        public void delete(Mutation mutation) {
+            diskExecutor.execute(() -> {
+                try {
+                    store.delete(mutation.kind, mutation.target);
+                } catch (RuntimeException e) {
+                    Log.e("MutationQueue", "Failed to delete queued write", e);
+                }
+            });
+        }
+    }
+}
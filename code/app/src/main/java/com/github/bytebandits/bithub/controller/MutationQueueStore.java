@@ -0,0 +1,177 @@
+package com.github.bytebandits.bithub.controller;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * MutationQueueStore class that persists the writes waiting in the MutationQueue, so they are
+ * sent even if the app is closed before the connection returns. Each document has one row
+ * holding its merged fields, and each field is stored with its type so it is written to
+ * Firestore as it was queued.
+ * All methods do disk I/O and must not be called on the main thread.
+ */
+public class MutationQueueStore extends SQLiteOpenHelper {
+    private static final String DATABASE_NAME = "mutation_queue.db";
+    private static final int DATABASE_VERSION = 1;
+
+    private static final String TABLE_MUTATIONS = "mutations";
+    private static final String COLUMN_KIND = "kind";
+    private static final String COLUMN_TARGET = "target";
+    private static final String COLUMN_FIELDS = "fields";
+    private static final String COLUMN_ENQUEUED_AT = "enqueued_at";
+    private static final String COLUMN_ATTEMPTS = "attempts";
+    private static final String COLUMN_NEXT_ATTEMPT_AT = "next_attempt_at";
+
+    // Keys of the type and value of each encoded field
+    private static final String TYPE_KEY = "t";
+    private static final String VALUE_KEY = "v";
+
+    public MutationQueueStore(Context context) {
+        super(context.getApplicationContext(), DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_MUTATIONS + " ("
+                + COLUMN_KIND + " TEXT NOT NULL, "
+                + COLUMN_TARGET + " TEXT NOT NULL, "
+                + COLUMN_FIELDS + " TEXT NOT NULL, "
+                + COLUMN_ENQUEUED_AT + " INTEGER NOT NULL, "
+                + COLUMN_ATTEMPTS + " INTEGER NOT NULL, "
+                + COLUMN_NEXT_ATTEMPT_AT + " INTEGER NOT NULL, "
+                + "PRIMARY KEY (" + COLUMN_KIND + ", " + COLUMN_TARGET + "))");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // Unlike the post cache, queued writes cannot be rebuilt, so later versions must migrate them
+        Log.e("MutationQueueStore", "No migration from version " + oldVersion + " to " + newVersion);
+    }
+
+    /**
+     * Reads every queued write, oldest first.
+     *
+     * @return The queued writes.
+     */
+    public List<MutationQueue.Mutation> readAll() {
+        List<MutationQueue.Mutation> mutations = new ArrayList<>();
+        try (Cursor rows = getReadableDatabase().query(TABLE_MUTATIONS,
+                new String[] { COLUMN_KIND, COLUMN_TARGET, COLUMN_FIELDS, COLUMN_ENQUEUED_AT, COLUMN_ATTEMPTS, COLUMN_NEXT_ATTEMPT_AT },
+                null, null, null, null, COLUMN_ENQUEUED_AT + " ASC")) {
+            while (rows.moveToNext()) {
+                try {
+                    MutationQueue.Mutation mutation = new MutationQueue.Mutation(rows.getString(0), rows.getString(1),
+                            decodeFields(rows.getString(2)), rows.getLong(3));
+                    mutation.attempts = rows.getInt(4);
+                    mutation.nextAttemptAt = rows.getLong(5);
+                    mutations.add(mutation);
+                } catch (JsonParseException | IllegalStateException e) {
+                    Log.e("MutationQueueStore", "Dropping unreadable queued write", e);
+                }
+            }
+        }
+        return mutations;
+    }
+
+    /**
+     * Stores a queued write, replacing the one for the same document.
+     *
+     * @param mutation The queued write.
+     */
+    public void write(MutationQueue.Mutation mutation) {
+        ContentValues row = new ContentValues();
+        row.put(COLUMN_KIND, mutation.kind);
+        row.put(COLUMN_TARGET, mutation.target);
+        row.put(COLUMN_FIELDS, encodeFields(mutation.fields));
+        row.put(COLUMN_ENQUEUED_AT, mutation.enqueuedAt);
+        row.put(COLUMN_ATTEMPTS, mutation.attempts);
+        row.put(COLUMN_NEXT_ATTEMPT_AT, mutation.nextAttemptAt);
+        getWritableDatabase().insertWithOnConflict(TABLE_MUTATIONS, null, row, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    /**
+     * Removes the queued write for a document.
+     *
+     * @param kind   The kind of write.
+     * @param target The document it targets.
+     */
+    public void delete(String kind, String target) {
+        getWritableDatabase().delete(TABLE_MUTATIONS, COLUMN_KIND + " = ? AND " + COLUMN_TARGET + " = ?",
+                new String[] { kind, target });
+    }
+
+    private static String encodeFields(Map<String, Object> fields) {
+        JsonObject encoded = new JsonObject();
+        for (Map.Entry<String, Object> field : fields.entrySet()) {
+            Object value = field.getValue();
+            JsonObject typed = new JsonObject();
+            if (value == null) {
+                typed.addProperty(TYPE_KEY, "null");
+            } else if (value instanceof String) {
+                typed.addProperty(TYPE_KEY, "s");
+                typed.addProperty(VALUE_KEY, (String) value);
+            } else if (value instanceof Boolean) {
+                typed.addProperty(TYPE_KEY, "b");
+                typed.addProperty(VALUE_KEY, (Boolean) value);
+            } else if (value instanceof Long || value instanceof Integer) {
+                typed.addProperty(TYPE_KEY, "l");
+                typed.addProperty(VALUE_KEY, ((Number) value).longValue());
+            } else if (value instanceof Number) {
+                typed.addProperty(TYPE_KEY, "d");
+                typed.addProperty(VALUE_KEY, ((Number) value).doubleValue());
+            } else if (value instanceof Date) {
+                typed.addProperty(TYPE_KEY, "date");
+                typed.addProperty(VALUE_KEY, ((Date) value).getTime());
+            } else {
+                // Enums are queued by name, anything else is never queued
+                typed.addProperty(TYPE_KEY, "s");
+                typed.addProperty(VALUE_KEY, value.toString());
+            }
+            encoded.add(field.getKey(), typed);
+        }
+        return encoded.toString();
+    }
+
+    private static HashMap<String, Object> decodeFields(String json) {
+        HashMap<String, Object> fields = new HashMap<>();
+        for (Map.Entry<String, JsonElement> field : JsonParser.parseString(json).getAsJsonObject().entrySet()) {
+            JsonObject typed = field.getValue().getAsJsonObject();
+            JsonElement value = typed.get(VALUE_KEY);
+            switch (typed.get(TYPE_KEY).getAsString()) {
+                case "s":
+                    fields.put(field.getKey(), value.getAsString());
+                    break;
+                case "b":
+                    fields.put(field.getKey(), value.getAsBoolean());
+                    break;
+                case "l":
+                    fields.put(field.getKey(), value.getAsLong());
+                    break;
+                case "d":
+                    fields.put(field.getKey(), value.getAsDouble());
+                    break;
+                case "date":
+                    fields.put(field.getKey(), new Date(value.getAsLong()));
+                    break;
+                default:
+                    fields.put(field.getKey(), null);
+            }
+        }
+        return fields;
+    }
+}
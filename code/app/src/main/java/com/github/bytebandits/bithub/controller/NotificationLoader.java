@@ -0,0 +1,137 @@
+package com.github.bytebandits.bithub.controller;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.github.bytebandits.bithub.model.MoodPost;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * NotificationLoader class that resolves the notification references stored on a user document
+ * into posts and follow requests. The references are loaded through {@link BatchedDocumentLoader},
+ * the results are emitted as each batch arrives and once more when every batch has completed.
+ * Starting a new load supersedes the previous one, whose late results are dropped.
+ */
+public class NotificationLoader {
+    private int generation = 0;
+    private long lastLatencyMs = -1;
+    private long lastFirstResultLatencyMs = -1;
+
+    /**
+     * Loads the posts and follow requests behind the given references.
+     * Any load still in flight is cancelled.
+     *
+     * @param postRefs    The references of the posts.
+     * @param requestRefs The references of the users who sent follow requests.
+     * @param listener    The listener that will receive the results, in the order of the references.
+     */
+    public void load(@NotNull List<DocumentReference> postRefs, @NotNull List<DocumentReference> requestRefs,
+                     OnNotificationsLoadedListener listener) {
+        int loadGeneration = ++generation;
+        long startedAt = SystemClock.elapsedRealtime();
+        HashMap<String, DocumentSnapshot> arrived = new HashMap<>();
+
+        List<DocumentReference> refs = new ArrayList<>(postRefs);
+        refs.addAll(requestRefs);
+
+        BatchedDocumentLoader.load(refs, batch -> {
+            if (loadGeneration != generation) {
+                return;
+            }
+            if (arrived.isEmpty()) {
+                lastFirstResultLatencyMs = SystemClock.elapsedRealtime() - startedAt;
+            }
+            for (DocumentSnapshot doc : batch) {
+                arrived.put(doc.getReference().getPath(), doc);
+            }
+            emit(postRefs, requestRefs, arrived, false, listener);
+        }, (documents, missingIds) -> {
+            if (loadGeneration != generation) {
+                Log.d("NotificationLoader", "Dropped superseded notifications");
+                return;
+            }
+            for (DocumentSnapshot doc : documents) {
+                arrived.put(doc.getReference().getPath(), doc);
+            }
+            lastLatencyMs = SystemClock.elapsedRealtime() - startedAt;
+            Log.d("NotificationLoader", "Loaded " + documents.size() + " notifications in " + lastLatencyMs
+                    + " ms (first result after " + lastFirstResultLatencyMs + " ms)");
+            emit(postRefs, requestRefs, arrived, true, listener);
+        });
+    }
+
+    /**
+     * Emits the posts and requests that have arrived so far, in the order of the references.
+     */
+    private static void emit(List<DocumentReference> postRefs, List<DocumentReference> requestRefs,
+                             HashMap<String, DocumentSnapshot> arrived, boolean complete,
+                             OnNotificationsLoadedListener listener) {
+        ArrayList<MoodPost> posts = new ArrayList<>();
+        for (DocumentReference ref : postRefs) {
+            DocumentSnapshot doc = arrived.get(ref.getPath());
+            if (doc == null) {
+                continue;
+            }
+            try {
+                MoodPost post = doc.toObject(MoodPost.class);
+                if (post != null) {
+                    posts.add(post);
+                }
+            } catch (Exception e) {
+                Log.e("NotificationLoader", "Error processing notification", e);
+            }
+        }
+
+        ArrayList<HashMap<String, Object>> requests = new ArrayList<>();
+        for (DocumentReference ref : requestRefs) {
+            DocumentSnapshot doc = arrived.get(ref.getPath());
+            if (doc != null && doc.getData() != null) {
+                requests.add(new HashMap<>(Objects.requireNonNull(doc.getData())));
+            }
+        }
+
+        listener.onNotificationsLoaded(posts, requests, complete);
+    }
+
+    /**
+     * Cancels the load in flight, if any. Its results will not be delivered.
+     */
+    public void cancel() {
+        generation++;
+    }
+
+    /**
+     * Returns how long the last completed load took, from the start of the load until every
+     * batch had arrived.
+     *
+     * @return The latency in milliseconds, or -1 if no load has completed.
+     */
+    public long getLastLatencyMs() {
+        return lastLatencyMs;
+    }
+
+    /**
+     * Returns how long the last load took to deliver its first batch.
+     *
+     * @return The latency in milliseconds, or -1 if no batch has arrived.
+     */
+    public long getLastFirstResultLatencyMs() {
+        return lastFirstResultLatencyMs;
+    }
+
+    /**
+     * Callback interface for loading notifications.
+     * Called with partial results as batches arrive, and a last time with complete set to true.
+     */
+    public interface OnNotificationsLoadedListener {
+        void onNotificationsLoaded(ArrayList<MoodPost> posts, ArrayList<HashMap<String, Object>> requests, boolean complete);
+    }
+}
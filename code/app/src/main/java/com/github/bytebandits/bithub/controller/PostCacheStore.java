@@ -0,0 +1,180 @@
+package com.github.bytebandits.bithub.controller;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.github.bytebandits.bithub.model.MoodPost;
+import com.google.gson.ExclusionStrategy;
+import com.google.gson.FieldAttributes;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonDeserializer;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSerializer;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * PostCacheStore class that persists cached lists of posts on disk, so they survive the app
+ * being closed. Each post is stored as its own JSON row, keyed by the list it belongs to and
+ * its position in that list. Only the most recently written lists are kept.
+ * All methods do disk I/O and must not be called on the main thread.
+ */
+public class PostCacheStore extends SQLiteOpenHelper {
+    private static final String DATABASE_NAME = "post_cache.db";
+    private static final int DATABASE_VERSION = 1;
+    private static final int MAX_LISTS = 32;
+
+    private static final String TABLE_POSTS = "cached_posts";
+    private static final String TABLE_LISTS = "cached_lists";
+    private static final String COLUMN_LIST_KEY = "list_key";
+    private static final String COLUMN_POSITION = "position";
+    private static final String COLUMN_JSON = "json";
+    private static final String COLUMN_FETCHED_AT = "fetched_at";
+
+    // Profile pictures are Bitmaps, which are neither needed in the cache nor serializable
+    private final Gson gson = new GsonBuilder()
+            .setExclusionStrategies(new ExclusionStrategy() {
+                @Override
+                public boolean shouldSkipField(FieldAttributes f) {
+                    return false;
+                }
+
+                @Override
+                public boolean shouldSkipClass(Class<?> clazz) {
+                    return Bitmap.class.isAssignableFrom(clazz);
+                }
+            })
+            // Dates are kept as epoch milliseconds so ordering survives the round trip
+            .registerTypeAdapter(Date.class, (JsonSerializer<Date>) (date, type, context) -> new JsonPrimitive(date.getTime()))
+            .registerTypeAdapter(Date.class, (JsonDeserializer<Date>) (json, type, context) -> new Date(json.getAsLong()))
+            .create();
+
+    public PostCacheStore(Context context) {
+        super(context.getApplicationContext(), DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_LISTS + " ("
+                + COLUMN_LIST_KEY + " TEXT PRIMARY KEY, "
+                + COLUMN_FETCHED_AT + " INTEGER NOT NULL)");
+        db.execSQL("CREATE TABLE " + TABLE_POSTS + " ("
+                + COLUMN_LIST_KEY + " TEXT NOT NULL, "
+                + COLUMN_POSITION + " INTEGER NOT NULL, "
+                + COLUMN_JSON + " TEXT NOT NULL, "
+                + "PRIMARY KEY (" + COLUMN_LIST_KEY + ", " + COLUMN_POSITION + "))");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // The cache can always be rebuilt from Firestore
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_POSTS);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_LISTS);
+        onCreate(db);
+    }
+
+    /**
+     * Reads a cached list of posts.
+     *
+     * @param key The key of the list.
+     * @return The cached list, or null if the list is not cached.
+     */
+    @Nullable
+    public CachedPosts read(String key) {
+        SQLiteDatabase db = getReadableDatabase();
+        long fetchedAt;
+        try (Cursor list = db.query(TABLE_LISTS, new String[] { COLUMN_FETCHED_AT },
+                COLUMN_LIST_KEY + " = ?", new String[] { key }, null, null, null)) {
+            if (!list.moveToFirst()) {
+                return null;
+            }
+            fetchedAt = list.getLong(0);
+        }
+
+        ArrayList<MoodPost> posts = new ArrayList<>();
+        try (Cursor rows = db.query(TABLE_POSTS, new String[] { COLUMN_JSON },
+                COLUMN_LIST_KEY + " = ?", new String[] { key }, null, null, COLUMN_POSITION + " ASC")) {
+            while (rows.moveToNext()) {
+                try {
+                    posts.add(gson.fromJson(rows.getString(0), MoodPost.class));
+                } catch (JsonParseException e) {
+                    Log.e("PostCacheStore", "Dropping unreadable cached post", e);
+                }
+            }
+        }
+        return new CachedPosts(posts, fetchedAt);
+    }
+
+    /**
+     * Replaces a cached list of posts, evicting the least recently written lists beyond the limit.
+     *
+     * @param key       The key of the list.
+     * @param posts     The posts of the list, in order.
+     * @param fetchedAt When the posts were fetched from Firestore.
+     */
+    public void write(String key, List<MoodPost> posts, long fetchedAt) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            db.delete(TABLE_POSTS, COLUMN_LIST_KEY + " = ?", new String[] { key });
+
+            ContentValues list = new ContentValues();
+            list.put(COLUMN_LIST_KEY, key);
+            list.put(COLUMN_FETCHED_AT, fetchedAt);
+            db.insertWithOnConflict(TABLE_LISTS, null, list, SQLiteDatabase.CONFLICT_REPLACE);
+
+            for (int i = 0; i < posts.size(); i++) {
+                ContentValues row = new ContentValues();
+                row.put(COLUMN_LIST_KEY, key);
+                row.put(COLUMN_POSITION, i);
+                row.put(COLUMN_JSON, gson.toJson(posts.get(i)));
+                db.insert(TABLE_POSTS, null, row);
+            }
+
+            // Keep only the most recently written lists
+            String stale = "SELECT " + COLUMN_LIST_KEY + " FROM " + TABLE_LISTS
+                    + " ORDER BY " + COLUMN_FETCHED_AT + " DESC LIMIT -1 OFFSET " + MAX_LISTS;
+            db.execSQL("DELETE FROM " + TABLE_POSTS + " WHERE " + COLUMN_LIST_KEY + " IN (" + stale + ")");
+            db.execSQL("DELETE FROM " + TABLE_LISTS + " WHERE " + COLUMN_LIST_KEY + " IN (" + stale + ")");
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Removes a cached list of posts.
+     *
+     * @param key The key of the list.
+     */
+    public void delete(String key) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.delete(TABLE_POSTS, COLUMN_LIST_KEY + " = ?", new String[] { key });
+        db.delete(TABLE_LISTS, COLUMN_LIST_KEY + " = ?", new String[] { key });
+    }
+
+    /**
+     * A cached list of posts along with when it was fetched from Firestore.
+     */
+    public static class CachedPosts {
+        public final ArrayList<MoodPost> posts;
+        public final long fetchedAt;
+
+        public CachedPosts(ArrayList<MoodPost> posts, long fetchedAt) {
+            this.posts = posts;
+            this.fetchedAt = fetchedAt;
+        }
+    }
+}
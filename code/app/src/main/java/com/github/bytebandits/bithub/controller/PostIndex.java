@@ -0,0 +1,153 @@
+package com.github.bytebandits.bithub.controller;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.github.bytebandits.bithub.model.MoodPost;
+import com.google.firebase.firestore.DocumentChange;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * PostIndex class that keeps a list of posts sorted most recent first and indexed by post ID.
+ * Snapshot listeners feed it the document changes of each snapshot instead of the whole result,
+ * and it reports where each post was inserted, changed or removed, so the cost of a snapshot
+ * is proportional to what changed rather than to the number of posts loaded.
+ */
+public class PostIndex {
+    // Most recent first, ties broken by post ID so every post has a single position
+    private static final Comparator<MoodPost> NEWEST_FIRST = (p1, p2) -> {
+        int byDate = postedDate(p2).compareTo(postedDate(p1));
+        return byDate != 0 ? byDate : p1.getPostID().compareTo(p2.getPostID());
+    };
+
+    private final ArrayList<MoodPost> posts = new ArrayList<>();
+    private final HashMap<String, MoodPost> postsById = new HashMap<>();
+
+    /**
+     * Applies the document changes of a snapshot.
+     *
+     * @param changes  The changes, usually from QuerySnapshot.getDocumentChanges().
+     * @param listener The listener that will receive an event per applied change.
+     */
+    public void applyChanges(@NotNull List<DocumentChange> changes, @Nullable OnPostIndexChangeListener listener) {
+        for (DocumentChange change : changes) {
+            if (change.getType() == DocumentChange.Type.REMOVED) {
+                remove(change.getDocument().getId(), listener);
+                continue;
+            }
+
+            MoodPost post;
+            try {
+                post = change.getDocument().toObject(MoodPost.class);
+            } catch (RuntimeException e) {
+                Log.e("PostIndex", "Error converting document to MoodPost", e);
+                continue;
+            }
+            upsert(post, listener);
+        }
+    }
+
+    /**
+     * Adds a post, or replaces the post with the same ID.
+     *
+     * @param post     The post to add.
+     * @param listener The listener that will receive the resulting event.
+     */
+    public void upsert(@NotNull MoodPost post, @Nullable OnPostIndexChangeListener listener) {
+        MoodPost existing = postsById.get(post.getPostID());
+        if (existing != null) {
+            int position = Collections.binarySearch(posts, existing, NEWEST_FIRST);
+            if (NEWEST_FIRST.compare(existing, post) == 0) {
+                // Same sort key, so the post keeps its position
+                posts.set(position, post);
+                postsById.put(post.getPostID(), post);
+                if (listener != null) {
+                    listener.onPostChanged(position, post);
+                }
+                return;
+            }
+
+            posts.remove(position);
+            if (listener != null) {
+                listener.onPostRemoved(position, existing);
+            }
+        }
+
+        int position = -(Collections.binarySearch(posts, post, NEWEST_FIRST) + 1);
+        posts.add(position, post);
+        postsById.put(post.getPostID(), post);
+        if (listener != null) {
+            listener.onPostInserted(position, post);
+        }
+    }
+
+    /**
+     * Removes a post if it is in the index.
+     *
+     * @param postId   The ID of the post to remove.
+     * @param listener The listener that will receive the resulting event.
+     */
+    public void remove(@NotNull String postId, @Nullable OnPostIndexChangeListener listener) {
+        MoodPost existing = postsById.remove(postId);
+        if (existing == null) {
+            return;
+        }
+
+        int position = Collections.binarySearch(posts, existing, NEWEST_FIRST);
+        posts.remove(position);
+        if (listener != null) {
+            listener.onPostRemoved(position, existing);
+        }
+    }
+
+    /**
+     * Removes every post.
+     */
+    public void clear() {
+        posts.clear();
+        postsById.clear();
+    }
+
+    /**
+     * Returns the posts, most recent first. The list is a read-only view that follows the index.
+     *
+     * @return The posts in the index.
+     */
+    public List<MoodPost> getPosts() {
+        return Collections.unmodifiableList(posts);
+    }
+
+    public boolean contains(@NotNull String postId) {
+        return postsById.containsKey(postId);
+    }
+
+    public int size() {
+        return posts.size();
+    }
+
+    private static Date postedDate(MoodPost post) {
+        Date date = post.getPostedDateTime();
+        return date != null ? date : new Date(0);
+    }
+
+    /**
+     * Callback interface for changes to the index.
+     * Positions are those in the list returned by {@link #getPosts()} at the time of the event.
+     */
+    public interface OnPostIndexChangeListener {
+        void onPostInserted(int position, MoodPost post);
+
+        void onPostChanged(int position, MoodPost post);
+
+        void onPostRemoved(int position, MoodPost post);
+    }
+}
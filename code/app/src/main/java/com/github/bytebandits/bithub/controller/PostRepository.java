@@ -0,0 +1,263 @@
+package com.github.bytebandits.bithub.controller;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.Nullable;
+
+import com.github.bytebandits.bithub.model.MoodPost;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * PostRepository class that sits between the fragments and the DatabaseManager and caches the
+ * lists of posts they display. Lists are kept in a bounded in-memory LRU cache backed by an
+ * on-disk store, so switching tabs or reopening the app renders the last known posts right away
+ * while a fresh copy is fetched from Firestore in the background (stale-while-revalidate).
+ */
+public class PostRepository {
+    // Cached lists younger than this are served without asking Firestore again
+    public static final long FRESH_FOR_MS = 30_000;
+    private static final int MAX_CACHED_POSTS = 500;
+
+    private static PostRepository instance;
+
+    private final LruCache<String, PostCacheStore.CachedPosts> memoryCache;
+    private final PostCacheStore diskStore;
+    private final ExecutorService diskExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private int memoryHits = 0;
+    private int diskHits = 0;
+    private int misses = 0;
+
+    private PostRepository(Context context) {
+        this.diskStore = new PostCacheStore(context);
+        this.memoryCache = new LruCache<String, PostCacheStore.CachedPosts>(MAX_CACHED_POSTS) {
+            @Override
+            protected int sizeOf(String key, PostCacheStore.CachedPosts value) {
+                return Math.max(1, value.posts.size());
+            }
+        };
+    }
+
+    public static synchronized PostRepository getInstance(Context context) {
+        if (instance == null) {
+            instance = new PostRepository(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the cache key of a user's home feed.
+     */
+    public static String feedKey(@NotNull String userId) {
+        return "feed:" + userId;
+    }
+
+    /**
+     * Returns the cache key of the posts of the users someone follows.
+     */
+    public static String followerPostsKey(@NotNull String userId) {
+        return "followers:" + userId;
+    }
+
+    /**
+     * Returns the cache key of a user's own posts.
+     */
+    public static String userPostsKey(@NotNull String userId) {
+        return "user:" + userId;
+    }
+
+    /**
+     * Serves the cached posts of a list right away if there are any, then fetches them from
+     * Firestore unless the cached copy is still fresh. The listener is called once with the
+     * cached posts and once more with the fetched posts.
+     * Must be called on the main thread.
+     *
+     * @param key      The cache key of the list.
+     * @param fetcher  Fetches the list from Firestore.
+     * @param listener The listener that will receive the posts.
+     */
+    public void getPosts(@NotNull String key, @NotNull PostFetcher fetcher, OnCachedPostsListener listener) {
+        PostCacheStore.CachedPosts inMemory = memoryCache.get(key);
+        if (inMemory != null && age(inMemory) < FRESH_FOR_MS) {
+            memoryHits++;
+            listener.onPostsLoaded(copyOf(inMemory).posts, true, age(inMemory));
+            return;
+        }
+
+        // The fetch starts right away, the cache lookup only fills the screen until it returns
+        boolean[] fetched = { false };
+        refresh(key, fetcher, posts -> {
+            fetched[0] = true;
+            listener.onPostsLoaded(posts, false, 0);
+        });
+        getCachedPosts(key, cached -> {
+            // A slow disk read must not overwrite posts that already came from Firestore
+            if (cached != null && !fetched[0]) {
+                listener.onPostsLoaded(cached.posts, true, age(cached));
+            }
+        });
+    }
+
+    /**
+     * Fetches a list from Firestore and stores it in the cache, bypassing any cached copy.
+     *
+     * @param key      The cache key of the list.
+     * @param fetcher  Fetches the list from Firestore.
+     * @param listener The listener that will receive the fetched posts (not called on failure).
+     */
+    public void refresh(@NotNull String key, @NotNull PostFetcher fetcher, DatabaseManager.OnPostsFetchListener listener) {
+        fetcher.fetch(posts -> {
+            if (posts == null) {
+                Log.e("PostRepository", "Failed to refresh " + key);
+                return;
+            }
+            putPosts(key, posts);
+            listener.onPostsFetched(posts);
+        });
+    }
+
+    /**
+     * Looks up a list in memory, then on disk.
+     * Must be called on the main thread, the listener is called on the main thread.
+     *
+     * @param key      The cache key of the list.
+     * @param listener The listener that will receive the cached list, or null if it is not cached.
+     */
+    public void getCachedPosts(@NotNull String key, OnCacheLookupListener listener) {
+        PostCacheStore.CachedPosts inMemory = memoryCache.get(key);
+        if (inMemory != null) {
+            memoryHits++;
+            listener.onCacheLookup(copyOf(inMemory));
+            return;
+        }
+
+        diskExecutor.execute(() -> {
+            PostCacheStore.CachedPosts onDisk = null;
+            try {
+                onDisk = diskStore.read(key);
+            } catch (RuntimeException e) {
+                Log.e("PostRepository", "Failed to read cached posts", e);
+            }
+
+            PostCacheStore.CachedPosts result = onDisk;
+            mainHandler.post(() -> {
+                if (result != null) {
+                    diskHits++;
+                    if (memoryCache.get(key) == null) {
+                        memoryCache.put(key, result);
+                    }
+                    listener.onCacheLookup(copyOf(result));
+                } else {
+                    misses++;
+                    listener.onCacheLookup(null);
+                }
+                Log.d("PostRepository", "Cache hit ratio: " + getHitRatio());
+            });
+        });
+    }
+
+    /**
+     * Stores the latest known posts of a list, in memory and on disk.
+     *
+     * @param key   The cache key of the list.
+     * @param posts The posts of the list, in display order.
+     */
+    public void putPosts(@NotNull String key, @NotNull List<MoodPost> posts) {
+        long fetchedAt = System.currentTimeMillis();
+        ArrayList<MoodPost> snapshot = new ArrayList<>(posts);
+        memoryCache.put(key, new PostCacheStore.CachedPosts(snapshot, fetchedAt));
+
+        diskExecutor.execute(() -> {
+            try {
+                diskStore.write(key, snapshot, fetchedAt);
+            } catch (RuntimeException e) {
+                Log.e("PostRepository", "Failed to write cached posts", e);
+            }
+        });
+    }
+
+    /**
+     * Drops a list from the cache, so the next read goes to Firestore.
+     *
+     * @param key The cache key of the list.
+     */
+    public void invalidate(@NotNull String key) {
+        memoryCache.remove(key);
+        diskExecutor.execute(() -> diskStore.delete(key));
+    }
+
+    /**
+     * Returns the share of lookups that were answered by the memory or disk cache.
+     *
+     * @return The hit ratio between 0 and 1, or 0 before any lookup.
+     */
+    public double getHitRatio() {
+        int lookups = memoryHits + diskHits + misses;
+        return lookups == 0 ? 0 : (double) (memoryHits + diskHits) / lookups;
+    }
+
+    public int getMemoryHits() {
+        return memoryHits;
+    }
+
+    public int getDiskHits() {
+        return diskHits;
+    }
+
+    public int getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns how old the copy of a list held in memory is.
+     *
+     * @param key The cache key of the list.
+     * @return The age in milliseconds, or -1 if the list is not in memory.
+     */
+    public long getStalenessMs(@NotNull String key) {
+        PostCacheStore.CachedPosts cached = memoryCache.get(key);
+        return cached == null ? -1 : age(cached);
+    }
+
+    private static long age(PostCacheStore.CachedPosts cached) {
+        return System.currentTimeMillis() - cached.fetchedAt;
+    }
+
+    // Callers modify the lists they are given, the cached copy must not change with them
+    private static PostCacheStore.CachedPosts copyOf(PostCacheStore.CachedPosts cached) {
+        return new PostCacheStore.CachedPosts(new ArrayList<>(cached.posts), cached.fetchedAt);
+    }
+
+    /**
+     * Fetches a list of posts from Firestore, usually a DatabaseManager method reference.
+     */
+    public interface PostFetcher {
+        void fetch(DatabaseManager.OnPostsFetchListener listener);
+    }
+
+    /**
+     * Callback interface for reading a list through the cache.
+     * fromCache tells whether the posts came from the cache, and stalenessMs how old they are.
+     */
+    public interface OnCachedPostsListener {
+        void onPostsLoaded(ArrayList<MoodPost> posts, boolean fromCache, long stalenessMs);
+    }
+
+    /**
+     * Callback interface for looking up a list in the cache only.
+     */
+    public interface OnCacheLookupListener {
+        void onCacheLookup(@Nullable PostCacheStore.CachedPosts cached);
+    }
+}
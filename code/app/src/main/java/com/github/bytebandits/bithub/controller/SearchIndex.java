@@ -0,0 +1,220 @@
+package com.github.bytebandits.bithub.controller;
+
+import androidx.annotation.Nullable;
+
+import com.github.bytebandits.bithub.model.MoodPost;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * SearchIndex class that keeps an inverted index of the words in the descriptions of the loaded
+ * posts, so a search only looks at the posts holding the words typed instead of lowercasing and
+ * scanning every description. Words are kept sorted, so the last word being typed matches every
+ * word it starts. It is updated one post at a time, e.g. from the events of a
+ * {@link PostIndex}, and may be searched from another thread while it is updated.
+ */
+public class SearchIndex {
+    // A word typed in full counts for more than a word it is only the start of
+    private static final double EXACT_MATCH_WEIGHT = 2.0;
+
+    // Each word and the number of times it is in each post, keyed by post ID
+    private final TreeMap<String, HashMap<String, Integer>> postings = new TreeMap<>();
+    private final HashMap<String, MoodPost> postsById = new HashMap<>();
+    // The words of each post, so they are found again even if the post object was changed
+    private final HashMap<String, Map<String, Integer>> wordsById = new HashMap<>();
+
+    /**
+     * Splits text into lowercase words of letters and digits, with accents removed so "cafe"
+     * finds "Café".
+     *
+     * @param text The text to split.
+     * @return The words in order, empty if there are none.
+     */
+    public static List<String> tokenize(@Nullable String text) {
+        List<String> words = new ArrayList<>();
+        if (text == null) {
+            return words;
+        }
+        String folded = Normalizer.normalize(text, Normalizer.Form.NFD).toLowerCase(Locale.ROOT);
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < folded.length(); i++) {
+            char c = folded.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                word.append(c);
+            } else if (Character.getType(c) != Character.NON_SPACING_MARK && word.length() > 0) {
+                words.add(word.toString());
+                word.setLength(0);
+            }
+        }
+        if (word.length() > 0) {
+            words.add(word.toString());
+        }
+        return words;
+    }
+
+    // The number of times each word is in some text
+    private static Map<String, Integer> wordCounts(@Nullable String text) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (String word : tokenize(text)) {
+            counts.merge(word, 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    /**
+     * Adds a post, or replaces the post with the same ID. The words of the post are only
+     * indexed again when its description changed.
+     *
+     * @param post The post to add.
+     */
+    public synchronized void upsert(@NotNull MoodPost post) {
+        String postId = post.getPostID();
+        postsById.put(postId, post);
+        Map<String, Integer> words = wordCounts(post.getDescription());
+        Map<String, Integer> indexed = wordsById.get(postId);
+        if (words.equals(indexed)) {
+            return;
+        }
+        if (indexed != null) {
+            removePostings(postId, indexed);
+        }
+        wordsById.put(postId, words);
+        for (Map.Entry<String, Integer> word : words.entrySet()) {
+            HashMap<String, Integer> posts = postings.get(word.getKey());
+            if (posts == null) {
+                posts = new HashMap<>();
+                postings.put(word.getKey(), posts);
+            }
+            posts.put(postId, word.getValue());
+        }
+    }
+
+    /**
+     * Removes a post if it is in the index.
+     *
+     * @param postId The ID of the post to remove.
+     */
+    public synchronized void remove(@NotNull String postId) {
+        postsById.remove(postId);
+        Map<String, Integer> indexed = wordsById.remove(postId);
+        if (indexed != null) {
+            removePostings(postId, indexed);
+        }
+    }
+
+    private void removePostings(String postId, Map<String, Integer> words) {
+        for (String word : words.keySet()) {
+            HashMap<String, Integer> posts = postings.get(word);
+            if (posts != null) {
+                posts.remove(postId);
+                if (posts.isEmpty()) {
+                    postings.remove(word);
+                }
+            }
+        }
+    }
+
+    /**
+     * Makes the index hold exactly the given posts, for screens that get the whole list on each
+     * change. Posts whose description did not change are not indexed again.
+     *
+     * @param posts The posts.
+     */
+    public synchronized void replaceAll(@NotNull List<MoodPost> posts) {
+        Set<String> kept = new HashSet<>();
+        for (MoodPost post : posts) {
+            kept.add(post.getPostID());
+            upsert(post);
+        }
+        for (String postId : new ArrayList<>(postsById.keySet())) {
+            if (!kept.contains(postId)) {
+                remove(postId);
+            }
+        }
+    }
+
+    /**
+     * Removes every post.
+     */
+    public synchronized void clear() {
+        postings.clear();
+        postsById.clear();
+        wordsById.clear();
+    }
+
+    public synchronized int size() {
+        return postsById.size();
+    }
+
+    /**
+     * Finds the posts whose description has every word of a query, each word matching the words
+     * it starts. Posts are ranked by how well they match: full words over prefixes, words found
+     * in few posts over common ones, and words repeated in a post, then most recent first.
+     *
+     * @param query The text typed.
+     * @return The matching posts, best first, empty if the query has no words.
+     */
+    public synchronized List<MoodPost> search(@Nullable String query) {
+        Set<String> words = new LinkedHashSet<>(tokenize(query));
+        Map<String, Double> scores = null;
+        for (String word : words) {
+            Map<String, Double> wordScores = new HashMap<>();
+            for (Map.Entry<String, HashMap<String, Integer>> indexed
+                    : postings.subMap(word, true, word + Character.MAX_VALUE, true).entrySet()) {
+                double weight = (indexed.getKey().length() == word.length() ? EXACT_MATCH_WEIGHT : 1.0)
+                        * Math.log(1 + (double) wordsById.size() / indexed.getValue().size());
+                for (Map.Entry<String, Integer> posting : indexed.getValue().entrySet()) {
+                    wordScores.merge(posting.getKey(), weight * (1 + Math.log(posting.getValue())), Double::sum);
+                }
+            }
+
+            // Every word has to match
+            if (scores == null) {
+                scores = wordScores;
+            } else {
+                scores.keySet().retainAll(wordScores.keySet());
+                for (Map.Entry<String, Double> score : scores.entrySet()) {
+                    score.setValue(score.getValue() + wordScores.get(score.getKey()));
+                }
+            }
+            if (scores.isEmpty()) {
+                break;
+            }
+        }
+
+        List<MoodPost> results = new ArrayList<>();
+        if (scores == null) {
+            return results;
+        }
+        for (String postId : scores.keySet()) {
+            results.add(postsById.get(postId));
+        }
+        Map<String, Double> ranked = scores;
+        results.sort((p1, p2) -> {
+            int byScore = Double.compare(ranked.get(p2.getPostID()), ranked.get(p1.getPostID()));
+            if (byScore != 0) {
+                return byScore;
+            }
+            int byDate = postedDate(p2).compareTo(postedDate(p1));
+            return byDate != 0 ? byDate : p1.getPostID().compareTo(p2.getPostID());
+        });
+        return results;
+    }
+
+    private static Date postedDate(MoodPost post) {
+        Date date = post.getPostedDateTime();
+        return date != null ? date : new Date(0);
+    }
+}
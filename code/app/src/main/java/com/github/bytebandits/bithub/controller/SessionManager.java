@@ -19,6 +19,9 @@ public class SessionManager {
     private static final String KEY_PROFILE = "profile";
     private static final String KEY_USERID = "userId";
     private static final String IS_LOGIN = "IsLoggedIn";
+    private static final String KEY_GEOHASH_BACKFILLED = "geohashBackfilled";
+    private static final String KEY_FOLLOWS_MIGRATED = "followsMigrated";
+    private static final String KEY_MOOD_STATS_BACKFILLED = "moodStatsBackfilled";
 
     private static SessionManager instance;
     private SharedPreferences prefs;
@@ -90,6 +93,37 @@ public class SessionManager {
         return profileJson != null ? gson.fromJson(profileJson, Profile.class) : null;
     }
 
+    // Whether the user's older posts were given a geohash, see DatabaseManager.backfillGeohashes
+    public boolean isGeohashBackfilled() {
+        return prefs.getBoolean(KEY_GEOHASH_BACKFILLED, false);
+    }
+
+    public void setGeohashBackfilled() {
+        editor.putBoolean(KEY_GEOHASH_BACKFILLED, true);
+        editor.apply();
+    }
+
+    // Whether the user's follows were moved out of the legacy arrays, see DatabaseManager.migrateLegacyFollows
+    public boolean isFollowsMigrated() {
+        return prefs.getBoolean(KEY_FOLLOWS_MIGRATED, false);
+    }
+
+    public void setFollowsMigrated() {
+        editor.putBoolean(KEY_FOLLOWS_MIGRATED, true);
+        editor.apply();
+    }
+
+    // Whether the user's older posts are known to be counted in their mood statistics on this device. The
+    // statistics document holds the marker that outlives logging out, see DatabaseManager.backfillMoodStats
+    public boolean isMoodStatsBackfilled() {
+        return prefs.getBoolean(KEY_MOOD_STATS_BACKFILLED, false);
+    }
+
+    public void setMoodStatsBackfilled() {
+        editor.putBoolean(KEY_MOOD_STATS_BACKFILLED, true);
+        editor.apply();
+    }
+
     // Logout user and clear session
     public void logoutUser() {
         editor.clear();
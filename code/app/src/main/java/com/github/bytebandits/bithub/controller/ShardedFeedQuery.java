@@ -0,0 +1,386 @@
+package com.github.bytebandits.bithub.controller;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.github.bytebandits.bithub.model.MoodPost;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QuerySnapshot;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * ShardedFeedQuery class that runs the follower feed query for any number of followed users.
+ * Firestore only allows 30 values in a whereIn clause, so the followed users are split into
+ * shards of at most 30, each shard is queried concurrently (already ordered by posted date on
+ * the server) and the sorted shard results are k-way merged into one feed.
+ * Supports one-shot reads, cursor-based pages and live snapshot listeners that report document changes.
+ */
+public class ShardedFeedQuery {
+    public static final int MAX_IN_CLAUSE_SIZE = 30;
+
+    // Most recent first, ties broken by document ID so the merge order is stable
+    private static final Comparator<DocumentSnapshot> NEWEST_FIRST = (d1, d2) -> {
+        int byDate = postedDate(d2.getDate(DatabaseManager.POSTED_DATE_TIME_FIELD))
+                .compareTo(postedDate(d1.getDate(DatabaseManager.POSTED_DATE_TIME_FIELD)));
+        return byDate != 0 ? byDate : d1.getId().compareTo(d2.getId());
+    };
+    private static final Comparator<DocumentStore.StoredDocument> STORED_NEWEST_FIRST = (d1, d2) -> {
+        int byDate = postedDate(d2.getDate(DatabaseManager.POSTED_DATE_TIME_FIELD))
+                .compareTo(postedDate(d1.getDate(DatabaseManager.POSTED_DATE_TIME_FIELD)));
+        return byDate != 0 ? byDate : d1.getId().compareTo(d2.getId());
+    };
+
+    private final List<Shard> shards = new ArrayList<>();
+    private final int pageSize;
+
+    /**
+     * Constructs a sharded query over the public posts of the given users.
+     *
+     * @param userIds  The user IDs whose posts should be included.
+     * @param pageSize The number of posts per page when paginating.
+     */
+    public ShardedFeedQuery(@NotNull List<String> userIds, int pageSize) {
+        this.pageSize = pageSize;
+        for (List<String> shardUserIds : partition(userIds, MAX_IN_CLAUSE_SIZE)) {
+            shards.add(new Shard(shardUserIds));
+        }
+    }
+
+    /**
+     * Splits a list into consecutive chunks of at most the given size.
+     *
+     * @param items The items to split.
+     * @param size  The maximum size of each chunk.
+     * @return The chunks, in order.
+     */
+    public static <T> List<List<T>> partition(List<T> items, int size) {
+        List<List<T>> chunks = new ArrayList<>();
+        for (int i = 0; i < items.size(); i += size) {
+            chunks.add(new ArrayList<>(items.subList(i, Math.min(i + size, items.size()))));
+        }
+        return chunks;
+    }
+
+    /**
+     * Fetches every post of every shard through a DocumentStore and merges them, most recent first.
+     *
+     * @param store    The store to read from.
+     * @param listener The listener that will receive the posts (null on failure).
+     */
+    public void fetchAll(@NotNull DocumentStore store, OnMergedPostsListener listener) {
+        if (shards.isEmpty()) {
+            listener.onPostsMerged(new ArrayList<>(), false);
+            return;
+        }
+
+        List<List<DocumentStore.StoredDocument>> shardResults = new ArrayList<>();
+        boolean[] failed = { false };
+        int[] remaining = { shards.size() };
+        for (Shard shard : shards) {
+            int index = shardResults.size();
+            shardResults.add(null);
+            long startedAt = SystemClock.elapsedRealtime();
+            store.query(DatabaseManager.getFollowerPostsStoreQuery(shard.userIds), documents -> {
+                shard.lastLatencyMs = SystemClock.elapsedRealtime() - startedAt;
+                if (documents == null) {
+                    Log.e("ShardedFeedQuery", "Shard query failed");
+                    failed[0] = true;
+                } else {
+                    shardResults.set(index, documents);
+                }
+                if (--remaining[0] > 0) {
+                    return;
+                }
+
+                logShardLatencies();
+                if (failed[0]) {
+                    listener.onPostsMerged(null, false);
+                    return;
+                }
+                ArrayList<MoodPost> posts = new ArrayList<>();
+                for (DocumentStore.StoredDocument doc : merge(shardResults, STORED_NEWEST_FIRST, Integer.MAX_VALUE)) {
+                    MoodPost post = doc.toObject(MoodPost.class);
+                    if (post != null) {
+                        posts.add(post);
+                    }
+                }
+                listener.onPostsMerged(posts, false);
+            });
+        }
+    }
+
+    /**
+     * Fetches the next page of the merged feed. Each shard only fetches enough posts to
+     * guarantee the page is correct; posts fetched but not yet shown are kept for later pages.
+     *
+     * @param listener The listener that will receive the page (null on failure).
+     */
+    public void fetchNextPage(OnMergedPostsListener listener) {
+        List<Shard> refilling = new ArrayList<>();
+        List<Integer> requested = new ArrayList<>();
+        List<Task<QuerySnapshot>> tasks = new ArrayList<>();
+        for (Shard shard : shards) {
+            int missing = pageSize - shard.buffer.size();
+            if (!shard.exhausted && missing > 0) {
+                Query shardQuery = shard.query().limit(missing);
+                if (shard.cursor != null) {
+                    shardQuery = shardQuery.startAfter(shard.cursor);
+                }
+                refilling.add(shard);
+                requested.add(missing);
+                tasks.add(shard.timed(DatabaseManager.getInstance().tracedRead("getFollowerPostsPage", shardQuery.get())));
+            }
+        }
+
+        if (tasks.isEmpty()) {
+            emitPage(listener);
+            return;
+        }
+
+        Tasks.whenAllComplete(tasks).addOnCompleteListener(all -> {
+            boolean failed = false;
+            for (int i = 0; i < tasks.size(); i++) {
+                Task<QuerySnapshot> task = tasks.get(i);
+                Shard shard = refilling.get(i);
+                if (!task.isSuccessful() || task.getResult() == null) {
+                    Log.e("ShardedFeedQuery", "Shard query failed", task.getException());
+                    failed = true;
+                    continue;
+                }
+
+                List<DocumentSnapshot> docs = task.getResult().getDocuments();
+                shard.buffer.addAll(docs);
+                if (!docs.isEmpty()) {
+                    shard.cursor = docs.get(docs.size() - 1);
+                }
+                if (docs.size() < requested.get(i)) {
+                    shard.exhausted = true;
+                }
+            }
+            logShardLatencies();
+
+            if (failed) {
+                listener.onPostsMerged(null, hasMore());
+            } else {
+                emitPage(listener);
+            }
+        });
+    }
+
+    /**
+     * Takes the next page off the shard buffers with a k-way merge.
+     *
+     * @param listener The listener that will receive the page.
+     */
+    private void emitPage(OnMergedPostsListener listener) {
+        PriorityQueue<Shard> heads = new PriorityQueue<>(Math.max(1, shards.size()),
+                (s1, s2) -> NEWEST_FIRST.compare(s1.buffer.peekFirst(), s2.buffer.peekFirst()));
+        for (Shard shard : shards) {
+            if (!shard.buffer.isEmpty()) {
+                heads.add(shard);
+            }
+        }
+
+        List<DocumentSnapshot> page = new ArrayList<>();
+        while (page.size() < pageSize && !heads.isEmpty()) {
+            Shard shard = heads.poll();
+            page.add(shard.buffer.pollFirst());
+            if (!shard.buffer.isEmpty()) {
+                heads.add(shard);
+            }
+        }
+        listener.onPostsMerged(toPosts(page), hasMore());
+    }
+
+    /**
+     * Listens to the newest posts of every shard and emits the document changes of each
+     * shard snapshot. Posts that only slid out of a shard's window because newer posts
+     * arrived are not reported as removed, since they still exist further down the feed.
+     *
+     * @param limit    The number of newest posts per shard to keep track of.
+     * @param listener The listener that will receive the changes of every snapshot.
+     * @return A registration that removes every shard listener.
+     */
+    public ListenerRegistration listen(int limit, OnPostChangesListener listener) {
+        List<ListenerRegistration> registrations = new ArrayList<>();
+
+        for (Shard shard : shards) {
+            long attachedAt = SystemClock.elapsedRealtime();
+            boolean[] delivered = { false };
+            registrations.add(DatabaseManager.getInstance().addTracedSnapshotListener("listenFollowerPosts",
+                    shard.query().limit(limit), (querySnapshot, error) -> {
+                if (error != null) {
+                    Log.e("ShardedFeedQuery", "Shard listener failed", error);
+                    return;
+                }
+                if (querySnapshot == null) {
+                    return;
+                }
+                if (!delivered[0]) {
+                    delivered[0] = true;
+                    shard.lastLatencyMs = SystemClock.elapsedRealtime() - attachedAt;
+                }
+
+                List<DocumentSnapshot> window = querySnapshot.getDocuments();
+                DocumentSnapshot oldestInWindow = window.size() >= limit ? window.get(window.size() - 1) : null;
+                List<DocumentChange> changes = new ArrayList<>();
+                for (DocumentChange change : querySnapshot.getDocumentChanges()) {
+                    if (change.getType() == DocumentChange.Type.REMOVED && oldestInWindow != null
+                            && NEWEST_FIRST.compare(change.getDocument(), oldestInWindow) > 0) {
+                        continue;
+                    }
+                    changes.add(change);
+                }
+
+                if (!changes.isEmpty()) {
+                    listener.onPostChanges(changes);
+                }
+            }));
+        }
+
+        return () -> {
+            for (ListenerRegistration registration : registrations) {
+                registration.remove();
+            }
+        };
+    }
+
+    /**
+     * K-way merges already sorted shard results.
+     *
+     * @param shardResults The results of each shard, each sorted by the order.
+     * @param order        The order of the results.
+     * @param limit        The maximum number of documents to take.
+     * @return The merged documents, in order.
+     */
+    private static <T> List<T> merge(List<List<T>> shardResults, Comparator<T> order, int limit) {
+        // Each heap entry is {shard index, position in that shard}
+        PriorityQueue<int[]> heads = new PriorityQueue<>(Math.max(1, shardResults.size()),
+                (a, b) -> order.compare(shardResults.get(a[0]).get(a[1]), shardResults.get(b[0]).get(b[1])));
+        for (int i = 0; i < shardResults.size(); i++) {
+            if (!shardResults.get(i).isEmpty()) {
+                heads.add(new int[] { i, 0 });
+            }
+        }
+
+        List<T> merged = new ArrayList<>();
+        while (merged.size() < limit && !heads.isEmpty()) {
+            int[] head = heads.poll();
+            List<T> shardResult = shardResults.get(head[0]);
+            merged.add(shardResult.get(head[1]));
+            if (head[1] + 1 < shardResult.size()) {
+                heads.add(new int[] { head[0], head[1] + 1 });
+            }
+        }
+        return merged;
+    }
+
+    private static ArrayList<MoodPost> toPosts(List<DocumentSnapshot> docs) {
+        ArrayList<MoodPost> posts = new ArrayList<>();
+        for (DocumentSnapshot doc : docs) {
+            MoodPost post = doc.toObject(MoodPost.class);
+            if (post != null) {
+                posts.add(post);
+            }
+        }
+        return posts;
+    }
+
+    private static Date postedDate(@Nullable Date date) {
+        return date != null ? date : new Date(0);
+    }
+
+    private void logShardLatencies() {
+        Log.d("ShardedFeedQuery", "Shard latencies (ms): " + getShardLatenciesMs());
+    }
+
+    /**
+     * Returns whether any shard still has posts that have not been paged out.
+     *
+     * @return true if another page may have posts.
+     */
+    public boolean hasMore() {
+        for (Shard shard : shards) {
+            if (!shard.exhausted || !shard.buffer.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the latency of the most recent query of each shard.
+     *
+     * @return The latencies in milliseconds, in shard order.
+     */
+    public List<Long> getShardLatenciesMs() {
+        List<Long> latencies = new ArrayList<>();
+        for (Shard shard : shards) {
+            latencies.add(shard.lastLatencyMs);
+        }
+        return latencies;
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    /**
+     * A chunk of at most 30 followed users, with its own cursor and the documents
+     * fetched for it but not yet paged out.
+     */
+    private static class Shard {
+        private final List<String> userIds;
+        private final ArrayDeque<DocumentSnapshot> buffer = new ArrayDeque<>();
+        private DocumentSnapshot cursor;
+        private boolean exhausted = false;
+        private long lastLatencyMs = -1;
+
+        Shard(List<String> userIds) {
+            this.userIds = userIds;
+        }
+
+        Query query() {
+            return DatabaseManager.getInstance().getFollowerPostsQuery(userIds);
+        }
+
+        /**
+         * Records how long the given query task takes to complete.
+         */
+        Task<QuerySnapshot> timed(Task<QuerySnapshot> task) {
+            long startedAt = SystemClock.elapsedRealtime();
+            return task.addOnCompleteListener(done -> lastLatencyMs = SystemClock.elapsedRealtime() - startedAt);
+        }
+    }
+
+    /**
+     * Callback interface for receiving merged posts.
+     * The posts are null if any shard could not be fetched.
+     */
+    public interface OnMergedPostsListener {
+        void onPostsMerged(@Nullable ArrayList<MoodPost> posts, boolean hasMore);
+    }
+
+    /**
+     * Callback interface for receiving the changes of a shard snapshot.
+     * Implement this interface to apply the changes, e.g. to a {@link PostIndex}.
+     */
+    public interface OnPostChangesListener {
+        void onPostChanges(List<DocumentChange> changes);
+    }
+}
@@ -0,0 +1,304 @@
+package com.github.bytebandits.bithub.controller;
+
+import androidx.annotation.Nullable;
+
+import com.github.bytebandits.bithub.model.MoodPost;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * SpatialIndex class that keeps the located posts loaded on the map in a uniform grid of
+ * latitude and longitude cells, so finding the post under a marker, the posts within a radius
+ * or in a box, or the nearest posts only looks at the cells around the query instead of every
+ * loaded post. It is updated one post at a time, e.g. from the events of a {@link PostIndex}.
+ */
+public class SpatialIndex {
+    /** Default size of a cell in degrees, about 1 km of latitude. */
+    public static final double DEFAULT_CELL_DEGREES = 0.01;
+
+    private static final double KM_PER_DEGREE = Math.toRadians(GeoHash.EARTH_RADIUS_KM);
+
+    private final double cellDegrees;
+    private final HashMap<Long, ArrayList<MoodPost>> cells = new HashMap<>();
+    private final HashMap<String, MoodPost> postsById = new HashMap<>();
+    // The cell each post was put in, so it is found again even if the post object was changed
+    private final HashMap<String, Long> cellKeysById = new HashMap<>();
+
+    public SpatialIndex() {
+        this(DEFAULT_CELL_DEGREES);
+    }
+
+    /**
+     * @param cellDegrees The size of a cell in degrees. Queries are fastest when a cell holds
+     *                    a handful of posts and a typical radius spans a few cells.
+     */
+    public SpatialIndex(double cellDegrees) {
+        this.cellDegrees = cellDegrees;
+    }
+
+    /**
+     * Adds a post, or moves the post with the same ID. Posts without a location are removed.
+     *
+     * @param post The post to add.
+     */
+    public void upsert(@NotNull MoodPost post) {
+        remove(post.getPostID());
+        if (post.getLatitude() == null || post.getLongitude() == null) {
+            return;
+        }
+        postsById.put(post.getPostID(), post);
+        long key = cellKey(row(post.getLatitude()), column(post.getLongitude()));
+        cellKeysById.put(post.getPostID(), key);
+        ArrayList<MoodPost> cell = cells.get(key);
+        if (cell == null) {
+            cell = new ArrayList<>(4);
+            cells.put(key, cell);
+        }
+        cell.add(post);
+    }
+
+    /**
+     * Removes a post if it is indexed.
+     *
+     * @param postId The ID of the post to remove.
+     */
+    public void remove(@NotNull String postId) {
+        MoodPost existing = postsById.remove(postId);
+        if (existing == null) {
+            return;
+        }
+        long key = cellKeysById.remove(postId);
+        ArrayList<MoodPost> cell = cells.get(key);
+        if (cell != null) {
+            cell.remove(existing);
+            if (cell.isEmpty()) {
+                cells.remove(key);
+            }
+        }
+    }
+
+    public void clear() {
+        cells.clear();
+        postsById.clear();
+        cellKeysById.clear();
+    }
+
+    public int size() {
+        return postsById.size();
+    }
+
+    /**
+     * Returns the post at a location, such as the post of a clicked marker.
+     *
+     * @param latitude  The latitude of the location.
+     * @param longitude The longitude of the location.
+     * @return The most recent post exactly at the location, or null if there is none.
+     */
+    @Nullable
+    public MoodPost findAt(double latitude, double longitude) {
+        ArrayList<MoodPost> cell = cells.get(cellKey(row(latitude), column(longitude)));
+        if (cell == null) {
+            return null;
+        }
+        MoodPost found = null;
+        for (MoodPost post : cell) {
+            if (Double.compare(post.getLatitude(), latitude) == 0 && Double.compare(post.getLongitude(), longitude) == 0
+                    && (found == null || post.getPostedDateTime().after(found.getPostedDateTime()))) {
+                found = post;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Returns the posts in a box.
+     *
+     * @param minLat The south edge of the box.
+     * @param minLng The west edge of the box.
+     * @param maxLat The north edge of the box.
+     * @param maxLng The east edge of the box, west of the west edge when the box crosses the
+     *               antimeridian.
+     * @return The posts in the box, in no particular order.
+     */
+    public List<MoodPost> withinBounds(double minLat, double minLng, double maxLat, double maxLng) {
+        List<MoodPost> found = new ArrayList<>();
+        if (minLng > maxLng) {
+            collectInBounds(minLat, minLng, maxLat, 180, found);
+            collectInBounds(minLat, -180, maxLat, maxLng, found);
+        } else {
+            collectInBounds(minLat, minLng, maxLat, maxLng, found);
+        }
+        return found;
+    }
+
+    /**
+     * Returns the posts within a distance of a point.
+     *
+     * @param latitude  The latitude of the point.
+     * @param longitude The longitude of the point.
+     * @param radiusKm  The distance in kilometers.
+     * @return The posts within the distance, in no particular order.
+     */
+    public List<MoodPost> withinRadius(double latitude, double longitude, double radiusKm) {
+        double[] box = GeoHash.boundsAround(latitude, longitude, radiusKm);
+        List<MoodPost> found = new ArrayList<>();
+        for (MoodPost post : withinBounds(box[0], box[1], box[2], box[3])) {
+            if (distanceKm(latitude, longitude, post.getLatitude(), post.getLongitude()) <= radiusKm) {
+                found.add(post);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Returns the posts nearest to a point, searching rings of cells outwards until no closer
+     * post can be left.
+     *
+     * @param latitude  The latitude of the point.
+     * @param longitude The longitude of the point.
+     * @param k         The number of posts to return.
+     * @return At most k posts, nearest first.
+     */
+    public List<MoodPost> nearest(double latitude, double longitude, int k) {
+        List<MoodPost> nearest = new ArrayList<>();
+        if (k <= 0 || postsById.isEmpty()) {
+            return nearest;
+        }
+
+        // Farthest of the k best candidates on top
+        PriorityQueue<Candidate> best = new PriorityQueue<>(k, (a, b) -> Double.compare(b.distanceKm, a.distanceKm));
+        long centerRow = row(latitude);
+        long centerColumn = column(longitude);
+        int visited = 0;
+
+        for (long ring = 0; visited < postsById.size(); ring++) {
+            // A cell in ring r is at least r - 1 cells away, cells being narrowest towards the poles
+            double poleward = Math.min(90, Math.abs(latitude) + ring * cellDegrees);
+            double cellKm = cellDegrees * KM_PER_DEGREE * Math.cos(Math.toRadians(poleward));
+            if (best.size() == k && best.peek().distanceKm <= (ring - 1) * cellKm) {
+                break;
+            }
+            if (8 * ring > cells.size()) {
+                // The ring has more cells than are occupied, so look at every post instead
+                best.clear();
+                for (MoodPost post : postsById.values()) {
+                    offer(best, k, post, distanceKm(latitude, longitude, post.getLatitude(), post.getLongitude()));
+                }
+                break;
+            }
+            for (long r = centerRow - ring; r <= centerRow + ring; r++) {
+                boolean edgeRow = r == centerRow - ring || r == centerRow + ring;
+                long step = edgeRow ? 1 : Math.max(2 * ring, 1);
+                for (long c = centerColumn - ring; c <= centerColumn + ring; c += step) {
+                    ArrayList<MoodPost> cell = cells.get(cellKey(r, wrapColumn(c)));
+                    if (cell == null) {
+                        continue;
+                    }
+                    for (MoodPost post : cell) {
+                        visited++;
+                        offer(best, k, post, distanceKm(latitude, longitude, post.getLatitude(), post.getLongitude()));
+                    }
+                }
+            }
+        }
+
+        while (!best.isEmpty()) {
+            nearest.add(0, best.poll().post);
+        }
+        return nearest;
+    }
+
+    // Keeps a post among the k best candidates if it is closer than the farthest of them
+    private static void offer(PriorityQueue<Candidate> best, int k, MoodPost post, double distance) {
+        if (best.size() < k) {
+            best.add(new Candidate(post, distance));
+        } else if (distance < best.peek().distanceKm) {
+            best.poll();
+            best.add(new Candidate(post, distance));
+        }
+    }
+
+    /**
+     * Returns the great circle distance between two points.
+     *
+     * @return The distance in kilometers.
+     */
+    public static double distanceKm(double lat1, double lng1, double lat2, double lng2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLng = Math.toRadians(lng2 - lng1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(dLng / 2) * Math.sin(dLng / 2);
+        return 2 * GeoHash.EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    private void collectInBounds(double minLat, double minLng, double maxLat, double maxLng, List<MoodPost> found) {
+        long minRow = row(minLat);
+        long maxRow = row(maxLat);
+        long minColumn = column(minLng);
+        long maxColumn = column(maxLng);
+
+        if ((maxRow - minRow + 1) * (maxColumn - minColumn + 1) > cells.size()) {
+            // The box spans more cells than are occupied, so look at the occupied ones instead
+            for (ArrayList<MoodPost> cell : cells.values()) {
+                addInBounds(cell, minLat, minLng, maxLat, maxLng, found);
+            }
+            return;
+        }
+        for (long r = minRow; r <= maxRow; r++) {
+            for (long c = minColumn; c <= maxColumn; c++) {
+                ArrayList<MoodPost> cell = cells.get(cellKey(r, c));
+                if (cell != null) {
+                    addInBounds(cell, minLat, minLng, maxLat, maxLng, found);
+                }
+            }
+        }
+    }
+
+    private static void addInBounds(List<MoodPost> cell, double minLat, double minLng, double maxLat, double maxLng,
+                                    List<MoodPost> found) {
+        for (MoodPost post : cell) {
+            double lat = post.getLatitude();
+            double lng = post.getLongitude();
+            if (lat >= minLat && lat <= maxLat && lng >= minLng && lng <= maxLng) {
+                found.add(post);
+            }
+        }
+    }
+
+    private long row(double latitude) {
+        return (long) Math.floor((latitude + 90) / cellDegrees);
+    }
+
+    private long column(double longitude) {
+        // 180 is the same meridian as -180, keep it in the last column rather than past it
+        return Math.min((long) Math.floor((longitude + 180) / cellDegrees), columnCount() - 1);
+    }
+
+    private long wrapColumn(long column) {
+        long columns = columnCount();
+        return ((column % columns) + columns) % columns;
+    }
+
+    private long columnCount() {
+        return (long) Math.ceil(360 / cellDegrees);
+    }
+
+    private static long cellKey(long row, long column) {
+        return (row << 32) | (column & 0xffffffffL);
+    }
+
+    private static class Candidate {
+        final MoodPost post;
+        final double distanceKm;
+
+        Candidate(MoodPost post, double distanceKm) {
+            this.post = post;
+            this.distanceKm = distanceKm;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.github.bytebandits.bithub.controller;
+
+import androidx.annotation.Nullable;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * TracingDocumentStore class that records every round trip of another DocumentStore with a
+ * DatabaseTracer, under the name of the DatabaseManager operation it was made for.
+ */
+public class TracingDocumentStore implements DocumentStore {
+    private final DocumentStore store;
+    private final DatabaseTracer tracer;
+    private final String operation;
+
+    public TracingDocumentStore(@NotNull DocumentStore store, @NotNull DatabaseTracer tracer, @NotNull String operation) {
+        this.store = store;
+        this.tracer = tracer;
+        this.operation = operation;
+    }
+
+    @Override
+    public void getDocument(@NotNull String collection, @NotNull String id, OnDocumentFetchListener listener) {
+        DatabaseTracer.Span span = tracer.start(operation);
+        store.getDocument(collection, id, document -> {
+            if (document == null) {
+                span.fail("Error fetching " + collection + "/" + id);
+            } else {
+                long bytes = tracer.isEstimatingBytes() ? DatabaseTracer.estimateBytes(document.getData()) : 0;
+                span.finish(1, 0, bytes, document.isFromCache());
+            }
+            listener.onDocumentFetched(document);
+        });
+    }
+
+    @Override
+    public void getDocuments(@NotNull String collection, @NotNull List<String> ids, OnDocumentsFetchListener listener) {
+        DatabaseTracer.Span span = tracer.start(operation);
+        store.getDocuments(collection, ids, documents -> {
+            finish(span, documents);
+            listener.onDocumentsFetched(documents);
+        });
+    }
+
+    @Override
+    public void query(@NotNull StoreQuery query, OnDocumentsFetchListener listener) {
+        DatabaseTracer.Span span = tracer.start(operation);
+        store.query(query, documents -> {
+            finish(span, documents);
+            listener.onDocumentsFetched(documents);
+        });
+    }
+
+    private void finish(DatabaseTracer.Span span, @Nullable List<StoredDocument> documents) {
+        if (documents == null) {
+            span.fail("Error running query");
+            return;
+        }
+        long bytes = 0;
+        boolean fromCache = !documents.isEmpty();
+        for (StoredDocument document : documents) {
+            if (tracer.isEstimatingBytes()) {
+                bytes += DatabaseTracer.estimateBytes(document.getData());
+            }
+            fromCache &= document.isFromCache();
+        }
+        span.finish(documents.size(), 0, bytes, fromCache);
+    }
+}
@@ -1,6 +1,5 @@
 package com.github.bytebandits.bithub.model;
 
-import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.UUID;
 
@@ -13,6 +12,7 @@ public class Comment{
     private Profile profile;
     private Date dateTime;
     private String text;
+    private transient DateLabels dateLabels; // Formatted once, not stored
 
     public Comment() {}
 
@@ -83,8 +83,7 @@ public class Comment{
      *      Returns a formatted String object representing the comment's date posted
      */
     public String getFormattedPostedDate() {
-        SimpleDateFormat dateFormatter = new SimpleDateFormat("MMM. dd, yyyy");
-        return dateFormatter.format(getPostedDateTime());
+        return getDateLabels().date(getPostedDateTime());
     }
 
     /**
@@ -93,8 +92,12 @@ public class Comment{
      *      Returns a formatted String object representing the comment's time posted
      */
     public String getFormattedPostedTime() {
-        SimpleDateFormat timeFormatter = new SimpleDateFormat("h:mma");
-        return timeFormatter.format(getPostedDateTime());
+        return getDateLabels().time(getPostedDateTime());
+    }
+
+    private DateLabels getDateLabels() {
+        dateLabels = DateLabels.orNew(dateLabels);
+        return dateLabels;
     }
 
     /**
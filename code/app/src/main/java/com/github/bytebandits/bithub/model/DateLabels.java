@@ -0,0 +1,123 @@
+package com.github.bytebandits.bithub.model;
+
+import androidx.annotation.Nullable;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * DateLabels class that formats the dates shown on mood posts, comments and notifications.
+ * The formatters are made once per thread rather than on every call, and each model keeps one
+ * DateLabels holding the labels of its date, so binding a row again neither formats nor
+ * allocates. An instance is only used from the main thread.
+ */
+public final class DateLabels {
+    public static final String DATE_PATTERN = "MMM. dd, yyyy";
+    public static final String TIME_PATTERN = "h:mma";
+
+    public static final long MINUTE_MS = 60 * 1000;
+    private static final long HOUR_MS = 60 * MINUTE_MS;
+    private static final long DAY_MS = 24 * HOUR_MS;
+
+    // SimpleDateFormat is not thread safe, and java.time formatters need API 26
+    private static final ThreadLocal<SimpleDateFormat> DATE_FORMAT = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            return new SimpleDateFormat(DATE_PATTERN, Locale.getDefault());
+        }
+    };
+    private static final ThreadLocal<SimpleDateFormat> TIME_FORMAT = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            return new SimpleDateFormat(TIME_PATTERN, Locale.getDefault());
+        }
+    };
+
+    private long labelledTime = Long.MIN_VALUE; // The date the labels below were made for
+    private String date;
+    private String time;
+    private long relativeMinute = Long.MIN_VALUE; // The minute the relative label was made in
+    private String relative;
+
+    /**
+     * Returns the labels a model keeps, or new ones if it has none yet. Models make them on first
+     * use, as objects read from Firestore or a Bundle skip the initializers of transient fields.
+     *
+     * @param labels The labels of the model, or null.
+     * @return The labels to keep in the model.
+     */
+    public static DateLabels orNew(@Nullable DateLabels labels) {
+        return labels != null ? labels : new DateLabels();
+    }
+
+    /**
+     * Returns the date label of a date, formatting it only if it changed since the last call.
+     */
+    public String date(Date dateTime) {
+        refresh(dateTime);
+        return date;
+    }
+
+    /**
+     * Returns the time label of a date, formatting it only if it changed since the last call.
+     */
+    public String time(Date dateTime) {
+        refresh(dateTime);
+        return time;
+    }
+
+    /**
+     * Returns the relative time label of a date, made again only once a minute.
+     *
+     * @param dateTime The date.
+     * @param nowMs    The current time in milliseconds.
+     * @return The label, see {@link #formatRelative(long, long)}.
+     */
+    public String relative(Date dateTime, long nowMs) {
+        refresh(dateTime);
+        long minute = nowMs / MINUTE_MS;
+        if (relative == null || minute != relativeMinute) {
+            relative = formatRelative(labelledTime, nowMs);
+            relativeMinute = minute;
+        }
+        return relative;
+    }
+
+    private void refresh(Date dateTime) {
+        if (date == null || dateTime.getTime() != labelledTime) {
+            labelledTime = dateTime.getTime();
+            date = formatDate(dateTime);
+            time = formatTime(dateTime);
+            relative = null;
+        }
+    }
+
+    public static String formatDate(Date dateTime) {
+        return DATE_FORMAT.get().format(dateTime);
+    }
+
+    public static String formatTime(Date dateTime) {
+        return TIME_FORMAT.get().format(dateTime);
+    }
+
+    /**
+     * Formats how long ago a time was, for times within the last day.
+     *
+     * @param timeMs The time in milliseconds.
+     * @param nowMs  The current time in milliseconds.
+     * @return "just now", "5m ago" or "3h ago", or the time label once a day has passed.
+     */
+    public static String formatRelative(long timeMs, long nowMs) {
+        long elapsed = nowMs - timeMs;
+        if (elapsed < MINUTE_MS) {
+            // Also covers times slightly ahead of this device's clock
+            return "just now";
+        } else if (elapsed < HOUR_MS) {
+            return (elapsed / MINUTE_MS) + "m ago";
+        } else if (elapsed < DAY_MS) {
+            return (elapsed / HOUR_MS) + "h ago";
+        }
+        return formatTime(new Date(timeMs));
+    }
+}
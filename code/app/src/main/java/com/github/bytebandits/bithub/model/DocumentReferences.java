@@ -6,11 +6,16 @@ package com.github.bytebandits.bithub.model;
  * @author Michael Tran
  */
 public enum DocumentReferences {
-    FOLLOWERS("followerRefs"),
+    FOLLOWERS("followerRefs"), // Legacy arrays, see DatabaseManager.migrateLegacyFollows
     FOLLOWINGS("followingRefs"),
+    FOLLOWERS_COLLECTION("followers"), // Subcollection of a user's followers, keyed by user ID
+    FOLLOWING_COLLECTION("following"), // Subcollection of the users a user follows, keyed by user ID
     NOTIFICATION_POSTS("notificationRefs.posts"),
     NOTIFICATION_REQS("notificationRefs.requests"),
-    POSTS("postRefs");
+    POSTS("postRefs"),
+    NOTIFICATIONS("notifications"), // Subcollection of a user's notification inbox entries
+    COMMENTS("comments"), // Subcollection of a post's comments
+    AGGREGATES_COLLECTION("aggregates"); // Subcollection of a user's precomputed statistics, see MoodStats
 
     private final String docRefString;
 
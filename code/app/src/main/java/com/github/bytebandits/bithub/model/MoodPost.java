@@ -1,12 +1,9 @@
 package com.github.bytebandits.bithub.model;
 
-import android.annotation.SuppressLint;
+import com.github.bytebandits.bithub.controller.GeoHash;
 
 import java.io.Serializable;
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.Date;
-import java.util.Objects;
 import java.util.UUID;
 
 /**
@@ -25,8 +22,10 @@ public class MoodPost implements Serializable {
     private SocialSituation situation;
     private String desc;
     private String image;
-    private ArrayList<Comment> comments;
+    private int commentCount;
     private boolean isPrivate;
+    private String storedGeohash; // The geohash the post was read with, see hasStoredGeohash
+    private transient DateLabels dateLabels; // Formatted once, not stored
 
     public MoodPost() {}
 
@@ -48,7 +47,7 @@ public class MoodPost implements Serializable {
      *      Can be a max of 20 characters or 3 words.
      *      When null is passed, it means that no description is attached to the mood post.
      * @param image
-     *      A Base64 string representing the image attached to the mood post.
+     *      The content hash of the image attached to the mood post, see ImageStore.
      *      When null is passed, it means that no image is attached to the mood post.
      * @param isPrivate
      *      boolean representing whether or not this mood is public or private.
@@ -63,7 +62,7 @@ public class MoodPost implements Serializable {
         this.situation = situation;
         this.desc = desc;
         this.image = image;
-        this.comments = new ArrayList<>();
+        this.commentCount = 0;
         this.isPrivate = isPrivate;
     }
 
@@ -136,8 +135,7 @@ public class MoodPost implements Serializable {
      *      Returns a formatted String object representing the mood post's date posted
      */
     public String getFormattedPostedDate() {
-        @SuppressLint("SimpleDateFormat") SimpleDateFormat dateFormatter = new SimpleDateFormat("MMM. dd, yyyy");
-        return dateFormatter.format(getPostedDateTime());
+        return getDateLabels().date(getPostedDateTime());
     }
 
     /**
@@ -146,8 +144,12 @@ public class MoodPost implements Serializable {
      *      Returns a formatted String object representing the mood post's time posted
      */
     public String getFormattedPostedTime() {
-        @SuppressLint("SimpleDateFormat") SimpleDateFormat timeFormatter = new SimpleDateFormat("h:mma");
-        return timeFormatter.format(getPostedDateTime());
+        return getDateLabels().time(getPostedDateTime());
+    }
+
+    private DateLabels getDateLabels() {
+        dateLabels = DateLabels.orNew(dateLabels);
+        return dateLabels;
     }
 
     /**
@@ -221,6 +223,38 @@ public class MoodPost implements Serializable {
         else { return getLatitude() + "," + getLongitude(); }
     }
 
+    /**
+     * Returns the geohash of the mood post's attached location, stored so the map can query
+     * posts by area, see GeoHash
+     * @return
+     *      Returns a String object representing the geohash of the attached location.
+     *      Returns null when the mood post has no attached location.
+     */
+    public String getGeohash() {
+        if (getLatitude() == null || getLongitude() == null) { return null; }
+        else { return GeoHash.encode(getLatitude(), getLongitude(), GeoHash.STORED_PRECISION); }
+    }
+
+    /**
+     * Sets the geohash stored with the mood post, when it is read from Firestore
+     * @param geohash
+     *      The stored geohash, null for posts from before geohashes were stored
+     */
+    public void setGeohash(String geohash) {
+        this.storedGeohash = geohash;
+    }
+
+    /**
+     * Returns whether the mood post was read with a stored geohash. Posts from before geohashes
+     * were stored are not counted in the heatmap until DatabaseManager.backfillGeohashes gives
+     * them one.
+     * @return
+     *      Returns true if the mood post was read with a geohash.
+     */
+    public boolean hasStoredGeohash() {
+        return storedGeohash != null;
+    }
+
     /**
      * Returns the mood post's social situation
      * @return
@@ -261,10 +295,11 @@ public class MoodPost implements Serializable {
     }
 
     /**
-     * Returns the mood post's attached image as a Base 64 String
+     * Returns a reference to the mood post's attached image
      *
      * @return
-     *      Returns a Base 64 String representing the image attached to the mood post
+     *      Returns the content hash of the image attached to the mood post, or a Base64 String
+     *      of the image itself for mood posts made by older versions.
      *      Returns null when the mood post has no attached image.
      */
     public String getImage() {
@@ -274,42 +309,27 @@ public class MoodPost implements Serializable {
     /**
      * Sets the mood post's attached image
      * @param image
-     *      Base64 String representing the image attached to the mood post
+     *      Content hash of the image attached to the mood post
      */
     public void setImage(String image) {
         this.image = image;
     }
 
     /**
-     * Returns the mood post's comments
-     *
+     * Returns the number of comments on the mood post. The comments themselves are kept in a
+     * subcollection of the post and fetched a page at a time.
      * @return
-     *      Returns a ArrayList of Comment objects representing the comments of the mood post
+     *      Returns an int representing the number of comments of the mood post
      */
-    public ArrayList<Comment> getComments() { return comments; }
-
-    /**
-     * Adds a comment to the mood post's comments
-     * @param comment
-     *      Comment object representing the comment we want to add
-     */
-    public void addComment(Comment comment) {
-        comments.add(comment);
-    }
+    public int getCommentCount() { return commentCount; }
 
     /**
-     * Deletes a comment on the mood post's comments
-     * @param comment
-     *      Comment object representing the comment we want to delete
+     * Sets the number of comments on the mood post
+     * @param commentCount
+     *      int representing the number of comments of the mood post
      */
-    public void deleteComment(Comment comment) {
-        // Loop through comments and find matching comment id and delete it
-        for (int i = 0; i < comments.size(); i++) {
-            if (Objects.equals(comments.get(i).getCommentID(), comment.getCommentID())) {
-                comments.remove(i);
-                break;
-            }
-        }
+    public void setCommentCount(int commentCount) {
+        this.commentCount = commentCount;
     }
 
     /**
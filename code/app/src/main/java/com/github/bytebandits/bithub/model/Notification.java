@@ -1,7 +1,6 @@
 package com.github.bytebandits.bithub.model;
 
 import java.io.Serializable;
-import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.UUID;
@@ -12,14 +11,42 @@ import java.util.UUID;
  * @author Soham Limbachia
  */
 public class Notification implements Serializable {
+    // Values of the type field of notification inbox entries
+    public static final String TYPE_POST = "post";
+    public static final String TYPE_REQUEST = "request";
+
     private String notificationID;
     private MoodPost post;
+    private String postId;
+    private Emotion emotion;
     private boolean followRequest;
     private Profile profile;
     private Date dateTime;
+    private transient DateLabels dateLabels; // Formatted once, not stored
 
     public Notification() {}
 
+    /**
+     * Constructor for notifications read from a user's notification inbox, where the
+     * details needed to display the notification are stored on the entry itself.
+     *
+     * @param notificationID the ID of the inbox entry
+     * @param followRequest  whether the notification is a follow request
+     * @param userId         the ID of the user who posted or sent the request
+     * @param postId         the ID of the post, or null for follow requests
+     * @param emotion        the emotion of the post, or null for follow requests
+     * @param dateTime       when the notification was sent
+     */
+    public Notification(String notificationID, boolean followRequest, String userId,
+                        String postId, Emotion emotion, Date dateTime) {
+        this.notificationID = notificationID;
+        this.followRequest = followRequest;
+        this.profile = new Profile(userId);
+        this.postId = postId;
+        this.emotion = emotion;
+        this.dateTime = dateTime;
+    }
+
     /**
      * Constructor for notifications
      *
@@ -67,6 +94,22 @@ public class Notification implements Serializable {
         return post;
     }
 
+    /**
+     * Returns the ID of the post the notification is about
+     * @return postId String, null for follow requests
+     */
+    public String getPostId() {
+        return postId;
+    }
+
+    /**
+     * Returns the emotion of the post the notification is about
+     * @return emotion Emotion, null for follow requests
+     */
+    public Emotion getEmotion() {
+        return emotion;
+    }
+
     /**
      * Constructor for notifications
      * @return profile Profile
@@ -97,8 +140,7 @@ public class Notification implements Serializable {
      *      Returns a formatted String object representing the mood post's date posted
      */
     public String getFormattedPostedDate() {
-        SimpleDateFormat dateFormatter = new SimpleDateFormat("MMM. dd, yyyy");
-        return dateFormatter.format(getDateTime());
+        return getDateLabels().date(getDateTime());
     }
 
     /**
@@ -107,8 +149,21 @@ public class Notification implements Serializable {
      *      Returns a formatted String object representing the mood post's time posted
      */
     public String getFormattedPostedTime() {
-        SimpleDateFormat timeFormatter = new SimpleDateFormat("h:mma");
-        return timeFormatter.format(getDateTime());
+        return getDateLabels().time(getDateTime());
+    }
+
+    /**
+     * Returns how long ago the notification was sent, such as "5m ago", or its time once a day has passed
+     * @param nowMs The current time in milliseconds
+     * @return The relative time, the same String until the minute or date changes
+     */
+    public String getRelativePostedTime(long nowMs) {
+        return getDateLabels().relative(getDateTime(), nowMs);
+    }
+
+    private DateLabels getDateLabels() {
+        dateLabels = DateLabels.orNew(dateLabels);
+        return dateLabels;
     }
 
     /**
@@ -117,9 +172,12 @@ public class Notification implements Serializable {
      */
     public void setMoodPost(MoodPost post) {
         this.post = post;
+        this.postId = post.getPostID();
+        this.emotion = post.getEmotion();
         this.dateTime = new Date();
         this.followRequest = false;
-        this.notificationID = UUID.randomUUID().toString();
+        // Same ID as the inbox entry of the post, so a list keeps the row across reloads
+        this.notificationID = post.getPostID();
         this.profile = post.getProfile();
     }
 
@@ -130,7 +188,7 @@ public class Notification implements Serializable {
     public void setRequest(HashMap<String, Object> request) {
         this.followRequest = true;
         this.dateTime = new Date();
-        this.notificationID = UUID.randomUUID().toString();
         this.profile = new Profile(request.get("userId").toString());
+        this.notificationID = TYPE_REQUEST + "_" + this.profile.getUserId();
     }
 }
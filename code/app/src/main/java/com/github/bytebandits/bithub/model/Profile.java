@@ -26,6 +26,8 @@ public class Profile implements Serializable {
     private String userId;
     private Boolean locationServices = false;
     private Bitmap image = null;
+    // Profile picture as read from JSON, only decoded once it is asked for
+    private String encodedImage = null;
 
     public Profile() {
     }
@@ -83,11 +85,16 @@ public class Profile implements Serializable {
     }
 
     /**
-     * Returns the user's profile picture.
+     * Returns the user's profile picture, decoding it on first use.
      *
      * @return The user's profile picture
      */
     public Bitmap getImage() {
+        if (image == null && encodedImage != null) {
+            byte[] decodedBytes = Base64.decode(encodedImage, Base64.DEFAULT);
+            this.image = BitmapFactory.decodeStream(new ByteArrayInputStream(decodedBytes));
+            this.encodedImage = null;
+        }
         return image;
     }
 
@@ -98,6 +105,7 @@ public class Profile implements Serializable {
      */
     public void setImage(Bitmap image) {
         this.image = image;
+        this.encodedImage = null;
     }
 
 
@@ -116,7 +124,10 @@ public class Profile implements Serializable {
             json.put("locationServices", locationServices != null ? locationServices : JSONObject.NULL);
 
             // Convert Bitmap to Base64 if it's not null
-            if (image != null) {
+            if (image == null && encodedImage != null) {
+                // Never decoded, so still as it was read
+                json.put("image", encodedImage);
+            } else if (image != null) {
                 ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
                 image.compress(Bitmap.CompressFormat.PNG, 100, byteArrayOutputStream);
                 byte[] byteArray = byteArrayOutputStream.toByteArray();
@@ -147,11 +158,10 @@ public class Profile implements Serializable {
                     ? json.getBoolean("locationServices")
                     : null;
 
-            // Decode and update image if present
+            // Keep the image encoded, logging in should not wait for it to be decoded
             if (json.has("image") && !json.isNull("image")) {
-                String encodedImage = json.getString("image");
-                byte[] decodedBytes = Base64.decode(encodedImage, Base64.DEFAULT);
-                this.image = BitmapFactory.decodeStream(new ByteArrayInputStream(decodedBytes));
+                this.encodedImage = json.getString("image");
+                this.image = null;
             }
         } catch (JSONException e) {
             e.printStackTrace();
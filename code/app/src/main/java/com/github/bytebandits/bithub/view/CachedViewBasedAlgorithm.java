@@ -0,0 +1,184 @@
+package com.github.bytebandits.bithub.view;
+
+import android.util.Log;
+
+import com.google.android.gms.maps.model.CameraPosition;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.maps.android.clustering.Cluster;
+import com.google.maps.android.clustering.ClusterItem;
+import com.google.maps.android.clustering.algo.NonHierarchicalViewBasedAlgorithm;
+import com.google.maps.android.geometry.Point;
+import com.google.maps.android.projection.SphericalMercatorProjection;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Clusters only the markers around the visible part of the map, and keeps the clusters of each
+ * zoom level so panning within the clustered area or zooming back reuses them instead of
+ * clustering again. Each zoom level is clustered over an area {@link #COVERAGE} times the size
+ * of the screen in each direction, and the levels next to the current one are computed ahead
+ * on a background thread. The cache is emptied whenever markers are added, changed or removed.
+ */
+class CachedViewBasedAlgorithm<T extends ClusterItem> extends NonHierarchicalViewBasedAlgorithm<T> {
+    private static final int COVERAGE = 2;
+    private static final SphericalMercatorProjection PROJECTION = new SphericalMercatorProjection(1);
+
+    private final int viewWidth;
+    private final int viewHeight;
+    private final ExecutorService precomputeExecutor = Executors.newSingleThreadExecutor();
+
+    // Guarded by this, like the camera position the clusters are computed around
+    private final HashMap<Integer, CachedClusters<T>> clustersByZoom = new HashMap<>();
+    private LatLng mapCenter;
+    private int hits;
+    private int misses;
+
+    /**
+     * @param viewWidth  The width of the map in pixels.
+     * @param viewHeight The height of the map in pixels.
+     */
+    CachedViewBasedAlgorithm(int viewWidth, int viewHeight) {
+        super(viewWidth * COVERAGE, viewHeight * COVERAGE);
+        this.viewWidth = viewWidth;
+        this.viewHeight = viewHeight;
+    }
+
+    @Override
+    public synchronized void onCameraChange(CameraPosition cameraPosition) {
+        super.onCameraChange(cameraPosition);
+        mapCenter = cameraPosition.target;
+    }
+
+    @Override
+    public Set<? extends Cluster<T>> getClusters(float zoom) {
+        synchronized (this) {
+            int tier = (int) zoom;
+            CachedClusters<T> cached = clustersByZoom.get(tier);
+            if (cached != null && cached.covers(mapCenter, zoom, viewWidth, viewHeight)) {
+                hits++;
+                return cached.clusters;
+            }
+
+            misses++;
+            Set<? extends Cluster<T>> clusters = super.getClusters(zoom);
+            clustersByZoom.put(tier, new CachedClusters<>(clusters, mapCenter, zoom, viewWidth * COVERAGE, viewHeight * COVERAGE));
+            return clusters;
+        }
+    }
+
+    /**
+     * Clusters the zoom levels above and below the given one in the background, so zooming by
+     * one level finds its clusters ready.
+     *
+     * @param zoom The current zoom of the map.
+     */
+    void precomputeAround(float zoom) {
+        precomputeExecutor.execute(() -> {
+            for (int tier : new int[] { (int) zoom - 1, (int) zoom + 1 }) {
+                if (tier < 0) {
+                    continue;
+                }
+                lock();
+                try {
+                    getClusters(tier);
+                } finally {
+                    unlock();
+                }
+            }
+            synchronized (this) {
+                Log.d("CachedViewBasedAlgorithm", "Cluster cache: " + hits + " hits, " + misses + " misses, "
+                        + clustersByZoom.size() + " zoom levels");
+            }
+        });
+    }
+
+    void shutdown() {
+        precomputeExecutor.shutdownNow();
+    }
+
+    private synchronized void invalidate() {
+        clustersByZoom.clear();
+    }
+
+    @Override
+    public boolean addItem(T item) {
+        boolean changed = super.addItem(item);
+        invalidate();
+        return changed;
+    }
+
+    @Override
+    public boolean addItems(Collection<T> items) {
+        boolean changed = super.addItems(items);
+        invalidate();
+        return changed;
+    }
+
+    @Override
+    public boolean removeItem(T item) {
+        boolean changed = super.removeItem(item);
+        invalidate();
+        return changed;
+    }
+
+    @Override
+    public boolean removeItems(Collection<T> items) {
+        boolean changed = super.removeItems(items);
+        invalidate();
+        return changed;
+    }
+
+    @Override
+    public boolean updateItem(T item) {
+        boolean changed = super.updateItem(item);
+        invalidate();
+        return changed;
+    }
+
+    @Override
+    public void clearItems() {
+        super.clearItems();
+        invalidate();
+    }
+
+    /**
+     * The clusters of one zoom level and the area, in world coordinates, they were computed over
+     */
+    private static class CachedClusters<T extends ClusterItem> {
+        final Set<? extends Cluster<T>> clusters;
+        final double minX, maxX, minY, maxY;
+
+        CachedClusters(Set<? extends Cluster<T>> clusters, LatLng center, float zoom, int width, int height) {
+            this.clusters = clusters;
+            double[] area = area(center, zoom, width, height);
+            this.minX = area[0];
+            this.maxX = area[1];
+            this.minY = area[2];
+            this.maxY = area[3];
+        }
+
+        // Whether the screen at this camera position lies inside the clustered area
+        boolean covers(LatLng center, float zoom, int width, int height) {
+            if (center == null) {
+                return false;
+            }
+            double[] visible = area(center, zoom, width, height);
+            return visible[0] >= minX && visible[1] <= maxX && visible[2] >= minY && visible[3] <= maxY;
+        }
+
+        // The same area NonHierarchicalViewBasedAlgorithm clusters for a view of this size
+        private static double[] area(LatLng center, float zoom, int width, int height) {
+            if (center == null) {
+                return new double[] { 0, 0, 0, 0 };
+            }
+            Point point = PROJECTION.toPoint(center);
+            double halfWidth = width / Math.pow(2, zoom) / 256 / 2;
+            double halfHeight = height / Math.pow(2, zoom) / 256 / 2;
+            return new double[] { point.x - halfWidth, point.x + halfWidth, point.y - halfHeight, point.y + halfHeight };
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.github.bytebandits.bithub.view;
+
+import android.app.AlertDialog;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.Button;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.github.bytebandits.bithub.R;
+import com.github.bytebandits.bithub.model.Comment;
+
+import java.util.Objects;
+
+/**
+ * Represents the comment adapter
+ *
+ * @author Tony Yang
+ */
+public class CommentAdapter extends ListAdapter<Comment, CommentAdapter.ViewHolder> {
+    private static final DiffUtil.ItemCallback<Comment> DIFF_CALLBACK = new DiffUtil.ItemCallback<Comment>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Comment oldComment, @NonNull Comment newComment) {
+            return oldComment.getCommentID() != null
+                    ? oldComment.getCommentID().equals(newComment.getCommentID())
+                    : oldComment == newComment;
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Comment oldComment, @NonNull Comment newComment) {
+            return Objects.equals(oldComment.getText(), newComment.getText())
+                    && Objects.equals(oldComment.getPostedDateTime(), newComment.getPostedDateTime());
+        }
+    };
+
+    private final String currentUserId;
+    private final DeleteCommentListener listener;
+
+    /**
+     * Constructor for CommentAdapter
+     * @param currentUserId The ID of the logged in user, who may delete their own comments
+     * @param listener The listener to notify when a comment is deleted
+     */
+    public CommentAdapter(String currentUserId, DeleteCommentListener listener) {
+        super(DIFF_CALLBACK);
+        this.currentUserId = currentUserId;
+        this.listener = listener;
+        setHasStableIds(true);
+    }
+
+    // Listener interface that will be implemented in and used to communicate with
+    // comments fragment
+    interface DeleteCommentListener {
+        void deleteComment(Comment comment);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        Comment comment = getItem(position);
+        return RecyclerLists.stableId(comment.getCommentID(), comment);
+    }
+
+    @Override
+    public int getItemViewType(int position) {
+        return R.layout.comment_content;
+    }
+
+    @NonNull
+    @Override
+    public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.comment_content,
+                parent, false);
+        return new ViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+        Comment comment = getItem(position);
+
+        // Set the text views of the row based on the comment object
+        holder.nameView.setText(comment.getProfile().getUserId());
+        holder.dateView.setText(comment.getFormattedPostedDate());
+        holder.timeView.setText(comment.getFormattedPostedTime());
+        holder.commentTextView.setText(comment.getText());
+        if (!Objects.equals(comment.getProfile().getUserId(), currentUserId)) {
+            holder.deleteButton.setVisibility(View.GONE);
+            holder.deleteButton.setOnClickListener(null);
+        } else {
+            // If this is our comment, give option to delete
+            holder.deleteButton.setVisibility(View.VISIBLE);
+            holder.deleteButton.setOnClickListener(v -> {
+                // Get confirmation for delete
+                new AlertDialog.Builder(v.getContext())
+                        .setTitle("Confirm Delete")
+                        .setMessage(
+                                "Are you sure you want to delete this comment?")
+                        .setPositiveButton("Yes", (confirmDialog, which) -> {
+                            listener.deleteComment(comment);
+                            confirmDialog.cancel();
+                        })
+                        .setNegativeButton("No", (confirmDialog, which) -> {
+                            confirmDialog.cancel();
+                        })
+                        .show();
+            });
+        }
+    }
+
+    /**
+     * Holds the views of a comment row, so they are looked up once per row
+     */
+    static class ViewHolder extends RecyclerView.ViewHolder {
+        final TextView nameView;
+        final TextView dateView;
+        final TextView timeView;
+        final TextView commentTextView;
+        final Button deleteButton;
+
+        ViewHolder(@NonNull View view) {
+            super(view);
+            nameView = view.findViewById(R.id.textUserName);
+            dateView = view.findViewById(R.id.textDate);
+            timeView = view.findViewById(R.id.textTime);
+            commentTextView = view.findViewById(R.id.textCommentText);
+            deleteButton = view.findViewById(R.id.deleteCommentButton);
+        }
+    }
+}
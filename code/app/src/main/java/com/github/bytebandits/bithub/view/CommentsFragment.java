@@ -6,11 +6,13 @@ import android.os.Bundle;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.widget.Button;
-import android.widget.ListView;
+import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.core.content.ContextCompat;
 import androidx.fragment.app.DialogFragment;
+import androidx.recyclerview.widget.RecyclerView;
 
 import com.github.bytebandits.bithub.R;
 import com.github.bytebandits.bithub.controller.DatabaseManager;
@@ -18,9 +20,10 @@ import com.github.bytebandits.bithub.controller.SessionManager;
 import com.github.bytebandits.bithub.model.Comment;
 import com.github.bytebandits.bithub.model.MoodPost;
 import com.github.bytebandits.bithub.model.Profile;
+import com.google.firebase.firestore.DocumentSnapshot;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.HashSet;
 
 /**
  * The CommentsFragment to add the dialog to insert a comment
@@ -29,12 +32,18 @@ import java.util.HashMap;
  */
 public class CommentsFragment extends DialogFragment implements
         AddCommentFragment.AddCommentDialogListener,
-        CommentArrayAdapter.DeleteCommentListener {
-    private ListView commentList;
+        CommentAdapter.DeleteCommentListener {
+    private RecyclerView commentList;
     private ArrayList<Comment> dataList;
-    private CommentArrayAdapter commentAdapter;
+    private CommentAdapter commentAdapter;
     private Profile profile = SessionManager.getInstance(getContext()).getProfile();
     private MoodPost moodPost;
+    private DocumentSnapshot commentsCursor; // Last comment that has been loaded
+    private boolean loadingPage = false;
+    private boolean commentsHaveMore = true;
+    private static final int PAGE_SIZE = 20;
+    private static final int PREFETCH_THRESHOLD = 5; // Rows from the end at which the next page is requested
+
     public static CommentsFragment newInstance(MoodPost moodPost) {
         // Use Bundle to get info between fragments
         Bundle args = new Bundle();
@@ -44,24 +53,73 @@ public class CommentsFragment extends DialogFragment implements
         return fragment;
     }
 
-    // Add the comment given to the display and database and notify a change
+    // Add the comment given to the top of the display and database, and take it back out if it could not be saved
     @Override
     public void addComment(String commentText) {
-        dataList.add(new Comment(profile, commentText));
-        HashMap<String, Object> updateFields = new HashMap<>();
-        updateFields.put("comments", dataList);
-        DatabaseManager.getInstance().updatePost(moodPost.getPostID(), updateFields, null);
-        commentAdapter.notifyDataSetChanged();
+        Comment comment = new Comment(profile, commentText);
+        dataList.add(0, comment);
+        commentAdapter.submitList(new ArrayList<>(dataList));
+        DatabaseManager.getInstance().addComment(moodPost.getPostID(), comment, success -> {
+            if (!success) {
+                dataList.remove(comment);
+                commentAdapter.submitList(new ArrayList<>(dataList));
+                showFailure("Could not add comment");
+            }
+        });
     }
 
-    // Delete the comment given from display and database and notify a change
+    // Delete the comment given from display and database, and put it back if it could not be deleted
     @Override
-    public void deleteComment(int position) {
-        dataList.remove(position);
-        HashMap<String, Object> updateFields = new HashMap<>();
-        updateFields.put("comments", dataList);
-        DatabaseManager.getInstance().updatePost(moodPost.getPostID(), updateFields, null);
-        commentAdapter.notifyDataSetChanged();
+    public void deleteComment(Comment comment) {
+        int position = dataList.indexOf(comment);
+        dataList.remove(comment);
+        commentAdapter.submitList(new ArrayList<>(dataList));
+        DatabaseManager.getInstance().deleteComment(moodPost.getPostID(), comment.getCommentID(), success -> {
+            if (!success && position >= 0) {
+                dataList.add(Math.min(position, dataList.size()), comment);
+                commentAdapter.submitList(new ArrayList<>(dataList));
+                showFailure("Could not delete comment");
+            }
+        });
+    }
+
+    private void showFailure(String message) {
+        if (getContext() != null) {
+            Toast.makeText(getContext(), message, Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    /**
+     * Loads the next page of older comments
+     */
+    private void loadNextPage() {
+        if (loadingPage || !commentsHaveMore) {
+            return;
+        }
+        loadingPage = true;
+
+        DatabaseManager.getInstance().getCommentsPage(moodPost.getPostID(), commentsCursor, PAGE_SIZE,
+                (page, last, hasMore) -> {
+                    loadingPage = false;
+                    if (page == null) {
+                        return;
+                    }
+
+                    // Skip comments that were added here while the page was loading
+                    HashSet<String> loadedIds = new HashSet<>();
+                    for (Comment comment : dataList) {
+                        loadedIds.add(comment.getCommentID());
+                    }
+                    for (Comment comment : page) {
+                        if (loadedIds.add(comment.getCommentID())) {
+                            dataList.add(comment);
+                        }
+                    }
+
+                    commentsCursor = last;
+                    commentsHaveMore = hasMore;
+                    commentAdapter.submitList(new ArrayList<>(dataList));
+                });
     }
 
     @NonNull
@@ -74,10 +132,27 @@ public class CommentsFragment extends DialogFragment implements
         Button addButton = view.findViewById(R.id.commentsAddButton);
         moodPost = (MoodPost) getArguments().getSerializable("moodPost");
 
-        // Create comment array
-        dataList = moodPost.getComments();
-        commentAdapter = new CommentArrayAdapter(getContext(), dataList, this);
+        // Comments are loaded a page at a time, most recent first
+        dataList = new ArrayList<>();
+        RecyclerLists.setUp(commentList, this, 1, ContextCompat.getColor(requireContext(), R.color.Accent2));
+        commentAdapter = new CommentAdapter(SessionManager.getInstance(getContext()).getProfile().getUserId(), this);
         commentList.setAdapter(commentAdapter);
+        commentList.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                if (RecyclerLists.isNearEnd(recyclerView, PREFETCH_THRESHOLD)) {
+                    loadNextPage();
+                }
+            }
+        });
+
+        // Posts from before comments had their own documents may still hold some in their comments
+        // array, which are moved over before the first page is loaded
+        loadingPage = true;
+        DatabaseManager.getInstance().migrateLegacyComments(moodPost.getPostID(), migrated -> {
+            loadingPage = false;
+            loadNextPage();
+        });
 
         AlertDialog.Builder builder = new AlertDialog.Builder(getContext());
         builder.setView(view);
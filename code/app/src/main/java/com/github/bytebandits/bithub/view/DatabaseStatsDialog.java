@@ -0,0 +1,115 @@
+package com.github.bytebandits.bithub.view;
+
+import android.app.AlertDialog;
+import android.content.ClipData;
+import android.content.ClipboardManager;
+import android.content.Context;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.widget.Button;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import com.github.bytebandits.bithub.R;
+import com.github.bytebandits.bithub.controller.DatabaseTracer;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * This class displays the debug dialog of database requests, opened from the settings dialog
+ * of debug builds. It shows the requests, billed reads, writes and failures of each screen, the
+ * latency percentiles of each DatabaseManager operation and the most recent requests, and can
+ * copy the traces to the clipboard as tab separated values.
+ */
+public class DatabaseStatsDialog {
+    // Recent requests shown below the totals, the copied traces hold the whole ring buffer
+    private static final int SHOWN_TRACES = 50;
+
+    private final Context context;
+    private final DatabaseTracer tracer;
+
+    /**
+     * Constructs a DatabaseStatsDialog instance with the provided context.
+     *
+     * @param context The context used to display the dialog.
+     */
+    public DatabaseStatsDialog(Context context) {
+        this.context = context;
+        this.tracer = DatabaseTracer.getInstance();
+    }
+
+    /**
+     * Displays the database stats dialog.
+     */
+    public void showDatabaseStatsDialog() {
+        View dialogView = LayoutInflater.from(context).inflate(R.layout.database_stats_dialog, null);
+
+        AlertDialog statsDialog = new AlertDialog.Builder(context)
+                .setView(dialogView)
+                .setCancelable(true)
+                .create();
+
+        TextView statsText = dialogView.findViewById(R.id.database_stats_text);
+        Button copyButton = dialogView.findViewById(R.id.database_stats_copy_button);
+        Button resetButton = dialogView.findViewById(R.id.database_stats_reset_button);
+        statsText.setText(describe(tracer));
+
+        copyButton.setOnClickListener(v -> {
+            ClipboardManager clipboard = (ClipboardManager) context.getSystemService(Context.CLIPBOARD_SERVICE);
+            clipboard.setPrimaryClip(ClipData.newPlainText("Database traces", tracer.export()));
+            Toast.makeText(context, "Traces copied", Toast.LENGTH_SHORT).show();
+        });
+        resetButton.setOnClickListener(v -> {
+            tracer.reset();
+            statsText.setText(describe(tracer));
+        });
+
+        statsDialog.show();
+    }
+
+    /**
+     * Formats the totals by screen and by operation, and the most recent requests, as tables.
+     *
+     * @param tracer The tracer to describe.
+     * @return The tables.
+     */
+    static String describe(DatabaseTracer tracer) {
+        StringBuilder text = new StringBuilder();
+
+        text.append("BY SCREEN\n");
+        text.append(String.format(Locale.US, "%-26s %6s %7s %6s %6s %5s%n", "screen", "reqs", "billed", "cache", "writes", "fail"));
+        for (DatabaseTracer.Stats screen : tracer.getScreenStats()) {
+            text.append(String.format(Locale.US, "%-26s %6d %7d %6d %6d %5d%n", screen.name, screen.getRequests(),
+                    screen.getBilledReads(), screen.getCacheHits(), screen.getWrites(), screen.getFailures()));
+        }
+
+        text.append("\nBY OPERATION\n");
+        text.append(String.format(Locale.US, "%-24s %5s %6s %6s %6s %7s %6s %6s %6s %5s%n", "operation", "reqs",
+                "p50", "p95", "p99", "billed", "cache", "writes", "KiB", "fail"));
+        for (DatabaseTracer.Stats operation : tracer.getOperationStats()) {
+            text.append(String.format(Locale.US, "%-24s %5d %6s %6s %6s %7d %6d %6d %6d %5d%n", operation.name,
+                    operation.getRequests(), percentile(operation, 50), percentile(operation, 95),
+                    percentile(operation, 99), operation.getBilledReads(), operation.getCacheHits(),
+                    operation.getWrites(), operation.getBytes() / 1024, operation.getFailures()));
+        }
+
+        text.append("\nRECENT\n");
+        SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm:ss", Locale.US);
+        List<DatabaseTracer.Trace> traces = tracer.getRecentTraces();
+        for (DatabaseTracer.Trace trace : traces.subList(0, Math.min(SHOWN_TRACES, traces.size()))) {
+            text.append(String.format(Locale.US, "%s %-24s %6dms %4dr %4dw %s%s%n",
+                    timeFormat.format(new Date(trace.timeMs)), trace.operation, trace.latencyMs, trace.reads,
+                    trace.writes, trace.fromCache ? "cache " : "", trace.isFailed() ? trace.error : ""));
+        }
+        return text.toString();
+    }
+
+    // The histogram bound holding the percentile, e.g. "<=50"
+    private static String percentile(DatabaseTracer.Stats stats, double percentile) {
+        long bound = stats.getLatencyPercentileMs(percentile);
+        return bound < 0 ? "slow" : "<=" + bound;
+    }
+}
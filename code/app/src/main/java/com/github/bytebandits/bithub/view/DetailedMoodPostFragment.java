@@ -2,9 +2,7 @@ package com.github.bytebandits.bithub.view;
 
 import android.app.AlertDialog;
 import android.app.Dialog;
-import android.graphics.BitmapFactory;
 import android.os.Bundle;
-import android.util.Base64;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.widget.Button;
@@ -16,6 +14,8 @@ import androidx.annotation.Nullable;
 import androidx.fragment.app.DialogFragment;
 
 import com.github.bytebandits.bithub.controller.DatabaseManager;
+import com.github.bytebandits.bithub.controller.ImageLoader;
+import com.github.bytebandits.bithub.controller.ImageStore;
 import com.github.bytebandits.bithub.MainActivity;
 import com.github.bytebandits.bithub.controller.SessionManager;
 import com.github.bytebandits.bithub.model.MoodPost;
@@ -30,6 +30,8 @@ import java.util.Objects;
  * @author Tony Yang
  */
 public class DetailedMoodPostFragment extends DialogFragment {
+    private ImageView viewImage;
+
     public static DetailedMoodPostFragment newInstance(MoodPost moodPost) {
         // Use Bundle to get info between fragments
         Bundle args = new Bundle();
@@ -52,7 +54,7 @@ public class DetailedMoodPostFragment extends DialogFragment {
         TextView viewEmotion = view.findViewById(R.id.detailedViewEmotion);
         TextView viewDescription = view.findViewById(R.id.detailedViewDescription);
         ImageView viewMoodIcon = view.findViewById(R.id.detailedViewMoodIcon);
-        ImageView viewImage = view.findViewById(R.id.detailedViewImage);
+        viewImage = view.findViewById(R.id.detailedViewImage);
         Button deleteButton = view.findViewById(R.id.deleteButton);
         Button editButton = view.findViewById(R.id.editButton);
         Button backButton = view.findViewById(R.id.backButton);
@@ -80,8 +82,9 @@ public class DetailedMoodPostFragment extends DialogFragment {
         }
         viewMoodIcon.setImageResource(moodPost.getEmotion().getLogoID());
         if (moodPost.getImage() != null) {
-            byte[] imageArray = Base64.decode(moodPost.getImage(), Base64.DEFAULT);
-            viewImage.setImageBitmap(BitmapFactory.decodeByteArray(imageArray, 0, imageArray.length));
+            // Decoded in the background at the size of the view
+            ImageLoader.getInstance(requireContext()).load(viewImage, moodPost.getPostID(),
+                    moodPost.getImage(), ImageStore.VARIANT_FULL);
         }
 
         AlertDialog.Builder builder = new AlertDialog.Builder(getContext());
@@ -134,4 +137,16 @@ public class DetailedMoodPostFragment extends DialogFragment {
 
         return dialog;
     }
+
+    /**
+     * Stops loading the post's image and lets its bitmap be reused once the dialog is gone.
+     */
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        if (viewImage != null) {
+            ImageLoader.getInstance(requireContext()).clear(viewImage);
+            viewImage = null;
+        }
+    }
 }
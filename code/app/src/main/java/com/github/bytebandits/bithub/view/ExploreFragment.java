@@ -2,10 +2,10 @@ package com.github.bytebandits.bithub.view;
 
 import android.app.AlertDialog;
 import android.content.pm.PackageManager;
-import android.location.Location;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
+import android.util.DisplayMetrics;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -16,9 +16,17 @@ import androidx.annotation.Nullable;
 import androidx.core.app.ActivityCompat;
 import androidx.fragment.app.Fragment;
 import com.github.bytebandits.bithub.controller.DatabaseManager;
+import com.github.bytebandits.bithub.controller.DebouncedSearch;
 import com.github.bytebandits.bithub.R;
+import com.github.bytebandits.bithub.controller.GeoHash;
+import com.github.bytebandits.bithub.controller.MarkerTapResolver;
 import com.github.bytebandits.bithub.controller.PostFilterManager;
+import com.github.bytebandits.bithub.controller.PostIndex;
+import com.github.bytebandits.bithub.controller.PostRepository;
+import com.github.bytebandits.bithub.controller.SearchIndex;
 import com.github.bytebandits.bithub.controller.SessionManager;
+import com.github.bytebandits.bithub.controller.ShardedFeedQuery;
+import com.github.bytebandits.bithub.controller.SpatialIndex;
 import com.github.bytebandits.bithub.model.MoodMarker;
 import com.github.bytebandits.bithub.model.MoodPost;
 import com.google.android.gms.location.FusedLocationProviderClient;
@@ -28,10 +36,15 @@ import com.google.android.gms.maps.GoogleMap;
 import com.google.android.gms.maps.OnMapReadyCallback;
 import com.google.android.gms.maps.SupportMapFragment;
 import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
 import com.google.android.gms.maps.model.MapColorScheme;
 import com.google.android.gms.maps.model.Marker;
-import com.google.firebase.firestore.CollectionReference;
+import com.google.android.gms.maps.model.TileOverlay;
+import com.google.android.gms.maps.model.TileOverlayOptions;
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.QuerySnapshot;
 import com.google.maps.android.clustering.ClusterManager;
 
 import android.Manifest;
@@ -41,9 +54,11 @@ import android.widget.ImageButton;
 import android.widget.ListView;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Map;
 
 /**
  * Represents the explore fragment
@@ -54,32 +69,56 @@ public class ExploreFragment extends Fragment implements GoogleMap.OnMarkerClick
     private GoogleMap googleMap;
     private FusedLocationProviderClient fusedLocationClient;
     private ArrayList<MoodPost> dataList;
-    private final ExecutorService executor = Executors.newSingleThreadExecutor();
-    private final Handler mainHandler = new Handler(Looper.getMainLooper());
     private static final int REQUEST_LOCATION_PERMISSION = 1001;
 
-    private ListenerRegistration postsListener;
+    private final PostIndex postIndex = new PostIndex(); // Every loaded followed post, most recent first
+    private final SpatialIndex spatialIndex = new SpatialIndex(); // The located posts of postIndex, by location
+    private final SearchIndex searchIndex = new SearchIndex(); // The descriptions of the posts of postIndex
+    private final DebouncedSearch debouncedSearch = new DebouncedSearch(searchIndex, new Handler(Looper.getMainLooper())::post);
+    // Taps show the post the marker holds, and only read posts that are no longer listened to and stale
+    private final MarkerTapResolver tapResolver = new MarkerTapResolver(
+            (postId, listener) -> DatabaseManager.getInstance().getPost(postId, listener::onPostRefreshed));
+    private HashSet<String> followingUserIds; // Null until loaded
+    private List<List<String>> followingShards; // followingUserIds in shards of at most 30, one cell query each
+    // Listeners of the geohash cells covering what is on screen, one per shard, keyed by geohash
+    private final HashMap<String, List<ListenerRegistration>> cellListeners = new HashMap<>();
+    // Each shown cached post that no server snapshot has confirmed yet, keyed by post ID
+    private final HashMap<String, MoodPost> unconfirmedCachedPosts = new HashMap<>();
+    private static final int MAX_VIEWPORT_CELLS = 9; // Most geohash cells queried for the visible area
+    private static final int MIN_CELL_PRECISION = 4; // Cells of about 39 x 20 km, a few cover the 5km around the user
     private ArrayList<MoodPost> filteredDataList; // Separate list for filtering
 
     private ClusterManager<MoodMarker> clusterManager;
+    private CachedViewBasedAlgorithm<MoodMarker> clusterAlgorithm;
+    private final HashMap<String, MoodMarker> markersByPostId = new HashMap<>(); // Markers on the map
+    private final FrameTimeTracker cameraFrameTracker = new FrameTimeTracker("Map camera");
+    private TileOverlay heatmapOverlay; // Null while the markers are shown
     /**
-     * Updates the filteredDataList based on the search query.
+     * Updates the filteredDataList based on the search query. The search index is searched off
+     * the main thread once typing pauses, best match first.
      *
      * @param query The search query to filter mood posts by description.
      */
     public void onSearchQueryChanged(String query) {
-        filteredDataList.clear();
-
         if (query.isEmpty()) {
+            debouncedSearch.cancel();
+            filteredDataList.clear();
             filteredDataList.addAll(dataList);
-        } else {
+            return;
+        }
+        debouncedSearch.search(query, posts -> {
+            // The index holds every loaded post, only the ones shown, e.g. within 5km, are kept
+            HashSet<String> shownPostIds = new HashSet<>();
             for (MoodPost post : dataList) {
-                if (post.getDescription() != null
-                        && post.getDescription().toLowerCase().contains(query.toLowerCase())) {
+                shownPostIds.add(post.getPostID());
+            }
+            filteredDataList.clear();
+            for (MoodPost post : posts) {
+                if (shownPostIds.contains(post.getPostID())) {
                     filteredDataList.add(post);
                 }
             }
-        }
+        });
     }
 
     /**
@@ -87,6 +126,7 @@ public class ExploreFragment extends Fragment implements GoogleMap.OnMarkerClick
      * @param mood The selected mood as a string.
      */
     public void onFilterSelected(String mood) {
+        debouncedSearch.cancel(); // A search still running would replace the filtered posts
         filteredDataList.clear(); // Clear current filtered list
 
         if (mood.equals("last_week")) {
@@ -103,11 +143,8 @@ public class ExploreFragment extends Fragment implements GoogleMap.OnMarkerClick
                 filterPostsByDistance(filteredDataList);
             }
 
-            // Render markers with the new filtered list
+            // Render markers with the new filtered list, only what changed is reclustered
             renderMapMarkers();
-
-            // Refresh cluster manager
-            clusterManager.cluster();
         }
     }
 
@@ -154,6 +191,8 @@ public class ExploreFragment extends Fragment implements GoogleMap.OnMarkerClick
         View view = inflater.inflate(R.layout.fragment_explore, container, false);
         ImageButton filterButton = view.findViewById(R.id.filter_button_homepage);
         filterButton.setOnClickListener(v -> openFilterDialog());
+        ImageButton heatmapButton = view.findViewById(R.id.heatmap_button_explore);
+        heatmapButton.setOnClickListener(v -> toggleHeatmap());
 
         // Initialize dataList to avoid NullPointerException
         if (dataList == null) {
@@ -164,24 +203,20 @@ public class ExploreFragment extends Fragment implements GoogleMap.OnMarkerClick
             Log.d("ExploreFragment", "dataList already initialized with size: " + dataList.size());
         }
         
-        setupPostsRealTimeListener();
+        loadFollowingUserIds();
         
-        // Listener so that dataList gets updated whenever the database does
-        executor.execute(() -> {
-            DatabaseManager.getInstance().getAllFollowerPosts(SessionManager.getInstance(requireContext()).getProfile().getUserId(),posts -> {
-                if (posts != null) {
-                    Log.e("ExploreFragment", "Error: posts is null");
+        // Show the cached posts right away, the real-time listener brings them up to date
+        String userId = SessionManager.getInstance(requireContext()).getUserId();
+        PostRepository.getInstance(requireContext()).getCachedPosts(PostRepository.followerPostsKey(userId), cached -> {
+            if (cached != null && postIndex.size() == 0) {
+                Log.d("ExploreFragment", "Showing " + cached.posts.size() + " cached posts, stale by "
+                        + (System.currentTimeMillis() - cached.fetchedAt) + " ms");
+                applyPosts(cached.posts);
+                for (MoodPost post : cached.posts) {
+                    tapResolver.markSynced(post.getPostID(), cached.fetchedAt);
+                    unconfirmedCachedPosts.put(post.getPostID(), post);
                 }
-                mainHandler.post(() -> {
-                    dataList.clear();
-                    dataList.addAll(posts);
-
-                    // Reset filteredDataList to show all posts initially
-                    filteredDataList.clear();
-                    filteredDataList.addAll(dataList);
-
-                });
-            });
+            }
         });
         fusedLocationClient = LocationServices.getFusedLocationProviderClient(getActivity());
 
@@ -195,45 +230,61 @@ public class ExploreFragment extends Fragment implements GoogleMap.OnMarkerClick
     }
 
     /**
-     * Finds the exact MoodPost matching the marker's location
-     * @param marker The marker that was clicked
-     * @param posts List of posts to search through
-     * @return The exact MoodPost matching the marker's location
+     * Switches between the markers of followed users nearby and the mood heatmap of everyone's
+     * public posts. The heatmap is drawn from aggregated tiles, so no posts are loaded while it is shown.
      */
-    private MoodPost findExactPost(Marker marker, List<MoodPost> posts) {
-        if (posts == null || posts.isEmpty()) {
-            return null;
+    private void toggleHeatmap() {
+        if (googleMap == null) {
+            return;
         }
-
-        for (MoodPost post : posts) {
-            // Check if the marker's location exactly matches the post's location
-            if (marker.getPosition().latitude == post.getLatitude() &&
-                    marker.getPosition().longitude == post.getLongitude()) {
-                return post;
+        if (heatmapOverlay == null) {
+            heatmapOverlay = googleMap.addTileOverlay(new TileOverlayOptions()
+                    .tileProvider(new MoodHeatmapTileProvider(requireContext()))
+                    .fadeIn(true));
+            if (clusterManager != null) {
+                clusterManager.clearItems();
+                markersByPostId.clear();
+                clusterManager.cluster();
             }
+        } else {
+            heatmapOverlay.remove();
+            heatmapOverlay = null;
+            renderMapMarkers();
+            refreshViewportCells();
         }
+    }
 
-        return null;
+    /**
+     * Finds the exact MoodPost matching a marker's location
+     * @param position The position of the marker that was clicked
+     * @return The exact MoodPost matching the marker's location, or null if none is loaded
+     */
+    private MoodPost findExactPost(LatLng position) {
+        return spatialIndex.findAt(position.latitude, position.longitude);
     }
 
     /**
-     * Finds the exact MoodPost matching the marker's location
-     * @param moodMarker The marker that was clicked
-     * @param posts List of posts to search through
-     * @return The exact MoodPost matching the marker's locations
+     * Keeps the spatial and search indexes in step with the post index
      */
-    private MoodPost findExactPost(MoodMarker moodMarker, List<MoodPost> posts) {
-        if (posts == null || posts.isEmpty()) {
-            return null;
+    private final PostIndex.OnPostIndexChangeListener spatialIndexUpdater = new PostIndex.OnPostIndexChangeListener() {
+        @Override
+        public void onPostInserted(int position, MoodPost post) {
+            spatialIndex.upsert(post);
+            searchIndex.upsert(post);
         }
-        for (MoodPost post : posts) {
-            if (moodMarker.getPosition().latitude == post.getLatitude() &&
-                    moodMarker.getPosition().longitude == post.getLongitude()) {
-                return post;
-            }
+
+        @Override
+        public void onPostChanged(int position, MoodPost post) {
+            spatialIndex.upsert(post);
+            searchIndex.upsert(post);
         }
-        return null;
-    }
+
+        @Override
+        public void onPostRemoved(int position, MoodPost post) {
+            spatialIndex.remove(post.getPostID());
+            searchIndex.remove(post.getPostID());
+        }
+    };
 
     /**
      * Called when the fragment is no longer in use
@@ -241,10 +292,18 @@ public class ExploreFragment extends Fragment implements GoogleMap.OnMarkerClick
     @Override
     public void onDestroy() {
         super.onDestroy();
-        // Remove Firestore listener to prevent memory leaks
-        if (postsListener != null) {
-            postsListener.remove();
+        cameraFrameTracker.stop();
+        debouncedSearch.shutdown();
+        if (clusterAlgorithm != null) {
+            clusterAlgorithm.shutdown();
         }
+        // Remove Firestore listeners to prevent memory leaks
+        for (List<ListenerRegistration> registrations : cellListeners.values()) {
+            for (ListenerRegistration cellListener : registrations) {
+                cellListener.remove();
+            }
+        }
+        cellListeners.clear();
     }
 
     /**
@@ -254,28 +313,35 @@ public class ExploreFragment extends Fragment implements GoogleMap.OnMarkerClick
      */
     @Override
     public boolean onMarkerClick(@NonNull Marker marker) {
-        executor.execute(() -> {
-            DatabaseManager.getInstance().getAllFollowerPosts(SessionManager.getInstance(requireContext()).getUserId(),posts -> {
-                if (posts == null) {
-                    Log.e("ExploreFragment", "Error: posts is null");
-                }
-
-                Log.d("ExploreFragment", "Fetched posts count: " + posts.size());
-
-                // Switch to UI thread for UI updates
-                mainHandler.post(() -> {
-                    dataList.clear();
-                    dataList.addAll(posts);
-
-                    MoodPost exactPost = findExactPost(marker, posts);
-                    DetailedMoodPostFragment detailedMoodPostFragment =
-                            DetailedMoodPostFragment.newInstance(exactPost);
-                    detailedMoodPostFragment.show(getActivity().getSupportFragmentManager(), "Detailed Mood Post View");
+        // Markers of the cluster manager hold their post, anything else is looked up by position
+        if (clusterManager != null && clusterManager.onMarkerClick(marker)) {
+            return true;
+        }
+        MoodPost exactPost = findExactPost(marker.getPosition());
+        if (exactPost == null) {
+            return false;
+        }
+        showPost(exactPost);
+        return true;
+    }
 
-                });
-            });
+    /**
+     * Shows a tapped post from memory, refreshing it in the background if it went stale
+     * @param post The post of the tapped marker
+     */
+    private void showPost(MoodPost post) {
+        boolean live = post.getGeohash() != null && isCellCovered(post.getGeohash());
+        MoodPost shown = tapResolver.onTap(post, live, refreshed -> {
+            if (refreshed == null || !isAdded()) {
+                return;
+            }
+            postIndex.upsert(refreshed, spatialIndexUpdater);
+            showIndexedPosts();
         });
-        return false;
+        Log.d("ExploreFragment", "Marker taps: " + tapResolver.getTapCount() + ", post reads: " + tapResolver.getReadCount());
+
+        DetailedMoodPostFragment detailedMoodPostFragment = DetailedMoodPostFragment.newInstance(shown);
+        detailedMoodPostFragment.show(getActivity().getSupportFragmentManager(), "Detailed Mood Post View");
     }
 
     /**
@@ -320,41 +386,267 @@ public class ExploreFragment extends Fragment implements GoogleMap.OnMarkerClick
     private static final double MAX_DISTANCE_KM = 5.0; // 5 km radius
 
     /**
-     * Sets up the posts real-time listener
+     * Loads the users the current user follows, whose posts are shown on the map
      */
-    private void setupPostsRealTimeListener() {
-        DatabaseManager databaseManager = DatabaseManager.getInstance();
-        CollectionReference postsRef = databaseManager.getPostsCollectionRef();
-
-        postsListener = postsRef.addSnapshotListener((querySnapshot, e) -> {
-            if (e != null) {
-                Log.w("ExploreFragment", "Listen failed.", e);
+    private void loadFollowingUserIds() {
+        String userId = SessionManager.getInstance(requireContext()).getUserId();
+        DatabaseManager.getInstance().getFollowingUserIds(userId, ids -> {
+            if (!isAdded()) {
                 return;
             }
+            followingUserIds = new HashSet<>(ids);
+            followingShards = ShardedFeedQuery.partition(new ArrayList<>(followingUserIds), ShardedFeedQuery.MAX_IN_CLAUSE_SIZE);
+            refreshViewportCells();
+        });
+    }
 
-            if (querySnapshot != null) {
-                // Fetch all public posts
-                databaseManager.getAllFollowerPosts(SessionManager.getInstance(requireContext()).getUserId(),posts -> {
-                    mainHandler.post(() -> {
-                        // Clear existing data and markers
-                        dataList.clear();
-                        if (clusterManager != null) {
-                            clusterManager.clearItems();
-                        }
+    /**
+     * Listens to the geohash cells that cover the visible part of the map within 5km, so only
+     * the posts on screen are downloaded. Cells that are already listened to are kept, cells
+     * that left the screen or are wanted at a finer precision are dropped along with their posts,
+     * and only the new ones are queried.
+     */
+    private void refreshViewportCells() {
+        // Until the location is known there is no 5km to clamp to, and zoomed out the whole world is visible
+        if (googleMap == null || heatmapOverlay != null || currentUserLocation == null
+                || followingUserIds == null || followingUserIds.isEmpty()) {
+            return;
+        }
+
+        LatLngBounds visible = googleMap.getProjection().getVisibleRegion().latLngBounds;
+        double[] area = { visible.southwest.latitude, visible.southwest.longitude,
+                visible.northeast.latitude, visible.northeast.longitude };
+        double[] radius = GeoHash.boundsAround(currentUserLocation.latitude, currentUserLocation.longitude, MAX_DISTANCE_KM);
+        boolean acrossAntimeridian = area[1] > area[3] || radius[1] > radius[3];
+        if (acrossAntimeridian) {
+            // Just use the area within 5km
+            area = radius;
+        } else {
+            area = new double[] { Math.max(area[0], radius[0]), Math.max(area[1], radius[1]),
+                    Math.min(area[2], radius[2]), Math.min(area[3], radius[3]) };
+        }
+
+        List<String> wantedCells = new ArrayList<>();
+        if (area[0] <= area[2] && (area[1] <= area[3] || acrossAntimeridian)) {
+            int precision = Math.max(MIN_CELL_PRECISION,
+                    GeoHash.precisionFor(area[0], area[1], area[2], area[3], MAX_VIEWPORT_CELLS));
+            wantedCells = GeoHash.cellsCovering(area[0], area[1], area[2], area[3], precision);
+        }
+
+        // Keep the cells still wanted, and the ones inside a larger wanted cell until it is listened to
+        Iterator<Map.Entry<String, List<ListenerRegistration>>> iterator = cellListeners.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, List<ListenerRegistration>> entry = iterator.next();
+            String cell = entry.getKey();
+            boolean onScreen = false;
+            for (String wanted : wantedCells) {
+                if (cell.equals(wanted) || (cell.startsWith(wanted) && !cellListeners.containsKey(wanted))) {
+                    onScreen = true;
+                    break;
+                }
+            }
+            if (!onScreen) {
+                for (ListenerRegistration registration : entry.getValue()) {
+                    registration.remove();
+                }
+                iterator.remove();
+            }
+        }
+
+        // Query the cells not covered yet
+        for (String wanted : wantedCells) {
+            if (!isCellCovered(wanted)) {
+                listenToCell(wanted);
+            }
+        }
+        removeUncoveredPosts();
+        Log.d("ExploreFragment", "Listening to " + cellListeners.size() + " geohash cells");
+    }
+
+    /**
+     * Removes the posts no cell listener covers anymore, which would otherwise never get a
+     * removal and stay on the map
+     */
+    private void removeUncoveredPosts() {
+        List<String> uncovered = new ArrayList<>();
+        for (MoodPost post : postIndex.getPosts()) {
+            if (post.getGeohash() == null || !isCellCovered(post.getGeohash())) {
+                uncovered.add(post.getPostID());
+            }
+        }
+        if (uncovered.isEmpty()) {
+            return;
+        }
+        for (String postId : uncovered) {
+            postIndex.remove(postId, spatialIndexUpdater);
+            tapResolver.forget(postId);
+            unconfirmedCachedPosts.remove(postId);
+        }
+        showIndexedPosts();
+    }
 
-                        // Add new posts within 5km
-                        if (posts != null && !posts.isEmpty()) {
-                            filterPostsByDistance(posts);
+    /**
+     * Returns whether a cell is already listened to, itself or through a larger cell containing it
+     * @param cell The geohash of the cell
+     * @return True if the posts of the cell are already loaded
+     */
+    private boolean isCellCovered(String cell) {
+        for (String listened : cellListeners.keySet()) {
+            if (cell.startsWith(listened)) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-                            // Rerender markers if map is ready
-                            if (googleMap != null) {
-                                renderMapMarkers();
-                            }
+    /**
+     * Listens to the public posts of followed users in a geohash cell, with one query per shard of
+     * at most 30 followed users, so the posts of users who are not followed are never downloaded
+     * @param cell The geohash of the cell
+     */
+    private void listenToCell(String cell) {
+        List<ListenerRegistration> registrations = new ArrayList<>();
+        for (List<String> shard : followingShards) {
+            registrations.add(listenToCellShard(cell, shard));
+        }
+        cellListeners.put(cell, registrations);
+    }
+
+    /**
+     * Listens to the public posts of some followed users in a geohash cell, and only processes what changed
+     * @param cell The geohash of the cell
+     * @param shard The IDs of the followed users, at most 30
+     * @return The registration of the listener
+     */
+    private ListenerRegistration listenToCellShard(String cell, List<String> shard) {
+        String cacheKey = PostRepository.followerPostsKey(SessionManager.getInstance(requireContext()).getUserId());
+        DatabaseManager databaseManager = DatabaseManager.getInstance();
+        boolean[] awaitingServer = { true }; // No server snapshot yet
+        return databaseManager.addTracedSnapshotListener("listenGeohashCell",
+                databaseManager.getPostsInGeohashCellQuery(cell, shard), (snapshot, error) -> {
+                    if (error != null || snapshot == null) {
+                        Log.e("ExploreFragment", "Geohash cell listener failed", error);
+                        return;
+                    }
+                    if (!isAdded()) {
+                        return;
+                    }
+
+                    boolean fromServer = !snapshot.getMetadata().isFromCache();
+                    List<DocumentChange> changes = snapshot.getDocumentChanges();
+                    for (DocumentChange change : changes) {
+                        if (change.getType() == DocumentChange.Type.REMOVED) {
+                            tapResolver.forget(change.getDocument().getId());
+                        } else if (fromServer) {
+                            tapResolver.markSynced(change.getDocument().getId());
                         }
-                    });
+                    }
+                    // Cached posts deleted or made private since never get a removal, the first
+                    // server snapshot of their shard of the cell drops the ones it does not hold
+                    boolean dropped = false;
+                    if (fromServer && awaitingServer[0]) {
+                        awaitingServer[0] = false;
+                        dropped = dropUnconfirmedCachedPosts(cell, shard, snapshot);
+                    }
+                    if (changes.isEmpty() && !dropped) {
+                        return;
+                    }
+                    postIndex.applyChanges(changes, spatialIndexUpdater);
+                    PostRepository.getInstance(requireContext()).putPosts(cacheKey, confirmedPosts());
+                    showIndexedPosts();
                 });
+    }
+
+    /**
+     * Removes the cached posts of a shard of a cell that its first server snapshot does not hold,
+     * and marks the others as confirmed. Cached posts of users no longer followed are in no shard,
+     * so any shard removes them.
+     * @param cell The geohash of the cell
+     * @param shard The IDs of the followed users the snapshot holds the posts of
+     * @param snapshot The first server snapshot of the shard of the cell
+     * @return True if a post was removed
+     */
+    private boolean dropUnconfirmedCachedPosts(String cell, List<String> shard, QuerySnapshot snapshot) {
+        if (unconfirmedCachedPosts.isEmpty()) {
+            return false;
+        }
+        HashSet<String> inCell = new HashSet<>();
+        for (DocumentSnapshot document : snapshot.getDocuments()) {
+            inCell.add(document.getId());
+        }
+
+        boolean dropped = false;
+        Iterator<Map.Entry<String, MoodPost>> iterator = unconfirmedCachedPosts.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, MoodPost> entry = iterator.next();
+            String geohash = entry.getValue().getGeohash();
+            String author = entry.getValue().getProfile().getUserId();
+            if (geohash == null || !geohash.startsWith(cell)
+                    || (followingUserIds.contains(author) && !shard.contains(author))) {
+                continue;
             }
-        });
+            iterator.remove();
+            if (!inCell.contains(entry.getKey())) {
+                postIndex.remove(entry.getKey(), spatialIndexUpdater);
+                tapResolver.forget(entry.getKey());
+                dropped = true;
+            }
+        }
+        return dropped;
+    }
+
+    /**
+     * Returns the indexed posts without the cached ones not confirmed yet, which are not cached again
+     * @return The posts to cache, most recent first
+     */
+    private List<MoodPost> confirmedPosts() {
+        if (unconfirmedCachedPosts.isEmpty()) {
+            return postIndex.getPosts();
+        }
+        List<MoodPost> confirmed = new ArrayList<>();
+        for (MoodPost post : postIndex.getPosts()) {
+            if (!unconfirmedCachedPosts.containsKey(post.getPostID())) {
+                confirmed.add(post);
+            }
+        }
+        return confirmed;
+    }
+
+    /**
+     * Replaces the indexed posts with the given ones, e.g. cached posts, and shows them
+     * @param posts List of posts
+     */
+    private void applyPosts(List<MoodPost> posts) {
+        postIndex.clear();
+        spatialIndex.clear();
+        searchIndex.clear();
+        for (MoodPost post : posts) {
+            postIndex.upsert(post, spatialIndexUpdater);
+        }
+        showIndexedPosts();
+    }
+
+    /**
+     * Shows the posts of the index, filtered to the ones within 5km once the location is known
+     */
+    private void showIndexedPosts() {
+        List<MoodPost> posts = postIndex.getPosts();
+        dataList.clear();
+        dataList.addAll(posts);
+
+        // Reset filteredDataList to show all posts initially
+        filteredDataList.clear();
+        filteredDataList.addAll(dataList);
+
+        // Add new posts within 5km
+        if (clusterManager != null) {
+            filterPostsByDistance(posts);
+
+            // Rerender markers if map is ready
+            if (googleMap != null) {
+                renderMapMarkers();
+            }
+        }
     }
 
     /**
@@ -364,17 +656,19 @@ public class ExploreFragment extends Fragment implements GoogleMap.OnMarkerClick
     private void filterPostsByDistance(List<MoodPost> posts) {
         if (currentUserLocation == null) return;
 
-        dataList.clear();
+        // Only the grid cells around the user are measured, the posts keep their order
+        HashSet<String> nearbyPostIds = new HashSet<>();
+        for (MoodPost post : spatialIndex.withinRadius(currentUserLocation.latitude, currentUserLocation.longitude, MAX_DISTANCE_KM)) {
+            nearbyPostIds.add(post.getPostID());
+        }
+        List<MoodPost> nearby = new ArrayList<>();
         for (MoodPost post : posts) {
-            if (Boolean.TRUE.equals(post.getLocation())) {
-                LatLng postLocation = new LatLng(post.getLatitude(), post.getLongitude());
-                double distance = calculateDistance(currentUserLocation, postLocation);
-
-                if (distance <= MAX_DISTANCE_KM) {
-                    dataList.add(post);
-                }
+            if (nearbyPostIds.contains(post.getPostID())) {
+                nearby.add(post);
             }
         }
+        dataList.clear();
+        dataList.addAll(nearby);
     }
 
     /**
@@ -384,14 +678,7 @@ public class ExploreFragment extends Fragment implements GoogleMap.OnMarkerClick
      * @return Distance between the two points
      */
     private double calculateDistance(LatLng point1, LatLng point2) {
-        float[] results = new float[1];
-        Location.distanceBetween(
-                point1.latitude, point1.longitude,
-                point2.latitude, point2.longitude,
-                results
-        );
-        // Convert meters to kilometers
-        return results[0] / 1000.0;
+        return SpatialIndex.distanceKm(point1.latitude, point1.longitude, point2.latitude, point2.longitude);
     }
 
     /**
@@ -422,6 +709,20 @@ public class ExploreFragment extends Fragment implements GoogleMap.OnMarkerClick
                 clusterManager = new ClusterManager<>(requireContext(), googleMap);
                 myClusterRenderer myClusterRenderer = new myClusterRenderer(requireContext(), googleMap, clusterManager);
                 clusterManager.setRenderer(myClusterRenderer);
+                // Only cluster what is around the screen, keeping the clusters of each zoom level
+                DisplayMetrics metrics = getResources().getDisplayMetrics();
+                clusterAlgorithm = new CachedViewBasedAlgorithm<>(metrics.widthPixels, metrics.heightPixels);
+                clusterManager.setAlgorithm(clusterAlgorithm);
+                markersByPostId.clear();
+
+                // Recluster, and load the cells that came on screen, once the camera settles
+                googleMap.setOnCameraMoveStartedListener(reason -> cameraFrameTracker.start());
+                googleMap.setOnCameraIdleListener(() -> {
+                    cameraFrameTracker.stop();
+                    clusterManager.onCameraIdle();
+                    clusterAlgorithm.precomputeAround(googleMap.getCameraPosition().zoom);
+                    refreshViewportCells();
+                });
 
                 // Update cluster click listener to use filtered posts
                 clusterManager.setOnClusterClickListener(cluster -> {
@@ -435,36 +736,12 @@ public class ExploreFragment extends Fragment implements GoogleMap.OnMarkerClick
                     return true;
                 });
 
-                // Update cluster item click listener
+                // Update cluster item click listener, the marker already holds its post
                 clusterManager.setOnClusterItemClickListener(moodMarker -> {
-                    executor.execute(() -> {
-                        DatabaseManager.getInstance().getAllFollowerPosts(SessionManager.getInstance(requireContext()).getUserId(), posts -> {
-                            mainHandler.post(() -> {
-                                // Filter posts by distance
-                                List<MoodPost> filteredPosts = new ArrayList<>();
-                                for (MoodPost post : posts) {
-                                    if (post.getLocation()) {
-                                        LatLng postLocation = new LatLng(post.getLatitude(), post.getLongitude());
-                                        double distance = calculateDistance(currentUserLocation, postLocation);
-
-                                        if (distance <= MAX_DISTANCE_KM) {
-                                            filteredPosts.add(post);
-                                        }
-                                    }
-                                }
-
-                                MoodPost exactPost = findExactPost(moodMarker, filteredPosts);
-                                DetailedMoodPostFragment detailedMoodPostFragment =
-                                        DetailedMoodPostFragment.newInstance(exactPost);
-                                detailedMoodPostFragment.show(
-                                        getActivity().getSupportFragmentManager(),
-                                        "Detailed Mood Post View"
-                                );
-                            });
-                        });
-                    });
-                    return false;
+                    showPost(moodMarker.getMoodPost());
+                    return true;
                 });
+                googleMap.setOnMarkerClickListener(this);
 
                 // Render markers within 5km
                 filterPostsByDistance(filteredDataList);
@@ -480,27 +757,50 @@ public class ExploreFragment extends Fragment implements GoogleMap.OnMarkerClick
      * Renders map markers
      */
     private void renderMapMarkers() {
-        if (clusterManager == null || googleMap == null) return;
+        if (clusterManager == null || googleMap == null || heatmapOverlay != null) return;
 
-        // Clear existing items
-        clusterManager.clearItems();
-
-        // Add only posts within 5km and matching current filter
+        // Diff the posts within 5km and matching current filter against the markers on the map
+        HashMap<String, MoodPost> wanted = new HashMap<>();
         for (MoodPost moodPost : filteredDataList) {
-            if (Boolean.TRUE.equals(moodPost.getLocation())) {
-                LatLng moodPostLatLng = new LatLng(moodPost.getLatitude(), moodPost.getLongitude());
+            if (Boolean.TRUE.equals(moodPost.getLocation()) && moodPost.getLatitude() != null && moodPost.getLongitude() != null) {
+                wanted.put(moodPost.getPostID(), moodPost);
+            }
+        }
 
+        List<MoodMarker> removed = new ArrayList<>();
+        Iterator<Map.Entry<String, MoodMarker>> iterator = markersByPostId.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, MoodMarker> entry = iterator.next();
+            // A changed post is a new object in the index, and its marker is replaced
+            if (wanted.get(entry.getKey()) != entry.getValue().getMoodPost()) {
+                removed.add(entry.getValue());
+                iterator.remove();
+            }
+        }
+
+        List<MoodMarker> added = new ArrayList<>();
+        for (MoodPost moodPost : wanted.values()) {
+            if (!markersByPostId.containsKey(moodPost.getPostID())) {
                 MoodMarker moodMarker = new MoodMarker(
-                        moodPostLatLng.latitude,
-                        moodPostLatLng.longitude,
+                        moodPost.getLatitude(),
+                        moodPost.getLongitude(),
                         moodPost.getEmotion().getState(),
                         "@" + moodPost.getProfile().getUserId(),
                         moodPost
                 );
-                clusterManager.addItem(moodMarker);
+                markersByPostId.put(moodPost.getPostID(), moodMarker);
+                added.add(moodMarker);
             }
         }
 
+        if (removed.isEmpty() && added.isEmpty()) {
+            return;
+        }
+        Log.d("ExploreFragment", "Markers: " + added.size() + " added, " + removed.size() + " removed, "
+                + markersByPostId.size() + " shown");
+        clusterManager.removeItems(removed);
+        clusterManager.addItems(added);
+
         // Cluster and refresh
         clusterManager.cluster();
     }
@@ -534,16 +834,8 @@ public class ExploreFragment extends Fragment implements GoogleMap.OnMarkerClick
 
         // Handle item clicks in the list
         listView.setOnItemClickListener((parent, view, position, id) -> {
-            // Get the corresponding MoodPost
-            MoodPost selectedPost = moodPosts.get(position);
-
-            // Open a detailed view dialog or Fragment
-            DetailedMoodPostFragment detailedMoodPostFragment =
-                    DetailedMoodPostFragment.newInstance(selectedPost);
-            detailedMoodPostFragment.show(
-                    getActivity().getSupportFragmentManager(),
-                    "DetailedMoodPost"
-            );
+            // Get the corresponding MoodPost and open a detailed view dialog
+            showPost(moodPosts.get(position));
         });
 
         builder.setView(listView);
@@ -0,0 +1,78 @@
+package com.github.bytebandits.bithub.view;
+
+import android.util.Log;
+import android.view.Choreographer;
+
+import java.util.Arrays;
+
+/**
+ * Measures the time between frames while something animates, such as the map camera moving,
+ * and logs how many frames missed the 60 fps budget once it stops.
+ * Must be used on the main thread.
+ */
+class FrameTimeTracker implements Choreographer.FrameCallback {
+    private static final long FRAME_BUDGET_NANOS = 1_000_000_000L / 60;
+    private static final int MAX_FRAMES = 600;
+
+    private final String name;
+    private final long[] frameNanos = new long[MAX_FRAMES];
+    private int frameCount;
+    private long lastFrameTimeNanos;
+    private boolean tracking;
+
+    /**
+     * @param name What is tracked, used in the log.
+     */
+    FrameTimeTracker(String name) {
+        this.name = name;
+    }
+
+    void start() {
+        if (tracking) {
+            return;
+        }
+        tracking = true;
+        frameCount = 0;
+        lastFrameTimeNanos = 0;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    void stop() {
+        if (!tracking) {
+            return;
+        }
+        tracking = false;
+        Choreographer.getInstance().removeFrameCallback(this);
+        if (frameCount == 0) {
+            return;
+        }
+
+        long[] sorted = Arrays.copyOf(frameNanos, frameCount);
+        Arrays.sort(sorted);
+        int slow = 0;
+        for (long nanos : sorted) {
+            if (nanos > FRAME_BUDGET_NANOS) {
+                slow++;
+            }
+        }
+        Log.d("FrameTimeTracker", name + ": " + frameCount + " frames, " + slow + " over 16.7 ms, p50 "
+                + millis(sorted[frameCount / 2]) + " ms, p95 " + millis(sorted[(int) (frameCount * 0.95)])
+                + " ms, max " + millis(sorted[frameCount - 1]) + " ms");
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!tracking) {
+            return;
+        }
+        if (lastFrameTimeNanos != 0 && frameCount < MAX_FRAMES) {
+            frameNanos[frameCount++] = frameTimeNanos - lastFrameTimeNanos;
+        }
+        lastFrameTimeNanos = frameTimeNanos;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    private static String millis(long nanos) {
+        return String.valueOf(Math.round(nanos / 100_000.0) / 10.0);
+    }
+}
@@ -18,18 +18,21 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.constraintlayout.widget.ConstraintLayout;
 import androidx.fragment.app.Fragment;
+import androidx.recyclerview.widget.RecyclerView;
 
 import com.github.bytebandits.bithub.MainActivity;
 import com.github.bytebandits.bithub.controller.DatabaseManager;
+import com.github.bytebandits.bithub.controller.DebouncedSearch;
+import com.github.bytebandits.bithub.controller.FeedPaginator;
 import com.github.bytebandits.bithub.controller.PostFilterManager;
+import com.github.bytebandits.bithub.controller.PostIndex;
+import com.github.bytebandits.bithub.controller.PostRepository;
+import com.github.bytebandits.bithub.controller.SearchIndex;
 import com.github.bytebandits.bithub.controller.SessionManager;
-import com.github.bytebandits.bithub.model.DocumentReferences;
 import com.github.bytebandits.bithub.model.MoodPost;
 import com.github.bytebandits.bithub.R;
 import com.github.bytebandits.bithub.model.Profile;
-import com.google.firebase.firestore.CollectionReference;
-import com.google.firebase.firestore.DocumentReference;
-import com.google.firebase.firestore.QueryDocumentSnapshot;
+import com.google.firebase.firestore.ListenerRegistration;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -37,8 +40,6 @@ import org.json.JSONObject;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.HashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 /**
  * Fragment representing the homepage.
@@ -48,13 +49,23 @@ import java.util.concurrent.Executors;
  * @author Zaid Al-Qadiri, Tony Yang, Michael Tran (Database Integration)
  */
 public class HomepageFragment extends Fragment implements FilterDialog.FilterListener {
-    private ArrayList<MoodPost> dataList;
+    private PostIndex feedIndex; // Every loaded post, most recent first
+    private List<MoodPost> dataList; // Read-only view of feedIndex
+    private final SearchIndex searchIndex = new SearchIndex(); // The descriptions of the posts of feedIndex
+    private DebouncedSearch debouncedSearch;
     private ArrayList<MoodPost> filteredDataList; // Separate list for filtering
-    private ListView moodPostList;
-    private MoodPostArrayAdapter moodPostAdapter;
+    private RecyclerView moodPostList;
+    private MoodPostAdapter moodPostAdapter;
+    private TextView emptyListMessage;
     private ImageButton filterButton;
-    private final ExecutorService executor = Executors.newSingleThreadExecutor();
-    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private FeedPaginator feedPaginator;
+    private ListenerRegistration postsListener;
+    private PostRepository postRepository;
+    private String feedCacheKey;
+    private boolean showingCachedPosts = false; // Cached posts are replaced by the first page
+    private String currentMood = "all";
+    private String currentQuery = "";
+    private static final int PREFETCH_THRESHOLD = 5; // Rows from the end at which the next page is requested
 
     /**
      * Initializes UI components and fetches posts from the database.
@@ -77,108 +88,208 @@ public class HomepageFragment extends Fragment implements FilterDialog.FilterLis
 
         // Initialize lists
         if (dataList == null) {
-            dataList = new ArrayList<>();
+            feedIndex = new PostIndex();
+            dataList = feedIndex.getPosts();
             filteredDataList = new ArrayList<>();
             Log.d("HomepageFragment", "dataList initialized as empty list");
         } else {
             Log.d("HomepageFragment", "dataList already initialized with size: " + dataList.size());
         }
 
-        executor.execute(() -> {
-                DatabaseManager.getInstance().getAllFollowerPosts(SessionManager.getInstance(getContext()).getUserId(), posts -> {
-                    if (posts == null) {
-                        Log.e("HomepageFragment", "Error: posts is null");
-                    }
-
-                Log.d("HomepageFragment", "Fetched posts count: " + posts.size());
-
-                // Switch to UI thread for UI updates
-                mainHandler.post(() -> {
-                    dataList.clear();
-                    dataList.addAll(posts);
-
-                    // Reset filteredDataList to show all posts initially
-                    filteredDataList.clear();
-                    filteredDataList.addAll(dataList);
-
-                    if (moodPostAdapter != null) {
-                        moodPostAdapter.notifyDataSetChanged();
-                    } else {
-                        Log.e("HomepageFragment", "moodPostAdapter is null");
-                    }
-
-                    // Initialize views and adapters
-                    moodPostList = view.findViewById(R.id.homepageMoodPostList);
-                    if (!filteredDataList.isEmpty()) {
-                        moodPostAdapter = new MoodPostArrayAdapter(getContext(), filteredDataList);
-                        moodPostList.setAdapter(moodPostAdapter);
-                        moodPostList.setEmptyView(view.findViewById(R.id.homepageEmptyListMessage));
-
-                        // on item click on list, open detailed view of post
-                        moodPostList.setOnItemClickListener((parent, v, position, id) -> {
-                            DetailedMoodPostFragment detailedMoodPostFragment = DetailedMoodPostFragment
-                                    .newInstance(filteredDataList.get(position));
-                            detailedMoodPostFragment.show(getActivity().getSupportFragmentManager(),
-                                    "Detailed Mood Post View");
-                        });
-                    }
-                });
-            });
+        // Initialize views and adapters
+        moodPostList = view.findViewById(R.id.homepageMoodPostList);
+        emptyListMessage = view.findViewById(R.id.homepageEmptyListMessage);
+        RecyclerLists.setUp(moodPostList, this, 12);
+
+        // on item click on list, open detailed view of post
+        moodPostAdapter = new MoodPostAdapter(moodPost -> {
+            DetailedMoodPostFragment detailedMoodPostFragment = DetailedMoodPostFragment
+                    .newInstance(moodPost);
+            detailedMoodPostFragment.show(getActivity().getSupportFragmentManager(),
+                    "Detailed Mood Post View");
         });
+        moodPostList.setAdapter(moodPostAdapter);
 
-        // Firestore listener to update lists when database changes
-        CollectionReference moodPostRef = DatabaseManager.getInstance().getPostsCollectionRef();
-        DocumentReference userDocRef = DatabaseManager.getInstance().getUsersCollectionRef().document(SessionManager.getInstance(requireContext()).getUserId());
-        userDocRef.get().addOnSuccessListener(userDocSnapshot -> {
-            if (!userDocSnapshot.exists() || !userDocSnapshot.contains(DocumentReferences.FOLLOWINGS.getDocRefString())) {
-                return;
+        // Prefetch the next page once the user scrolls near the end of what is loaded
+        moodPostList.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                if (RecyclerLists.isNearEnd(recyclerView, PREFETCH_THRESHOLD)) {
+                    loadNextPage();
+                }
             }
+        });
 
-            List<DocumentReference> followingDocRefs = (List<DocumentReference>) userDocSnapshot.get(DocumentReferences.FOLLOWINGS.getDocRefString());
-            List<String> followingUserIds = new ArrayList<>();
-
-            if (followingDocRefs != null) {
-                for (DocumentReference ref : followingDocRefs) {
-                    followingUserIds.add(ref.getId());
+        String userId = SessionManager.getInstance(requireContext()).getUserId();
+        feedPaginator = new FeedPaginator(userId);
+        feedIndex.clear();
+        searchIndex.clear();
+        filteredDataList.clear();
+        debouncedSearch = new DebouncedSearch(searchIndex, new Handler(Looper.getMainLooper())::post);
+
+        // Show the last known first page right away while the real one loads
+        postRepository = PostRepository.getInstance(requireContext());
+        feedCacheKey = PostRepository.feedKey(userId);
+        postRepository.getCachedPosts(feedCacheKey, cached -> {
+            if (cached != null && dataList.isEmpty()) {
+                Log.d("HomepageFragment", "Showing " + cached.posts.size() + " cached posts, stale by "
+                        + (System.currentTimeMillis() - cached.fetchedAt) + " ms");
+                showingCachedPosts = true;
+                for (MoodPost post : cached.posts) {
+                    feedIndex.upsert(post, null);
+                    searchIndex.upsert(post);
                 }
+                refreshFilteredList();
             }
+        });
+        loadNextPage();
+
+        profileSearchManager(view);
 
-            if (followingUserIds.isEmpty()) {
-                return;
+        return view;
+    }
+
+    /**
+     * Loads the next page of the feed and appends it to the list.
+     * Once the first page has arrived, a real-time listener is attached to the newest page.
+     */
+    private void loadNextPage() {
+        if (feedPaginator == null || feedPaginator.isLoading() || !feedPaginator.hasMore()) {
+            return;
+        }
+
+        feedPaginator.loadNextPage((posts, hasMore) -> {
+            Log.d("HomepageFragment", "Fetched page of " + posts.size() + " posts, more: " + hasMore);
+
+            boolean firstPage = postsListener == null;
+            if (showingCachedPosts) {
+                showingCachedPosts = false;
+                feedIndex.clear();
+                searchIndex.clear();
+                filteredDataList.clear();
             }
 
-            // Attach a Firestore snapshot listener for real-time updates
-            DatabaseManager.getInstance().getPostsCollectionRef()
-                    .whereIn("profile.userId", followingUserIds)
-                    .whereEqualTo("private", false)
-                    .addSnapshotListener((querySnapshot, error) -> {
-                        if (error != null) {
-                            Log.e("DatabaseManager", "Error listening for post updates: " + error.getMessage(), error);
-                            return;
-                        }
+            if (firstPage) {
+                postRepository.putPosts(feedCacheKey, posts);
+            }
+            for (MoodPost post : posts) {
+                feedIndex.upsert(post, feedChangeListener);
+            }
+            onFeedChanged();
 
-                        if (querySnapshot == null || querySnapshot.isEmpty()) {
-                            Log.d("DatabaseManager", "No public posts from followed users.");
-                            return;
-                        }
+            if (firstPage && postsListener == null) {
+                setupPostsRealTimeListener();
+            }
+        });
+    }
 
-                        dataList.clear();
-                        for (QueryDocumentSnapshot doc : querySnapshot) {
-                            MoodPost post = doc.toObject(MoodPost.class);
-                            dataList.add(post);
-                        }
+    /**
+     * Attaches a Firestore snapshot listener to the newest page of the feed, so new and
+     * edited posts show up without re-downloading the pages further down.
+     */
+    private void setupPostsRealTimeListener() {
+        int pageSize = feedPaginator.getPageSize();
+        postsListener = feedPaginator.listenToNewestPage(changes -> {
+            // Only the changed posts are deserialized and moved, older pages stay as paged in
+            feedIndex.applyChanges(changes, feedChangeListener);
+            onFeedChanged();
+            postRepository.putPosts(feedCacheKey, dataList.subList(0, Math.min(pageSize, dataList.size())));
+        });
+    }
 
-                        dataList.sort((p1, p2) -> p2.getPostedDateTime().compareTo(p1.getPostedDateTime()));
-                        filteredDataList.clear();
-                        filteredDataList.addAll(dataList);
-                        if (moodPostAdapter != null) {
-                            moodPostAdapter.notifyDataSetChanged();
-                        }
-                    });
+    /**
+     * Mirrors each change of the feed index onto the search index, and onto the displayed list
+     * while no filter is active. With a filter active, the filter is re-applied once the changes
+     * are done instead.
+     */
+    private final PostIndex.OnPostIndexChangeListener feedChangeListener = new PostIndex.OnPostIndexChangeListener() {
+        @Override
+        public void onPostInserted(int position, MoodPost post) {
+            searchIndex.upsert(post);
+            if (isUnfiltered()) {
+                filteredDataList.add(position, post);
+            }
+        }
+
+        @Override
+        public void onPostChanged(int position, MoodPost post) {
+            searchIndex.upsert(post);
+            if (isUnfiltered()) {
+                filteredDataList.set(position, post);
+            }
+        }
+
+        @Override
+        public void onPostRemoved(int position, MoodPost post) {
+            searchIndex.remove(post.getPostID());
+            if (isUnfiltered()) {
+                filteredDataList.remove(position);
+            }
+        }
+    };
+
+    /**
+     * Refreshes the list once a batch of changes has been applied to the feed index.
+     */
+    private void onFeedChanged() {
+        if (isUnfiltered()) {
+            showFilteredPosts();
+        } else {
+            refreshFilteredList();
+        }
+    }
+
+    /**
+     * Hands a copy of the displayed list to the adapter, which works out what changed in the
+     * background and only rebinds those rows.
+     */
+    private void showFilteredPosts() {
+        if (moodPostAdapter == null) {
+            return;
+        }
+        moodPostAdapter.submitList(new ArrayList<>(filteredDataList), () -> {
+            if (emptyListMessage != null) {
+                emptyListMessage.setVisibility(moodPostAdapter.getItemCount() == 0 ? View.VISIBLE : View.GONE);
+            }
         });
-        profileSearchManager(view);
+    }
 
-        return view;
+    /**
+     * Returns whether the displayed list is the whole feed.
+     *
+     * @return true if no mood filter or search query is active.
+     */
+    private boolean isUnfiltered() {
+        return currentQuery.isEmpty() && currentMood.equals("all");
+    }
+
+    /**
+     * Re-applies the active mood filter and search query to the loaded posts.
+     */
+    private void refreshFilteredList() {
+        if (!currentQuery.isEmpty()) {
+            onSearchQueryChanged(currentQuery);
+        } else {
+            onFilterSelected(currentMood);
+        }
+    }
+
+    /**
+     * Removes the real-time listener when the view is destroyed.
+     */
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        if (postsListener != null) {
+            postsListener.remove();
+            postsListener = null;
+        }
+        if (feedPaginator != null) {
+            feedPaginator.reset();
+        }
+        if (debouncedSearch != null) {
+            debouncedSearch.shutdown();
+        }
     }
 
     /**
@@ -282,6 +393,8 @@ public class HomepageFragment extends Fragment implements FilterDialog.FilterLis
      */
     @Override
     public void onFilterSelected(String mood) {
+        currentMood = mood;
+        debouncedSearch.cancel(); // A search still running would replace the filtered posts
         filteredDataList.clear(); // Clear current filtered list
 
         if (mood.equals("last_week")) {
@@ -291,7 +404,7 @@ public class HomepageFragment extends Fragment implements FilterDialog.FilterLis
             filteredDataList.addAll(filteredPosts);
         }
 
-        moodPostAdapter.notifyDataSetChanged();
+        showFilteredPosts();
     }
 
     /**
@@ -323,24 +436,26 @@ public class HomepageFragment extends Fragment implements FilterDialog.FilterLis
     }
 
     /**
-     * Updates the filteredDataList based on the search query.
+     * Updates the filteredDataList based on the search query. The search index is searched off
+     * the main thread once typing pauses, and the results are shown best match first.
      *
      * @param query The search query to filter mood posts by description.
      */
     @Override
     public void onSearchQueryChanged(String query) {
-        filteredDataList.clear();
+        currentQuery = query;
 
         if (query.isEmpty()) {
+            debouncedSearch.cancel();
+            filteredDataList.clear();
             filteredDataList.addAll(dataList);
-        } else {
-            for (MoodPost post : dataList) {
-                if (post.getDescription() != null
-                        && post.getDescription().toLowerCase().contains(query.toLowerCase())) {
-                    filteredDataList.add(post);
-                }
-            }
+            showFilteredPosts();
+            return;
         }
-        moodPostAdapter.notifyDataSetChanged();
+        debouncedSearch.search(query, posts -> {
+            filteredDataList.clear();
+            filteredDataList.addAll(posts);
+            showFilteredPosts();
+        });
     }
 }
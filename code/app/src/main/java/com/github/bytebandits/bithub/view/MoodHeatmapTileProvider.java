@@ -0,0 +1,194 @@
+package com.github.bytebandits.bithub.view;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.RadialGradient;
+import android.graphics.Shader;
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.core.content.ContextCompat;
+
+import com.github.bytebandits.bithub.controller.DatabaseManager;
+import com.github.bytebandits.bithub.controller.DensityGrid;
+import com.github.bytebandits.bithub.model.Emotion;
+import com.google.android.gms.maps.model.Tile;
+import com.google.android.gms.maps.model.TileProvider;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.DocumentSnapshot;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Draws the mood heatmap of the explore map from the aggregated tiles of DensityGrid, so large
+ * regions are shown without downloading their posts. Each bucket is drawn as a blob in the
+ * color of its most common emotion, more opaque the more posts it holds. The map calls
+ * {@link #getTile(int, int, int)} on its own background threads.
+ */
+class MoodHeatmapTileProvider implements TileProvider {
+    private static final int TILE_SIZE = 256;
+    // Tiles are read again after this long, so new posts show up while the map is open
+    private static final long MAX_TILE_AGE_MS = 60 * 1000;
+    private static final long READ_TIMEOUT_SECONDS = 10;
+    // A bucket with this many posts is drawn fully opaque
+    private static final int SATURATION_COUNT = 50;
+    private static final float MIN_RADIUS_PX = 6f;
+
+    private final int[] emotionColors = new int[Emotion.values().length];
+    // Parsed tile documents by tile ID, shared by the zoom levels drawn from them
+    private final LruCache<String, CachedTile> tiles = new LruCache<>(256);
+
+    MoodHeatmapTileProvider(Context context) {
+        for (Emotion emotion : Emotion.values()) {
+            emotionColors[emotion.ordinal()] = ContextCompat.getColor(context, emotion.getColor());
+        }
+    }
+
+    @Override
+    public Tile getTile(int x, int y, int zoom) {
+        int level = DensityGrid.levelFor(zoom);
+        // A map tile lies in one aggregated tile when zoomed in past its level, and spans several below it
+        int span = zoom >= level ? 1 : 1 << (level - zoom);
+        int shift = zoom >= level ? zoom - level : 0;
+
+        Bitmap bitmap = Bitmap.createBitmap(TILE_SIZE, TILE_SIZE, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        boolean drawn = false;
+
+        for (int dx = 0; dx < span; dx++) {
+            for (int dy = 0; dy < span; dy++) {
+                int tileX = zoom >= level ? x >> shift : x * span + dx;
+                int tileY = zoom >= level ? y >> shift : y * span + dy;
+                Map<Integer, int[]> buckets = loadTile(level, tileX, tileY);
+                if (buckets == null) {
+                    // Not readable now, the map asks again later
+                    bitmap.recycle();
+                    return null;
+                }
+                for (Map.Entry<Integer, int[]> bucket : buckets.entrySet()) {
+                    drawn |= drawBucket(canvas, paint, x, y, zoom, level, tileX, tileY, bucket.getKey(), bucket.getValue());
+                }
+            }
+        }
+
+        if (!drawn) {
+            bitmap.recycle();
+            return TileProvider.NO_TILE;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.PNG, 100, bytes);
+        bitmap.recycle();
+        return new Tile(TILE_SIZE, TILE_SIZE, bytes.toByteArray());
+    }
+
+    // Draws a bucket onto the map tile x, y at zoom, and returns whether anything was drawn
+    private boolean drawBucket(Canvas canvas, Paint paint, int x, int y, int zoom, int level, int tileX, int tileY,
+                               int bucket, int[] counts) {
+        int total = 0;
+        int dominant = 0;
+        for (int i = 0; i < counts.length; i++) {
+            // Counts can briefly go below zero while a post is moved between buckets
+            if (counts[i] > 0) {
+                total += counts[i];
+                if (counts[i] > counts[dominant]) {
+                    dominant = i;
+                }
+            }
+        }
+        if (total <= 0) {
+            return false;
+        }
+
+        double worldPixels = (double) TILE_SIZE * (1L << zoom);
+        double[] center = DensityGrid.bucketCenter(level, tileX, tileY, bucket);
+        float centerX = (float) (center[0] * worldPixels - (double) x * TILE_SIZE);
+        float centerY = (float) (center[1] * worldPixels - (double) y * TILE_SIZE);
+        float radius = Math.max(MIN_RADIUS_PX, (float) (DensityGrid.bucketSize(level) * worldPixels * 0.75));
+        if (centerX + radius < 0 || centerY + radius < 0 || centerX - radius > TILE_SIZE || centerY - radius > TILE_SIZE) {
+            return false;
+        }
+
+        double intensity = Math.min(1, Math.log1p(total) / Math.log1p(SATURATION_COUNT));
+        int alpha = (int) (255 * (0.35 + 0.5 * intensity));
+        int color = emotionColors[dominant];
+        paint.setShader(new RadialGradient(centerX, centerY, radius,
+                Color.argb(alpha, Color.red(color), Color.green(color), Color.blue(color)),
+                Color.argb(0, Color.red(color), Color.green(color), Color.blue(color)), Shader.TileMode.CLAMP));
+        canvas.drawCircle(centerX, centerY, radius, paint);
+        return true;
+    }
+
+    /**
+     * Returns the counts of an aggregated tile, reading it if it is not cached or too old.
+     * Blocks, so it is only called from the threads of the map.
+     *
+     * @return The counts of each emotion by bucket, indexed by Emotion ordinal, or null if the
+     *         tile could not be read.
+     */
+    private Map<Integer, int[]> loadTile(int level, int x, int y) {
+        String tileId = DensityGrid.tileId(level, x, y);
+        CachedTile cached = tiles.get(tileId);
+        if (cached != null && System.currentTimeMillis() - cached.fetchedAt <= MAX_TILE_AGE_MS) {
+            return cached.buckets;
+        }
+        try {
+            DocumentSnapshot document = Tasks.await(DatabaseManager.getInstance().getHeatmapTile(level, x, y),
+                    READ_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            Map<Integer, int[]> buckets = parseBuckets(document);
+            tiles.put(tileId, new CachedTile(buckets, System.currentTimeMillis()));
+            return buckets;
+        } catch (Exception e) {
+            Log.e("MoodHeatmapTileProvider", "Error reading heatmap tile " + tileId, e);
+            return cached != null ? cached.buckets : null;
+        }
+    }
+
+    private static Map<Integer, int[]> parseBuckets(DocumentSnapshot document) {
+        Map<Integer, int[]> buckets = new HashMap<>();
+        Object field = document.exists() ? document.get(DatabaseManager.HEATMAP_COUNTS_FIELD) : null;
+        if (!(field instanceof Map)) {
+            return buckets;
+        }
+        for (Map.Entry<?, ?> bucket : ((Map<?, ?>) field).entrySet()) {
+            if (!(bucket.getValue() instanceof Map)) {
+                continue;
+            }
+            int[] counts = new int[Emotion.values().length];
+            for (Map.Entry<?, ?> count : ((Map<?, ?>) bucket.getValue()).entrySet()) {
+                if (count.getValue() instanceof Number) {
+                    try {
+                        counts[Emotion.valueOf(String.valueOf(count.getKey())).ordinal()] = ((Number) count.getValue()).intValue();
+                    } catch (IllegalArgumentException e) {
+                        Log.d("MoodHeatmapTileProvider", "Skipping unknown emotion " + count.getKey());
+                    }
+                }
+            }
+            try {
+                buckets.put(Integer.parseInt(String.valueOf(bucket.getKey())), counts);
+            } catch (NumberFormatException e) {
+                Log.d("MoodHeatmapTileProvider", "Skipping malformed bucket " + bucket.getKey());
+            }
+        }
+        return buckets;
+    }
+
+    /**
+     * The counts of a tile and when they were read
+     */
+    private static class CachedTile {
+        final Map<Integer, int[]> buckets;
+        final long fetchedAt;
+
+        CachedTile(Map<Integer, int[]> buckets, long fetchedAt) {
+            this.buckets = buckets;
+            this.fetchedAt = fetchedAt;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.github.bytebandits.bithub.view;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.github.bytebandits.bithub.model.MoodPost;
+import com.github.bytebandits.bithub.R;
+
+import java.util.Objects;
+
+/**
+ * Represents the mood post adapter used on the homepage and profile.
+ * Lists are handed over with submitList, the differences with the previous list are computed
+ * on a background thread and only the rows that changed are rebound.
+ *
+ * @author Tony Yang
+ */
+public class MoodPostAdapter extends ListAdapter<MoodPost, MoodPostAdapter.ViewHolder> {
+    private static final DiffUtil.ItemCallback<MoodPost> DIFF_CALLBACK = new DiffUtil.ItemCallback<MoodPost>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull MoodPost oldPost, @NonNull MoodPost newPost) {
+            return Objects.equals(oldPost.getPostID(), newPost.getPostID());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull MoodPost oldPost, @NonNull MoodPost newPost) {
+            // Only what the row displays
+            return Objects.equals(oldPost.getProfile().getUserId(), newPost.getProfile().getUserId())
+                    && Objects.equals(oldPost.getPostedDateTime(), newPost.getPostedDateTime())
+                    && oldPost.getEmotion() == newPost.getEmotion();
+        }
+    };
+
+    private final OnPostClickListener listener;
+
+    public MoodPostAdapter(OnPostClickListener listener) {
+        super(DIFF_CALLBACK);
+        this.listener = listener;
+        setHasStableIds(true);
+    }
+
+    /**
+     * Listener interface for clicks on a post
+     */
+    public interface OnPostClickListener {
+        void onPostClick(MoodPost moodPost);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        MoodPost moodPost = getItem(position);
+        return RecyclerLists.stableId(moodPost.getPostID(), moodPost);
+    }
+
+    @Override
+    public int getItemViewType(int position) {
+        // Unique across the adapters sharing the activity's row pool
+        return R.layout.mood_post_content;
+    }
+
+    @NonNull
+    @Override
+    public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.mood_post_content,
+                parent, false);
+        return new ViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+        MoodPost moodPost = getItem(position);
+
+        // Set the views of the row based on the mood post
+        holder.nameView.setText(moodPost.getProfile().getUserId());
+        holder.dateView.setText(moodPost.getFormattedPostedDate());
+        holder.timeView.setText(moodPost.getFormattedPostedTime());
+        holder.emotionView.setText(moodPost.getEmotion().getState());
+        holder.logoView.setImageResource(moodPost.getEmotion().getLogoID());
+        holder.itemView.setOnClickListener(v -> listener.onPostClick(moodPost));
+    }
+
+    /**
+     * Holds the views of a mood post row, so they are looked up once per row
+     */
+    static class ViewHolder extends RecyclerView.ViewHolder {
+        final ImageView logoView;
+        final TextView nameView;
+        final TextView dateView;
+        final TextView timeView;
+        final TextView emotionView;
+
+        ViewHolder(@NonNull View view) {
+            super(view);
+            logoView = view.findViewById(R.id.moodIcon);
+            nameView = view.findViewById(R.id.textUserName);
+            dateView = view.findViewById(R.id.textDate);
+            timeView = view.findViewById(R.id.textTime);
+            emotionView = view.findViewById(R.id.textCommentText);
+        }
+    }
+}
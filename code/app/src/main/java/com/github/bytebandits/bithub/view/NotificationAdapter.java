@@ -0,0 +1,190 @@
+package com.github.bytebandits.bithub.view;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageButton;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.core.content.ContextCompat;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.github.bytebandits.bithub.R;
+import com.github.bytebandits.bithub.model.Notification;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Represents the notification adapter
+ *
+ * @author Soham Limbachia
+ */
+public class NotificationAdapter extends ListAdapter<Notification, NotificationAdapter.ViewHolder> {
+    private static final DiffUtil.ItemCallback<Notification> DIFF_CALLBACK = new DiffUtil.ItemCallback<Notification>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Notification oldNotification, @NonNull Notification newNotification) {
+            return Objects.equals(oldNotification.getNotificationID(), newNotification.getNotificationID());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Notification oldNotification, @NonNull Notification newNotification) {
+            return oldNotification.getNotificationType() == newNotification.getNotificationType()
+                    && Objects.equals(oldNotification.getProfile().getUserId(), newNotification.getProfile().getUserId())
+                    && Objects.equals(oldNotification.getDateTime(), newNotification.getDateTime())
+                    && oldNotification.getEmotion() == newNotification.getEmotion();
+        }
+    };
+
+    private final OnNotificationActionListener listener;
+
+    /**
+     * Constructor for NotificationAdapter
+     * @param listener The listener to notify when a notification is clicked, or a follow request answered
+     */
+    public NotificationAdapter(OnNotificationActionListener listener) {
+        super(DIFF_CALLBACK);
+        this.listener = listener;
+        setHasStableIds(true);
+    }
+
+    /**
+     * Listener interface for the actions available on a notification
+     */
+    public interface OnNotificationActionListener {
+        void onNotificationClick(Notification notification);
+
+        void onFollowRequestAnswered(Notification notification, boolean accepted);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        Notification notification = getItem(position);
+        return RecyclerLists.stableId(notification.getNotificationID(), notification);
+    }
+
+    @Override
+    public int getItemViewType(int position) {
+        return R.layout.notification_content;
+    }
+
+    /**
+     * Creates the view of a notification row
+     * @param parent The list the row will be attached to
+     * @param viewType The view type of the row
+     * @return A holder for the new row
+     */
+    @NonNull
+    @Override
+    public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.notification_content,
+                parent, false);
+        return new ViewHolder(view);
+    }
+
+    /**
+     * Shows a notification in a row
+     * @param holder The holder of the row
+     * @param position The position of the notification in the list
+     */
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+        Notification notification = getItem(position);
+
+        // Set the text views of the view based on the notification type.
+        if (notification.getNotificationType()) {
+            // Set the text views of the request notification view.
+            holder.setRequestButtonsVisibility(View.VISIBLE);
+            holder.emotionView.setVisibility(View.GONE);
+            holder.actionView.setText(R.string.notification_request);
+            holder.buttonA.setOnClickListener(v -> {
+                // Hide the buttons right away, the list drops the row once the request is answered
+                holder.setRequestButtonsVisibility(View.GONE);
+                listener.onFollowRequestAnswered(notification, true);
+            });
+            holder.buttonD.setOnClickListener(v -> {
+                holder.setRequestButtonsVisibility(View.GONE);
+                listener.onFollowRequestAnswered(notification, false);
+            });
+        } else {
+            // Set the text views of the regular notification view.
+            holder.setRequestButtonsVisibility(View.GONE);
+            holder.buttonA.setOnClickListener(null);
+            holder.buttonD.setOnClickListener(null);
+            holder.emotionView.setVisibility(View.VISIBLE);
+            holder.actionView.setText("has posted a mood update:");
+            holder.emotionView.setText(notification.getEmotion().toString());
+            holder.emotionView.setTextColor(ContextCompat.getColor(holder.itemView.getContext(),
+                    notification.getEmotion().getColor()));
+        }
+        holder.nameView.setText(notification.getProfile().getUserId());
+        holder.dateView.setText(notification.getFormattedPostedDate());
+        holder.timeView.setText(notification.getRelativePostedTime(System.currentTimeMillis()));
+        holder.itemView.setOnClickListener(v -> listener.onNotificationClick(notification));
+    }
+
+    /**
+     * Shows a notification in a row, only setting its relative time again on the minute ticks
+     * @param holder The holder of the row
+     * @param position The position of the notification in the list
+     * @param payloads The changes to the row, or empty to bind it fully
+     */
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (RelativeTimeTicker.isTick(payloads)) {
+            holder.timeView.setText(getItem(position).getRelativePostedTime(System.currentTimeMillis()));
+        } else {
+            onBindViewHolder(holder, position);
+        }
+    }
+
+    @Override
+    public void onAttachedToRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onAttachedToRecyclerView(recyclerView);
+        RelativeTimeTicker.register(this);
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onDetachedFromRecyclerView(recyclerView);
+        RelativeTimeTicker.unregister(this);
+    }
+
+    /**
+     * Holds the views of a notification row, so they are looked up once per row
+     */
+    static class ViewHolder extends RecyclerView.ViewHolder {
+        final TextView nameView;
+        final TextView dateView;
+        final TextView timeView;
+        final TextView emotionView;
+        final TextView actionView;
+        final ImageButton buttonA;
+        final ImageButton buttonD;
+        final TextView textA;
+        final TextView textD;
+
+        ViewHolder(@NonNull View view) {
+            super(view);
+            nameView = view.findViewById(R.id.textUserName);
+            dateView = view.findViewById(R.id.textDate);
+            timeView = view.findViewById(R.id.textTime);
+            emotionView = view.findViewById(R.id.emotion_group);
+            actionView = view.findViewById(R.id.action);
+            buttonA = view.findViewById(R.id.accept);
+            buttonD = view.findViewById(R.id.decline);
+            textA = view.findViewById(R.id.textTime2);
+            textD = view.findViewById(R.id.textTime5);
+        }
+
+        void setRequestButtonsVisibility(int visibility) {
+            buttonA.setVisibility(visibility);
+            buttonD.setVisibility(visibility);
+            textA.setVisibility(visibility);
+            textD.setVisibility(visibility);
+        }
+    }
+}
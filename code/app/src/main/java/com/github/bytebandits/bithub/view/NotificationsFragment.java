@@ -2,32 +2,34 @@ package com.github.bytebandits.bithub.view;
 
 
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.Looper;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.Button;
-import android.widget.ListView;
+import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
+import androidx.recyclerview.widget.RecyclerView;
 
 import com.github.bytebandits.bithub.R;
 import com.github.bytebandits.bithub.controller.DatabaseManager;
+import com.github.bytebandits.bithub.controller.NotificationLoader;
 import com.github.bytebandits.bithub.controller.SessionManager;
 import com.github.bytebandits.bithub.model.DocumentReferences;
 import com.github.bytebandits.bithub.model.MoodPost;
 import com.github.bytebandits.bithub.model.Notification;
 import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.ListenerRegistration;
 
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 /**
  * Represents the notifications fragment
@@ -37,12 +39,21 @@ import java.util.concurrent.Executors;
 public class NotificationsFragment extends Fragment {
     private ArrayList<MoodPost> dataList;
     private ArrayList<Notification> notifications;
-    private ListView moodPostList;
-    private NotificationArrayAdapter notifAdapter;
-    private final ExecutorService executor = Executors.newSingleThreadExecutor();
-    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ArrayList<Notification> inboxNotifications = new ArrayList<>();
+    private final ArrayList<Notification> legacyNotifications = new ArrayList<>();
+    private RecyclerView moodPostList;
+    private NotificationAdapter notifAdapter;
+    private final NotificationLoader legacyLoader = new NotificationLoader();
+    private List<String> loadedLegacyRefPaths; // References behind the legacy notifications shown
     private SessionManager sessionManager;
     private boolean isNotificationCleared = false;
+    private ListenerRegistration inboxListener;
+    private ListenerRegistration legacyListener;
+    private DocumentSnapshot inboxCursor; // Last inbox entry that has been loaded
+    private boolean loadingPage = false;
+    private boolean inboxHasMore = true;
+    private static final int PAGE_SIZE = 20;
+    private static final int PREFETCH_THRESHOLD = 5; // Rows from the end at which the next page is requested
 
     /**
      * Creates a new instance of the fragment
@@ -70,15 +81,36 @@ public class NotificationsFragment extends Fragment {
         Button clearNotificationsButton = view.findViewById(R.id.clear_notifications_button);
         clearNotificationsButton.setOnClickListener(v -> clearAllNotifications());
 
-        // Setup initial notification fetch
-        fetchNotifications();
+        // Setup the list once, pages and live updates are rendered into it
+        setupListView(view);
 
-        // Setup snapshot listener for real-time updates
+        // Listen to the newest page of the inbox, older pages are loaded on scroll
+        setupInboxListener();
+
+        // Setup snapshot listener for notifications stored on the user document by older versions
         setupSnapshotListener();
 
         return view;
     }
 
+    /**
+     * Removes the snapshot listeners when the view is destroyed
+     */
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        if (inboxListener != null) {
+            inboxListener.remove();
+            inboxListener = null;
+        }
+        if (legacyListener != null) {
+            legacyListener.remove();
+            legacyListener = null;
+        }
+        legacyLoader.cancel();
+        loadedLegacyRefPaths = null;
+    }
+
     /**
      * Clears all notifications
      */
@@ -90,97 +122,206 @@ public class NotificationsFragment extends Fragment {
 
         // Clear local lists
         notifications.clear();
+        inboxNotifications.clear();
+        legacyNotifications.clear();
         dataList.clear();
+        inboxHasMore = false;
 
         // Update UI
         if (notifAdapter != null) {
-            notifAdapter.notifyDataSetChanged();
+            notifAdapter.submitList(new ArrayList<>());
         }
 
-        // Set flag to prevent refetching
+        // Set flag to prevent refetching, and drop the results of a load still in flight
         isNotificationCleared = true;
+        legacyLoader.cancel();
 
         Log.d("NotificationsFragment", "All notifications cleared");
     }
 
     /**
-     * Fetches notifications from the database
+     * Sets up the RecyclerView and adapter
+     * @param view The root view of the fragment
      */
-    private void fetchNotifications() {
-        // Skip fetching if notifications were just cleared
-        if (isNotificationCleared) {
-            isNotificationCleared = false;
-            return;
-        }
+    private void setupListView(View view) {
+        moodPostList = view.findViewById(R.id.notificationList);
+        RecyclerLists.setUp(moodPostList, this, 12);
+        notifAdapter = new NotificationAdapter(new NotificationAdapter.OnNotificationActionListener() {
+            @Override
+            public void onNotificationClick(Notification notification) {
+                if (notification.getPost() != null) {
+                    showPost(notification.getPost());
+                } else if (notification.getPostId() != null) {
+                    // Inbox entries only carry what the list displays, the post is fetched when opened
+                    DatabaseManager.getInstance().getPost(notification.getPostId(), post -> {
+                        if (post != null && isAdded()) {
+                            showPost(post);
+                        }
+                    });
+                }
+            }
 
-        // Initialize notifications to avoid NullPointerException
-        if (notifications == null) {
-            notifications = new ArrayList<>();
-            Log.d("NotificationsFragment", "notifications initialized as empty list");
-        }
+            @Override
+            public void onFollowRequestAnswered(Notification notification, boolean accepted) {
+                answerFollowRequest(notification, accepted);
+            }
+        });
+        moodPostList.setAdapter(notifAdapter);
 
-        // Initialize notifications to avoid NullPointerException
-        if (notifications == null) {
-            notifications = new ArrayList<>();
-            Log.d("NotificationsFragment", "notifications initialized as empty list");
-        }
+        moodPostList.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                if (RecyclerLists.isNearEnd(recyclerView, PREFETCH_THRESHOLD)) {
+                    loadNextPage();
+                }
+            }
+        });
+    }
 
-        executor.execute(() -> {
-            DatabaseManager.getInstance().getNotifications(
-                    sessionManager.getUserId(),
-                    (posts, requests) -> {
-                        mainHandler.post(() -> {
-                            // Process and filter posts
-                            List<Notification> newNotifications = latestPosts(posts, requests);
+    /**
+     * Accepts or rejects a follow request and drops it from the list
+     * @param notification The follow request notification
+     * @param accepted Whether the request was accepted
+     */
+    private void answerFollowRequest(Notification notification, boolean accepted) {
+        String userId = sessionManager.getUserId();
+        String requesterId = notification.getProfile().getUserId();
+        DatabaseManager.OnFollowUpdatedListener listener = success -> {
+            if (!success && isAdded()) {
+                Toast.makeText(requireContext(), "Could not answer the follow request", Toast.LENGTH_SHORT).show();
+            }
+        };
+        if (accepted) {
+            DatabaseManager.getInstance().acceptUserFollow(userId, requesterId, listener);
+        } else {
+            DatabaseManager.getInstance().rejectUserFollow(userId, requesterId, listener);
+        }
 
-                            // Update lists
-                            dataList.clear();
-                            dataList.addAll(posts);
-                            notifications.clear();
-                            notifications.addAll(newNotifications);
+        inboxNotifications.remove(notification);
+        legacyNotifications.remove(notification);
+        renderNotifications();
+    }
 
-                            // Setup ListView and adapter
-                            setupListView();
-                        });
-                    }
-            );
-        });
+    /**
+     * Shows the detailed view of a post
+     * @param post The post to show
+     */
+    private void showPost(MoodPost post) {
+        DetailedMoodPostFragment detailedMoodPostFragment = DetailedMoodPostFragment.newInstance(post);
+        detailedMoodPostFragment.show(getParentFragmentManager(), "Detailed Mood Post View");
     }
 
     /**
-     * Sets up the ListView and adapter
+     * Listens to the newest page of the notification inbox. The snapshot replaces the
+     * newest part of the list, while entries from older pages are kept.
      */
-    private void setupListView() {
-        if (getView() == null) return;
+    private void setupInboxListener() {
+        DatabaseManager databaseManager = DatabaseManager.getInstance();
+        inboxListener = databaseManager.addTracedSnapshotListener("listenNotifications",
+                databaseManager.getNotificationsQuery(sessionManager.getUserId()).limit(PAGE_SIZE),
+                (value, error) -> {
+                    if (error != null) {
+                        Log.e("Firestore", "Inbox listener error: " + error.toString());
+                        return;
+                    }
+                    if (value == null) {
+                        return;
+                    }
+
+                    ArrayList<Notification> newest = new ArrayList<>();
+                    for (DocumentSnapshot doc : value.getDocuments()) {
+                        Notification notification = DatabaseManager.toNotification(doc);
+                        if (notification != null) {
+                            newest.add(notification);
+                        }
+                    }
+
+                    if (value.size() < PAGE_SIZE) {
+                        // The whole inbox fits in the snapshot
+                        inboxNotifications.clear();
+                    } else {
+                        Date oldest = newest.isEmpty() ? new Date(0) : newest.get(newest.size() - 1).getDateTime();
+                        inboxNotifications.removeIf(notification -> !notification.getDateTime().before(oldest));
+                    }
+                    inboxNotifications.addAll(newest);
+                    inboxNotifications.sort((n1, n2) -> n2.getDateTime().compareTo(n1.getDateTime()));
+
+                    if (inboxCursor == null && !value.isEmpty()) {
+                        inboxCursor = value.getDocuments().get(value.size() - 1);
+                        inboxHasMore = value.size() == PAGE_SIZE;
+                    } else if (inboxCursor == null) {
+                        inboxHasMore = false;
+                    }
 
-        moodPostList = getView().findViewById(R.id.notificationList);
+                    renderNotifications();
+                });
+    }
 
-        if (notifications.isEmpty()) {
-            // Empty state
+    /**
+     * Loads the next page of older inbox entries
+     */
+    private void loadNextPage() {
+        if (loadingPage || !inboxHasMore || inboxCursor == null) {
             return;
         }
+        loadingPage = true;
 
-        notifAdapter = new NotificationArrayAdapter(getContext(), notifications);
-        moodPostList.setAdapter(notifAdapter);
+        DatabaseManager.getInstance().getNotificationsPage(sessionManager.getUserId(), inboxCursor, PAGE_SIZE,
+                (page, last, hasMore) -> {
+                    loadingPage = false;
+                    if (page == null) {
+                        return;
+                    }
+
+                    // Skip entries that the live listener already added
+                    HashSet<String> loadedIds = new HashSet<>();
+                    for (Notification notification : inboxNotifications) {
+                        loadedIds.add(notification.getNotificationID());
+                    }
+                    for (Notification notification : page) {
+                        if (loadedIds.add(notification.getNotificationID())) {
+                            inboxNotifications.add(notification);
+                        }
+                    }
+
+                    inboxCursor = last;
+                    inboxHasMore = hasMore;
+                    renderNotifications();
+                });
+    }
 
-        moodPostList.setOnItemClickListener((parent, view, position, id) -> {
-            Notification notification = notifications.get(position);
+    /**
+     * Shows the inbox entries, most recent first, followed by the notifications stored on the
+     * user document, which all predate the inbox. Legacy entries that also made it into the
+     * inbox are shown once.
+     */
+    private void renderNotifications() {
+        notifications.clear();
+        notifications.addAll(inboxNotifications);
 
-            if (notification.getPost() != null) {
-                DetailedMoodPostFragment detailedMoodPostFragment =
-                        DetailedMoodPostFragment.newInstance(notification.getPost());
-                detailedMoodPostFragment.show(getParentFragmentManager(), "Detailed Mood Post View");
+        HashSet<String> shownIds = new HashSet<>();
+        for (Notification notification : inboxNotifications) {
+            shownIds.add(notification.getNotificationID());
+        }
+        for (Notification notification : legacyNotifications) {
+            if (shownIds.add(notification.getNotificationID())) {
+                notifications.add(notification);
             }
-        });
+        }
+
+        if (notifAdapter != null) {
+            notifAdapter.submitList(new ArrayList<>(notifications));
+        }
     }
 
     /**
      * Sets up a snapshot listener for real-time updates
      */
     private void setupSnapshotListener() {
-        DatabaseManager.getInstance().getUsersCollectionRef()
-                .document(SessionManager.getInstance(requireContext()).getUserId())
-                .addSnapshotListener((value, error) -> {
+        DatabaseManager databaseManager = DatabaseManager.getInstance();
+        legacyListener = databaseManager.addTracedSnapshotListener("listenUserNotifications",
+                databaseManager.getUsersCollectionRef().document(SessionManager.getInstance(requireContext()).getUserId()),
+                (value, error) -> {
                     if (error != null) {
                         Log.e("Firestore", "Snapshot listener error: " + error.toString());
                         return;
@@ -199,46 +340,26 @@ public class NotificationsFragment extends Fragment {
                         if (requestRefs == null) requestRefs = new ArrayList<>();
 
 
-                        List<MoodPost> allPosts = new ArrayList<>();
-                        ArrayList<HashMap<String, Object>> requests = new ArrayList<>();
-
-                        // Fetch posts asynchronously
-                        for (DocumentReference postRef : postRefs) {
-                            postRef.get()
-                                    .addOnSuccessListener(doc -> {
-                                        if (doc.exists()) {
-                                            allPosts.add(doc.toObject(MoodPost.class));
-                                        }
-                                    })
-                                    .addOnFailureListener(e ->
-                                            Log.e("Firestore", "Failed to fetch post: " + e.getMessage()));
-                        }
-
-                        // Fetch requests asynchronously
-                        for (DocumentReference userRef : requestRefs) {
-                            userRef.get()
-                                    .addOnSuccessListener(doc -> {
-                                        if (doc.exists()) {
-                                            requests.add((HashMap<String, Object>) doc.getData());
-                                        }
-                                    })
-                                    .addOnFailureListener(e ->
-                                            Log.e("Firestore", "Failed to fetch request: " + e.getMessage()));
+                        // The user document also changes for reasons unrelated to notifications
+                        List<String> refPaths = new ArrayList<>();
+                        for (DocumentReference ref : postRefs) refPaths.add(ref.getPath());
+                        for (DocumentReference ref : requestRefs) refPaths.add(ref.getPath());
+                        if (refPaths.equals(loadedLegacyRefPaths)) {
+                            return;
                         }
+                        loadedLegacyRefPaths = refPaths;
 
-                        // After all async fetches, update UI
-                        mainHandler.postDelayed(() -> {
-                            List<Notification> newNotifications = latestPosts(allPosts, requests);
+                        // Render each batch as it arrives, a newer snapshot cancels this load
+                        legacyLoader.load(postRefs, requestRefs, (posts, requests, complete) -> {
+                            List<Notification> newNotifications = latestPosts(posts, requests);
 
                             dataList.clear();
-                            dataList.addAll(allPosts);
-                            notifications.clear();
-                            notifications.addAll(newNotifications);
-
-                            if (notifAdapter != null) {
-                                notifAdapter.notifyDataSetChanged();
-                            }
-                        }, 500); // Delay to allow async calls to complete
+                            dataList.addAll(posts);
+                            legacyNotifications.clear();
+                            legacyNotifications.addAll(newNotifications);
+
+                            renderNotifications();
+                        });
                     }
                 });
     }
@@ -7,11 +7,9 @@ import android.util.Log;
 import android.app.Activity;
 import android.app.AlertDialog;
 import android.content.Intent;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Bundle;
 import android.provider.MediaStore;
-import android.util.Base64;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -33,6 +31,8 @@ import androidx.core.app.ActivityCompat;
 import androidx.fragment.app.Fragment;
 
 import com.github.bytebandits.bithub.controller.DatabaseManager;
+import com.github.bytebandits.bithub.controller.ImageLoader;
+import com.github.bytebandits.bithub.controller.ImageStore;
 import com.github.bytebandits.bithub.model.Emotion;
 import com.github.bytebandits.bithub.MainActivity;
 import com.github.bytebandits.bithub.model.MoodPost;
@@ -70,7 +70,11 @@ public class PostMoodFragment extends Fragment {
     private boolean selectedLocation;
     private boolean selectedPrivate;
     private Uri selectedImageUri;
-    private byte[] selectedImageByteArray = null;
+    private byte[] selectedImageByteArray = null; // Newly picked image, stored when the post is saved
+    private String selectedImage = null; // Image already attached to the post being edited
+    private ImageView editImage;
+    // Picked files are downscaled before being stored, this only guards against reading huge files
+    private static final int MAX_FILE_SIZE = 20 * 1024 * 1024;
 
     public static PostMoodFragment newInstance(MoodPost moodPost) {
         // Use Bundle to get info between fragments
@@ -99,7 +103,7 @@ public class PostMoodFragment extends Fragment {
         Button uploadButton = view.findViewById(R.id.postMoodUploadImageButton);
         Button deleteButton = view.findViewById(R.id.postMoodDeleteImageButton);
         deleteButton.setVisibility(View.GONE);
-        ImageView editImage = view.findViewById(R.id.postMoodImage);
+        editImage = view.findViewById(R.id.postMoodImage);
         SessionManager sessionManager = SessionManager.getInstance(requireContext());
         // Get the mood post if we need to edit a mood post
         String tag = getTag();
@@ -183,15 +187,17 @@ public class PostMoodFragment extends Fragment {
                         // Convert image Uri to Byte array for storage and check the file size of image
                         try {
                             selectedImageByteArray = uriToByteArray(selectedImageUri);
-                            // Display the image in the imageview if no exception is thrown
-                            editImage.setImageURI(selectedImageUri);
+                            selectedImage = null;
+                            // Display the image in the imageview if no exception is thrown, decoded
+                            // in the background at the size of the view
+                            ImageLoader.getInstance(requireContext()).load(editImage, selectedImageByteArray);
                             deleteButton.setVisibility(View.VISIBLE);
                         } catch (IllegalArgumentException e) {
                             // Show an error message
                             new AlertDialog.Builder(getContext())
                                     .setTitle("Error")
                                     .setMessage(
-                                            "Image is too large (Must be less than 65536 bytes). Please select a smaller file.")
+                                            "Image is too large (Must be less than 20 MB). Please select a smaller file.")
                                     .setNegativeButton("Ok", (dialog, which) -> {
                                         dialog.cancel();
                                     })
@@ -231,19 +237,19 @@ public class PostMoodFragment extends Fragment {
                 editDescription.setText(postToEdit.getDescription());
             }
             if (postToEdit.getImage() != null) {
-                byte[] postImageByteArray = Base64.decode(postToEdit.getImage(), Base64.DEFAULT);
-                selectedImageByteArray = postImageByteArray; // So if the user doesn't upload a new image, it won't
-                                                             // update the image to null
-                editImage.setImageBitmap(BitmapFactory.decodeByteArray(postImageByteArray,
-                        0, postImageByteArray.length));
+                selectedImage = postToEdit.getImage(); // So if the user doesn't upload a new image, it won't
+                                                       // update the image to null
+                ImageLoader.getInstance(requireContext()).load(editImage, postToEdit.getPostID(),
+                        selectedImage, ImageStore.VARIANT_THUMBNAIL);
                 deleteButton.setVisibility(View.VISIBLE);
             }
         }
 
         // Delete image button logic
         deleteButton.setOnClickListener(v -> {
-            editImage.setImageBitmap(null);
+            ImageLoader.getInstance(requireContext()).clear(editImage);
             selectedImageByteArray = null;
+            selectedImage = null;
             selectedImageUri = null;
             deleteButton.setVisibility(View.GONE);
         });
@@ -263,46 +269,28 @@ public class PostMoodFragment extends Fragment {
             // mood post
             if (selectedDescription != null && selectedDescription.length() > 200) {
                 editDescription.setError("Description can be max 200 characters");
-            } else {
-                DatabaseManager databaseManager = DatabaseManager.getInstance();
-                // Add mood post to database
-                String selectedImageBase64String;
-                if (selectedImageByteArray != null) {
-                    selectedImageBase64String = Base64.encodeToString(selectedImageByteArray, Base64.DEFAULT);
-                } else {
-                    selectedImageBase64String = null;
-                }
-                if (postToEdit == null) {
-                    MoodPost moodPost = new MoodPost(selectedEmotion, sessionManager.getProfile(),
-                            selectedLocation, selectedSocialSituation, selectedDescription,
-                            selectedImageBase64String, selectedPrivate);
-                    databaseManager.addPost(moodPost, sessionManager.getProfile().getUserId(), null);
-                    // for some reason setting the longitude and latitude then adding post doesn't
-                    // work so im updating the values after adding the post
-                    if (selectedLocation) {
-                        HashMap<String, Object> updateFields = new HashMap<>();
-                        updateFields.put("longitude", currentLongitude);
-                        updateFields.put("latitude", currentLatitude);
-                        databaseManager.updatePost(moodPost.getPostID(), updateFields, null);
+            } else if (selectedImageByteArray != null) {
+                // The image is stored first, the post only keeps a reference to it
+                confirmButton.setEnabled(false);
+                ImageStore.getInstance().storeImage(selectedImageByteArray, imageRef -> {
+                    if (!isAdded()) {
+                        return;
                     }
-                } else {
-                    HashMap<String, Object> updateFields = new HashMap<>();
-                    updateFields.put("socialSituation", selectedSocialSituation);
-                    updateFields.put("emotion", selectedEmotion);
-                    updateFields.put("description", selectedDescription);
-                    updateFields.put("image", selectedImageBase64String);
-                    updateFields.put("location", selectedLocation);
-                    updateFields.put("private", selectedPrivate);
-                    // If user wants to set the location, and no previous location is assigned to
-                    // the mood post, then assign new location
-                    if (selectedLocation && (postToEdit.getLongitude() == null || postToEdit.getLatitude() == null)) {
-                        updateFields.put("longitude", currentLongitude);
-                        updateFields.put("latitude", currentLatitude);
+                    if (imageRef == null) {
+                        confirmButton.setEnabled(true);
+                        new AlertDialog.Builder(getContext())
+                                .setTitle("Error")
+                                .setMessage("Image could not be read")
+                                .setNegativeButton("Ok", (dialog, which) -> {
+                                    dialog.cancel();
+                                })
+                                .show();
+                        return;
                     }
-                    databaseManager.updatePost(postToEdit.getPostID(), updateFields, null);
-                }
-                // Go back to homepage fragment
-                ((MainActivity) requireActivity()).replaceFragment(new HomepageFragment());
+                    savePost(postToEdit, sessionManager, imageRef);
+                });
+            } else {
+                savePost(postToEdit, sessionManager, selectedImage);
             }
         });
 
@@ -314,6 +302,61 @@ public class PostMoodFragment extends Fragment {
         return view;
     }
 
+    /**
+     * Stops loading the image and lets its bitmap be reused once the view is gone.
+     */
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        if (editImage != null) {
+            ImageLoader.getInstance(requireContext()).clear(editImage);
+            editImage = null;
+        }
+    }
+
+    /**
+     * Adds the mood post, or updates the post being edited, then goes back to the homepage.
+     * The writes go straight to Firestore, which applies them locally at once and keeps them
+     * while offline.
+     *
+     * @param postToEdit     The post being edited, or null to add a new post.
+     * @param sessionManager The session of the logged in user.
+     * @param image          The reference to the post's image, or null for no image.
+     */
+    private void savePost(@Nullable MoodPost postToEdit, SessionManager sessionManager, @Nullable String image) {
+        DatabaseManager databaseManager = DatabaseManager.getInstance();
+        // Add mood post to database
+        if (postToEdit == null) {
+            MoodPost moodPost = new MoodPost(selectedEmotion, sessionManager.getProfile(),
+                    selectedLocation, selectedSocialSituation, selectedDescription,
+                    image, selectedPrivate);
+            // The coordinates are written with the post, so it is counted in the heatmap in the same batch
+            if (selectedLocation) {
+                moodPost.setLongitude(currentLongitude);
+                moodPost.setLatitude(currentLatitude);
+            }
+            databaseManager.addPost(moodPost, sessionManager.getProfile().getUserId(), null);
+        } else {
+            HashMap<String, Object> updateFields = new HashMap<>();
+            updateFields.put("socialSituation", selectedSocialSituation);
+            updateFields.put("emotion", selectedEmotion);
+            updateFields.put("description", selectedDescription);
+            updateFields.put("image", image);
+            updateFields.put("location", selectedLocation);
+            updateFields.put("private", selectedPrivate);
+            // If user wants to set the location, and no previous location is assigned to
+            // the mood post, then assign new location
+            if (selectedLocation && (postToEdit.getLongitude() == null || postToEdit.getLatitude() == null)) {
+                updateFields.put("longitude", currentLongitude);
+                updateFields.put("latitude", currentLatitude);
+            }
+            // The post as it was moves it in the heatmap and mood statistics without reading it, so edits work offline
+            databaseManager.updatePost(postToEdit, updateFields, null);
+        }
+        // Go back to homepage fragment
+        ((MainActivity) requireActivity()).replaceFragment(new HomepageFragment());
+    }
+
     private void findCurrentLocation() {
         boolean b = ActivityCompat.checkSelfPermission(requireContext(),
                 Manifest.permission.ACCESS_COARSE_LOCATION) != PackageManager.PERMISSION_GRANTED;
@@ -373,7 +416,7 @@ public class PostMoodFragment extends Fragment {
      *                                  file, such as if the URI
      *                                  cannot be opened or the file cannot be read.
      * @throws IllegalArgumentException If the file size is greater than or equal to
-     *                                  65536 bytes.
+     *                                  MAX_FILE_SIZE.
      */
     private byte[] uriToByteArray(Uri uri) throws IOException, IllegalArgumentException {
         // Get input output streams
@@ -384,7 +427,6 @@ public class PostMoodFragment extends Fragment {
         byte[] buffer = new byte[bufferSize];
         int len;
         int totalBytesRead = 0;
-        final int MAX_FILE_SIZE = 65536;
         while ((len = inputStream.read(buffer)) != -1) {
             totalBytesRead += len;
             if (totalBytesRead >= MAX_FILE_SIZE) {
@@ -7,30 +7,38 @@ import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.AdapterView;
 import android.widget.ImageButton;
-import android.widget.ListView;
 import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
+import androidx.recyclerview.widget.RecyclerView;
 
+import com.github.bytebandits.bithub.controller.BatchedDocumentLoader;
 import com.github.bytebandits.bithub.controller.DatabaseManager;
+import com.github.bytebandits.bithub.controller.DebouncedSearch;
+import com.github.bytebandits.bithub.controller.MoodStats;
 import com.github.bytebandits.bithub.controller.PostFilterManager;
+import com.github.bytebandits.bithub.controller.PostRepository;
+import com.github.bytebandits.bithub.controller.SearchIndex;
 import com.github.bytebandits.bithub.model.DocumentReferences;
+import com.github.bytebandits.bithub.model.Emotion;
 import com.github.bytebandits.bithub.model.Profile;
 import com.github.bytebandits.bithub.model.MoodPost;
 import com.github.bytebandits.bithub.R;
 import com.github.bytebandits.bithub.controller.SessionManager;
 import com.github.bytebandits.bithub.model.Profile;
-import com.google.firebase.firestore.CollectionReference;
 import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.ListenerRegistration;
 import com.google.firebase.firestore.QueryDocumentSnapshot;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -46,16 +54,25 @@ import java.util.concurrent.Executors;
 public class ProfileFragment extends Fragment implements FilterDialog.FilterListener {
     private ArrayList<MoodPost> dataList;
     private ArrayList<MoodPost> filteredDataList;
-    private ListView moodPostListHistory;
-    private MoodPostArrayAdapter moodPostAdapter;
+    private final SearchIndex searchIndex = new SearchIndex(); // The descriptions of the posts of dataList
+    private DebouncedSearch debouncedSearch;
+    private RecyclerView moodPostListHistory;
+    private MoodPostAdapter moodPostAdapter;
     private ImageButton settingsButton;
     private ImageButton filterButton;
     private final ExecutorService executor = Executors.newSingleThreadExecutor();
     private final Handler mainHandler = new Handler(Looper.getMainLooper());
     private Profile profile;
     private TextView usernameTextView;
+    private TextView followCountsTextView;
+    private TextView moodStatsTextView;
     private ImageButton followingButton;
+    private ListenerRegistration postsListener;
+    private boolean postsLoaded = false; // Whether Firestore has answered, cached posts are ignored after
     private static final String PROFILE = "profile";
+    // Weeks and months shown in the mood summary
+    private static final int SUMMARY_WEEKS = 8;
+    private static final int SUMMARY_MONTHS = 6;
 
 
     /**
@@ -93,6 +110,8 @@ public class ProfileFragment extends Fragment implements FilterDialog.FilterList
         settingsButton = view.findViewById(R.id.settings_button);
         filterButton = view.findViewById(R.id.filter_button);
         usernameTextView = view.findViewById(R.id.username_textview);
+        followCountsTextView = view.findViewById(R.id.follow_counts_textview);
+        moodStatsTextView = view.findViewById(R.id.mood_stats_textview);
 
         String userId = profile.getUserId();
         String loggedInUser = SessionManager.getInstance(requireContext()).getUserId();
@@ -113,7 +132,11 @@ public class ProfileFragment extends Fragment implements FilterDialog.FilterList
                                     followingButton.setVisibility(View.VISIBLE);
                                     followingButton.setImageResource(R.drawable.baseline_group_remove_24);
                                     followingButton.setOnClickListener(v -> {
-                                        DatabaseManager.getInstance().unfollowUser(loggedInUser, userId);
+                                        DatabaseManager.getInstance().unfollowUser(loggedInUser, userId, success -> {
+                                            if (!success && isAdded()) {
+                                                Toast.makeText(requireContext(), "Could not unfollow", Toast.LENGTH_SHORT).show();
+                                            }
+                                        });
                                         Toast.makeText(requireContext(), "Unfollowed!", Toast.LENGTH_SHORT).show();
 
                                     });
@@ -122,9 +145,8 @@ public class ProfileFragment extends Fragment implements FilterDialog.FilterList
                                     followingButton.setImageResource(R.drawable.baseline_group_add_24);
                                     followingButton.setOnClickListener(v -> {
                                         // Should be sending a request to the user, however will currently auto-accept requests
-                                        DatabaseManager databaseManager = DatabaseManager.getInstance();
                                         Log.d("ProfileFragment", "sending follow request");
-                                        databaseManager.sendFollowRequest(loggedInUser, userId);
+                                        DatabaseManager.getInstance().sendFollowRequest(loggedInUser, userId);
                                         Toast.makeText(requireContext(), "Follow Request Sent!", Toast.LENGTH_SHORT).show();
                                     });
                                 }
@@ -138,6 +160,7 @@ public class ProfileFragment extends Fragment implements FilterDialog.FilterList
             filterButton.setVisibility(View.VISIBLE);
             followingButton.setVisibility(View.GONE);
             settingsButton.setOnClickListener(v -> openSettings());
+            showMoodStats(userId);
         }
 
         filterButton.setOnClickListener(v -> openFilterDialog());
@@ -149,99 +172,169 @@ public class ProfileFragment extends Fragment implements FilterDialog.FilterList
         if (filteredDataList == null) {
             filteredDataList = new ArrayList<>();
         }
-
-        executor.execute(() -> {
-            String userIdToBeRendered;
-            String localUserId = SessionManager.getInstance(requireContext()).getUserId();
-
-            if (userId.equals(localUserId)) {
-                userIdToBeRendered = localUserId;  // render the current user
-            } else {
-                userIdToBeRendered = userId;   // render another user
+        debouncedSearch = new DebouncedSearch(searchIndex, mainHandler::post);
+
+        // Initialize views and adapters
+        moodPostListHistory = view.findViewById(R.id.mood_post_list_history);
+        RecyclerLists.setUp(moodPostListHistory, this, 12);
+
+        // open detailed view of the user's clicked post
+        moodPostAdapter = new MoodPostAdapter(moodPost -> {
+            DetailedMoodPostFragment detailedMoodPostFragment = DetailedMoodPostFragment
+                    .newInstance(moodPost);
+            detailedMoodPostFragment.show(getActivity().getSupportFragmentManager(),
+                    "Detailed Mood Post View");
+        });
+        moodPostListHistory.setAdapter(moodPostAdapter);
+
+        // Show the cached posts right away, the snapshot listener below brings them up to date
+        PostRepository postRepository = PostRepository.getInstance(requireContext());
+        String postsCacheKey = PostRepository.userPostsKey(userId);
+        postsLoaded = false;
+        postRepository.getCachedPosts(postsCacheKey, cached -> {
+            if (cached != null && !postsLoaded) {
+                Log.d("ProfileFragment", "Showing " + cached.posts.size() + " cached posts");
+                showPosts(cached.posts);
             }
-
-            DatabaseManager.getInstance().getUserPosts(userIdToBeRendered, posts -> {
-                if (posts == null) {
-                    Log.e("ProfileFragment", "Error: posts is null");
-                    return;
-                }
-
-                Log.d("ProfileFragment", "Fetched posts count: " + posts.size());
-
-                // Switch to UI thread for UI updates
-                mainHandler.post(() -> {
-                    dataList.clear();
-                    dataList.addAll(posts);
-                    filteredDataList.clear();
-                    filteredDataList.addAll(posts);
-
-                    if (moodPostAdapter != null) {
-                        moodPostAdapter.notifyDataSetChanged();
-                    } else {
-                        Log.e("ProfileFragment", "moodPostAdapter is null");
-                    }
-
-                    // Initialize views and adapters
-                    moodPostListHistory = view.findViewById(R.id.mood_post_list_history);
-                    moodPostAdapter = new MoodPostArrayAdapter(getContext(), filteredDataList);
-                    moodPostListHistory.setAdapter(moodPostAdapter);
-
-                    // open detailed view of the user's clicked post
-                    moodPostListHistory.setOnItemClickListener(new AdapterView.OnItemClickListener() {
-                        @Override
-                        public void onItemClick(AdapterView<?> parent, View view,
-                                int position, long id) {
-                            DetailedMoodPostFragment detailedMoodPostFragment = DetailedMoodPostFragment
-                                    .newInstance(dataList.get(position));
-                            detailedMoodPostFragment.show(getActivity().getSupportFragmentManager(),
-                                    "Detailed Mood Post View");
-                        }
-                    });
-                });
-            });
         });
 
         // Listener to update dataList and filteredDataList whenever the database changes
-        CollectionReference moodPostRef = DatabaseManager.getInstance().getPostsCollectionRef();
-        DocumentReference userDocRef = DatabaseManager.getInstance().getUsersCollectionRef().document(SessionManager.getInstance(requireContext()).getUserId());
-        userDocRef.addSnapshotListener((value, error) -> {
+        DocumentReference userDocRef = DatabaseManager.getInstance().getUsersCollectionRef().document(userId);
+        postsListener = DatabaseManager.getInstance().addTracedSnapshotListener("listenUserPosts", userDocRef, (value, error) -> {
             if (error != null) {
                 Log.e("Firestore", "Snapshot listener error: " + error.toString());
                 return;
             }
 
             if (value != null) {
+                // The counts are kept on the user document, so they cost nothing however many follows there are
+                Map<String, Object> user = value.getData();
+                followCountsTextView.setText(DatabaseManager.followerCountOf(user) + " followers, "
+                        + DatabaseManager.followingCountOf(user) + " following");
+
                 ArrayList<DocumentReference> postRefs = (ArrayList<DocumentReference>) value.get(DocumentReferences.POSTS.getDocRefString());
                 if (postRefs == null) {
                     Log.d("Firestore", "No posts found");
                     return;
                 }
 
-                dataList.clear();
-                filteredDataList.clear();
-                for (DocumentReference postRef : postRefs) {
-                    postRef.get()
-                            .addOnSuccessListener(doc -> {
-                                if (doc.exists()) {
-                                    dataList.add(doc.toObject(MoodPost.class));
-                                }
+                BatchedDocumentLoader.load(postRefs, (documents, missingIds) -> {
+                    ArrayList<MoodPost> posts = new ArrayList<>();
+                    for (DocumentSnapshot doc : documents) {
+                        posts.add(doc.toObject(MoodPost.class));
+                    }
+                    posts.sort((p1, p2) -> p2.getPostedDateTime().compareTo(p1.getPostedDateTime()));
+                    Log.d("ProfileFragment", "Fetched posts count: " + posts.size());
 
-                                if (dataList.size() ==  postRefs.size()) {
-                                    dataList.sort((p1, p2) -> p2.getPostedDateTime().compareTo(p1.getPostedDateTime()));
-                                    filteredDataList.addAll(dataList);
+                    postsLoaded = true;
+                    postRepository.putPosts(postsCacheKey, posts);
+                    showPosts(posts);
+                });
+            }
+        });
+        return view;
+    }
 
-                                    if (moodPostAdapter != null) {
-                                        moodPostAdapter.notifyDataSetChanged();
-                                    }
-                                }
-                            })
-                            .addOnFailureListener(e ->
-                                    Log.e("Firestore", "Failed to fetch post: " + e.getMessage()));
-                }
+    /**
+     * Removes the snapshot listener when the view is destroyed.
+     */
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        if (postsListener != null) {
+            postsListener.remove();
+            postsListener = null;
+        }
+        if (debouncedSearch != null) {
+            debouncedSearch.shutdown();
+        }
+    }
 
+    /**
+     * Shows a summary of the user's moods. It is read from their mood statistics document, not
+     * from their posts, and only shown on their own profile since it counts private posts too.
+     *
+     * @param userId The ID of the logged in user.
+     */
+    private void showMoodStats(String userId) {
+        DatabaseManager.getInstance().getMoodStats(userId, stats -> {
+            if (stats == null || stats.getTotal() == 0 || !isAdded()) {
+                return;
             }
+            moodStatsTextView.setText(describeMoodStats(stats, System.currentTimeMillis()));
+            moodStatsTextView.setVisibility(View.VISIBLE);
         });
-        return view;
+    }
+
+    /**
+     * Formats the mood summary: the top emotion, the posting streak, the emotions of the last
+     * four weeks and the number of posts in each of the last weeks and months.
+     *
+     * @param stats The user's mood statistics.
+     * @param nowMs The current time.
+     * @return The summary, one line each.
+     */
+    private static String describeMoodStats(MoodStats stats, long nowMs) {
+        StringBuilder text = new StringBuilder();
+        Emotion top = stats.getTopEmotion();
+        text.append(stats.getTotal()).append(stats.getTotal() == 1 ? " mood" : " moods");
+        if (top != null) {
+            text.append(", mostly ").append(top.getState());
+        }
+        text.append(String.format(Locale.US, "\nStreak: %d days, best %d",
+                stats.getCurrentStreak(nowMs), stats.getLongestStreak()));
+
+        Map<Emotion, Long> recent = stats.getRecentEmotionCounts(4, nowMs);
+        if (!recent.isEmpty()) {
+            text.append("\nLast 4 weeks:");
+            String separator = " ";
+            for (Map.Entry<Emotion, Long> emotion : recent.entrySet()) {
+                text.append(separator).append(emotion.getKey().getState()).append(' ').append(emotion.getValue());
+                separator = ", ";
+            }
+        }
+        text.append("\nWeekly:").append(periodTotals(stats.getWeeklyHistogram(SUMMARY_WEEKS, nowMs)));
+        text.append("\nMonthly:").append(periodTotals(stats.getMonthlyHistogram(SUMMARY_MONTHS, nowMs)));
+        return text.toString();
+    }
+
+    // The number of posts in each period of a histogram, oldest first
+    private static String periodTotals(List<Map<Emotion, Long>> histogram) {
+        StringBuilder totals = new StringBuilder();
+        for (Map<Emotion, Long> period : histogram) {
+            long total = 0;
+            for (long count : period.values()) {
+                total += count;
+            }
+            totals.append(' ').append(total);
+        }
+        return totals.toString();
+    }
+
+    /**
+     * Replaces the displayed posts.
+     *
+     * @param posts The user's posts, most recent first.
+     */
+    private void showPosts(List<MoodPost> posts) {
+        dataList.clear();
+        dataList.addAll(posts);
+        // Only the posts that are new or whose description changed are indexed again
+        searchIndex.replaceAll(posts);
+        filteredDataList.clear();
+        filteredDataList.addAll(posts);
+        showFilteredPosts();
+    }
+
+    /**
+     * Hands a copy of the filtered posts to the adapter, which only rebinds the rows that changed.
+     */
+    private void showFilteredPosts() {
+        if (moodPostAdapter != null) {
+            moodPostAdapter.submitList(new ArrayList<>(filteredDataList));
+        } else {
+            Log.e("Profile fragment","Mood Post adapter is null in profile fragment");
+        }
     }
 
     /**
@@ -270,17 +363,14 @@ public class ProfileFragment extends Fragment implements FilterDialog.FilterList
     @Override
     public void onFilterSelected(String mood) {
         Log.d("ProfileFragment", "Filter selected: " + mood);
+        debouncedSearch.cancel(); // A search still running would replace the filtered posts
         filteredDataList.clear();
         if (mood.equals("last_week")) {
             filteredDataList.addAll(filterPostsFromLastWeek(dataList));
         } else {
             filteredDataList.addAll(PostFilterManager.filterPostsByMood(dataList, mood));
         }
-        if (moodPostAdapter != null) {
-            moodPostAdapter.notifyDataSetChanged();
-        } else {
-            Log.e("Profile fragment","Mood Post adapter is null in profile fragment");
-        }
+        showFilteredPosts();
     }
 
     /**
@@ -305,24 +395,24 @@ public class ProfileFragment extends Fragment implements FilterDialog.FilterList
     }
 
     /**
-     * Updates the displayed list of mood posts based on the user's search query.
+     * Updates the displayed list of mood posts based on the user's search query. The search
+     * index is searched off the main thread once typing pauses, best match first.
      *
      * @param query The search query entered by the user.
      */
     @Override
     public void onSearchQueryChanged(String query) {
-        filteredDataList.clear();
-
         if (query.isEmpty()) {
+            debouncedSearch.cancel();
+            filteredDataList.clear();
             filteredDataList.addAll(dataList);
-        } else {
-            for (MoodPost post : dataList) {
-                if (post.getDescription() != null
-                        && post.getDescription().toLowerCase().contains(query.toLowerCase())) {
-                    filteredDataList.add(post);
-                }
-            }
+            showFilteredPosts();
+            return;
         }
-        moodPostAdapter.notifyDataSetChanged();
+        debouncedSearch.search(query, posts -> {
+            filteredDataList.clear();
+            filteredDataList.addAll(posts);
+            showFilteredPosts();
+        });
     }
 }
@@ -0,0 +1,133 @@
+package com.github.bytebandits.bithub.view;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.util.TypedValue;
+import android.view.View;
+
+import androidx.annotation.ColorInt;
+import androidx.annotation.NonNull;
+import androidx.fragment.app.Fragment;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.github.bytebandits.bithub.MainActivity;
+
+/**
+ * Helpers shared by the RecyclerView lists of the app (feed, profile history, notifications
+ * and comments).
+ */
+final class RecyclerLists {
+    private RecyclerLists() {}
+
+    /**
+     * Gives a list a vertical layout, a gap between its rows, and the row pool of the
+     * MainActivity when the fragment is hosted there, so rows inflated by one tab are
+     * reused by the next one instead of being inflated again.
+     *
+     * @param list      The list to set up.
+     * @param fragment  The fragment that shows the list.
+     * @param spacingDp The gap between two rows, in dp.
+     */
+    static void setUp(RecyclerView list, Fragment fragment, int spacingDp) {
+        setUp(list, fragment, spacingDp, 0);
+    }
+
+    /**
+     * Same as {@link #setUp(RecyclerView, Fragment, int)}, with the gap between rows filled
+     * with a color.
+     *
+     * @param dividerColor The color of the gap, or 0 to leave it transparent.
+     */
+    static void setUp(RecyclerView list, Fragment fragment, int spacingDp, @ColorInt int dividerColor) {
+        LinearLayoutManager layoutManager = new LinearLayoutManager(fragment.requireContext());
+        // Hand the rows back to the shared pool when the fragment's view goes away
+        layoutManager.setRecycleChildrenOnDetach(true);
+        list.setLayoutManager(layoutManager);
+
+        if (fragment.getActivity() instanceof MainActivity) {
+            list.setRecycledViewPool(((MainActivity) fragment.getActivity()).getListViewPool());
+        }
+
+        int spacingPx = Math.round(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, spacingDp,
+                fragment.getResources().getDisplayMetrics()));
+        list.addItemDecoration(new SpacingDecoration(spacingPx, dividerColor));
+    }
+
+    /**
+     * Returns whether the last visible row of a list is within a number of rows of its end.
+     *
+     * @param list      The list, set up with {@link #setUp(RecyclerView, Fragment, int)}.
+     * @param threshold The number of rows from the end.
+     * @return true if the list is scrolled near its end.
+     */
+    static boolean isNearEnd(RecyclerView list, int threshold) {
+        LinearLayoutManager layoutManager = (LinearLayoutManager) list.getLayoutManager();
+        if (layoutManager == null) {
+            return false;
+        }
+        int total = layoutManager.getItemCount();
+        return total > 0 && layoutManager.findLastVisibleItemPosition() >= total - 1 - threshold;
+    }
+
+    /**
+     * Turns a document ID into a RecyclerView stable ID (64-bit FNV-1a hash).
+     *
+     * @param id       The document ID, may be null for entries written by old versions.
+     * @param fallback The object to identify the row by when there is no ID.
+     * @return The stable ID.
+     */
+    static long stableId(String id, Object fallback) {
+        if (id == null) {
+            return System.identityHashCode(fallback);
+        }
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < id.length(); i++) {
+            hash ^= id.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Leaves a gap below every row but the last, as the divider of a ListView did.
+     */
+    private static class SpacingDecoration extends RecyclerView.ItemDecoration {
+        private final int spacingPx;
+        private final Paint dividerPaint;
+
+        SpacingDecoration(int spacingPx, @ColorInt int dividerColor) {
+            this.spacingPx = spacingPx;
+            if (dividerColor != 0) {
+                dividerPaint = new Paint();
+                dividerPaint.setColor(dividerColor);
+            } else {
+                dividerPaint = null;
+            }
+        }
+
+        @Override
+        public void getItemOffsets(@NonNull Rect outRect, @NonNull View view, @NonNull RecyclerView parent,
+                @NonNull RecyclerView.State state) {
+            int position = parent.getChildAdapterPosition(view);
+            RecyclerView.Adapter<?> adapter = parent.getAdapter();
+            if (position != RecyclerView.NO_POSITION && adapter != null && position < adapter.getItemCount() - 1) {
+                outRect.bottom = spacingPx;
+            }
+        }
+
+        @Override
+        public void onDraw(@NonNull Canvas canvas, @NonNull RecyclerView parent, @NonNull RecyclerView.State state) {
+            if (dividerPaint == null) {
+                return;
+            }
+            for (int i = 0; i < parent.getChildCount() - 1; i++) {
+                View child = parent.getChildAt(i);
+                float top = child.getBottom() + child.getTranslationY();
+                canvas.drawRect(parent.getPaddingLeft(), top, parent.getWidth() - parent.getPaddingRight(),
+                        top + spacingPx, dividerPaint);
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.github.bytebandits.bithub.view;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.github.bytebandits.bithub.model.DateLabels;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps relative times such as "5m ago" current. One timer, shared by every list showing them,
+ * fires at the start of each minute and rebinds the rows of those lists with {@link #PAYLOAD},
+ * so only the relative time is set again. The timer only runs while such a list is attached.
+ */
+final class RelativeTimeTicker {
+    /** Payload of the rebinds that only change the relative time. */
+    static final Object PAYLOAD = new Object();
+
+    private static final Handler handler = new Handler(Looper.getMainLooper());
+    private static final List<RecyclerView.Adapter<?>> adapters = new ArrayList<>();
+    private static final Runnable tick = new Runnable() {
+        @Override
+        public void run() {
+            for (RecyclerView.Adapter<?> adapter : adapters) {
+                adapter.notifyItemRangeChanged(0, adapter.getItemCount(), PAYLOAD);
+            }
+            schedule();
+        }
+    };
+
+    private RelativeTimeTicker() {}
+
+    /**
+     * Starts rebinding an adapter every minute, called when it is attached to its list.
+     */
+    static void register(RecyclerView.Adapter<?> adapter) {
+        if (!adapters.contains(adapter)) {
+            adapters.add(adapter);
+        }
+        if (adapters.size() == 1) {
+            schedule();
+        }
+    }
+
+    /**
+     * Stops rebinding an adapter, called when it is detached from its list.
+     */
+    static void unregister(RecyclerView.Adapter<?> adapter) {
+        adapters.remove(adapter);
+        if (adapters.isEmpty()) {
+            handler.removeCallbacks(tick);
+        }
+    }
+
+    /**
+     * Returns whether a rebind only changes the relative time.
+     */
+    static boolean isTick(List<Object> payloads) {
+        if (payloads.isEmpty()) {
+            return false;
+        }
+        for (Object payload : payloads) {
+            if (payload != PAYLOAD) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void schedule() {
+        handler.removeCallbacks(tick);
+        handler.postDelayed(tick, DateLabels.MINUTE_MS - System.currentTimeMillis() % DateLabels.MINUTE_MS);
+    }
+}
@@ -3,6 +3,7 @@ package com.github.bytebandits.bithub.view;
 import android.app.AlertDialog;
 
 import android.content.Context;
+import android.content.pm.ApplicationInfo;
 
 import android.util.Log;
 import android.view.LayoutInflater;
@@ -23,12 +24,14 @@ import com.github.bytebandits.bithub.model.Profile;
  * It is responsible for:
  * - Displaying a custom settings dialog using an AlertDialog.
  * - Providing a logout button to clear user data and redirect to the startup screen.
+ * - Opening the database stats of debug builds.
  *
  * @author Zaid Al-Qadiri
  */
 
 public class SettingsDialog {
     private Button logoutButton;
+    private Button databaseStatsButton;
     private CheckBox locationServices;
     private Context context;
     private Profile userProfile;
@@ -56,12 +59,19 @@ public class SettingsDialog {
 
         logoutButton = dialogView.findViewById(R.id.logout_button);
         locationServices = dialogView.findViewById(R.id.location_services_checkbox);
+        databaseStatsButton = dialogView.findViewById(R.id.database_stats_button);
 
         logoutButton.setOnClickListener(v -> {
             logoutUser();
             settingsDialog.dismiss();  // Close the dialog after logout
         });
 
+        // Only debug builds show the database stats
+        if ((context.getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0) {
+            databaseStatsButton.setVisibility(View.VISIBLE);
+            databaseStatsButton.setOnClickListener(v -> new DatabaseStatsDialog(context).showDatabaseStatsDialog());
+        }
+
         // Set checkbox state based on user's current location service setting
         userProfile = SessionManager.getInstance(context).getProfile();
         if (userProfile != null) {
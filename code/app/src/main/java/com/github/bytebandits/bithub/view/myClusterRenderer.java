@@ -7,11 +7,14 @@ import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Typeface;
 import android.graphics.drawable.Drawable;
+import android.util.Log;
+import android.util.LruCache;
 
 import androidx.core.content.ContextCompat;
 
 import com.github.bytebandits.bithub.model.MoodMarker;
 import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.model.BitmapDescriptor;
 import com.google.android.gms.maps.model.BitmapDescriptorFactory;
 import com.google.android.gms.maps.model.MarkerOptions;
 import com.google.maps.android.clustering.Cluster;
@@ -20,15 +23,63 @@ import com.google.maps.android.clustering.view.DefaultClusterRenderer;
 
 /**
  * Determines whether moods should be bunched in one area on the map
+ * Marker icons only depend on the emotion and the user, so each one is drawn once and kept in
+ * an LRU cache shared by every map, instead of being drawn again each time a marker is rendered.
  *
  * @author Soham Limbachia
  */
 public class myClusterRenderer extends DefaultClusterRenderer<MoodMarker> {
+    // Dimensions for the marker.
+    private static final int MARKER_WIDTH = 240;
+    private static final int MARKER_HEIGHT = 240;
+    // Each icon holds a 240 x 240 ARGB bitmap of 225 KB, so 64 icons take about 14 MB. That is
+    // every emotion of the few users usually on the map, icons past that are drawn again when needed
+    private static final int MAX_CACHED_MARKERS = 64;
+
+    private static final LruCache<String, BitmapDescriptor> markerIcons = new LruCache<>(MAX_CACHED_MARKERS);
+
     private final Context context;
+    private final Paint rectPaint;
+    private final Paint textBackgroundPaint;
+    private final Paint textPaint;
+
     public myClusterRenderer(Context context, GoogleMap map,
                              ClusterManager<MoodMarker> clusterManager) {
         super(context, map, clusterManager);
         this.context = context;
+
+        // The paints are the same for every marker, so they are built once
+        rectPaint = new Paint();
+        rectPaint.setColor(Color.parseColor("#D3D3D3")); // Light gray
+        rectPaint.setAntiAlias(true);
+        rectPaint.setShadowLayer(10f, 0f, 5f, Color.BLACK);
+
+        textBackgroundPaint = new Paint();
+        textBackgroundPaint.setColor(Color.WHITE);
+        textBackgroundPaint.setAntiAlias(true);
+
+        textPaint = new Paint();
+        textPaint.setColor(Color.BLACK);
+        textPaint.setTextSize(50f);
+        textPaint.setTypeface(Typeface.create(Typeface.DEFAULT, Typeface.BOLD_ITALIC));
+        textPaint.setAntiAlias(true);
+        textPaint.setTextAlign(Paint.Align.CENTER);
+    }
+
+    /**
+     * Returns how many marker icons were found in the cache since the app started.
+     * @return the number of cache hits
+     */
+    public static int getMarkerCacheHits() {
+        return markerIcons.hitCount();
+    }
+
+    /**
+     * Returns how many marker icons had to be drawn since the app started.
+     * @return the number of cache misses
+     */
+    public static int getMarkerCacheMisses() {
+        return markerIcons.missCount();
     }
 
     /**
@@ -49,9 +100,7 @@ public class myClusterRenderer extends DefaultClusterRenderer<MoodMarker> {
      */
     @Override
     protected void onBeforeClusterItemRendered(MoodMarker item, MarkerOptions markerOptions) {
-        // Create your custom bitmap.
-        Bitmap markerBitmap = createCustomMarkerBitmap(item);
-        markerOptions.icon(BitmapDescriptorFactory.fromBitmap(markerBitmap))
+        markerOptions.icon(getMarkerIcon(item))
                 .title(item.getUserId());
     }
 
@@ -65,6 +114,24 @@ public class myClusterRenderer extends DefaultClusterRenderer<MoodMarker> {
         super.onBeforeClusterRendered(cluster, markerOptions);
     }
 
+    /**
+     * Returns the icon of a marker, drawing it only if it is not cached yet.
+     * @param moodMarker moodMarker to be rendered
+     * @return the icon of the marker
+     */
+    private BitmapDescriptor getMarkerIcon(MoodMarker moodMarker) {
+        String key = moodMarker.getEmotion().name() + "/" + moodMarker.getUserId();
+        BitmapDescriptor icon = markerIcons.get(key);
+        if (icon == null) {
+            // Create your custom bitmap.
+            icon = BitmapDescriptorFactory.fromBitmap(createCustomMarkerBitmap(moodMarker));
+            markerIcons.put(key, icon);
+            Log.d("myClusterRenderer", "Marker icon cache: " + markerIcons.hitCount() + " hits, "
+                    + markerIcons.missCount() + " misses, " + markerIcons.size() + " icons");
+        }
+        return icon;
+    }
+
     /**
      * Creates a custom marker bitmap.
      * @param moodMarker moodMarker to be rendered
@@ -72,19 +139,14 @@ public class myClusterRenderer extends DefaultClusterRenderer<MoodMarker> {
      */
     private Bitmap createCustomMarkerBitmap(MoodMarker moodMarker) {
 
-        // Dimensions for the marker.
-        int desiredWidth = 240;
-        int desiredHeight = 240;
+        int desiredWidth = MARKER_WIDTH;
+        int desiredHeight = MARKER_HEIGHT;
 
         // Create a bitmap and canvas to draw on.
         Bitmap bitmap = Bitmap.createBitmap(desiredWidth, desiredHeight, Bitmap.Config.ARGB_8888);
         Canvas canvas = new Canvas(bitmap);
 
         // Draw an off-white rounded rectangle with shadow.
-        Paint rectPaint = new Paint();
-        rectPaint.setColor(Color.parseColor("#D3D3D3")); // Light gray
-        rectPaint.setAntiAlias(true);
-        rectPaint.setShadowLayer(10f, 0f, 5f, Color.BLACK);
         float cornerRadius = 40f;
         float padding = 20f;
         canvas.drawRoundRect(padding, padding, desiredWidth - padding, desiredHeight - padding, cornerRadius, cornerRadius, rectPaint);
@@ -102,22 +164,12 @@ public class myClusterRenderer extends DefaultClusterRenderer<MoodMarker> {
         }
 
         // Draw a rounded background for text
-        Paint textBackgroundPaint = new Paint();
-        textBackgroundPaint.setColor(Color.WHITE);
-        textBackgroundPaint.setAntiAlias(true);
         float textBackgroundHeight = 50f;
         float textBackgroundTop = desiredHeight - textBackgroundHeight - padding;
         canvas.drawRoundRect(padding + 10f, textBackgroundTop, desiredWidth - padding - 10f,
                 textBackgroundTop + textBackgroundHeight, cornerRadius / 2, cornerRadius / 2, textBackgroundPaint);
 
         // Draw the user id text
-        Paint textPaint = new Paint();
-        textPaint.setColor(Color.BLACK);
-        textPaint.setTextSize(50f);
-        textPaint.setTypeface(Typeface.create(Typeface.DEFAULT, Typeface.BOLD_ITALIC));
-        textPaint.setAntiAlias(true);
-        textPaint.setTextAlign(Paint.Align.CENTER);
-
         float xPos = canvas.getWidth() / 2f;
         float yPos = textBackgroundTop + textBackgroundHeight / 2f - ((textPaint.descent() + textPaint.ascent()) / 2f);
         String userId = "@" + moodMarker.getUserId();
@@ -0,0 +1,349 @@
+package com.github.bytebandits.bithub;
+
+import com.github.bytebandits.bithub.controller.DatabaseManager;
+import com.github.bytebandits.bithub.model.DocumentReferences;
+import com.github.bytebandits.bithub.model.Emotion;
+import com.github.bytebandits.bithub.model.MoodPost;
+import com.github.bytebandits.bithub.model.Profile;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmarks of the read paths of DatabaseManager against an in-process FakeDocumentStore. The
+ * round trips of each path and the bytes it reads are asserted at 10 and 1k posts, so a path that
+ * starts reading per document or reading documents it does not need fails. Every measurement is
+ * written to build/reports/benchmarks/DatabaseManagerBenchmarkTest.tsv, to compare runs. The runs
+ * at 100k posts and under latency also assert wall-time budgets, they are ignored and run by hand.
+ */
+public class DatabaseManagerBenchmarkTest {
+    private static final long NOW = 1_700_000_000_000L;
+    private static final int USERS = 120;
+    private static final int FOLLOWED = 60;
+    private static final int NOTIFICATION_POSTS = 20;
+    private static final int NOTIFICATION_REQUESTS = 5;
+    private static final String VIEWER = "viewer";
+    // The wall time a read path may take without latency, so decoding more than linearly fails
+    private static final double WALL_BUDGET_MS = 100;
+    private static final double WALL_BUDGET_MS_PER_DOCUMENT = 0.25;
+    private static final Path REPORT = Paths.get("build", "reports", "benchmarks", "DatabaseManagerBenchmarkTest.tsv");
+    private static final List<String> reportLines = new ArrayList<>();
+
+    private FakeDocumentStore store;
+    private DatabaseManager db;
+
+    @Before
+    public void setUp() throws NoSuchFieldException {
+        store = new FakeDocumentStore();
+        Field postId = MoodPost.class.getDeclaredField("postID");
+        postId.setAccessible(true);
+        store.registerDecoder(MoodPost.class, fields -> {
+            // Builds the post from its fields by reflection, as Firestore's toObject does
+            MoodPost post = new MoodPost();
+            try {
+                postId.set(post, fields.get("postID"));
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+            post.setEmotion(Emotion.valueOf((String) fields.get("emotion")));
+            post.setProfile(new Profile((String) ((Map<?, ?>) fields.get("profile")).get("userId")));
+            post.setPostedDateTime((Date) fields.get(DatabaseManager.POSTED_DATE_TIME_FIELD));
+            post.setPrivate((Boolean) fields.get(DatabaseManager.PRIVATE_FIELD));
+            post.setDescription((String) fields.get("description"));
+            return post;
+        });
+        db = DatabaseManager.forStore(store);
+    }
+
+    @After
+    public void tearDown() {
+        store.shutdown();
+    }
+
+    @AfterClass
+    public static void writeReport() throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add("path\tposts\troundTrips\tdocuments\tbytes\twallMs");
+        lines.addAll(reportLines);
+        Files.createDirectories(REPORT.getParent());
+        Files.write(REPORT, lines, StandardCharsets.UTF_8);
+    }
+
+    private static String userId(int user) {
+        return String.format("user%03d", user);
+    }
+
+    /**
+     * Writes the users and posts. Post i belongs to user i % USERS, is i minutes old and is
+     * private when i is a multiple of 5. The viewer follows the first FOLLOWED users, and has
+     * the newest posts of them and a few follow requests as notifications.
+     */
+    private void seed(int postCount) {
+        List<List<FakeDocumentStore.Ref>> postRefs = new ArrayList<>();
+        for (int user = 0; user < USERS; user++) {
+            postRefs.add(new ArrayList<>());
+        }
+        List<FakeDocumentStore.Ref> notificationPosts = new ArrayList<>();
+        for (int i = 0; i < postCount; i++) {
+            int user = i % USERS;
+            String postId = "post" + i;
+            HashMap<String, Object> profile = new HashMap<>();
+            profile.put("userId", userId(user));
+            HashMap<String, Object> post = new HashMap<>();
+            post.put("postID", postId);
+            post.put("emotion", Emotion.values()[i % Emotion.values().length].name());
+            post.put("profile", profile);
+            post.put(DatabaseManager.POSTED_DATE_TIME_FIELD, new Date(NOW - i * 60_000L));
+            post.put(DatabaseManager.PRIVATE_FIELD, i % 5 == 0);
+            post.put(DatabaseManager.LOCATION_FIELD, false);
+            post.put("description", "Post number " + i);
+            post.put(DatabaseManager.COMMENT_COUNT_FIELD, 0L);
+            store.put("posts", postId, post);
+            postRefs.get(user).add(FakeDocumentStore.ref("posts/" + postId));
+            if (user < FOLLOWED && i % 5 != 0 && notificationPosts.size() < NOTIFICATION_POSTS) {
+                notificationPosts.add(FakeDocumentStore.ref("posts/" + postId));
+            }
+        }
+
+        for (int user = 0; user < USERS; user++) {
+            HashMap<String, Object> doc = new HashMap<>();
+            doc.put("userId", userId(user));
+            doc.put("name", "User " + user);
+            doc.put(DocumentReferences.POSTS.getDocRefString(), postRefs.get(user));
+            store.put("users", userId(user), doc);
+        }
+
+        for (int user = 0; user < FOLLOWED; user++) {
+            store.put("users/" + VIEWER + "/following", userId(user), DatabaseManager.newFollowEntry(userId(user), new Date(NOW)));
+        }
+        List<FakeDocumentStore.Ref> requests = new ArrayList<>();
+        for (int user = USERS - NOTIFICATION_REQUESTS; user < USERS; user++) {
+            requests.add(FakeDocumentStore.ref("users/" + userId(user)));
+        }
+        HashMap<String, Object> notificationRefs = new HashMap<>();
+        notificationRefs.put("posts", notificationPosts);
+        notificationRefs.put("requests", requests);
+        HashMap<String, Object> viewer = new HashMap<>();
+        viewer.put("userId", VIEWER);
+        viewer.put("notificationRefs", notificationRefs);
+        store.put("users", VIEWER, viewer);
+    }
+
+    /**
+     * The cost of one call of a read path
+     */
+    private static final class Measurement {
+        long roundTrips;
+        long documents;
+        long bytes;
+        double wallMs;
+    }
+
+    /**
+     * Runs a read path once to warm up and then runs it again to measure, waiting for its listener
+     * each time. The measurement is added to the report.
+     */
+    private <T> Measurement measure(String name, int postCount, Consumer<Consumer<T>> path, AtomicReference<T> result)
+            throws InterruptedException {
+        for (int run = 0; run < 2; run++) {
+            store.resetCounters();
+            CountDownLatch done = new CountDownLatch(1);
+            long start = System.nanoTime();
+            path.accept(value -> {
+                result.set(value);
+                done.countDown();
+            });
+            assertTrue("The listener was not called", done.await(60, TimeUnit.SECONDS));
+            if (run == 1) {
+                Measurement measurement = new Measurement();
+                measurement.wallMs = (System.nanoTime() - start) / 1e6;
+                measurement.roundTrips = store.getRoundTrips();
+                measurement.documents = store.getDocumentsRead();
+                measurement.bytes = store.getBytesRead();
+                synchronized (reportLines) {
+                    reportLines.add(String.format(Locale.ROOT, "%s\t%d\t%d\t%d\t%d\t%.2f", name, postCount,
+                            measurement.roundTrips, measurement.documents, measurement.bytes, measurement.wallMs));
+                }
+                return measurement;
+            }
+        }
+        throw new IllegalStateException();
+    }
+
+    private static int batches(int documents) {
+        return (documents + 29) / 30;
+    }
+
+    // Asserts that a read path read exactly the given documents, nothing it does not need
+    private void assertReads(Measurement cost, List<String> paths) {
+        long bytes = 0;
+        for (String path : paths) {
+            bytes += store.bytesOf(path);
+        }
+        assertEquals("Documents read", paths.size(), cost.documents);
+        assertEquals("Bytes read", bytes, cost.bytes);
+    }
+
+    private static List<String> postPaths(List<MoodPost> posts) {
+        List<String> paths = new ArrayList<>();
+        for (MoodPost post : posts) {
+            paths.add("posts/" + post.getPostID());
+        }
+        return paths;
+    }
+
+    @Test
+    public void testReadPaths_TenPosts() throws InterruptedException {
+        assertReadPaths(10);
+    }
+
+    @Test
+    public void testReadPaths_ThousandPosts() throws InterruptedException {
+        assertReadPaths(1000);
+    }
+
+    @Ignore("Benchmark, run by hand")
+    @Test
+    public void testBenchmark_HundredThousandPosts() throws InterruptedException {
+        for (Measurement cost : assertReadPaths(100000)) {
+            double budgetMs = WALL_BUDGET_MS + cost.documents * WALL_BUDGET_MS_PER_DOCUMENT;
+            assertTrue("Over the wall-time budget of " + budgetMs + " ms: " + cost.wallMs + " ms", cost.wallMs < budgetMs);
+        }
+    }
+
+    // Asserts the results, round trips and bytes of each read path, returning their measurements
+    private List<Measurement> assertReadPaths(int postCount) throws InterruptedException {
+        seed(postCount);
+        List<Measurement> costs = new ArrayList<>();
+
+        AtomicReference<ArrayList<MoodPost>> feed = new AtomicReference<>();
+        Measurement feedCost = measure("getAllFollowerPosts", postCount, done -> db.getAllFollowerPosts(VIEWER, done::accept), feed);
+        costs.add(feedCost);
+        // The following entries and legacy array of the viewer, then one query per shard of 30 followed users
+        assertEquals(2 + batches(FOLLOWED), feedCost.roundTrips);
+        int expectedFeed = 0;
+        for (int i = 0; i < postCount; i++) {
+            if (i % USERS < FOLLOWED && i % 5 != 0) {
+                expectedFeed++;
+            }
+        }
+        assertEquals(expectedFeed, feed.get().size());
+        for (int i = 1; i < feed.get().size(); i++) {
+            assertFalse(feed.get().get(i).getPostedDateTime().after(feed.get().get(i - 1).getPostedDateTime()));
+        }
+        // The following entries, the viewer for its legacy array, then only the public posts
+        List<String> feedReads = new ArrayList<>();
+        for (int user = 0; user < FOLLOWED; user++) {
+            feedReads.add("users/" + VIEWER + "/following/" + userId(user));
+        }
+        feedReads.add("users/" + VIEWER);
+        feedReads.addAll(postPaths(feed.get()));
+        assertReads(feedCost, feedReads);
+
+        AtomicReference<Boolean> following = new AtomicReference<>();
+        Measurement checkCost = measure("checkFollowing", postCount,
+                done -> db.checkFollowing(VIEWER, userId(FOLLOWED - 1), done::accept), following);
+        costs.add(checkCost);
+        assertTrue(following.get());
+        // One follow entry, however many users the viewer follows
+        assertEquals(1, checkCost.roundTrips);
+        assertReads(checkCost, Collections.singletonList("users/" + VIEWER + "/following/" + userId(FOLLOWED - 1)));
+
+        AtomicReference<ArrayList<MoodPost>> userPosts = new AtomicReference<>();
+        Measurement userPostsCost = measure("getUserPosts", postCount, done -> db.getUserPosts(userId(1), done::accept), userPosts);
+        costs.add(userPostsCost);
+        int expectedUserPosts = postCount / USERS + (postCount % USERS > 1 ? 1 : 0);
+        assertEquals(expectedUserPosts, userPosts.get().size());
+        // The user document, then one read per batch of 30 posts
+        assertEquals(1 + batches(expectedUserPosts), userPostsCost.roundTrips);
+        List<String> userPostsReads = new ArrayList<>();
+        userPostsReads.add("users/" + userId(1));
+        userPostsReads.addAll(postPaths(userPosts.get()));
+        assertReads(userPostsCost, userPostsReads);
+
+        // The user document, then the posts and requesting users it refers to
+        List<String> notificationsReads = new ArrayList<>();
+        AtomicReference<Integer> notifications = new AtomicReference<>();
+        Measurement notificationsCost = measure("getNotifications", postCount, done -> db.getNotifications(VIEWER, (posts, requests) -> {
+            notificationsReads.clear();
+            notificationsReads.add("users/" + VIEWER);
+            notificationsReads.addAll(postPaths(posts));
+            for (HashMap<String, Object> request : requests) {
+                notificationsReads.add("users/" + request.get("userId"));
+            }
+            done.accept(posts.size() + requests.size());
+        }), notifications);
+        costs.add(notificationsCost);
+        int expectedPosts = Math.min(NOTIFICATION_POSTS, expectedFeed);
+        assertEquals(expectedPosts + NOTIFICATION_REQUESTS, (int) notifications.get());
+        // The user document, then the posts and the requesting users by collection
+        assertEquals(1 + batches(expectedPosts) + 1, notificationsCost.roundTrips);
+        assertReads(notificationsCost, notificationsReads);
+
+        AtomicReference<List<HashMap<String, Object>>> users = new AtomicReference<>();
+        Measurement searchCost = measure("searchUsers", postCount, done -> db.searchUsers("user1", done::accept), users);
+        costs.add(searchCost);
+        assertEquals(1, searchCost.roundTrips);
+        assertEquals(20, users.get().size()); // user100 to user119
+        List<String> searchReads = new ArrayList<>();
+        for (HashMap<String, Object> user : users.get()) {
+            searchReads.add("users/" + user.get("userId"));
+        }
+        assertReads(searchCost, searchReads);
+        return costs;
+    }
+
+    @Test
+    public void testReadPaths_FailedBatchReportedAsNull() throws InterruptedException {
+        seed(1000);
+        store.failReadsOf("posts");
+
+        AtomicReference<ArrayList<MoodPost>> userPosts = new AtomicReference<>(new ArrayList<>());
+        measure("getUserPosts failed", 1000, done -> db.getUserPosts(userId(1), done::accept), userPosts);
+        assertNull(userPosts.get());
+
+        AtomicReference<Boolean> notificationsNull = new AtomicReference<>();
+        measure("getNotifications failed", 1000,
+                done -> db.getNotifications(VIEWER, (posts, requests) -> done.accept(posts == null && requests == null)),
+                notificationsNull);
+        assertTrue(notificationsNull.get());
+    }
+
+    @Ignore("Benchmark, run by hand")
+    @Test
+    public void testBenchmark_BatchesOverlapUnderLatency() throws InterruptedException {
+        long latencyMs = 20;
+        seed(100000);
+        store.setLatencyMs(latencyMs);
+
+        AtomicReference<ArrayList<MoodPost>> userPosts = new AtomicReference<>();
+        Measurement cost = measure("getUserPosts latency " + latencyMs + "ms", 100000,
+                done -> db.getUserPosts(userId(1), done::accept), userPosts);
+        // The batches run in parallel, so the wait is about two round trips rather than all of them
+        assertTrue(cost.roundTrips > 10);
+        assertTrue(cost.wallMs < cost.roundTrips * latencyMs);
+    }
+}
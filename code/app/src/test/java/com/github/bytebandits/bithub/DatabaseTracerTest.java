@@ -0,0 +1,204 @@
+package com.github.bytebandits.bithub;
+
+import com.github.bytebandits.bithub.controller.DatabaseManager;
+import com.github.bytebandits.bithub.controller.DatabaseTracer;
+import com.github.bytebandits.bithub.controller.DocumentStore;
+import com.github.bytebandits.bithub.controller.TracingDocumentStore;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * DatabaseTracer tests, spans are timed with a clock the tests move forward
+ */
+public class DatabaseTracerTest {
+    private long now;
+    private DatabaseTracer tracer;
+
+    @Before
+    public void setUp() {
+        now = 1_000;
+        tracer = new DatabaseTracer(() -> now);
+    }
+
+    private static DatabaseTracer.Stats named(List<DatabaseTracer.Stats> stats, String name) {
+        for (DatabaseTracer.Stats named : stats) {
+            if (named.name.equals(name)) {
+                return named;
+            }
+        }
+        fail("No stats for " + name);
+        return null;
+    }
+
+    @Test
+    public void testStats_TotalsByOperationAndScreen() {
+        tracer.setScreen("FeedFragment");
+        DatabaseTracer.Span fetched = tracer.start("getPost");
+        now += 30;
+        fetched.finish(1, 0, 120, false);
+        DatabaseTracer.Span failed = tracer.start("getPost");
+        tracer.setScreen("ProfileFragment");
+        now += 700;
+        failed.fail("unavailable"); // Still attributed to the screen that made it
+        tracer.start("getUserPublicPosts").finish(0, 0, 0, false);
+        tracer.start("getUserPublicPosts").finish(5, 0, 500, true);
+        tracer.start("addPost").finish(0, 12, 0, false);
+
+        DatabaseTracer.Stats getPost = named(tracer.getOperationStats(), "getPost");
+        assertEquals(2, getPost.getRequests());
+        assertEquals(1, getPost.getFailures());
+        assertEquals(1, getPost.getReads());
+        assertEquals(1, getPost.getBilledReads());
+        assertEquals(120, getPost.getBytes());
+
+        // An empty query still bills a read, cached reads bill none
+        DatabaseTracer.Stats publicPosts = named(tracer.getOperationStats(), "getUserPublicPosts");
+        assertEquals(5, publicPosts.getReads());
+        assertEquals(1, publicPosts.getBilledReads());
+        assertEquals(1, publicPosts.getCacheHits());
+
+        DatabaseTracer.Stats addPost = named(tracer.getOperationStats(), "addPost");
+        assertEquals(12, addPost.getWrites());
+        assertEquals(0, addPost.getBilledReads());
+
+        DatabaseTracer.Stats feed = named(tracer.getScreenStats(), "FeedFragment");
+        assertEquals(2, feed.getRequests());
+        assertEquals(1, feed.getFailures());
+        DatabaseTracer.Stats profile = named(tracer.getScreenStats(), "ProfileFragment");
+        assertEquals(3, profile.getRequests());
+        assertEquals(12, profile.getWrites());
+        assertEquals(1, profile.getBilledReads());
+    }
+
+    @Test
+    public void testStats_LatencyPercentiles() {
+        for (int latencyMs = 1; latencyMs <= 100; latencyMs++) {
+            DatabaseTracer.Span span = tracer.start("getPost");
+            now += latencyMs;
+            span.finish(1, 0, 0, false);
+        }
+        DatabaseTracer.Stats stats = named(tracer.getOperationStats(), "getPost");
+        assertEquals(50, stats.getLatencyPercentileMs(50));
+        assertEquals(100, stats.getLatencyPercentileMs(95));
+        assertEquals(10, stats.getLatencyPercentileMs(10));
+
+        // Slower than the last bucket
+        DatabaseTracer.Span slow = tracer.start("getPost");
+        now += 60_000;
+        slow.finish(1, 0, 0, false);
+        assertEquals(100, named(tracer.getOperationStats(), "getPost").getLatencyPercentileMs(99));
+        assertEquals(-1, named(tracer.getOperationStats(), "getPost").getLatencyPercentileMs(100));
+    }
+
+    @Test
+    public void testRing_KeepsNewestTraces() {
+        for (int i = 0; i < DatabaseTracer.RING_CAPACITY + 10; i++) {
+            tracer.start("op" + i).finish(i, 0, 0, false);
+        }
+        List<DatabaseTracer.Trace> traces = tracer.getRecentTraces();
+        assertEquals(DatabaseTracer.RING_CAPACITY, traces.size());
+        assertEquals("op" + (DatabaseTracer.RING_CAPACITY + 9), traces.get(0).operation);
+        assertEquals("op10", traces.get(traces.size() - 1).operation);
+
+        String[] lines = tracer.export().split("\n");
+        assertEquals(DatabaseTracer.RING_CAPACITY + 1, lines.length);
+        assertTrue(lines[1].contains("\top10\t"));
+
+        tracer.reset();
+        assertTrue(tracer.getRecentTraces().isEmpty());
+        assertTrue(tracer.getOperationStats().isEmpty());
+    }
+
+    @Test
+    public void testListener_ReceivesEveryTrace() {
+        List<DatabaseTracer.Trace> received = new ArrayList<>();
+        DatabaseTracer.Listener listener = received::add;
+        tracer.addListener(listener);
+        tracer.start("getPost").finish(1, 0, 0, false);
+        tracer.start("getPost").fail(null);
+        tracer.removeListener(listener);
+        tracer.start("getPost").finish(1, 0, 0, false);
+
+        assertEquals(2, received.size());
+        assertFalse(received.get(0).isFailed());
+        assertTrue(received.get(1).isFailed());
+    }
+
+    @Test
+    public void testEstimateBytes_CountsNestedFields() {
+        HashMap<String, Object> profile = new HashMap<>();
+        profile.put("userId", "ab"); // 7 + 3
+        HashMap<String, Object> fields = new HashMap<>();
+        fields.put("profile", profile); // 8 + 10
+        fields.put("private", true); // 8 + 1
+        fields.put("tags", Arrays.asList("x", "yz")); // 5 + 2 + 3
+        fields.put("commentCount", 3L); // 13 + 8
+        assertEquals(58, DatabaseTracer.estimateBytes(fields));
+    }
+
+    @Test
+    public void testStore_TracesEveryRoundTrip() {
+        FakeDocumentStore store = new FakeDocumentStore();
+        for (int i = 0; i < 40; i++) {
+            HashMap<String, Object> user = new HashMap<>();
+            user.put("userId", "user" + i);
+            store.put("users", "user" + i, user);
+        }
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            ids.add("user" + i);
+        }
+        AtomicInteger fetched = new AtomicInteger();
+        tracer.setEstimatingBytes(true);
+        DocumentStore traced = new TracingDocumentStore(store, tracer, "loadUsers");
+        traced.getDocuments("users", ids, documents -> fetched.addAndGet(documents.size()));
+        traced.getDocument("users", "user35", document -> fetched.incrementAndGet());
+
+        DatabaseTracer.Stats stats = named(tracer.getOperationStats(), "loadUsers");
+        assertEquals(31, fetched.get());
+        assertEquals(store.getRoundTrips(), stats.getRequests());
+        assertEquals(store.getDocumentsRead(), stats.getReads());
+        assertTrue(stats.getBytes() > 0);
+    }
+
+    @Test
+    public void testStore_SkipsBytesUnlessEstimating() {
+        FakeDocumentStore store = new FakeDocumentStore();
+        HashMap<String, Object> user = new HashMap<>();
+        user.put("userId", "user0");
+        store.put("users", "user0", user);
+        DocumentStore traced = new TracingDocumentStore(store, tracer, "loadUser");
+        traced.getDocument("users", "user0", document -> assertNotNull(document));
+
+        DatabaseTracer.Stats stats = named(tracer.getOperationStats(), "loadUser");
+        assertEquals(1, stats.getReads());
+        assertEquals(0, stats.getBytes());
+    }
+
+    @Test
+    public void testDatabaseManager_TracesUnderOperationNames() {
+        FakeDocumentStore store = new FakeDocumentStore();
+        for (int i = 0; i < 3; i++) {
+            HashMap<String, Object> user = new HashMap<>();
+            user.put("userId", "user" + i);
+            store.put("users", "user" + i, user);
+        }
+        DatabaseTracer shared = DatabaseTracer.getInstance();
+        shared.reset();
+        DatabaseManager.forStore(store).searchUsers("user", users -> assertEquals(3, users.size()));
+
+        DatabaseTracer.Stats stats = named(shared.getOperationStats(), "searchUsers");
+        assertEquals(1, stats.getRequests());
+        assertEquals(3, stats.getReads());
+        shared.reset();
+    }
+}
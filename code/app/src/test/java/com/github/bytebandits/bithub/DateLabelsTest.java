@@ -0,0 +1,77 @@
+package com.github.bytebandits.bithub;
+
+import com.github.bytebandits.bithub.model.DateLabels;
+import com.github.bytebandits.bithub.model.Emotion;
+import com.github.bytebandits.bithub.model.MoodPost;
+import com.github.bytebandits.bithub.model.Profile;
+
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import static org.junit.Assert.*;
+
+/**
+ * DateLabels tests
+ */
+public class DateLabelsTest {
+    private static final long NOW = 1_700_000_000_000L;
+
+    @Test
+    public void testLabels_MatchFormatters() {
+        Date date = new Date(NOW);
+        DateLabels labels = new DateLabels();
+        assertEquals(new SimpleDateFormat(DateLabels.DATE_PATTERN).format(date), labels.date(date));
+        assertEquals(new SimpleDateFormat(DateLabels.TIME_PATTERN).format(date), labels.time(date));
+    }
+
+    @Test
+    public void testLabels_FormattedOnceUntilDateChanges() {
+        Date date = new Date(NOW);
+        DateLabels labels = new DateLabels();
+        String first = labels.date(date);
+        assertSame(first, labels.date(new Date(NOW)));
+
+        Date later = new Date(NOW + 3L * 24 * 60 * 60 * 1000);
+        assertNotEquals(first, labels.date(later));
+        assertEquals(DateLabels.formatTime(later), labels.time(later));
+    }
+
+    @Test
+    public void testFormatRelative_UnitsAndCutoff() {
+        long minute = DateLabels.MINUTE_MS;
+        assertEquals("just now", DateLabels.formatRelative(NOW, NOW + 59 * 1000));
+        assertEquals("just now", DateLabels.formatRelative(NOW + 5000, NOW));
+        assertEquals("5m ago", DateLabels.formatRelative(NOW, NOW + 5 * minute));
+        assertEquals("3h ago", DateLabels.formatRelative(NOW, NOW + 3 * 60 * minute + 7 * minute));
+        assertEquals(DateLabels.formatTime(new Date(NOW)), DateLabels.formatRelative(NOW, NOW + 24 * 60 * minute));
+    }
+
+    @Test
+    public void testRelative_RefreshedOnlyOnMinuteTick() {
+        Date date = new Date(NOW);
+        DateLabels labels = new DateLabels();
+        long start = NOW + 5 * DateLabels.MINUTE_MS - NOW % DateLabels.MINUTE_MS;
+        String label = labels.relative(date, start);
+        assertSame(label, labels.relative(date, start + DateLabels.MINUTE_MS - 1));
+        assertNotEquals(label, labels.relative(date, start + DateLabels.MINUTE_MS));
+    }
+
+    @Test
+    public void testPost_ReusesLabelsAcrossBinds() {
+        MoodPost post = new MoodPost(Emotion.HAPPINESS, new Profile("user"), false, null, null, null, false);
+        Date date = new Date(NOW);
+        post.setPostedDateTime(date);
+
+        // Every bind of the row after the first gets the labels formatted then
+        String postedDate = post.getFormattedPostedDate();
+        String postedTime = post.getFormattedPostedTime();
+        assertEquals(new SimpleDateFormat(DateLabels.DATE_PATTERN).format(date), postedDate);
+        assertEquals(new SimpleDateFormat(DateLabels.TIME_PATTERN).format(date), postedTime);
+        for (int bind = 0; bind < 3; bind++) {
+            assertSame(postedDate, post.getFormattedPostedDate());
+            assertSame(postedTime, post.getFormattedPostedTime());
+        }
+    }
+}
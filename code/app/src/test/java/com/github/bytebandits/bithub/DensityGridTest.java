@@ -0,0 +1,53 @@
+package com.github.bytebandits.bithub;
+
+import com.github.bytebandits.bithub.controller.DensityGrid;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * DensityGrid tests
+ */
+public class DensityGridTest {
+    @Test
+    public void testTileAt_MatchesMapTiles() {
+        // The map tile of Edmonton at zoom 10
+        assertArrayEquals(new int[] { 189, 331 }, DensityGrid.tileAt(10, 53.5232, -113.5263));
+        assertArrayEquals(new int[] { 0, 0 }, DensityGrid.tileAt(2, 85, -180));
+        assertArrayEquals(new int[] { 3, 3 }, DensityGrid.tileAt(2, -90, 180));
+        assertEquals("10_189_331", DensityGrid.tileId(10, 189, 331));
+    }
+
+    @Test
+    public void testLevelFor() {
+        assertEquals(2, DensityGrid.levelFor(0));
+        assertEquals(2, DensityGrid.levelFor(5));
+        assertEquals(6, DensityGrid.levelFor(6));
+        assertEquals(10, DensityGrid.levelFor(13));
+        assertEquals(14, DensityGrid.levelFor(21));
+    }
+
+    @Test
+    public void testBucketAt_CenterLiesInSameBucket() {
+        double lat = 53.5232;
+        double lng = -113.5263;
+        for (int level : DensityGrid.LEVELS) {
+            int[] tile = DensityGrid.tileAt(level, lat, lng);
+            int bucket = DensityGrid.bucketAt(level, lat, lng);
+            assertTrue(bucket >= 0 && bucket < DensityGrid.BUCKETS_PER_SIDE * DensityGrid.BUCKETS_PER_SIDE);
+
+            double[] center = DensityGrid.bucketCenter(level, tile[0], tile[1], bucket);
+            double half = DensityGrid.bucketSize(level) / 2;
+            assertEquals(DensityGrid.worldX(lng), center[0], half);
+            assertEquals(DensityGrid.worldY(lat), center[1], half);
+        }
+    }
+
+    @Test
+    public void testBucketAt_NearbyPostsShareCoarseBuckets() {
+        // About 100 m apart
+        assertEquals(DensityGrid.bucketAt(10, 53.5232, -113.5263), DensityGrid.bucketAt(10, 53.5240, -113.5270));
+        assertNotEquals(DensityGrid.bucketAt(14, 53.5232, -113.5263), DensityGrid.bucketAt(14, 53.5332, -113.5263));
+    }
+}
@@ -0,0 +1,369 @@
+package com.github.bytebandits.bithub;
+
+import androidx.annotation.Nullable;
+
+import com.github.bytebandits.bithub.controller.DocumentStore;
+import com.github.bytebandits.bithub.controller.ShardedFeedQuery;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * In-process DocumentStore for tests and benchmarks. Documents are serialized when written and
+ * deserialized again by every read that returns them, so a read costs about what decoding a
+ * response does, while filtering and sorting stay "on the server". Round trips can be delayed
+ * to model network latency, their results are then delivered on one thread, as Firestore
+ * delivers them on the main thread. Reads of whole collections can be made to fail. Counts the
+ * round trips, documents and bytes read.
+ */
+public class FakeDocumentStore implements DocumentStore {
+    private final Map<String, LinkedHashMap<String, StoredEntry>> collections = new HashMap<>();
+    private final Map<Class<?>, Function<Map<String, Object>, ?>> decoders = new HashMap<>();
+    private final AtomicLong roundTrips = new AtomicLong();
+    private final AtomicLong documentsRead = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final Set<String> failingCollections = new HashSet<>();
+    private long latencyMs = 0;
+    private ScheduledExecutorService deliveries;
+
+    /**
+     * A reference to another document, as stored in reference arrays
+     */
+    public static final class Ref implements Serializable {
+        final String path;
+
+        Ref(String path) {
+            this.path = path;
+        }
+    }
+
+    public static Ref ref(String path) {
+        return new Ref(path);
+    }
+
+    public void put(String collection, String id, Map<String, Object> fields) {
+        collections.computeIfAbsent(collection, c -> new LinkedHashMap<>()).put(id, new StoredEntry(fields, encode(fields)));
+    }
+
+    /**
+     * Registers how documents are turned into objects of a class, as Firestore's toObject does.
+     */
+    public <T> void registerDecoder(Class<T> type, Function<Map<String, Object>, T> decoder) {
+        decoders.put(type, decoder);
+    }
+
+    /**
+     * Delays the result of every round trip, after which results are delivered on one thread.
+     */
+    public void setLatencyMs(long latencyMs) {
+        this.latencyMs = latencyMs;
+        if (latencyMs > 0 && deliveries == null) {
+            deliveries = Executors.newSingleThreadScheduledExecutor();
+        }
+    }
+
+    /**
+     * Makes every batched read of a collection fail, as a read that is rejected or times out does.
+     */
+    public void failReadsOf(String collection) {
+        failingCollections.add(collection);
+    }
+
+    public void shutdown() {
+        if (deliveries != null) {
+            deliveries.shutdownNow();
+        }
+    }
+
+    public void resetCounters() {
+        roundTrips.set(0);
+        documentsRead.set(0);
+        bytesRead.set(0);
+    }
+
+    public long getRoundTrips() {
+        return roundTrips.get();
+    }
+
+    public long getDocumentsRead() {
+        return documentsRead.get();
+    }
+
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    /**
+     * Returns the bytes a read of a document costs, 0 if it does not exist.
+     */
+    public long bytesOf(String path) {
+        StoredEntry entry = entries(DocumentStore.collectionOf(path)).get(DocumentStore.idOf(path));
+        return entry != null ? entry.encoded.length : 0;
+    }
+
+    @Override
+    public void getDocument(@NotNull String collection, @NotNull String id, OnDocumentFetchListener listener) {
+        roundTrips.incrementAndGet();
+        StoredEntry entry = entries(collection).get(id);
+        deliver(() -> listener.onDocumentFetched(read(collection, id, entry)));
+    }
+
+    @Override
+    public void getDocuments(@NotNull String collection, @NotNull List<String> ids, OnDocumentsFetchListener listener) {
+        if (ids.size() > ShardedFeedQuery.MAX_IN_CLAUSE_SIZE) {
+            // As Firestore rejects the whereIn
+            throw new IllegalArgumentException("At most " + ShardedFeedQuery.MAX_IN_CLAUSE_SIZE + " IDs per read, got " + ids.size());
+        }
+        roundTrips.incrementAndGet();
+        if (failingCollections.contains(collection)) {
+            deliver(() -> listener.onDocumentsFetched(null));
+            return;
+        }
+        List<String> found = new ArrayList<>();
+        for (String id : ids) {
+            if (entries(collection).containsKey(id)) {
+                found.add(id);
+            }
+        }
+        deliver(() -> listener.onDocumentsFetched(readAll(collection, found)));
+    }
+
+    @Override
+    public void query(@NotNull StoreQuery query, OnDocumentsFetchListener listener) {
+        if (query.inValues != null && query.inValues.size() > ShardedFeedQuery.MAX_IN_CLAUSE_SIZE) {
+            throw new IllegalArgumentException("At most " + ShardedFeedQuery.MAX_IN_CLAUSE_SIZE + " whereIn values, got " + query.inValues.size());
+        }
+        roundTrips.incrementAndGet();
+        List<Map.Entry<String, StoredEntry>> matches = new ArrayList<>();
+        for (Map.Entry<String, StoredEntry> entry : entries(query.collection).entrySet()) {
+            if (matches(query, entry.getValue().fields)) {
+                matches.add(entry);
+            }
+        }
+        if (query.orderByField != null) {
+            Comparator<Map.Entry<String, StoredEntry>> order = (e1, e2) ->
+                    compare(field(e1.getValue().fields, query.orderByField), field(e2.getValue().fields, query.orderByField));
+            if (query.descending) {
+                order = order.reversed();
+            }
+            // Ties are ordered by document ID, as in Firestore
+            matches.sort(order.thenComparing(Map.Entry::getKey));
+        }
+
+        List<String> ids = new ArrayList<>();
+        for (Map.Entry<String, StoredEntry> match : matches) {
+            if (query.limit >= 0 && ids.size() >= query.limit) {
+                break;
+            }
+            ids.add(match.getKey());
+        }
+        deliver(() -> listener.onDocumentsFetched(readAll(query.collection, ids)));
+    }
+
+    private LinkedHashMap<String, StoredEntry> entries(String collection) {
+        LinkedHashMap<String, StoredEntry> entries = collections.get(collection);
+        return entries != null ? entries : new LinkedHashMap<>();
+    }
+
+    private void deliver(Runnable result) {
+        if (latencyMs > 0) {
+            deliveries.schedule(result, latencyMs, TimeUnit.MILLISECONDS);
+        } else {
+            result.run();
+        }
+    }
+
+    private List<StoredDocument> readAll(String collection, List<String> ids) {
+        List<StoredDocument> documents = new ArrayList<>();
+        for (String id : ids) {
+            documents.add(read(collection, id, entries(collection).get(id)));
+        }
+        return documents;
+    }
+
+    private FakeDocument read(String collection, String id, @Nullable StoredEntry entry) {
+        if (entry == null) {
+            return new FakeDocument(collection + "/" + id, null);
+        }
+        documentsRead.incrementAndGet();
+        bytesRead.addAndGet(entry.encoded.length);
+        return new FakeDocument(collection + "/" + id, decode(entry.encoded));
+    }
+
+    private static boolean matches(StoreQuery query, Map<String, Object> fields) {
+        for (Map.Entry<String, Object> filter : query.equalTo.entrySet()) {
+            if (!Objects.equals(field(fields, filter.getKey()), filter.getValue())) {
+                return false;
+            }
+        }
+        if (query.inField != null && !query.inValues.contains(field(fields, query.inField))) {
+            return false;
+        }
+        if (query.orderByField != null) {
+            Object value = field(fields, query.orderByField);
+            if (value == null) {
+                // Firestore leaves out documents without the order by field
+                return false;
+            }
+            // The bounds follow the direction of the order
+            int sign = query.descending ? -1 : 1;
+            if (query.startAt != null && sign * compare(value, query.startAt) < 0) {
+                return false;
+            }
+            if (query.endAt != null && sign * compare(value, query.endAt) > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static int compare(Object a, Object b) {
+        if (a == null || b == null) {
+            return a == null ? (b == null ? 0 : -1) : 1;
+        }
+        return ((Comparable) a).compareTo(b);
+    }
+
+    @Nullable
+    private static Object field(@Nullable Map<String, Object> fields, String path) {
+        Object value = fields;
+        for (String name : path.split("\\.")) {
+            if (!(value instanceof Map)) {
+                return null;
+            }
+            value = ((Map<?, ?>) value).get(name);
+        }
+        return value;
+    }
+
+    private static byte[] encode(Map<String, Object> fields) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(new HashMap<>(fields));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Fields must be serializable", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> decode(byte[] encoded) {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(encoded))) {
+            return (Map<String, Object>) in.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * A document as written, with its fields for filtering and its encoding for reads
+     */
+    private static final class StoredEntry {
+        final Map<String, Object> fields;
+        final byte[] encoded;
+
+        StoredEntry(Map<String, Object> fields, byte[] encoded) {
+            this.fields = new HashMap<>(fields);
+            this.encoded = encoded;
+        }
+    }
+
+    private final class FakeDocument implements StoredDocument {
+        private final String path;
+        private final Map<String, Object> fields;
+
+        FakeDocument(String path, @Nullable Map<String, Object> fields) {
+            this.path = path;
+            this.fields = fields;
+        }
+
+        @Override
+        public String getId() {
+            return DocumentStore.idOf(path);
+        }
+
+        @Override
+        public String getPath() {
+            return path;
+        }
+
+        @Override
+        public boolean exists() {
+            return fields != null;
+        }
+
+        @Override
+        public boolean isFromCache() {
+            return false;
+        }
+
+        @Nullable
+        @Override
+        public Object get(@NotNull String field) {
+            return field(fields, field);
+        }
+
+        @Nullable
+        @Override
+        public Date getDate(@NotNull String field) {
+            Object value = get(field);
+            return value instanceof Date ? (Date) value : null;
+        }
+
+        @Override
+        public List<String> getReferencePaths(@NotNull String field) {
+            List<String> paths = new ArrayList<>();
+            Object refs = get(field);
+            if (refs instanceof List) {
+                for (Object ref : (List<?>) refs) {
+                    if (ref instanceof Ref) {
+                        paths.add(((Ref) ref).path);
+                    }
+                }
+            }
+            return paths;
+        }
+
+        @Nullable
+        @Override
+        public Map<String, Object> getData() {
+            return fields;
+        }
+
+        @Nullable
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T toObject(@NotNull Class<T> type) {
+            if (fields == null) {
+                return null;
+            }
+            Function<Map<String, Object>, ?> decoder = decoders.get(type);
+            if (decoder == null) {
+                throw new IllegalStateException("No decoder registered for " + type.getName());
+            }
+            return (T) decoder.apply(fields);
+        }
+    }
+}
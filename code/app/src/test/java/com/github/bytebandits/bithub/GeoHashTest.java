@@ -0,0 +1,47 @@
+package com.github.bytebandits.bithub;
+
+import com.github.bytebandits.bithub.controller.GeoHash;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * GeoHash tests
+ */
+public class GeoHashTest {
+    @Test
+    public void testEncode_KnownLocations() {
+        assertEquals("u4pruydqqvj", GeoHash.encode(57.64911, 10.40744, 11));
+        assertEquals("c3x22", GeoHash.encode(53.5232, -113.5263, 5));
+        assertEquals("s0000", GeoHash.encode(0, 0, 5));
+    }
+
+    @Test
+    public void testEncode_NearbyLocationsSharePrefix() {
+        String a = GeoHash.encode(53.5232, -113.5263, GeoHash.STORED_PRECISION);
+        String b = GeoHash.encode(53.5233, -113.5262, GeoHash.STORED_PRECISION);
+        assertEquals(a.substring(0, 6), b.substring(0, 6));
+    }
+
+    @Test
+    public void testCellsCovering_ContainsEveryCorner() {
+        double[] box = GeoHash.boundsAround(53.5232, -113.5263, 5.0);
+        int precision = GeoHash.precisionFor(box[0], box[1], box[2], box[3], 9);
+        List<String> cells = GeoHash.cellsCovering(box[0], box[1], box[2], box[3], precision);
+
+        assertTrue(cells.size() <= 9);
+        assertTrue(cells.contains(GeoHash.encode(box[0], box[1], precision)));
+        assertTrue(cells.contains(GeoHash.encode(box[2], box[3], precision)));
+        assertTrue(cells.contains(GeoHash.encode(53.5232, -113.5263, precision)));
+    }
+
+    @Test
+    public void testCellsCovering_AcrossAntimeridian() {
+        List<String> cells = GeoHash.cellsCovering(-1, 179, 1, -179, 3);
+        assertTrue(cells.contains(GeoHash.encode(0, 179.5, 3)));
+        assertTrue(cells.contains(GeoHash.encode(0, -179.5, 3)));
+    }
+}
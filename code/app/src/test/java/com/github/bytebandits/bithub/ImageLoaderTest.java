@@ -0,0 +1,39 @@
+package com.github.bytebandits.bithub;
+
+import com.github.bytebandits.bithub.controller.ImageLoader;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * ImageLoader tests
+ */
+public class ImageLoaderTest {
+    @Test
+    public void testInSampleSize_LargestReductionCoveringTarget() {
+        assertEquals(4, ImageLoader.calculateInSampleSize(4000, 3000, 1000, 750));
+        assertEquals(2, ImageLoader.calculateInSampleSize(4000, 3000, 1001, 750));
+    }
+
+    @Test
+    public void testInSampleSize_LimitedByShortestSide() {
+        assertEquals(2, ImageLoader.calculateInSampleSize(4000, 1000, 500, 500));
+    }
+
+    @Test
+    public void testInSampleSize_SmallImageIsNotReduced() {
+        assertEquals(1, ImageLoader.calculateInSampleSize(100, 100, 200, 200));
+    }
+
+    @Test
+    public void testCacheKey_ChangesWithTheImage() {
+        String ref = "a".repeat(64);
+        // Posts sharing a stored image share its bitmap, a replaced image gets a new key
+        assertEquals(ImageLoader.cacheKey("post1", ref, "full"), ImageLoader.cacheKey("post2", ref, "full"));
+        assertNotEquals(ImageLoader.cacheKey("post1", ref, "full"), ImageLoader.cacheKey("post1", "b".repeat(64), "full"));
+        assertNotEquals(ImageLoader.cacheKey("post1", ref, "full"), ImageLoader.cacheKey("post1", ref, "thumb"));
+        assertNotEquals(ImageLoader.cacheKey("post1", "iVBORw0KGgoA", "full"),
+                ImageLoader.cacheKey("post1", "iVBORw0KGgoB", "full"));
+    }
+}
@@ -0,0 +1,76 @@
+package com.github.bytebandits.bithub;
+
+import com.github.bytebandits.bithub.controller.MarkerTapResolver;
+import com.github.bytebandits.bithub.model.Emotion;
+import com.github.bytebandits.bithub.model.MoodPost;
+import com.github.bytebandits.bithub.model.Profile;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * MarkerTapResolver tests, a fake database counts the reads taps cause
+ */
+public class MarkerTapResolverTest {
+    private long now;
+    private List<String> reads;
+    private MarkerTapResolver resolver;
+    private MoodPost post;
+
+    @Before
+    public void setUp() {
+        now = 1_000_000;
+        reads = new ArrayList<>();
+        resolver = new MarkerTapResolver((postId, listener) -> {
+            reads.add(postId);
+            listener.onPostRefreshed(post);
+        }, () -> now);
+        post = new MoodPost(Emotion.HAPPINESS, new Profile("user"), true, null, null, null, false);
+    }
+
+    @Test
+    public void testTap_ListenedPostCausesNoRead() {
+        for (int i = 0; i < 100; i++) {
+            assertSame(post, resolver.onTap(post, true, null));
+        }
+        assertEquals(100, resolver.getTapCount());
+        assertEquals(0, resolver.getReadCount());
+        assertTrue(reads.isEmpty());
+    }
+
+    @Test
+    public void testTap_RecentlySyncedPostCausesNoRead() {
+        resolver.markSynced(post.getPostID());
+        now += MarkerTapResolver.MAX_STALENESS_MS;
+        resolver.onTap(post, false, null);
+        assertTrue(reads.isEmpty());
+    }
+
+    @Test
+    public void testTap_StalePostIsShownThenRefreshedOnce() {
+        resolver.markSynced(post.getPostID());
+        now += MarkerTapResolver.MAX_STALENESS_MS + 1;
+        List<MoodPost> refreshed = new ArrayList<>();
+
+        assertSame(post, resolver.onTap(post, false, refreshed::add));
+        assertEquals(1, reads.size());
+        assertEquals(1, refreshed.size());
+
+        // The refresh counts as a sync, so the next tap is free
+        resolver.onTap(post, false, refreshed::add);
+        assertEquals(1, resolver.getReadCount());
+    }
+
+    @Test
+    public void testTap_ForgottenPostIsRefreshed() {
+        resolver.markSynced(post.getPostID());
+        resolver.forget(post.getPostID());
+        resolver.onTap(post, false, null);
+        assertEquals(1, reads.size());
+    }
+}
@@ -0,0 +1,166 @@
+package com.github.bytebandits.bithub;
+
+import com.github.bytebandits.bithub.controller.MoodStats;
+import com.github.bytebandits.bithub.model.Emotion;
+import com.github.bytebandits.bithub.model.SocialSituation;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+/**
+ * MoodStats tests, documents are built the way DatabaseManager nests the counts
+ */
+public class MoodStatsTest {
+    private static final long DAY_MS = 24L * 60 * 60 * 1000;
+
+    // Noon UTC of a day
+    private static Date utc(int year, int month, int day) {
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"), Locale.US);
+        calendar.clear();
+        calendar.set(year, month - 1, day, 12, 0);
+        return calendar.getTime();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> document(Map<String, Long> counts) {
+        Map<String, Object> data = new HashMap<>();
+        for (Map.Entry<String, Long> count : counts.entrySet()) {
+            String[] path = count.getKey().split("\\.");
+            Map<String, Object> parent = data;
+            for (int i = 0; i < path.length - 1; i++) {
+                parent = (Map<String, Object>) parent.computeIfAbsent(path[i], key -> new HashMap<String, Object>());
+            }
+            parent.put(path[path.length - 1], count.getValue());
+        }
+        return data;
+    }
+
+    private static MoodStats.Entry entry(Emotion emotion, Date posted) {
+        return MoodStats.entry(emotion, SocialSituation.ALONE, posted);
+    }
+
+    @Test
+    public void testKeys_AreUtcDaysWeeksAndMonths() {
+        long day = Math.floorDiv(utc(2026, 10, 17).getTime(), DAY_MS);
+        assertEquals("20261017", MoodStats.dayKey(day));
+        assertEquals("20261012", MoodStats.weekKey(day)); // The Saturday is in the week of Monday the 12th
+        assertEquals("20261012", MoodStats.weekKey(day - 5));
+        assertEquals("20261005", MoodStats.weekKey(day - 6));
+        assertEquals("202610", MoodStats.monthKey(day));
+        assertEquals("19691229", MoodStats.weekKey(-1));
+    }
+
+    @Test
+    public void testEntry_ReadsEnumsAndNames() {
+        Date posted = utc(2026, 10, 17);
+        assertNotNull(MoodStats.entry("HAPPINESS", "GROUP", posted));
+        assertNotNull(MoodStats.entry(Emotion.FEAR, null, posted));
+        assertNull(MoodStats.entry("NOT_AN_EMOTION", null, posted));
+        assertNull(MoodStats.entry(Emotion.FEAR, null, null));
+        assertNull(MoodStats.entry(null, SocialSituation.CROWD, posted));
+    }
+
+    @Test
+    public void testDeltas_AddAndRemove() {
+        Map<String, Long> added = MoodStats.deltas(null, entry(Emotion.SADNESS, utc(2026, 10, 17)));
+        assertEquals(Long.valueOf(1), added.get(MoodStats.TOTAL_FIELD));
+        assertEquals(Long.valueOf(1), added.get("emotions.SADNESS"));
+        assertEquals(Long.valueOf(1), added.get("situations.ALONE"));
+        assertEquals(Long.valueOf(1), added.get("days.20261017"));
+        assertEquals(Long.valueOf(1), added.get("weeks.20261012.SADNESS"));
+        assertEquals(Long.valueOf(1), added.get("months.202610.SADNESS"));
+        assertEquals(6, added.size());
+
+        Map<String, Long> removed = MoodStats.deltas(entry(Emotion.SADNESS, utc(2026, 10, 17)), null);
+        assertEquals(Long.valueOf(-1), removed.get("emotions.SADNESS"));
+        assertEquals(6, removed.size());
+    }
+
+    @Test
+    public void testDeltas_EmotionChangeOnlyMovesEmotionCounts() {
+        Date posted = utc(2026, 10, 17);
+        Map<String, Long> changed = MoodStats.deltas(entry(Emotion.ANGER, posted), entry(Emotion.HAPPINESS, posted));
+        assertEquals(Long.valueOf(-1), changed.get("emotions.ANGER"));
+        assertEquals(Long.valueOf(1), changed.get("emotions.HAPPINESS"));
+        assertEquals(Long.valueOf(-1), changed.get("weeks.20261012.ANGER"));
+        assertEquals(Long.valueOf(1), changed.get("months.202610.HAPPINESS"));
+        assertFalse(changed.containsKey(MoodStats.TOTAL_FIELD));
+        assertFalse(changed.containsKey("days.20261017"));
+        assertFalse(changed.containsKey("situations.ALONE"));
+
+        assertTrue(MoodStats.deltas(entry(Emotion.ANGER, posted), entry(Emotion.ANGER, posted)).isEmpty());
+    }
+
+    @Test
+    public void testFromData_CountsAndStreaks() {
+        Map<String, Long> counts = new HashMap<>();
+        // Three days in a row up to yesterday, after a gap of two days in a row
+        MoodStats.add(counts, entry(Emotion.HAPPINESS, utc(2026, 10, 10)), 1);
+        MoodStats.add(counts, entry(Emotion.HAPPINESS, utc(2026, 10, 11)), 1);
+        MoodStats.add(counts, entry(Emotion.SADNESS, utc(2026, 10, 14)), 1);
+        MoodStats.add(counts, entry(Emotion.HAPPINESS, utc(2026, 10, 15)), 1);
+        MoodStats.add(counts, entry(Emotion.FEAR, utc(2026, 10, 16)), 1);
+        MoodStats.add(counts, entry(Emotion.FEAR, utc(2026, 10, 16)), 1);
+        // Deleted posts leave counts at zero
+        MoodStats.add(counts, entry(Emotion.ANGER, utc(2026, 9, 1)), 1);
+        MoodStats.add(counts, entry(Emotion.ANGER, utc(2026, 9, 1)), -1);
+
+        MoodStats stats = MoodStats.fromData(document(counts));
+        assertEquals(6, stats.getTotal());
+        assertEquals(Emotion.HAPPINESS, stats.getTopEmotion());
+        assertEquals(Long.valueOf(2), stats.getEmotionCounts().get(Emotion.FEAR));
+        assertFalse(stats.getEmotionCounts().containsKey(Emotion.ANGER));
+        assertEquals(Long.valueOf(6), stats.getSituationCounts().get(SocialSituation.ALONE));
+
+        long today = utc(2026, 10, 17).getTime();
+        assertEquals(3, stats.getCurrentStreak(today));
+        assertEquals(3, stats.getCurrentStreak(utc(2026, 10, 16).getTime()));
+        assertEquals(0, stats.getCurrentStreak(utc(2026, 10, 18).getTime()));
+        assertEquals(3, stats.getLongestStreak());
+    }
+
+    @Test
+    public void testFromData_Histograms() {
+        Map<String, Long> counts = new HashMap<>();
+        MoodStats.add(counts, entry(Emotion.HAPPINESS, utc(2026, 8, 20)), 1);
+        MoodStats.add(counts, entry(Emotion.SADNESS, utc(2026, 10, 5)), 1);
+        MoodStats.add(counts, entry(Emotion.HAPPINESS, utc(2026, 10, 13)), 1);
+        MoodStats.add(counts, entry(Emotion.HAPPINESS, utc(2026, 10, 17)), 1);
+        MoodStats stats = MoodStats.fromData(document(counts));
+        long now = utc(2026, 10, 17).getTime();
+
+        List<Map<Emotion, Long>> weeks = stats.getWeeklyHistogram(3, now);
+        assertEquals(3, weeks.size());
+        assertTrue(weeks.get(0).isEmpty());
+        assertEquals(Long.valueOf(1), weeks.get(1).get(Emotion.SADNESS));
+        assertEquals(Long.valueOf(2), weeks.get(2).get(Emotion.HAPPINESS));
+
+        List<Map<Emotion, Long>> months = stats.getMonthlyHistogram(3, now);
+        assertEquals(Long.valueOf(1), months.get(0).get(Emotion.HAPPINESS));
+        assertTrue(months.get(1).isEmpty());
+        assertEquals(Long.valueOf(2), months.get(2).get(Emotion.HAPPINESS));
+        assertEquals(Long.valueOf(1), months.get(2).get(Emotion.SADNESS));
+
+        Map<Emotion, Long> recent = stats.getRecentEmotionCounts(2, now);
+        assertEquals(Long.valueOf(2), recent.get(Emotion.HAPPINESS));
+        assertEquals(Long.valueOf(1), recent.get(Emotion.SADNESS));
+    }
+
+    @Test
+    public void testFromData_MissingDocumentIsEmpty() {
+        MoodStats stats = MoodStats.fromData(null);
+        assertEquals(0, stats.getTotal());
+        assertNull(stats.getTopEmotion());
+        assertEquals(0, stats.getCurrentStreak(System.currentTimeMillis()));
+        assertEquals(0, stats.getLongestStreak());
+    }
+}
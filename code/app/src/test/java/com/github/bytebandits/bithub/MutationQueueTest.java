@@ -0,0 +1,176 @@
+package com.github.bytebandits.bithub;
+
+import com.github.bytebandits.bithub.controller.MutationQueue;
+import com.github.bytebandits.bithub.model.Emotion;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * MutationQueue tests, a fake database records the writes and answers them when told to
+ */
+public class MutationQueueTest {
+    private long now;
+    private boolean online;
+    private List<MutationQueue.Mutation> sent;
+    private List<MutationQueue.OnMutationSentListener> replies;
+    private HashMap<String, MutationQueue.Mutation> saved;
+    private List<Long> scheduledDelays;
+    private MutationQueue queue;
+
+    @Before
+    public void setUp() {
+        now = 1_000_000;
+        online = true;
+        sent = new ArrayList<>();
+        replies = new ArrayList<>();
+        saved = new HashMap<>();
+        scheduledDelays = new ArrayList<>();
+        queue = new MutationQueue(
+                (mutation, listener) -> {
+                    sent.add(mutation);
+                    replies.add(listener);
+                },
+                new MutationQueue.MutationLog() {
+                    @Override
+                    public void save(MutationQueue.Mutation mutation) {
+                        saved.put(mutation.key(), mutation);
+                    }
+
+                    @Override
+                    public void delete(MutationQueue.Mutation mutation) {
+                        saved.remove(mutation.key());
+                    }
+                },
+                (task, delayMs) -> scheduledDelays.add(delayMs),
+                () -> online, () -> now, new Random(42));
+    }
+
+    private static HashMap<String, Object> fields(String name, Object value) {
+        HashMap<String, Object> fields = new HashMap<>();
+        fields.put(name, value);
+        return fields;
+    }
+
+    @Test
+    public void testUpdatePost_CoalescesIntoOneWrite() {
+        queue.updatePost("post1", fields("latitude", 53.5));
+        queue.updatePost("post1", fields("longitude", -113.5));
+        queue.updatePost("post1", fields("latitude", 53.6));
+        assertEquals(1, queue.getDepth());
+        assertEquals(2, queue.getCoalescedCount());
+        assertTrue(saved.containsKey("post_update/post1"));
+
+        now += MutationQueue.COALESCE_DELAY_MS;
+        queue.flush();
+        assertEquals(1, sent.size());
+        assertEquals(53.6, (Double) sent.get(0).fields.get("latitude"), 0);
+        assertEquals(-113.5, (Double) sent.get(0).fields.get("longitude"), 0);
+
+        replies.get(0).onMutationSent(true);
+        assertEquals(0, queue.getDepth());
+        assertTrue(saved.isEmpty());
+    }
+
+    @Test
+    public void testUpdatePost_EnumsQueuedByName() {
+        queue.updatePost("post1", fields("emotion", Emotion.SADNESS));
+        now += MutationQueue.COALESCE_DELAY_MS;
+        queue.flush();
+        assertEquals("SADNESS", sent.get(0).fields.get("emotion"));
+    }
+
+    @Test
+    public void testFlush_HoldsWritesWhileOffline() {
+        online = false;
+        queue.updatePost("post1", fields("description", "a"));
+        queue.sendFollowRequest("user1", "user2");
+        queue.sendFollowRequest("user1", "user2");
+        now += 60_000;
+        queue.flush();
+        assertTrue(sent.isEmpty());
+        assertEquals(2, queue.getDepth());
+        assertEquals(60_000, queue.getOldestAgeMs());
+
+        online = true;
+        queue.flush();
+        assertEquals(2, sent.size());
+    }
+
+    @Test
+    public void testFlush_ChangesDuringWriteSentAfterIt() {
+        queue.updatePost("post1", fields("description", "a"));
+        now += MutationQueue.COALESCE_DELAY_MS;
+        queue.flush();
+        queue.updatePost("post1", fields("description", "b"));
+        now += MutationQueue.COALESCE_DELAY_MS;
+        queue.flush();
+        // One write in flight per document
+        assertEquals(1, sent.size());
+
+        replies.get(0).onMutationSent(true);
+        assertEquals(2, sent.size());
+        assertEquals("b", sent.get(1).fields.get("description"));
+        replies.get(1).onMutationSent(true);
+        assertEquals(0, queue.getDepth());
+    }
+
+    @Test
+    public void testFailure_RetriesWithGrowingJitteredBackoff() {
+        queue.updatePost("post1", fields("description", "a"));
+        now += MutationQueue.COALESCE_DELAY_MS;
+        queue.flush();
+
+        long previousMax = 0;
+        for (int attempt = 1; attempt <= 5; attempt++) {
+            scheduledDelays.clear();
+            replies.get(replies.size() - 1).onMutationSent(false);
+            long delay = scheduledDelays.get(scheduledDelays.size() - 1);
+            long max = MutationQueue.BASE_BACKOFF_MS << (attempt - 1);
+            assertTrue(delay >= max / 2 && delay <= max);
+            assertTrue(max > previousMax);
+            previousMax = max;
+
+            // Not sent again before the backoff is over
+            int sends = sent.size();
+            queue.flush();
+            assertEquals(sends, sent.size());
+            now += delay;
+            queue.flush();
+            assertEquals(sends + 1, sent.size());
+        }
+        assertEquals(5, queue.getFailedCount());
+        assertEquals(5, saved.get("post_update/post1").attempts);
+    }
+
+    @Test
+    public void testFailure_DroppedAfterMaxAttempts() {
+        queue.updatePost("post1", fields("description", "a"));
+        for (int attempt = 0; attempt < MutationQueue.MAX_ATTEMPTS; attempt++) {
+            now += MutationQueue.MAX_BACKOFF_MS + MutationQueue.COALESCE_DELAY_MS;
+            queue.flush();
+            replies.get(replies.size() - 1).onMutationSent(false);
+        }
+        assertEquals(MutationQueue.MAX_ATTEMPTS, sent.size());
+        assertEquals(0, queue.getDepth());
+        assertEquals(1, queue.getDroppedCount());
+        assertTrue(saved.isEmpty());
+    }
+
+    @Test
+    public void testUpdatePost_UnqueueableValueWrittenDirectly() {
+        queue.updatePost("post1", fields("description", "a"));
+        HashMap<String, Object> update = fields("comments", new ArrayList<>());
+        queue.updatePost("post1", update);
+        assertEquals(1, sent.size());
+        assertEquals("a", sent.get(0).fields.get("description"));
+        assertEquals(0, queue.getDepth());
+    }
+}
@@ -0,0 +1,100 @@
+package com.github.bytebandits.bithub;
+
+import com.github.bytebandits.bithub.controller.PostIndex;
+import com.github.bytebandits.bithub.model.Emotion;
+import com.github.bytebandits.bithub.model.MoodPost;
+import com.github.bytebandits.bithub.model.Profile;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * PostIndex tests
+ */
+public class PostIndexTest {
+    private PostIndex index;
+    private List<String> events;
+
+    private final PostIndex.OnPostIndexChangeListener recorder = new PostIndex.OnPostIndexChangeListener() {
+        @Override
+        public void onPostInserted(int position, MoodPost post) {
+            events.add("insert " + position);
+        }
+
+        @Override
+        public void onPostChanged(int position, MoodPost post) {
+            events.add("change " + position);
+        }
+
+        @Override
+        public void onPostRemoved(int position, MoodPost post) {
+            events.add("remove " + position);
+        }
+    };
+
+    private MoodPost postAt(long time) {
+        MoodPost post = new MoodPost(Emotion.HAPPINESS, new Profile("testUser"), false, null, null, null, false);
+        post.setPostedDateTime(new Date(time));
+        return post;
+    }
+
+    @Before
+    public void setup() {
+        index = new PostIndex();
+        events = new ArrayList<>();
+    }
+
+    @Test
+    public void testUpsert_KeepsMostRecentFirst() {
+        MoodPost oldest = postAt(1000);
+        MoodPost newest = postAt(3000);
+        MoodPost middle = postAt(2000);
+
+        index.upsert(oldest, recorder);
+        index.upsert(newest, recorder);
+        index.upsert(middle, recorder);
+
+        assertEquals(3, index.size());
+        assertSame(newest, index.getPosts().get(0));
+        assertSame(middle, index.getPosts().get(1));
+        assertSame(oldest, index.getPosts().get(2));
+        assertEquals("insert 0", events.get(0));
+        assertEquals("insert 0", events.get(1));
+        assertEquals("insert 1", events.get(2));
+    }
+
+    @Test
+    public void testUpsert_SamePostIsChangedInPlace() {
+        MoodPost post = postAt(1000);
+        index.upsert(postAt(2000), null);
+        index.upsert(post, null);
+
+        index.upsert(post, recorder);
+
+        assertEquals(2, index.size());
+        assertEquals(1, events.size());
+        assertEquals("change 1", events.get(0));
+    }
+
+    @Test
+    public void testRemove_ReportsPosition() {
+        MoodPost newest = postAt(2000);
+        MoodPost oldest = postAt(1000);
+        index.upsert(newest, null);
+        index.upsert(oldest, null);
+
+        index.remove(newest.getPostID(), recorder);
+        index.remove("missing", recorder);
+
+        assertEquals(1, index.size());
+        assertFalse(index.contains(newest.getPostID()));
+        assertEquals(1, events.size());
+        assertEquals("remove 0", events.get(0));
+    }
+}
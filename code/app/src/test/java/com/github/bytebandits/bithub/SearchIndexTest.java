@@ -0,0 +1,140 @@
+package com.github.bytebandits.bithub;
+
+import com.github.bytebandits.bithub.controller.DebouncedSearch;
+import com.github.bytebandits.bithub.controller.SearchIndex;
+import com.github.bytebandits.bithub.model.Emotion;
+import com.github.bytebandits.bithub.model.MoodPost;
+import com.github.bytebandits.bithub.model.Profile;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * SearchIndex and DebouncedSearch tests
+ */
+public class SearchIndexTest {
+    private SearchIndex index;
+
+    private MoodPost post(String description, long time) {
+        MoodPost post = new MoodPost(Emotion.HAPPINESS, new Profile("testUser"), false, null, description, null, false);
+        post.setPostedDateTime(new Date(time));
+        return post;
+    }
+
+    private static List<String> descriptions(List<MoodPost> posts) {
+        List<String> descriptions = new ArrayList<>();
+        for (MoodPost post : posts) {
+            descriptions.add(post.getDescription());
+        }
+        return descriptions;
+    }
+
+    @Before
+    public void setup() {
+        index = new SearchIndex();
+    }
+
+    @Test
+    public void testTokenize_LowercasesAndFoldsAccents() {
+        assertEquals(Arrays.asList("cafe", "with", "zoe", "at", "9am"), SearchIndex.tokenize("Café with ZOË, at 9am!"));
+        assertTrue(SearchIndex.tokenize("  ...  ").isEmpty());
+        assertTrue(SearchIndex.tokenize(null).isEmpty());
+    }
+
+    @Test
+    public void testSearch_MatchesPrefixesOfEveryWord() {
+        index.upsert(post("Great day at the beach", 1));
+        index.upsert(post("Beach was too crowded", 2));
+        index.upsert(post("Stuck at work all day", 3));
+        index.upsert(post(null, 4));
+
+        assertEquals(2, index.search("bea").size());
+        assertEquals(Collections.singletonList("Great day at the beach"), descriptions(index.search("beach da")));
+        assertEquals(Collections.singletonList("Stuck at work all day"), descriptions(index.search("WORK")));
+        assertTrue(index.search("beach work").isEmpty());
+        assertTrue(index.search("   ").isEmpty());
+        assertEquals(4, index.size());
+    }
+
+    @Test
+    public void testSearch_RanksFullWordsRareWordsThenRecent() {
+        index.upsert(post("walked the dog", 1));
+        index.upsert(post("dogs everywhere", 2));
+        index.upsert(post("dog dog dog", 3));
+        index.upsert(post("walked home, dog waiting", 4));
+
+        // Full word matches first, a repeated word above a single one, then most recent
+        assertEquals(Arrays.asList("dog dog dog", "walked home, dog waiting", "walked the dog", "dogs everywhere"),
+                descriptions(index.search("dog")));
+    }
+
+    @Test
+    public void testUpsert_ReindexesChangedDescription() {
+        MoodPost post = post("sunny morning", 1);
+        index.upsert(post);
+        // Edited in place, the words indexed before are still taken out
+        post.setDescription("rainy evening");
+        index.upsert(post);
+
+        assertTrue(index.search("sunny").isEmpty());
+        assertEquals(1, index.search("rain").size());
+        index.remove(post.getPostID());
+        assertTrue(index.search("rain").isEmpty());
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void testReplaceAll_RemovesMissingPosts() {
+        MoodPost kept = post("kept post", 1);
+        index.upsert(kept);
+        index.upsert(post("dropped post", 2));
+        index.replaceAll(Arrays.asList(kept, post("added post", 3)));
+
+        assertEquals(Arrays.asList("added post", "kept post"), descriptions(index.search("post")));
+        assertTrue(index.search("dropped").isEmpty());
+    }
+
+    @Test
+    public void testSearch_ThousandsOfPosts() {
+        String[] words = { "happy", "sad", "tired", "excited", "calm", "angry", "work", "school", "friends", "family" };
+        for (int i = 0; i < 5000; i++) {
+            index.upsert(post(words[i % words.length] + " " + words[(i / 10) % words.length] + " note" + i, i));
+        }
+        List<MoodPost> results = index.search("happy fam");
+        assertEquals(100, results.size());
+        for (MoodPost post : results) {
+            List<String> found = SearchIndex.tokenize(post.getDescription());
+            assertTrue(found.contains("happy") && found.contains("family"));
+        }
+        assertEquals(1, index.search("note4999").size());
+    }
+
+    @Test
+    public void testDebouncedSearch_OnlyLastQueryAnswers() throws InterruptedException {
+        index.upsert(post("happy", 1));
+        index.upsert(post("hungry", 2));
+        DebouncedSearch debouncedSearch = new DebouncedSearch(index, Runnable::run, 50);
+        List<String> answered = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(1);
+
+        debouncedSearch.search("h", posts -> answered.add("h"));
+        debouncedSearch.search("ha", posts -> answered.add("ha"));
+        debouncedSearch.search("hun", posts -> {
+            answered.add("hun " + descriptions(posts));
+            done.countDown();
+        });
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        debouncedSearch.shutdown();
+        assertEquals(Collections.singletonList("hun [hungry]"), answered);
+    }
+}
@@ -0,0 +1,157 @@
+package com.github.bytebandits.bithub;
+
+import com.github.bytebandits.bithub.controller.SpatialIndex;
+import com.github.bytebandits.bithub.model.Emotion;
+import com.github.bytebandits.bithub.model.MoodPost;
+import com.github.bytebandits.bithub.model.Profile;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * SpatialIndex tests, queries are checked against a linear scan of the posts
+ */
+public class SpatialIndexTest {
+    private static final double CENTER_LAT = 53.5232;
+    private static final double CENTER_LNG = -113.5263;
+
+    private static MoodPost post(double latitude, double longitude) {
+        MoodPost post = new MoodPost(Emotion.HAPPINESS, new Profile("user"), true, null, null, null, false);
+        post.setLatitude(latitude);
+        post.setLongitude(longitude);
+        return post;
+    }
+
+    // Posts spread over about 50 km around the center
+    private static List<MoodPost> randomPosts(int count, long seed) {
+        Random random = new Random(seed);
+        List<MoodPost> posts = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            posts.add(post(CENTER_LAT + (random.nextDouble() - 0.5) * 0.45, CENTER_LNG + (random.nextDouble() - 0.5) * 0.75));
+        }
+        return posts;
+    }
+
+    private static HashSet<String> ids(List<MoodPost> posts) {
+        HashSet<String> ids = new HashSet<>();
+        for (MoodPost post : posts) {
+            ids.add(post.getPostID());
+        }
+        return ids;
+    }
+
+    private static List<MoodPost> scanRadius(List<MoodPost> posts, double lat, double lng, double radiusKm) {
+        List<MoodPost> found = new ArrayList<>();
+        for (MoodPost post : posts) {
+            if (SpatialIndex.distanceKm(lat, lng, post.getLatitude(), post.getLongitude()) <= radiusKm) {
+                found.add(post);
+            }
+        }
+        return found;
+    }
+
+    @Test
+    public void testFindAt_ExactLocationOnly() {
+        SpatialIndex index = new SpatialIndex();
+        MoodPost a = post(CENTER_LAT, CENTER_LNG);
+        MoodPost b = post(CENTER_LAT + 0.000001, CENTER_LNG);
+        index.upsert(a);
+        index.upsert(b);
+
+        assertSame(a, index.findAt(CENTER_LAT, CENTER_LNG));
+        assertSame(b, index.findAt(CENTER_LAT + 0.000001, CENTER_LNG));
+        assertNull(index.findAt(CENTER_LAT + 0.000002, CENTER_LNG));
+    }
+
+    @Test
+    public void testUpsertAndRemove_KeepIndexCurrent() {
+        SpatialIndex index = new SpatialIndex();
+        MoodPost moved = post(CENTER_LAT, CENTER_LNG);
+        index.upsert(moved);
+        moved.setLatitude(CENTER_LAT + 1);
+        index.upsert(moved);
+
+        assertEquals(1, index.size());
+        assertNull(index.findAt(CENTER_LAT, CENTER_LNG));
+        assertSame(moved, index.findAt(CENTER_LAT + 1, CENTER_LNG));
+
+        moved.hideLocation();
+        index.upsert(moved);
+        assertEquals(0, index.size());
+
+        MoodPost removed = post(CENTER_LAT, CENTER_LNG);
+        index.upsert(removed);
+        index.remove(removed.getPostID());
+        assertEquals(0, index.size());
+        assertTrue(index.withinRadius(CENTER_LAT, CENTER_LNG, 100).isEmpty());
+    }
+
+    @Test
+    public void testQueries_MatchLinearScan() {
+        List<MoodPost> posts = randomPosts(5000, 1);
+        SpatialIndex index = new SpatialIndex();
+        for (MoodPost post : posts) {
+            index.upsert(post);
+        }
+
+        assertEquals(ids(scanRadius(posts, CENTER_LAT, CENTER_LNG, 5)), ids(index.withinRadius(CENTER_LAT, CENTER_LNG, 5)));
+
+        List<MoodPost> inBounds = new ArrayList<>();
+        for (MoodPost post : posts) {
+            if (post.getLatitude() >= 53.5 && post.getLatitude() <= 53.6
+                    && post.getLongitude() >= -113.6 && post.getLongitude() <= -113.4) {
+                inBounds.add(post);
+            }
+        }
+        assertEquals(ids(inBounds), ids(index.withinBounds(53.5, -113.6, 53.6, -113.4)));
+
+        List<MoodPost> sorted = new ArrayList<>(posts);
+        sorted.sort((p1, p2) -> Double.compare(
+                SpatialIndex.distanceKm(CENTER_LAT, CENTER_LNG, p1.getLatitude(), p1.getLongitude()),
+                SpatialIndex.distanceKm(CENTER_LAT, CENTER_LNG, p2.getLatitude(), p2.getLongitude())));
+        List<MoodPost> nearest = index.nearest(CENTER_LAT, CENTER_LNG, 10);
+        assertEquals(10, nearest.size());
+        for (int i = 0; i < 10; i++) {
+            assertSame(sorted.get(i), nearest.get(i));
+        }
+    }
+
+    @Test
+    public void testNearest_FarFromEveryPost() {
+        SpatialIndex index = new SpatialIndex();
+        MoodPost near = post(CENTER_LAT, CENTER_LNG);
+        MoodPost far = post(-33.8688, 151.2093);
+        index.upsert(near);
+        index.upsert(far);
+
+        List<MoodPost> nearest = index.nearest(0, 0, 2);
+        assertEquals(2, nearest.size());
+        assertSame(near, nearest.get(0));
+    }
+
+    @Test
+    public void testQueries_AtPostLocations() {
+        List<MoodPost> posts = randomPosts(10000, 10000);
+        SpatialIndex index = new SpatialIndex();
+        for (MoodPost post : posts) {
+            index.upsert(post);
+        }
+        Random random = new Random(42);
+        for (int i = 0; i < 50; i++) {
+            MoodPost target = posts.get(random.nextInt(posts.size()));
+            double lat = target.getLatitude();
+            double lng = target.getLongitude();
+            assertEquals(ids(scanRadius(posts, lat, lng, 5)), ids(index.withinRadius(lat, lng, 5)));
+            List<MoodPost> nearest = index.nearest(lat, lng, 10);
+            assertEquals(10, nearest.size());
+            assertSame(target, nearest.get(0));
+            assertSame(target, index.findAt(lat, lng));
+        }
+    }
+}